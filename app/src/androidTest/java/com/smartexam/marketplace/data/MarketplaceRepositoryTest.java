@@ -0,0 +1,182 @@
+package com.smartexam.marketplace.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.work.WorkManager;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.models.PurchasedPack;
+import com.smartexam.models.QuestionPack;
+import com.smartexam.testing.FirebaseEmulator;
+import com.smartexam.testing.PackSeeder;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * MarketplaceRepository against the Firestore and Auth emulators (see {@link FirebaseEmulator}),
+ * with an in-memory Room database.
+ */
+@RunWith(AndroidJUnit4.class)
+public class MarketplaceRepositoryTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+
+    private Context context;
+    private AppDatabase db;
+    private FirebaseFirestore firestore;
+    private MarketplaceRepository repository;
+    private String prefix;
+    private String uid;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        firestore = FirebaseEmulator.firestore();
+        repository = new MarketplaceRepository(context, db, firestore, FirebaseEmulator.auth());
+        prefix = "market-" + System.nanoTime() + "-";
+        // The emulator rules only accept signed-in writes, including the seeding
+        uid = FirebaseEmulator.signInFreshUser();
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        FirebaseEmulator.auth().signOut();
+    }
+
+    @Test
+    public void availablePacksExcludeUnpublished() throws Exception {
+        seedPack(prefix + "published-a", true);
+        seedPack(prefix + "published-b", true);
+        seedPack(prefix + "draft", false);
+
+        Blocking<List<QuestionPack>> result = new Blocking<>();
+        repository.getAvailablePacks(result);
+        Set<String> ids = new HashSet<>();
+        for (QuestionPack pack : result.get()) {
+            ids.add(pack.getId());
+        }
+        assertTrue(ids.contains(prefix + "published-a"));
+        assertTrue(ids.contains(prefix + "published-b"));
+        assertFalse(ids.contains(prefix + "draft"));
+    }
+
+    @Test
+    public void recordPurchaseWritesServerAndLocalCopies() throws Exception {
+        String packId = prefix + "bought";
+        seedPack(packId, true);
+
+        purchase(packId, "txn-test");
+
+        DocumentSnapshot purchase = Tasks.await(firestore.collection("users").document(uid)
+                .collection("purchased_packs").document(packId).get());
+        assertTrue(purchase.exists());
+        assertEquals("txn-test", purchase.getString("transactionId"));
+        assertTrue(Tasks.await(firestore.collection("users").document(uid).get()).exists());
+
+        // The pack row goes in first, as purchased_packs references it
+        assertEquals(packId, db.questionPackDao().getPackById(packId).getId());
+        List<PurchasedPack> local = db.purchasedPackDao().getPurchasedPacksForUser(uid);
+        assertEquals(1, local.size());
+        assertEquals("txn-test", local.get(0).getTransactionId());
+        assertTrue(isPurchased(packId));
+    }
+
+    @Test
+    public void purchasesAreKeptPerAccount() throws Exception {
+        String packId = prefix + "shared";
+        seedPack(packId, true);
+        String first = uid;
+        purchase(packId, "txn-first");
+
+        String second = FirebaseEmulator.signInFreshUser();
+        assertFalse(isPurchased(packId));
+        purchase(packId, "txn-second");
+        assertTrue(isPurchased(packId));
+
+        assertEquals("txn-first", db.purchasedPackDao().getPurchasedPacksForUser(first).get(0).getTransactionId());
+        assertEquals("txn-second", db.purchasedPackDao().getPurchasedPacksForUser(second).get(0).getTransactionId());
+    }
+
+    @Test
+    public void recordPurchaseNeedsSignedInUser() throws Exception {
+        FirebaseEmulator.auth().signOut();
+        Blocking<Boolean> result = new Blocking<>();
+        repository.recordPurchase(prefix + "anonymous", "txn-none", result);
+        assertEquals("User not authenticated", result.error());
+
+        assertFalse(isPurchased(prefix + "anonymous"));
+    }
+
+    private void seedPack(String packId, boolean published) throws Exception {
+        PackSeeder seeder = new PackSeeder(firestore);
+        seeder.pack(packId, 3, 0, published);
+        seeder.commit();
+    }
+
+    private void purchase(String packId, String transactionId) throws Exception {
+        Blocking<Boolean> result = new Blocking<>();
+        repository.recordPurchase(packId, transactionId, result);
+        try {
+            assertTrue(result.get());
+        } finally {
+            // The download itself is PackDownloadWorker's job, not under test here
+            WorkManager.getInstance(context).cancelAllWorkByTag("pack-download-" + packId);
+        }
+    }
+
+    private boolean isPurchased(String packId) throws Exception {
+        Blocking<Boolean> purchased = new Blocking<>();
+        repository.isPackPurchased(packId, purchased);
+        return purchased.get();
+    }
+
+    /**
+     * Waits for a DataCallback; get() fails on an error and error() on a success.
+     */
+    private static class Blocking<T> implements MarketplaceRepository.DataCallback<T> {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private T data;
+        private String error;
+
+        @Override
+        public void onSuccess(T data) {
+            this.data = data;
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(String error) {
+            this.error = error;
+            latch.countDown();
+        }
+
+        T get() throws InterruptedException {
+            assertTrue("No answer within " + TIMEOUT_SECONDS + "s", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertNull(error);
+            return data;
+        }
+
+        String error() throws InterruptedException {
+            assertTrue("No answer within " + TIMEOUT_SECONDS + "s", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return error;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+package com.smartexam.marketplace.services;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.database.DownloadedAssetDao;
+import com.smartexam.models.DownloadedAsset;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.net.URLConnection;
+import java.net.URLStreamHandler;
+import java.nio.file.Files;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * AssetDownloadManager's store with an in-memory Room database and a scratch blob directory.
+ * Transfers go to a scripted {@link HttpURLConnection} rather than Storage, so each test sees the
+ * exact Range header sent and chooses whether the server honours it.
+ */
+@RunWith(AndroidJUnit4.class)
+public class AssetDownloadManagerTest {
+
+    private static final int ASSET_BYTES = 1000;
+    private static final int PARTIAL_BYTES = 400;
+    private static final int PACK_BYTES = 40;
+    private static final long QUOTA_BYTES = 100;
+
+    private AppDatabase db;
+    private DownloadedAssetDao dao;
+    private File blobDir;
+    private byte[] content;
+
+    @Before
+    public void setUp() {
+        Context context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        dao = db.downloadedAssetDao();
+        blobDir = new File(context.getCacheDir(), "asset-test-" + System.nanoTime());
+        content = new byte[ASSET_BYTES];
+        new Random(7).nextBytes(content);
+    }
+
+    @After
+    public void tearDown() {
+        db.close();
+        File[] files = blobDir.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        blobDir.delete();
+    }
+
+    @Test
+    public void partialFileResumesWithRangeRequest() throws Exception {
+        AssetDownloadManager manager = manager(QUOTA_BYTES * 100);
+        File blob = new File(blobDir, "resume");
+        writePart(blob, Arrays.copyOf(content, PARTIAL_BYTES));
+        ScriptedServer server = new ScriptedServer(content, true);
+
+        long transferred = manager.download(server::url, "resume", blob, ASSET_BYTES, md5(content));
+
+        assertEquals(ASSET_BYTES - PARTIAL_BYTES, transferred);
+        assertEquals(Arrays.asList("bytes=" + PARTIAL_BYTES + "-"), server.ranges);
+        assertArrayEquals(content, Files.readAllBytes(blob.toPath()));
+        assertFalse(part(blob).exists());
+    }
+
+    @Test
+    public void serverIgnoringRangeRestartsTheFile() throws Exception {
+        AssetDownloadManager manager = manager(QUOTA_BYTES * 100);
+        File blob = new File(blobDir, "restart");
+        byte[] stale = new byte[PARTIAL_BYTES];
+        Arrays.fill(stale, (byte) 0x55);
+        writePart(blob, stale);
+        ScriptedServer server = new ScriptedServer(content, false);
+
+        long transferred = manager.download(server::url, "restart", blob, ASSET_BYTES, md5(content));
+
+        assertEquals(ASSET_BYTES, transferred);
+        assertEquals(Arrays.asList("bytes=" + PARTIAL_BYTES + "-"), server.ranges);
+        assertArrayEquals(content, Files.readAllBytes(blob.toPath()));
+    }
+
+    @Test
+    public void md5MismatchDiscardsThePartialFile() throws Exception {
+        AssetDownloadManager manager = manager(QUOTA_BYTES * 100);
+        File blob = new File(blobDir, "mismatch");
+        ScriptedServer server = new ScriptedServer(content, true);
+
+        try {
+            manager.download(server::url, "mismatch", blob, ASSET_BYTES, md5(new byte[] { 1, 2, 3 }));
+            fail("Accepted a file whose MD5 does not match");
+        } catch (AssetDownloadManager.IntegrityException expected) {
+            // Neither the partial nor the final file is left behind
+        }
+        assertFalse(part(blob).exists());
+        assertFalse(blob.exists());
+    }
+
+    @Test
+    public void emptyObjectIsRejectedWithoutTransfer() throws Exception {
+        AssetDownloadManager manager = manager(QUOTA_BYTES * 100);
+        File blob = new File(blobDir, "empty");
+        ScriptedServer server = new ScriptedServer(new byte[0], true);
+
+        try {
+            manager.download(server::url, "empty", blob, 0, md5(new byte[0]));
+            fail("Accepted an object reported as empty");
+        } catch (AssetDownloadManager.IntegrityException expected) {
+            // Rejected before the URL is requested
+        }
+        assertEquals(0, server.requests);
+        assertFalse(blob.exists());
+    }
+
+    @Test
+    public void corruptStoredBlobFailsVerification() throws Exception {
+        String hash = hex(md5(content));
+        byte[] corrupt = content.clone();
+        corrupt[ASSET_BYTES / 2] ^= 1;
+        blobDir.mkdirs();
+        Files.write(new File(blobDir, hash).toPath(), corrupt);
+        dao.upsert(new DownloadedAsset("images/q1.png", hash, "pack-a", ASSET_BYTES, 1));
+
+        // A new manager has verified nothing yet, so the first reuse checks the MD5
+        AssetDownloadManager manager = manager(QUOTA_BYTES * 100);
+
+        assertNull(manager.getLocalFile("images/q1.png"));
+        assertFalse(new File(blobDir, hash).exists());
+    }
+
+    @Test
+    public void intactStoredBlobIsServed() throws Exception {
+        String hash = hex(md5(content));
+        blobDir.mkdirs();
+        Files.write(new File(blobDir, hash).toPath(), content);
+        dao.upsert(new DownloadedAsset("images/q1.png", hash, "pack-a", ASSET_BYTES, 1));
+
+        File stored = manager(QUOTA_BYTES * 100).getLocalFile("images/q1.png");
+
+        assertNotNull(stored);
+        assertArrayEquals(content, Files.readAllBytes(stored.toPath()));
+        assertTrue(dao.get("images/q1.png").getLastUsedAt() > 1);
+    }
+
+    @Test
+    public void leastRecentlyUsedPackIsEvictedAndSharedBlobsKept() throws Exception {
+        AssetDownloadManager manager = manager(QUOTA_BYTES);
+        storeBlob(manager, "a1", "shared");
+        manager.record("pack-a", "images/a1.png", "shared", PACK_BYTES);
+        storeBlob(manager, "b1", "only-b");
+        manager.record("pack-b", "images/b1.png", "only-b", PACK_BYTES);
+        manager.record("pack-b", "images/b2.png", "shared", PACK_BYTES);
+        // Pack B was used before pack A; its asset that shares A's blob goes first
+        dao.touchPack("pack-a", 2000);
+        dao.touch("images/b1.png", 1000);
+        dao.touch("images/b2.png", 500);
+
+        storeBlob(manager, "c1", "only-c");
+        manager.record("pack-c", "images/c1.png", "only-c", PACK_BYTES);
+
+        assertNull(dao.get("images/b1.png"));
+        assertNull(dao.get("images/b2.png"));
+        assertFalse(manager.blobFile("only-b").exists());
+        assertNotNull(dao.get("images/a1.png"));
+        assertTrue(manager.blobFile("shared").exists());
+        assertNotNull(dao.get("images/c1.png"));
+        assertEquals(2 * PACK_BYTES, dao.getTotalBytes());
+    }
+
+    private AssetDownloadManager manager(long quotaBytes) {
+        return new AssetDownloadManager(blobDir, dao, quotaBytes);
+    }
+
+    private void storeBlob(AssetDownloadManager manager, String seed, String hash) throws IOException {
+        byte[] bytes = new byte[PACK_BYTES];
+        new Random(seed.hashCode()).nextBytes(bytes);
+        blobDir.mkdirs();
+        Files.write(manager.blobFile(hash).toPath(), bytes);
+    }
+
+    private void writePart(File blob, byte[] bytes) throws IOException {
+        blobDir.mkdirs();
+        try (FileOutputStream out = new FileOutputStream(part(blob))) {
+            out.write(bytes);
+        }
+    }
+
+    private static File part(File blob) {
+        return new File(blob.getParentFile(), blob.getName() + ".part");
+    }
+
+    private static byte[] md5(byte[] bytes) throws Exception {
+        return MessageDigest.getInstance("MD5").digest(bytes);
+    }
+
+    private static String hex(byte[] bytes) {
+        StringBuilder out = new StringBuilder();
+        for (byte b : bytes) {
+            out.append(String.format("%02x", b));
+        }
+        return out.toString();
+    }
+
+    /**
+     * Serves body over a fake HTTP connection, answering a Range request with 206 and the tail
+     * when honourRange is set and with 200 and the whole body otherwise.
+     */
+    private static class ScriptedServer extends URLStreamHandler {
+        private final byte[] body;
+        private final boolean honourRange;
+        final List<String> ranges = new ArrayList<>();
+        int requests;
+
+        ScriptedServer(byte[] body, boolean honourRange) {
+            this.body = body;
+            this.honourRange = honourRange;
+        }
+
+        URL url() throws IOException {
+            requests++;
+            return new URL("http", "assets.test", -1, "/asset", this);
+        }
+
+        @Override
+        protected URLConnection openConnection(URL url) {
+            return new HttpURLConnection(url) {
+                private String range;
+
+                @Override
+                public void setRequestProperty(String key, String value) {
+                    if ("Range".equals(key)) {
+                        range = value;
+                        ranges.add(value);
+                    }
+                }
+
+                @Override
+                public int getResponseCode() {
+                    return offset() > 0 ? HTTP_PARTIAL : HTTP_OK;
+                }
+
+                @Override
+                public InputStream getInputStream() {
+                    int offset = offset();
+                    return new ByteArrayInputStream(body, offset, body.length - offset);
+                }
+
+                private int offset() {
+                    if (!honourRange || range == null) {
+                        return 0;
+                    }
+                    return Integer.parseInt(range.substring("bytes=".length(), range.length() - 1));
+                }
+
+                @Override
+                public void connect() {
+                    connected = true;
+                }
+
+                @Override
+                public void disconnect() {
+                    connected = false;
+                }
+
+                @Override
+                public boolean usingProxy() {
+                    return false;
+                }
+            };
+        }
+    }
+}
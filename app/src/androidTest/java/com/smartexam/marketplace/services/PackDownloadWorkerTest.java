@@ -0,0 +1,132 @@
+package com.smartexam.marketplace.services;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import androidx.work.Data;
+import androidx.work.ListenableWorker;
+import androidx.work.WorkerFactory;
+import androidx.work.WorkerParameters;
+import androidx.work.testing.TestWorkerBuilder;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.models.PackDownloadCheckpoint;
+import com.smartexam.sync.SyncMetrics;
+import com.smartexam.testing.FirebaseEmulator;
+import com.smartexam.testing.PackSeeder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * The Firestore path of PackDownloadWorker against the Firestore and Auth emulators (see
+ * {@link FirebaseEmulator}), with an in-memory Room database. The pack lists 25 question ids, two
+ * of which do not exist, so the ids span three {@code in} chunks and one chunk comes back short.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PackDownloadWorkerTest {
+
+    private static final int LISTED_QUESTIONS = 25;
+    private static final int MISSING_QUESTIONS = 2;
+
+    private Context context;
+    private AppDatabase db;
+    private FirebaseFirestore firestore;
+    private ExecutorService executor;
+    private String uid;
+    private String packId;
+    private List<String> questionIds;
+
+    @Before
+    public void setUp() throws Exception {
+        context = ApplicationProvider.getApplicationContext();
+        db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        firestore = FirebaseEmulator.firestore();
+        executor = Executors.newSingleThreadExecutor();
+        uid = FirebaseEmulator.signInFreshUser();
+        packId = "download-" + System.nanoTime();
+        seedPack();
+    }
+
+    @After
+    public void tearDown() {
+        executor.shutdownNow();
+        db.close();
+        FirebaseEmulator.auth().signOut();
+    }
+
+    @Test
+    public void downloadsEveryChunk() throws Exception {
+        assertTrue(runWorker() instanceof ListenableWorker.Result.Success);
+
+        int stored = LISTED_QUESTIONS - MISSING_QUESTIONS;
+        assertEquals(stored, db.questionDao().getQuestionsByPackId(packId).size());
+        assertEquals(packId, db.questionPackDao().getPackById(packId).getId());
+        // The pack document plus one read per question returned; ids missing on the server cost nothing
+        assertEquals(1 + stored, lastDownloadReads());
+        assertTrue(db.packDownloadDao().getCompletedQuestionIds(packId).isEmpty());
+    }
+
+    @Test
+    public void resumeFetchesOnlyUncheckpointedIds() throws Exception {
+        long now = System.currentTimeMillis();
+        List<PackDownloadCheckpoint> checkpoints = new ArrayList<>();
+        for (String id : questionIds.subList(0, 20)) {
+            checkpoints.add(new PackDownloadCheckpoint(packId, id, now));
+        }
+        db.packDownloadDao().insertAll(checkpoints);
+
+        assertTrue(runWorker() instanceof ListenableWorker.Result.Success);
+
+        int stored = LISTED_QUESTIONS - 20 - MISSING_QUESTIONS;
+        assertEquals(stored, db.questionDao().getQuestionsByPackId(packId).size());
+        assertEquals(1 + stored, lastDownloadReads());
+    }
+
+    private ListenableWorker.Result runWorker() {
+        WorkerFactory factory = new WorkerFactory() {
+            @Override
+            public ListenableWorker createWorker(Context appContext, String workerClassName,
+                    WorkerParameters workerParameters) {
+                return new PackDownloadWorker(appContext, workerParameters, firestore, db);
+            }
+        };
+        PackDownloadWorker worker = TestWorkerBuilder.from(context, PackDownloadWorker.class, executor)
+                .setInputData(new Data.Builder()
+                        .putString(PackDownloadWorker.EXTRA_USER_ID, uid)
+                        .putString(PackDownloadWorker.EXTRA_PACK_ID, packId)
+                        .build())
+                .setWorkerFactory(factory)
+                .build();
+        return worker.doWork();
+    }
+
+    private long lastDownloadReads() {
+        List<SyncMetrics.Record> records = SyncMetrics.getInstance().getRecords();
+        for (int i = records.size() - 1; i >= 0; i--) {
+            SyncMetrics.Record record = records.get(i);
+            if ("packDownload".equals(record.operation) && packId.equals(record.packId)) {
+                return record.reads;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Writes the pack document and every listed question except the last two.
+     */
+    private void seedPack() throws Exception {
+        PackSeeder seeder = new PackSeeder(firestore);
+        questionIds = seeder.pack(packId, LISTED_QUESTIONS, MISSING_QUESTIONS, true);
+        seeder.commit();
+    }
+}
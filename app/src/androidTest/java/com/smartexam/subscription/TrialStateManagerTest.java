@@ -0,0 +1,180 @@
+package com.smartexam.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.smartexam.testing.FirebaseEmulator;
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * TrialStateManager against the Firestore and Auth emulators (see {@link FirebaseEmulator}), with
+ * its own state file and no entitlement listener, so every answer comes from the store or a read.
+ * Reads are measured as the change in {@link EntitlementMetrics#getTotalReads()}.
+ */
+@RunWith(AndroidJUnit4.class)
+public class TrialStateManagerTest {
+
+    private static final long TIMEOUT_SECONDS = 30;
+    private static final int SESSION_CHECKS = 20;
+    private static final long DAY_MS = TimeUnit.DAYS.toMillis(1);
+
+    private FirebaseFirestore firestore;
+    private File stateFile;
+    private TrialStateManager manager;
+    private String uid;
+
+    @Before
+    public void setUp() throws Exception {
+        Context context = ApplicationProvider.getApplicationContext();
+        firestore = FirebaseEmulator.firestore();
+        uid = FirebaseEmulator.signInFreshUser();
+        stateFile = new File(context.getCacheDir(), "trial-state-test-" + System.nanoTime() + ".bin");
+        manager = new TrialStateManager(context, firestore, FirebaseEmulator.auth(), stateFile, null);
+    }
+
+    @After
+    public void tearDown() {
+        stateFile.delete();
+        FirebaseEmulator.auth().signOut();
+    }
+
+    @Test
+    public void userWithoutTrialReadsAsNone() throws Exception {
+        Blocking state = new Blocking();
+        manager.getTrialState(state);
+        assertEquals(TrialStateManager.TrialState.NONE, state.get().state);
+    }
+
+    @Test
+    public void fetchedStateIsServedLocallyUntilStale() throws Exception {
+        long now = System.currentTimeMillis();
+        seedActiveTrial(now);
+
+        Blocking first = new Blocking();
+        manager.getTrialState(first);
+        TrialStateManager.TrialStateData fetched = first.get();
+        assertEquals(TrialStateManager.TrialState.ACTIVE, fetched.state);
+        assertEquals(now + 7 * DAY_MS, fetched.trialEnd);
+        assertEquals("test-device", fetched.deviceHash);
+
+        long readsBefore = EntitlementMetrics.getInstance().getTotalReads();
+        Blocking second = new Blocking();
+        manager.getTrialState(second);
+        assertEquals(TrialStateManager.TrialState.ACTIVE, second.get().state);
+        assertEquals(readsBefore, EntitlementMetrics.getInstance().getTotalReads());
+    }
+
+    @Test
+    public void sessionOfChecksCostsOneRead() throws Exception {
+        seedActiveTrial(System.currentTimeMillis());
+
+        long readsBefore = EntitlementMetrics.getInstance().getTotalReads();
+        for (int i = 0; i < SESSION_CHECKS; i++) {
+            Blocking state = new Blocking();
+            manager.getTrialState(state);
+            assertEquals(TrialStateManager.TrialState.ACTIVE, state.get().state);
+        }
+        assertEquals(1, EntitlementMetrics.getInstance().getTotalReads() - readsBefore);
+    }
+
+    @Test
+    public void storedStateIsNotServedToAnotherAccount() throws Exception {
+        seedActiveTrial(System.currentTimeMillis());
+        Blocking first = new Blocking();
+        manager.getTrialState(first);
+        assertEquals(TrialStateManager.TrialState.ACTIVE, first.get().state);
+
+        FirebaseEmulator.signInFreshUser();
+        long readsBefore = EntitlementMetrics.getInstance().getTotalReads();
+        Blocking second = new Blocking();
+        manager.getTrialState(second);
+        assertEquals(TrialStateManager.TrialState.NONE, second.get().state);
+        assertEquals(1, EntitlementMetrics.getInstance().getTotalReads() - readsBefore);
+    }
+
+    @Test
+    public void updateWritesServerDocument() throws Exception {
+        long now = System.currentTimeMillis();
+        Blocking update = new Blocking();
+        manager.updateTrialState(new TrialStateManager.TrialStateData(TrialStateManager.TrialState.ACTIVE,
+                now, now + 7 * DAY_MS, now, "test-device", true, new HashMap<>()), update);
+        assertEquals(TrialStateManager.TrialState.ACTIVE, update.get().state);
+
+        DocumentSnapshot trial = Tasks.await(firestore.collection("trials").document(uid).get());
+        assertEquals("ACTIVE", trial.getString("state"));
+        assertEquals(Long.valueOf(now + 7 * DAY_MS), trial.getLong("trial_end"));
+        assertEquals("test-device", trial.getString("device_hash"));
+    }
+
+    @Test
+    public void terminalStateRejectsTransition() throws Exception {
+        long now = System.currentTimeMillis();
+        Blocking converted = new Blocking();
+        manager.updateTrialState(new TrialStateManager.TrialStateData(TrialStateManager.TrialState.CONVERTED,
+                now, now + 7 * DAY_MS, now, "test-device", true, new HashMap<>()), converted);
+        converted.get();
+
+        Blocking reactivated = new Blocking();
+        manager.updateTrialState(new TrialStateManager.TrialStateData(TrialStateManager.TrialState.ACTIVE,
+                now, now + 7 * DAY_MS, now, "test-device", true, new HashMap<>()), reactivated);
+        assertEquals("Invalid state transition", reactivated.error());
+    }
+
+    private void seedActiveTrial(long now) throws Exception {
+        Map<String, Object> trial = new HashMap<>();
+        trial.put("state", TrialStateManager.TrialState.ACTIVE.name());
+        trial.put("trial_start", now);
+        trial.put("trial_end", now + 7 * DAY_MS);
+        trial.put("device_hash", "test-device");
+        trial.put("last_sync", now);
+        trial.put("metadata", new HashMap<>());
+        Tasks.await(firestore.collection("trials").document(uid).set(trial));
+    }
+
+    /**
+     * Waits for a TrialStateCallback; get() fails on an error and error() on a success.
+     */
+    private static class Blocking implements TrialStateManager.TrialStateCallback {
+        private final CountDownLatch latch = new CountDownLatch(1);
+        private TrialStateManager.TrialStateData state;
+        private String error;
+
+        @Override
+        public void onStateReceived(TrialStateManager.TrialStateData state) {
+            this.state = state;
+            latch.countDown();
+        }
+
+        @Override
+        public void onError(String errorMessage) {
+            this.error = errorMessage;
+            latch.countDown();
+        }
+
+        TrialStateManager.TrialStateData get() throws InterruptedException {
+            assertTrue("No answer within " + TIMEOUT_SECONDS + "s", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertNull(error);
+            return state;
+        }
+
+        String error() throws InterruptedException {
+            assertTrue("No answer within " + TIMEOUT_SECONDS + "s", latch.await(TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            return error;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.smartexam.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.room.Room;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.models.PurchasedPack;
+import com.smartexam.testing.FirebaseEmulator;
+import com.smartexam.testing.PackSeeder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Load test for the sync path against the Firestore and Auth emulators (see
+ * {@link FirebaseEmulator}), with an in-memory Room database per run.
+ * <p>
+ * For each library size it signs in a fresh anonymous user, seeds that many purchased packs and
+ * measures a cold sync into an empty database followed by a warm delta sync with nothing changed.
+ * Reads come from {@link SyncMetrics} and are held to an exact budget, so a regression in the read
+ * pattern fails the test; latencies are logged for comparison between runs. A burst of concurrent
+ * {@link SyncManager#syncPurchasedPacks} calls must cost a single delta sync.
+ */
+@RunWith(AndroidJUnit4.class)
+public class SyncLoadTest {
+
+    private static final String TAG = "SyncLoadTest";
+    private static final int QUESTIONS_PER_PACK = 20;
+    private static final int IN_QUERY_LIMIT = 10;
+    private static final String PACK_PREFIX = "load-pack-";
+    private static final long SYNC_TIMEOUT_SECONDS = 120;
+    private static final int CONCURRENT_CALLERS = 400;
+    private static final int CONCURRENT_LIBRARY = 10;
+
+    private static FirebaseFirestore firestore;
+
+    @BeforeClass
+    public static void seed() throws Exception {
+        firestore = FirebaseEmulator.firestore();
+        FirebaseEmulator.signInFreshUser();
+        seedPacks(100);
+    }
+
+    @AfterClass
+    public static void signOut() {
+        FirebaseEmulator.auth().signOut();
+    }
+
+    @Test
+    public void libraryOfOnePack() throws Exception {
+        runLibrary(1);
+    }
+
+    @Test
+    public void libraryOfTenPacks() throws Exception {
+        runLibrary(10);
+    }
+
+    @Test
+    public void libraryOfHundredPacks() throws Exception {
+        runLibrary(100);
+    }
+
+    /**
+     * Hundreds of screens asking for a sync at once share one run: the callers that arrive while
+     * it is in flight join it, and any later ones are answered from the rate-limited cache. So
+     * purchases are read by exactly one delta sync, at the cold budget.
+     */
+    @Test
+    public void concurrentCallersReadPurchasesOnce() throws Exception {
+        String uid = FirebaseEmulator.signInFreshUser();
+        seedPurchases(uid, CONCURRENT_LIBRARY);
+
+        Context context = ApplicationProvider.getApplicationContext();
+        AppDatabase db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        ExecutorService callers = Executors.newFixedThreadPool(CONCURRENT_CALLERS);
+        try {
+            SyncManager manager = new SyncManager(db, firestore, FirebaseEmulator.auth(), new SyncCache(db));
+            long startedAt = System.currentTimeMillis();
+            CountDownLatch go = new CountDownLatch(1);
+            CountDownLatch done = new CountDownLatch(CONCURRENT_CALLERS);
+            AtomicInteger succeeded = new AtomicInteger();
+            AtomicReference<String> error = new AtomicReference<>();
+            for (int i = 0; i < CONCURRENT_CALLERS; i++) {
+                callers.execute(() -> {
+                    try {
+                        go.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        return;
+                    }
+                    manager.syncPurchasedPacks(new SyncManager.SyncCallback() {
+                        @Override
+                        public void onSyncSuccess(int itemCount) {
+                            succeeded.incrementAndGet();
+                            done.countDown();
+                        }
+
+                        @Override
+                        public void onSyncFailed(String errorMessage) {
+                            error.set(errorMessage);
+                            done.countDown();
+                        }
+                    });
+                });
+            }
+            go.countDown();
+            assertTrue("Syncs did not finish within " + SYNC_TIMEOUT_SECONDS + "s",
+                    done.await(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+            assertNull(error.get());
+            assertEquals(CONCURRENT_CALLERS, succeeded.get());
+
+            List<SyncMetrics.Record> runs = deltaSyncsSince(startedAt);
+            assertEquals(1, runs.size());
+            assertEquals(CONCURRENT_LIBRARY * (2L + QUESTIONS_PER_PACK), runs.get(0).reads);
+            assertEquals(CONCURRENT_LIBRARY, db.purchasedPackDao().getPurchasedPacksForUser(uid).size());
+        } finally {
+            callers.shutdownNow();
+            db.close();
+        }
+    }
+
+    /**
+     * A cold sync reads every purchase, pack and question once; questions come from the top-level
+     * collection in full {@code in} chunks. A warm sync reads the purchase at the watermark (its
+     * bound is inclusive) and one empty pack query per chunk.
+     */
+    private void runLibrary(int packCount) throws Exception {
+        String uid = FirebaseEmulator.signInFreshUser();
+        seedPurchases(uid, packCount);
+
+        Context context = ApplicationProvider.getApplicationContext();
+        AppDatabase db = Room.inMemoryDatabaseBuilder(context, AppDatabase.class).build();
+        try {
+            SyncManager manager = new SyncManager(db, firestore, FirebaseEmulator.auth(), new SyncCache(db));
+            long[] cold = measure(manager);
+            long[] warm = measure(manager);
+            Log.d(TAG, packCount + " packs: cold " + cold[0] + "ms / " + cold[1] + " reads, warm " + warm[0]
+                    + "ms / " + warm[1] + " reads");
+
+            List<PurchasedPack> purchases = db.purchasedPackDao().getPurchasedPacksForUser(uid);
+            assertEquals(packCount, purchases.size());
+            for (PurchasedPack purchase : purchases) {
+                assertTrue(purchase.getPackId(), purchase.isSynced());
+            }
+            assertEquals(packCount * QUESTIONS_PER_PACK, db.questionDao().getQuestionCount());
+            assertEquals(packCount * (2L + QUESTIONS_PER_PACK), cold[1]);
+            long chunks = (packCount + IN_QUERY_LIMIT - 1) / IN_QUERY_LIMIT;
+            assertEquals(1 + chunks, warm[1]);
+            assertTrue(warm[1] < cold[1]);
+        } finally {
+            db.close();
+        }
+    }
+
+    /**
+     * Runs one forced delta sync and returns {elapsed ms, Firestore reads}.
+     */
+    private static long[] measure(SyncManager manager) throws Exception {
+        CountDownLatch latch = new CountDownLatch(1);
+        String[] error = new String[1];
+        long start = System.nanoTime();
+        manager.forceRefresh(new SyncManager.SyncCallback() {
+            @Override
+            public void onSyncSuccess(int itemCount) {
+                latch.countDown();
+            }
+
+            @Override
+            public void onSyncFailed(String errorMessage) {
+                error[0] = errorMessage;
+                latch.countDown();
+            }
+        });
+        assertTrue("Sync did not finish within " + SYNC_TIMEOUT_SECONDS + "s",
+                latch.await(SYNC_TIMEOUT_SECONDS, TimeUnit.SECONDS));
+        long elapsedMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        if (error[0] != null) {
+            throw new AssertionError(error[0]);
+        }
+        return new long[] { elapsedMs, lastDeltaSyncReads() };
+    }
+
+    private static List<SyncMetrics.Record> deltaSyncsSince(long startedAt) {
+        List<SyncMetrics.Record> runs = new ArrayList<>();
+        for (SyncMetrics.Record record : SyncMetrics.getInstance().getRecords()) {
+            if ("deltaSync".equals(record.operation) && record.startedAt >= startedAt) {
+                runs.add(record);
+            }
+        }
+        return runs;
+    }
+
+    private static long lastDeltaSyncReads() {
+        List<SyncMetrics.Record> records = SyncMetrics.getInstance().getRecords();
+        for (int i = records.size() - 1; i >= 0; i--) {
+            if ("deltaSync".equals(records.get(i).operation)) {
+                return records.get(i).reads;
+            }
+        }
+        return -1;
+    }
+
+    private static void seedPacks(int packCount) throws Exception {
+        PackSeeder seeder = new PackSeeder(firestore);
+        for (int p = 0; p < packCount; p++) {
+            seeder.pack(PACK_PREFIX + p, QUESTIONS_PER_PACK, 0, true);
+        }
+        seeder.commit();
+    }
+
+    private static void seedPurchases(String uid, int packCount) throws Exception {
+        long now = System.currentTimeMillis();
+        PackSeeder seeder = new PackSeeder(firestore);
+        for (int p = 0; p < packCount; p++) {
+            seeder.purchase(uid, PACK_PREFIX + p, now + p);
+        }
+        seeder.commit();
+    }
+}
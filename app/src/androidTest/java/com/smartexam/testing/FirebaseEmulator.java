@@ -0,0 +1,54 @@
+package com.smartexam.testing;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.FirebaseApp;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.firestore.FirebaseFirestore;
+
+/**
+ * A separate FirebaseApp wired to the local Firestore and Auth emulators
+ * ({@code firebase emulators:start --only firestore,auth} on the host machine, with rules that
+ * allow authenticated reads and writes). Tests use its instances through the package-private
+ * constructors of the classes under test, so the app's own user and project are never touched.
+ */
+public final class FirebaseEmulator {
+
+    private static final String APP_NAME = "emulator-tests";
+    // The Android emulator reaches the host's loopback interface through 10.0.2.2
+    private static final String HOST = "10.0.2.2";
+    private static final int FIRESTORE_PORT = 8080;
+    private static final int AUTH_PORT = 9099;
+
+    private static FirebaseApp app;
+
+    private FirebaseEmulator() {
+    }
+
+    public static synchronized FirebaseApp app() {
+        if (app == null) {
+            FirebaseApp defaultApp = FirebaseApp.getInstance();
+            app = FirebaseApp.initializeApp(defaultApp.getApplicationContext(), defaultApp.getOptions(), APP_NAME);
+            // Must be set before the first use of either instance
+            FirebaseFirestore.getInstance(app).useEmulator(HOST, FIRESTORE_PORT);
+            FirebaseAuth.getInstance(app).useEmulator(HOST, AUTH_PORT);
+        }
+        return app;
+    }
+
+    public static FirebaseFirestore firestore() {
+        return FirebaseFirestore.getInstance(app());
+    }
+
+    public static FirebaseAuth auth() {
+        return FirebaseAuth.getInstance(app());
+    }
+
+    /**
+     * Signs out and in again as a new anonymous user, returning its uid.
+     */
+    public static String signInFreshUser() throws Exception {
+        FirebaseAuth auth = auth();
+        auth.signOut();
+        return Tasks.await(auth.signInAnonymously()).getUser().getUid();
+    }
+}
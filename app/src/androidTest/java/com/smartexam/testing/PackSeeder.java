@@ -0,0 +1,102 @@
+package com.smartexam.testing;
+
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentReference;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+import com.smartexam.models.QuestionType;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Seeds marketplace data in the schema the admin portal writes: questions in the top-level
+ * {@code questions} collection, listed by the pack document's {@code questionIds}, with
+ * {@code updatedAt} stamped on both. Every test that needs packs seeds them here, so the sync and
+ * download pipelines are exercised against the same data. Writes are batched within Firestore's
+ * per-batch limit; call {@link #commit()} when done.
+ */
+public final class PackSeeder {
+
+    private static final int MAX_BATCH_WRITES = 500;
+
+    private final FirebaseFirestore firestore;
+    private final long now = System.currentTimeMillis();
+    private WriteBatch batch;
+    private int pending;
+
+    public PackSeeder(FirebaseFirestore firestore) {
+        this.firestore = firestore;
+        this.batch = firestore.batch();
+    }
+
+    /**
+     * Writes a pack listing {@code listed} questions, of which the last {@code missing} are not
+     * written, as if deleted on the server.
+     *
+     * @return the listed question ids, in order
+     */
+    public List<String> pack(String packId, int listed, int missing, boolean published) throws Exception {
+        List<String> questionIds = new ArrayList<>();
+        for (int q = 0; q < listed; q++) {
+            String questionId = packId + "-q" + q;
+            questionIds.add(questionId);
+            if (q >= listed - missing) {
+                continue;
+            }
+            Map<String, Object> question = new HashMap<>();
+            question.put("subject", "Mathematics");
+            question.put("grade", 10);
+            question.put("topic", "Seeded topic " + (q % 5));
+            question.put("type", QuestionType.values()[q % QuestionType.values().length].name());
+            question.put("marks", 1 + q % 5);
+            question.put("questionText", "Question " + q + " of " + packId);
+            question.put("version", 1);
+            question.put("createdAt", now);
+            question.put("updatedAt", now);
+            set(firestore.collection("questions").document(questionId), question);
+        }
+
+        Map<String, Object> pack = new HashMap<>();
+        pack.put("title", "Pack " + packId);
+        pack.put("subject", "Mathematics");
+        pack.put("grade", 10);
+        pack.put("term", 1);
+        pack.put("questionCount", listed);
+        pack.put("questionIds", questionIds);
+        pack.put("isPublished", published);
+        pack.put("version", 1);
+        pack.put("createdAt", now);
+        pack.put("updatedAt", now);
+        set(firestore.collection("question_packs").document(packId), pack);
+        return questionIds;
+    }
+
+    /**
+     * Writes a purchase as MarketplaceRepository.recordPurchase does.
+     */
+    public void purchase(String uid, String packId, long purchasedAt) throws Exception {
+        Map<String, Object> purchase = new HashMap<>();
+        purchase.put("packId", packId);
+        purchase.put("transactionId", "seed-" + uid + "-" + packId);
+        purchase.put("purchasedAt", purchasedAt);
+        purchase.put("synced", false);
+        set(firestore.collection("users").document(uid).collection("purchased_packs").document(packId), purchase);
+    }
+
+    public void commit() throws Exception {
+        if (pending > 0) {
+            Tasks.await(batch.commit());
+        }
+        batch = firestore.batch();
+        pending = 0;
+    }
+
+    private void set(DocumentReference ref, Map<String, Object> data) throws Exception {
+        batch.set(ref, data);
+        if (++pending == MAX_BATCH_WRITES) {
+            commit();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+package com.smartexam.utils;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.graphics.Bitmap;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.itextpdf.text.Document;
+import com.itextpdf.text.Image;
+import com.itextpdf.text.PageSize;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.parser.PdfTextExtractor;
+import com.smartexam.models.Question;
+import com.smartexam.models.QuestionType;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * PdfOptimizer on small generated papers. Images are noisy JPEGs so re-encoding always pays off
+ * and only the pixel cap decides their final size.
+ */
+@RunWith(AndroidJUnit4.class)
+public class PdfOptimizerTest {
+
+    private static final int SOURCE_PIXELS = 1200;
+    private static final float INCH = 72f;
+
+    private File pdf;
+
+    @Before
+    public void setUp() {
+        pdf = new File(ApplicationProvider.getApplicationContext().getCacheDir(),
+                "optimizer-test-" + System.nanoTime() + ".pdf");
+    }
+
+    @After
+    public void tearDown() {
+        pdf.delete();
+    }
+
+    @Test
+    public void imagePlacedSmallIsDownsampledToItsPlacedSize() throws Exception {
+        writePdf(new byte[][] { noisyJpeg(SOURCE_PIXELS, 1) }, new float[] { INCH });
+
+        PdfOptimizer.Result result = new PdfOptimizer().optimize(pdf);
+
+        assertEquals(1, result.getImagesRecompressed());
+        assertEquals(Collections.singletonList(PdfOptimizer.DEFAULT_TARGET_DPI), imageWidths());
+        assertTrue(result.getBytesAfter() < result.getBytesBefore());
+    }
+
+    @Test
+    public void imagePlacedLargeKeepsTargetDpi() throws Exception {
+        writePdf(new byte[][] { noisyJpeg(SOURCE_PIXELS, 2) }, new float[] { 6 * INCH });
+
+        new PdfOptimizer().optimize(pdf);
+
+        assertEquals(Collections.singletonList(6 * PdfOptimizer.DEFAULT_TARGET_DPI), imageWidths());
+    }
+
+    @Test
+    public void imageAtTargetDpiIsLeftAlone() throws Exception {
+        writePdf(new byte[][] { noisyJpeg(PdfOptimizer.DEFAULT_TARGET_DPI, 3) }, new float[] { INCH });
+
+        PdfOptimizer.Result result = new PdfOptimizer().optimize(pdf);
+
+        assertEquals(0, result.getImagesRecompressed());
+        assertEquals(Collections.singletonList(PdfOptimizer.DEFAULT_TARGET_DPI), imageWidths());
+    }
+
+    @Test
+    public void duplicateImageIsStoredOnceAtItsLargestPlacement() throws Exception {
+        byte[] jpeg = noisyJpeg(SOURCE_PIXELS, 4);
+        writePdf(new byte[][] { jpeg, jpeg }, new float[] { INCH, 4 * INCH });
+
+        PdfOptimizer.Result result = new PdfOptimizer().optimize(pdf);
+
+        assertEquals(1, result.getImagesDeduplicated());
+        assertEquals(Collections.singletonList(4 * PdfOptimizer.DEFAULT_TARGET_DPI), imageWidths());
+        PdfReader reader = new PdfReader(pdf.getAbsolutePath());
+        try {
+            assertEquals(1, reader.getNumberOfPages());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void generatedPaperIsReplacedWholeAndStaysReadable() throws Exception {
+        File logo = new File(pdf.getParentFile(), "optimizer-logo-" + System.nanoTime() + ".jpg");
+        try {
+            try (FileOutputStream out = new FileOutputStream(logo)) {
+                out.write(noisyJpeg(SOURCE_PIXELS, 5));
+            }
+            PDFGenerator generator = new PDFGenerator();
+            generator.configureSchoolDetails("Reference School", "A. Teacher", logo.getAbsolutePath());
+            generator.setOptimizer(null);
+            generator.generateTest(pdf.getAbsolutePath(), "Reference Paper", "Mathematics", 5,
+                    referenceQuestions(), null);
+            int pages = PDFGenerator.countPages(pdf);
+            List<String> text = pageText();
+
+            PdfOptimizer.Result result = new PdfOptimizer().optimize(pdf);
+
+            assertTrue(result.getBytesAfter() < result.getBytesBefore());
+            assertEquals(result.getBytesAfter(), pdf.length());
+            assertFalse(new File(pdf.getParentFile(), pdf.getName() + ".opt").exists());
+            assertEquals(pages, PDFGenerator.countPages(pdf));
+            assertEquals(text, pageText());
+        } finally {
+            logo.delete();
+        }
+    }
+
+    private static List<Question> referenceQuestions() {
+        List<Question> questions = new ArrayList<>();
+        for (int i = 1; i <= 40; i++) {
+            Question question = new Question();
+            question.setId("q" + i);
+            question.setTopic("Fractions");
+            question.setType(QuestionType.FILL_IN_BLANKS);
+            question.setMarks(2);
+            question.setQuestionText("Write " + i + "/8 in its simplest form and as a decimal.");
+            questions.add(question);
+        }
+        return questions;
+    }
+
+    private List<String> pageText() throws Exception {
+        List<String> text = new ArrayList<>();
+        PdfReader reader = new PdfReader(pdf.getAbsolutePath());
+        try {
+            for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                text.add(PdfTextExtractor.getTextFromPage(reader, page));
+            }
+        } finally {
+            reader.close();
+        }
+        return text;
+    }
+
+    /**
+     * Writes one A4 page with each image drawn as a square of the given side in points.
+     */
+    private void writePdf(byte[][] images, float[] placedPoints) throws Exception {
+        Document document = new Document(PageSize.A4);
+        try (FileOutputStream out = new FileOutputStream(pdf)) {
+            PdfWriter.getInstance(document, out);
+            document.open();
+            for (int i = 0; i < images.length; i++) {
+                Image image = Image.getInstance(images[i]);
+                image.scaleAbsolute(placedPoints[i], placedPoints[i]);
+                document.add(image);
+            }
+            document.close();
+        }
+    }
+
+    private List<Integer> imageWidths() throws Exception {
+        List<Integer> widths = new ArrayList<>();
+        PdfReader reader = new PdfReader(pdf.getAbsolutePath());
+        try {
+            for (int i = 0; i < reader.getXrefSize(); i++) {
+                PdfObject obj = reader.getPdfObject(i);
+                if (obj instanceof PRStream && PdfName.IMAGE.equals(((PRStream) obj).getAsName(PdfName.SUBTYPE))) {
+                    widths.add(((PRStream) obj).getAsNumber(PdfName.WIDTH).intValue());
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return widths;
+    }
+
+    private static byte[] noisyJpeg(int size, long seed) {
+        Random random = new Random(seed);
+        int[] pixels = new int[size * size];
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = 0xff000000 | random.nextInt(0x1000000);
+        }
+        Bitmap bitmap = Bitmap.createBitmap(pixels, size, size, Bitmap.Config.ARGB_8888);
+        try {
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, 100, jpeg);
+            return jpeg.toByteArray();
+        } finally {
+            bitmap.recycle();
+        }
+    }
+}
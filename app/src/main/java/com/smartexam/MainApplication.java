@@ -2,11 +2,13 @@ package com.smartexam;
 
 import android.app.Application;
 import com.google.firebase.FirebaseApp;
+import com.smartexam.subscription.SubscriptionManager;
 
 public class MainApplication extends Application {
     @Override
     public void onCreate() {
         super.onCreate();
         FirebaseApp.initializeApp(this);
+        SubscriptionManager.getInstance().initialize(this);
     }
 }
@@ -1,7 +1,5 @@
 package com.smartexam.activities;
 
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.app.DatePickerDialog;
 import android.text.format.DateFormat;
 import android.widget.EditText;
@@ -18,6 +16,7 @@ import androidx.recyclerview.widget.RecyclerView;
 import com.smartexam.R;
 import com.smartexam.adapters.SelectableQuestionAdapter;
 import com.smartexam.database.AppDatabase;
+import com.smartexam.marketplace.services.AssetDownloadManager;
 import com.smartexam.models.AssessmentPaper;
 import com.smartexam.models.PaperQuestion;
 import com.smartexam.models.Question;
@@ -25,7 +24,11 @@ import com.smartexam.models.Subject;
 import com.smartexam.models.TeacherSettings;
 import com.smartexam.preferences.TeacherSettingsRepository;
 import com.smartexam.utils.PDFGenerator;
-import java.io.ByteArrayOutputStream;
+import com.smartexam.utils.PdfOptimizer;
+import com.smartexam.utils.PdfThumbnailCache;
+import com.smartexam.utils.StartupCache;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class AssessmentGeneratorActivity extends AppCompatActivity {
 
@@ -38,7 +41,11 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
     private RecyclerView rvQuestions;
     private AppDatabase db;
     private PDFGenerator pdfGenerator;
+    private PDFGenerator layoutGenerator;
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    // Separate from executor so page-count previews never queue behind a full generation.
+    private final ExecutorService layoutExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicInteger layoutRequest = new AtomicInteger();
     private List<Subject> subjects;
     private String lastTestPath;
     private String lastMemoPath;
@@ -55,6 +62,7 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
 
         db = AppDatabase.getInstance(this);
         pdfGenerator = new PDFGenerator();
+        layoutGenerator = new PDFGenerator();
         settingsRepository = new TeacherSettingsRepository(this);
 
         etPaperTitle = findViewById(R.id.etPaperTitle);
@@ -97,7 +105,8 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
 
     private void setupSubjectSpinner() {
         executor.execute(() -> {
-            subjects = db.subjectDao().getAllSubjects();
+            List<Subject> warm = StartupCache.getInstance().getSubjects();
+            subjects = warm != null ? warm : db.subjectDao().getAllSubjects();
             runOnUiThread(() -> {
                 ArrayAdapter<Subject> subAdapter = new ArrayAdapter<>(this,
                         android.R.layout.simple_spinner_item, subjects);
@@ -193,6 +202,7 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
         }
         executor.execute(() -> {
             db.paperDao().deleteById(editingPaper.getId());
+            PdfThumbnailCache.getInstance(this).invalidate(editingPaper.getFilePath());
             runOnUiThread(() -> {
                 Toast.makeText(this, "Paper deleted", Toast.LENGTH_SHORT).show();
                 finish();
@@ -298,11 +308,52 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
         questionAdapter = new SelectableQuestionAdapter((count, marks) -> {
             tvSelectionSummary.setText(String.format("Selected: %d questions • %d marks", count, marks));
             btnClearSelection.setVisibility(count > 0 ? View.VISIBLE : View.GONE);
+            refreshPageCount(count, marks);
         });
         rvQuestions.setLayoutManager(new LinearLayoutManager(this));
         rvQuestions.setAdapter(questionAdapter);
     }
 
+    /**
+     * Runs a layout-only pass for the current selection and appends the page count to the summary.
+     * Results from superseded selections are dropped.
+     */
+    private void refreshPageCount(int count, int marks) {
+        int request = layoutRequest.incrementAndGet();
+        Subject selectedSubject = (Subject) spTargetSubject.getSelectedItem();
+        if (count == 0 || selectedSubject == null) {
+            return;
+        }
+        String title = etPaperTitle.getText().toString().trim();
+        String gradeText = etTargetGrade.getText().toString().trim();
+        List<Question> selection = new ArrayList<>(questionAdapter.getSelectedQuestions());
+
+        layoutExecutor.execute(() -> {
+            if (request != layoutRequest.get()) {
+                return;
+            }
+            try {
+                TeacherSettings settings = settingsRepository.getSettings();
+                layoutGenerator.configureSchoolDetails(settings.getSchoolName(), settings.getTeacherName(),
+                        settings.getSchoolLogoPath());
+                layoutGenerator.setAssetManager(AssetDownloadManager.getInstance(this));
+                int grade = gradeText.isEmpty() ? 0 : Integer.parseInt(gradeText);
+                PDFGenerator.Pagination pagination = layoutGenerator.layoutTest(title, selectedSubject.getName(),
+                        grade, selection);
+                runOnUiThread(() -> {
+                    if (request != layoutRequest.get()) {
+                        return;
+                    }
+                    tvSelectionSummary.setText(String.format(Locale.getDefault(),
+                            "Selected: %d questions • %d marks • %d pages", count, marks,
+                            pagination.getPageCount()));
+                });
+            } catch (Exception e) {
+                // Preview only; the summary keeps its question and mark totals
+            }
+        });
+    }
+
     private void refreshQuestionList() {
         Subject selectedSubject = (Subject) spTargetSubject.getSelectedItem();
         String gradeText = etTargetGrade.getText().toString().trim();
@@ -322,6 +373,13 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
             return;
         }
 
+        StartupCache.recordPoolUse(this, selectedSubject.getName(), grade);
+        List<Question> warmPool = StartupCache.getInstance().getPool(selectedSubject.getName(), grade);
+        if (warmPool != null) {
+            showQuestionPool(warmPool);
+            return;
+        }
+
         tvEmptyQuestions.setVisibility(View.VISIBLE);
         tvEmptyQuestions.setText(R.string.message_loading_questions);
 
@@ -329,17 +387,19 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
             List<Question> pool = db.questionDao()
                     .getQuestionsForSubject(selectedSubject.getName(), grade);
 
-            runOnUiThread(() -> {
-                questionAdapter.setQuestions(pool);
-                if (pool.isEmpty()) {
-                    showEmptyQuestionsMessage(getString(R.string.message_no_questions));
-                } else {
-                    tvEmptyQuestions.setVisibility(View.GONE);
-                }
-            });
+            runOnUiThread(() -> showQuestionPool(pool));
         });
     }
 
+    private void showQuestionPool(List<Question> pool) {
+        questionAdapter.setQuestions(pool);
+        if (pool.isEmpty()) {
+            showEmptyQuestionsMessage(getString(R.string.message_no_questions));
+        } else {
+            tvEmptyQuestions.setVisibility(View.GONE);
+        }
+    }
+
     private void showEmptyQuestionsMessage(String message) {
         tvEmptyQuestions.setVisibility(View.VISIBLE);
         tvEmptyQuestions.setText(message);
@@ -378,9 +438,10 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
             try {
                 TeacherSettings settings = settingsRepository.getSettings();
                 pdfGenerator.configureSchoolDetails(settings.getSchoolName(), settings.getTeacherName(), settings.getSchoolLogoPath());
+                pdfGenerator.setAssetManager(AssetDownloadManager.getInstance(this));
 
                 // Load company logo from drawable resources
-                byte[] logoBytes = loadCompanyLogoBytes();
+                byte[] logoBytes = PDFGenerator.loadCompanyLogoBytes(this);
 
                 String safeTitle = title.replaceAll("[^a-zA-Z0-9_\\s-]", "").replace(" ", "_");
                 File documentsDir = getExternalFilesDir(Environment.DIRECTORY_DOCUMENTS);
@@ -396,7 +457,8 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
                 lastTestPath = testFile.getAbsolutePath();
                 lastMemoPath = memoFile.getAbsolutePath();
 
-                pdfGenerator.generateTest(lastTestPath, title, selectedSubject.getName(), grade, selectedQuestions, logoBytes);
+                PdfOptimizer.Result testResult = pdfGenerator.generateTest(lastTestPath, title,
+                        selectedSubject.getName(), grade, selectedQuestions, logoBytes);
                 pdfGenerator.generateMemo(lastMemoPath, title, selectedQuestions, logoBytes);
 
                 AssessmentPaper newPaper = new AssessmentPaper();
@@ -416,10 +478,12 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
                     db.paperDao().insert(newPaper);
                     db.paperDao().insertPaperQuestions(paperQuestions);
                 });
+                AssetDownloadManager.getInstance(this).touchPacks(selectedQuestions);
 
                 runOnUiThread(() -> {
                     progressGenerating.setVisibility(View.GONE);
-                    tvStatus.setText("Successfully generated!");
+                    tvStatus.setText(String.format(Locale.getDefault(), "Successfully generated! (%d KB → %d KB)",
+                            testResult.getBytesBefore() / 1024, testResult.getBytesAfter() / 1024));
                     btnGenerate.setEnabled(true);
                     btnOpenTestPdf.setVisibility(View.VISIBLE);
                     btnOpenMemoPdf.setVisibility(View.VISIBLE);
@@ -455,27 +519,9 @@ public class AssessmentGeneratorActivity extends AppCompatActivity {
         }
     }
 
-    /**
-     * Load company logo from drawable resources and convert to byte array
-     */
-    private byte[] loadCompanyLogoBytes() {
-        try {
-            // Load drawable as bitmap
-            Bitmap bitmap = BitmapFactory.decodeResource(getResources(), R.drawable.smartexamsalogo);
-            if (bitmap == null) {
-                return null;
-            }
-
-            // Convert bitmap to PNG byte array
-            ByteArrayOutputStream stream = new ByteArrayOutputStream();
-            bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
-            byte[] byteArray = stream.toByteArray();
-            stream.close();
-
-            return byteArray;
-        } catch (Exception e) {
-            // Silently fail if logo can't be loaded
-            return null;
-        }
+    @Override
+    protected void onDestroy() {
+        layoutExecutor.shutdownNow();
+        super.onDestroy();
     }
 }
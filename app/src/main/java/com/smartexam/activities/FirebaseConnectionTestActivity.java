@@ -1,5 +1,6 @@
 package com.smartexam.activities;
 
+import android.content.Intent;
 import android.os.Bundle;
 import android.util.Log;
 import android.widget.Button;
@@ -16,7 +17,12 @@ import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.QueryDocumentSnapshot;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.smartexam.R;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.sync.SyncCache;
+import com.smartexam.subscription.EntitlementMetrics;
+import com.smartexam.sync.SyncMetrics;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 
 public class FirebaseConnectionTestActivity extends AppCompatActivity {
@@ -56,6 +62,10 @@ public class FirebaseConnectionTestActivity extends AppCompatActivity {
         findViewById(R.id.btnWriteTestData).setOnClickListener(v -> writeTestData());
         findViewById(R.id.btnReadTestData).setOnClickListener(v -> readTestData());
         findViewById(R.id.btnClearResults).setOnClickListener(v -> clearResults());
+        findViewById(R.id.btnSyncMetrics).setOnClickListener(v -> showSyncMetrics());
+        findViewById(R.id.btnExportSyncMetrics).setOnClickListener(v -> exportSyncMetrics());
+        findViewById(R.id.btnEntitlementMetrics).setOnClickListener(v -> showEntitlementMetrics());
+        findViewById(R.id.btnExportEntitlementMetrics).setOnClickListener(v -> exportEntitlementMetrics());
     }
     
     private void testFirebaseAuth() {
@@ -175,6 +185,47 @@ public class FirebaseConnectionTestActivity extends AppCompatActivity {
             });
     }
     
+    private void showSyncMetrics() {
+        SyncMetrics metrics = SyncMetrics.getInstance();
+        StringBuilder result = new StringBuilder("📊 Sync metrics\n");
+        result.append(metrics.getSummary(syncCacheStats())).append("\n\nRecent operations:\n");
+        List<SyncMetrics.Record> records = metrics.getRecords();
+        if (records.isEmpty()) {
+            result.append("(none recorded yet)");
+        }
+        // Newest first, capped so the results view stays readable
+        for (int i = records.size() - 1; i >= Math.max(0, records.size() - 20); i--) {
+            result.append(records.get(i)).append("\n");
+        }
+        updateStatus("Sync Metrics");
+        appendResult(result.toString());
+    }
+
+    private void exportSyncMetrics() {
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("application/json");
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, "SmartExam sync metrics");
+        shareIntent.putExtra(Intent.EXTRA_TEXT, SyncMetrics.getInstance().exportJson(syncCacheStats()));
+        startActivity(Intent.createChooser(shareIntent, "Export Sync Metrics"));
+    }
+
+    private void showEntitlementMetrics() {
+        updateStatus("Entitlement Metrics");
+        appendResult("🔐 Entitlement metrics\n" + EntitlementMetrics.getInstance().getSummary());
+    }
+
+    private void exportEntitlementMetrics() {
+        Intent shareIntent = new Intent(Intent.ACTION_SEND);
+        shareIntent.setType("application/json");
+        shareIntent.putExtra(Intent.EXTRA_SUBJECT, "SmartExam entitlement metrics");
+        shareIntent.putExtra(Intent.EXTRA_TEXT, EntitlementMetrics.getInstance().exportJson());
+        startActivity(Intent.createChooser(shareIntent, "Export Entitlement Metrics"));
+    }
+
+    private SyncCache.Stats syncCacheStats() {
+        return SyncCache.getInstance(AppDatabase.getInstance(this)).getStats();
+    }
+
     private void updateStatus(String status) {
         tvStatus.setText("Status: " + status);
         Toast.makeText(this, status, Toast.LENGTH_SHORT).show();
@@ -15,6 +15,7 @@ import com.smartexam.database.AppDatabase;
 import com.smartexam.models.AssessmentPaper;
 import com.smartexam.sync.SyncManager;
 import com.smartexam.utils.SampleDataGenerator;
+import com.smartexam.utils.StartupCache;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
@@ -103,7 +104,10 @@ public class MainActivity extends AppCompatActivity {
         // Check if user is registered
         com.smartexam.preferences.TeacherSettingsRepository settingsRepository = 
             new com.smartexam.preferences.TeacherSettingsRepository(this);
-        com.smartexam.models.TeacherSettings settings = settingsRepository.getSettings();
+        com.smartexam.models.TeacherSettings settings = StartupCache.getInstance().takeTeacherSettings();
+        if (settings == null) {
+            settings = settingsRepository.getSettings();
+        }
         
         if (settings.getTeacherName().isEmpty()) {
             // First time user - show registration
@@ -131,25 +135,32 @@ public class MainActivity extends AppCompatActivity {
     }
 
     private void loadDashboardData() {
+        StartupCache.DashboardStats warm = StartupCache.getInstance().takeDashboardStats();
+        if (warm != null) {
+            showDashboardData(warm.questionCount, warm.paperCount, warm.subjectCount, warm.recentPapers);
+            return;
+        }
         new Thread(() -> {
             int qCount = db.questionDao().getQuestionCount();
             int pCount = db.paperDao().getPaperCount();
             int sCount = db.subjectDao().getSubjectCount();
             List<AssessmentPaper> recentPapers = db.paperDao().getRecentPapers(5);
 
-            runOnUiThread(() -> {
-                tvQuestionCount.setText(String.valueOf(qCount));
-                tvPaperCount.setText(String.valueOf(pCount));
-                tvSubjectCount.setText(String.valueOf(sCount));
-
-                paperAdapter.updateData(recentPapers);
-                boolean hasPapers = recentPapers != null && !recentPapers.isEmpty();
-                rvRecentPapers.setVisibility(hasPapers ? View.VISIBLE : View.GONE);
-                tvEmptyState.setVisibility(hasPapers ? View.GONE : View.VISIBLE);
-            });
+            runOnUiThread(() -> showDashboardData(qCount, pCount, sCount, recentPapers));
         }).start();
     }
 
+    private void showDashboardData(int qCount, int pCount, int sCount, List<AssessmentPaper> recentPapers) {
+        tvQuestionCount.setText(String.valueOf(qCount));
+        tvPaperCount.setText(String.valueOf(pCount));
+        tvSubjectCount.setText(String.valueOf(sCount));
+
+        paperAdapter.updateData(recentPapers);
+        boolean hasPapers = recentPapers != null && !recentPapers.isEmpty();
+        rvRecentPapers.setVisibility(hasPapers ? View.VISIBLE : View.GONE);
+        tvEmptyState.setVisibility(hasPapers ? View.GONE : View.VISIBLE);
+    }
+
     private void openPaper(AssessmentPaper paper) {
         Intent intent = new Intent(this, PaperDetailActivity.class);
         intent.putExtra(PaperDetailActivity.EXTRA_PAPER_ID, paper.getId());
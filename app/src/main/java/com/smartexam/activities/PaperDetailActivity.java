@@ -5,13 +5,8 @@ import android.content.Intent;
 import android.net.Uri;
 import android.os.Bundle;
 import android.os.Environment;
-import android.print.PrintAttributes;
-import android.print.PrintDocumentAdapter;
 import android.print.PrintDocumentInfo;
 import android.print.PrintManager;
-import android.print.PageRange;
-import android.os.CancellationSignal;
-import android.os.ParcelFileDescriptor;
 import android.text.TextUtils;
 import android.widget.TextView;
 import android.widget.Toast;
@@ -20,18 +15,24 @@ import androidx.core.content.FileProvider;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
 import com.google.android.material.button.MaterialButton;
+import com.itextpdf.text.Rectangle;
 import com.smartexam.R;
 import com.smartexam.adapters.PaperQuestionAdapter;
 import com.smartexam.database.AppDatabase;
+import com.smartexam.marketplace.services.AssetDownloadManager;
 import com.smartexam.models.AssessmentPaper;
 import com.smartexam.models.Question;
 import com.smartexam.models.Subject;
+import com.smartexam.models.TeacherSettings;
+import com.smartexam.preferences.TeacherSettingsRepository;
+import com.smartexam.utils.ClassSetRenderer;
 import com.smartexam.utils.DbUtils;
+import com.smartexam.utils.PDFGenerator;
+import com.smartexam.utils.PdfPrintAdapter;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
@@ -55,11 +56,13 @@ public class PaperDetailActivity extends AppCompatActivity {
     private MaterialButton btnSavePdf;
     private MaterialButton btnPrintPdf;
     private MaterialButton btnSharePdf;
+    private MaterialButton btnPrintClassSet;
     private PaperQuestionAdapter questionAdapter;
 
     private AssessmentPaper assessmentPaper;
     private Subject subject;
     private List<Question> questions = new ArrayList<>();
+    private volatile int pageCount = PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -86,6 +89,7 @@ public class PaperDetailActivity extends AppCompatActivity {
         btnSavePdf = findViewById(R.id.btnSavePdf);
         btnPrintPdf = findViewById(R.id.btnPrintPdf);
         btnSharePdf = findViewById(R.id.btnSharePdf);
+        btnPrintClassSet = findViewById(R.id.btnPrintClassSet);
 
         questionAdapter = new PaperQuestionAdapter();
         rvPaperQuestions.setLayoutManager(new LinearLayoutManager(this));
@@ -94,6 +98,7 @@ public class PaperDetailActivity extends AppCompatActivity {
         btnSavePdf.setOnClickListener(v -> savePdfToDownloads());
         btnPrintPdf.setOnClickListener(v -> printPdf());
         btnSharePdf.setOnClickListener(v -> sharePdf());
+        btnPrintClassSet.setOnClickListener(v -> printClassSet());
     }
 
     private void loadPaperData(String paperId) {
@@ -108,8 +113,10 @@ public class PaperDetailActivity extends AppCompatActivity {
             }
 
             List<Question> questionList = db.paperDao().getQuestionsForPaper(paperId);
+            AssetDownloadManager.getInstance(this).touchPacks(questionList);
 
             Subject fetchedSubject = db.subjectDao().getSubjectById(paper.getSubjectId());
+            pageCount = readPageCount(paper);
 
             assessmentPaper = paper;
             questions = questionList;
@@ -136,6 +143,21 @@ public class PaperDetailActivity extends AppCompatActivity {
         questionAdapter.submitList(questions);
     }
 
+    private int readPageCount(AssessmentPaper paper) {
+        if (TextUtils.isEmpty(paper.getFilePath())) {
+            return PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
+        }
+        File file = new File(paper.getFilePath());
+        if (!file.exists()) {
+            return PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
+        }
+        try {
+            return PDFGenerator.countPages(file);
+        } catch (IOException e) {
+            return PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
+        }
+    }
+
     private File getPaperFile() {
         if (assessmentPaper == null || TextUtils.isEmpty(assessmentPaper.getFilePath())) {
             Toast.makeText(this, "PDF path missing", Toast.LENGTH_SHORT).show();
@@ -199,52 +221,90 @@ public class PaperDetailActivity extends AppCompatActivity {
         }
 
         String jobName = assessmentPaper != null ? assessmentPaper.getTitle() : "SmartExam Paper";
-        printManager.print(jobName, new PdfFilePrintAdapter(this, pdf), null);
+        printManager.print(jobName, new PdfPrintAdapter(pdf, pageCount, this::renderForMedia), null);
     }
 
-    private static class PdfFilePrintAdapter extends PrintDocumentAdapter {
-        private final Context context;
-        private final File file;
-
-        PdfFilePrintAdapter(Context context, File file) {
-            this.context = context;
-            this.file = file;
+    /**
+     * Prints one personalised, shuffled copy per learner as a single job.
+     */
+    private void printClassSet() {
+        if (assessmentPaper == null || questions.isEmpty()) {
+            Toast.makeText(this, "Paper not loaded", Toast.LENGTH_SHORT).show();
+            return;
+        }
+        TeacherSettings settings = new TeacherSettingsRepository(this).getSettings();
+        int learnerCount;
+        try {
+            learnerCount = Integer.parseInt(settings.getLearnerCount().trim());
+        } catch (NumberFormatException | NullPointerException e) {
+            learnerCount = 0;
+        }
+        if (learnerCount <= 0) {
+            Toast.makeText(this, "Set the number of learners in Settings first", Toast.LENGTH_SHORT).show();
+            return;
         }
 
-        @Override
-        public void onLayout(PrintAttributes oldAttributes, PrintAttributes newAttributes,
-                CancellationSignal cancellationSignal, LayoutResultCallback callback, Bundle extras) {
-            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
-                callback.onLayoutCancelled();
-                return;
-            }
+        int copies = learnerCount;
+        btnPrintClassSet.setEnabled(false);
+        executor.execute(() -> {
+            try {
+                PDFGenerator generator = new PDFGenerator();
+                generator.configureSchoolDetails(settings.getSchoolName(), settings.getTeacherName(),
+                        settings.getSchoolLogoPath());
+                generator.setAssetManager(AssetDownloadManager.getInstance(this));
+                File printDir = new File(getCacheDir(), "print");
+                if (!printDir.exists() && !printDir.mkdirs()) {
+                    throw new IOException("Unable to create print cache");
+                }
+                File out = new File(printDir, assessmentPaper.getId() + "_class_set.pdf");
+                String subjectName = subject != null ? subject.getName() : "Subject";
+                new ClassSetRenderer(generator).render(out.getAbsolutePath(), assessmentPaper.getTitle(),
+                        subjectName, assessmentPaper.getGrade(), questions,
+                        ClassSetRenderer.learnerNumbers(copies), assessmentPaper.getId().hashCode(),
+                        PDFGenerator.loadCompanyLogoBytes(this));
+                int pages = PDFGenerator.countPages(out);
 
-            PrintDocumentInfo info = new PrintDocumentInfo.Builder(file.getName())
-                    .setContentType(PrintDocumentInfo.CONTENT_TYPE_DOCUMENT)
-                    .setPageCount(PrintDocumentInfo.PAGE_COUNT_UNKNOWN)
-                    .build();
-            callback.onLayoutFinished(info, true);
-        }
-
-        @Override
-        public void onWrite(PageRange[] pages, ParcelFileDescriptor destination,
-                CancellationSignal cancellationSignal, WriteResultCallback callback) {
-            try (InputStream inputStream = new FileInputStream(file);
-                    FileOutputStream outputStream = new FileOutputStream(destination.getFileDescriptor())) {
-                byte[] buffer = new byte[8192];
-                int size;
-                while ((size = inputStream.read(buffer)) > 0) {
-                    if (cancellationSignal != null && cancellationSignal.isCanceled()) {
-                        callback.onWriteCancelled();
+                runOnUiThread(() -> {
+                    btnPrintClassSet.setEnabled(true);
+                    PrintManager printManager = (PrintManager) getSystemService(Context.PRINT_SERVICE);
+                    if (printManager == null) {
+                        Toast.makeText(this, "Print service unavailable", Toast.LENGTH_SHORT).show();
                         return;
                     }
-                    outputStream.write(buffer, 0, size);
-                }
-                callback.onWriteFinished(new PageRange[] { PageRange.ALL_PAGES });
-            } catch (IOException e) {
-                callback.onWriteFailed(e.getMessage());
+                    printManager.print(assessmentPaper.getTitle() + " (class set)",
+                            new PdfPrintAdapter(out, pages, null, true), null);
+                });
+            } catch (Exception e) {
+                runOnUiThread(() -> {
+                    btnPrintClassSet.setEnabled(true);
+                    Toast.makeText(this, "Failed to build class set: " + e.getMessage(), Toast.LENGTH_LONG).show();
+                });
             }
+        });
+    }
+
+    /**
+     * Lays the paper out again at the printer's page size so non-A4 media is not rescaled.
+     */
+    private File renderForMedia(Rectangle pageSize) throws Exception {
+        TeacherSettings settings = new TeacherSettingsRepository(this).getSettings();
+        PDFGenerator generator = new PDFGenerator();
+        generator.configureSchoolDetails(settings.getSchoolName(), settings.getTeacherName(),
+                settings.getSchoolLogoPath());
+        generator.setAssetManager(AssetDownloadManager.getInstance(this));
+        generator.setPageSize(pageSize);
+        generator.setOptimizer(null);
+
+        File printDir = new File(getCacheDir(), "print");
+        if (!printDir.exists() && !printDir.mkdirs()) {
+            throw new IOException("Unable to create print cache");
         }
+        File out = new File(printDir, assessmentPaper.getId() + "_" + Math.round(pageSize.getWidth()) + "x"
+                + Math.round(pageSize.getHeight()) + ".pdf");
+        String subjectName = subject != null ? subject.getName() : "Subject";
+        generator.generateTest(out.getAbsolutePath(), assessmentPaper.getTitle(), subjectName,
+                assessmentPaper.getGrade(), questions, PDFGenerator.loadCompanyLogoBytes(this));
+        return out;
     }
 
     @Override
@@ -23,6 +23,7 @@ import com.smartexam.adapters.QuestionAdapter;
 import com.smartexam.database.AppDatabase;
 import com.smartexam.models.Question;
 import com.smartexam.models.Subject;
+import com.smartexam.utils.StartupCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -99,7 +100,8 @@ public class QuestionBankActivity extends AppCompatActivity implements QuestionA
 
     private void loadSubjects() {
         Executors.newSingleThreadExecutor().execute(() -> {
-            subjects = database.subjectDao().getAllSubjects();
+            List<Subject> warm = StartupCache.getInstance().getSubjects();
+            subjects = warm != null ? warm : database.subjectDao().getAllSubjects();
             List<String> subjectNames = new ArrayList<>();
             subjectNames.add("All Subjects");
             for (Subject s : subjects) {
@@ -208,6 +210,7 @@ public class QuestionBankActivity extends AppCompatActivity implements QuestionA
                 .setPositiveButton("Yes", (dialog, which) -> {
                     Executors.newSingleThreadExecutor().execute(() -> {
                         database.questionDao().deleteById(question.getId());
+                        StartupCache.getInstance().invalidate();
                         runOnUiThread(() -> {
                             Toast.makeText(this, "Question deleted", Toast.LENGTH_SHORT).show();
                             loadQuestions();
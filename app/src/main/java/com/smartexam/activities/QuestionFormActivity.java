@@ -26,6 +26,7 @@ import com.smartexam.models.Question;
 import com.smartexam.models.QuestionType;
 import com.smartexam.models.Subject;
 import com.smartexam.utils.DbUtils;
+import com.smartexam.utils.StartupCache;
 import androidx.activity.result.ActivityResultLauncher;
 import java.io.File;
 import java.io.FileOutputStream;
@@ -309,6 +310,7 @@ public class QuestionFormActivity extends AppCompatActivity {
             question.setContent(contentMap);
 
             db.questionDao().insert(question);
+            StartupCache.getInstance().invalidate();
 
             runOnUiThread(() -> {
                 Toast.makeText(this,
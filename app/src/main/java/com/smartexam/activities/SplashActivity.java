@@ -9,6 +9,7 @@ import androidx.appcompat.app.AppCompatActivity;
 import androidx.core.splashscreen.SplashScreen;
 import com.smartexam.R;
 import com.smartexam.subscription.TrialManager;
+import com.smartexam.utils.StartupCache;
 
 public class SplashActivity extends AppCompatActivity {
 
@@ -30,6 +31,9 @@ public class SplashActivity extends AppCompatActivity {
 
         trialManager = TrialManager.getInstance(this);
 
+        // Preload first-screen data in parallel with the trial and terms checks
+        StartupCache.getInstance().warmUp(this);
+
         // Initialize Firebase Production Tools
         com.smartexam.config.RemoteConfigManager.getInstance().fetchAndActivate();
         com.google.firebase.analytics.FirebaseAnalytics.getInstance(this)
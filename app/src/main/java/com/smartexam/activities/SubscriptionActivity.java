@@ -7,9 +7,12 @@ import android.util.Log;
 import android.widget.Button;
 import android.widget.TextView;
 import android.widget.Toast;
+import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
 import androidx.recyclerview.widget.LinearLayoutManager;
 import androidx.recyclerview.widget.RecyclerView;
+import com.smartexam.subscription.EntitlementEngine;
+import com.smartexam.subscription.PaymentConfirmationWatcher;
 import com.smartexam.subscription.PaystackService;
 import com.smartexam.R;
 import com.smartexam.subscription.SubscriptionAdapter;
@@ -21,9 +24,13 @@ import java.util.List;
 public class SubscriptionActivity extends AppCompatActivity {
     
     private static final String TAG = "SubscriptionActivity";
+    private static final String STATE_RETURNING_FROM_CHECKOUT = "returning_from_checkout";
     
     private PaystackService paystackService;
-    private TrialStateManager trialStateManager;
+    private EntitlementEngine entitlementEngine;
+    private EntitlementEngine.Registration entitlementRegistration;
+    private PaymentConfirmationWatcher confirmationWatcher;
+    private boolean returningFromCheckout;
     
     // UI Components
     private TextView tvTrialStatus;
@@ -40,17 +47,50 @@ public class SubscriptionActivity extends AppCompatActivity {
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_subscription);
+        returningFromCheckout = savedInstanceState != null
+                && savedInstanceState.getBoolean(STATE_RETURNING_FROM_CHECKOUT);
         
         initializeManagers();
         initViews();
         setupSubscriptionPlans();
-        loadTrialStatus();
         setupBilling();
     }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Trial and subscription changes are pushed while the screen is visible
+        entitlementRegistration = entitlementEngine.subscribe(this::onEntitlementChanged);
+    }
+
+    @Override
+    protected void onResume() {
+        super.onResume();
+        if (returningFromCheckout) {
+            returningFromCheckout = false;
+            waitForPaymentConfirmation();
+        }
+    }
+
+    @Override
+    protected void onSaveInstanceState(@NonNull Bundle outState) {
+        super.onSaveInstanceState(outState);
+        outState.putBoolean(STATE_RETURNING_FROM_CHECKOUT, returningFromCheckout);
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        if (entitlementRegistration != null) {
+            entitlementRegistration.remove();
+            entitlementRegistration = null;
+        }
+    }
     
     private void initializeManagers() {
         paystackService = PaystackService.getInstance();
-        trialStateManager = TrialStateManager.getInstance(this);
+        entitlementEngine = EntitlementEngine.getInstance(this);
+        confirmationWatcher = new PaymentConfirmationWatcher(this);
     }
     
     private void initViews() {
@@ -88,22 +128,37 @@ public class SubscriptionActivity extends AppCompatActivity {
         subscriptionAdapter.notifyDataSetChanged();
     }
     
-    private void loadTrialStatus() {
-        trialStateManager.getTrialState(new TrialStateManager.TrialStateCallback() {
-            @Override
-            public void onStateReceived(TrialStateManager.TrialStateData state) {
-                currentTrialState = state;
-                runOnUiThread(() -> updateTrialUI(state));
-            }
-            
-            @Override
-            public void onError(String errorMessage) {
-                runOnUiThread(() -> {
-                    Toast.makeText(SubscriptionActivity.this, 
-                        "Failed to load trial status", Toast.LENGTH_SHORT).show();
-                });
-            }
-        });
+    private void onEntitlementChanged(EntitlementEngine.Entitlement entitlement) {
+        currentTrialState = entitlement.getTrial();
+        switch (entitlement.getState()) {
+            case UNKNOWN:
+                // Keep the layout defaults until the first snapshots arrive
+                break;
+            case UNAVAILABLE:
+                tvTrialStatus.setText("Status unavailable");
+                tvTrialDays.setText("Check your connection; retrying automatically");
+                break;
+            case SUBSCRIBED:
+                tvTrialStatus.setText("Subscribed");
+                tvTrialDays.setText("Thank you for subscribing");
+                break;
+            case SUSPENDED:
+                tvTrialStatus.setText("Trial Suspended");
+                tvTrialDays.setText("Please subscribe to continue");
+                break;
+            case TRIAL_ACTIVE:
+                if (currentTrialState != null) {
+                    updateTrialUI(currentTrialState);
+                } else {
+                    tvTrialStatus.setText("Trial Active");
+                    tvTrialDays.setText("");
+                }
+                break;
+            default:
+                tvTrialStatus.setText("Trial Expired");
+                tvTrialDays.setText("Please subscribe to continue");
+                break;
+        }
     }
     
     private void setupBilling() {
@@ -140,9 +195,10 @@ public class SubscriptionActivity extends AppCompatActivity {
                     Intent browserIntent = new Intent(Intent.ACTION_VIEW, Uri.parse(authorizationUrl));
                     startActivity(browserIntent);
 
-                    // For now, simulate successful payment after opening browser
-                    // In production, handle callback from Paystack
-                    simulateSuccessfulSubscription();
+                    // The Paystack webhook activates the subscription server-side; the watcher
+                    // starts when the user comes back, so paying in the browser does not use up
+                    // its deadline
+                    returningFromCheckout = true;
                 });
             }
 
@@ -155,20 +211,28 @@ public class SubscriptionActivity extends AppCompatActivity {
         });
     }
     
-    private void simulateSuccessfulSubscription() {
-        // For demonstration - in production, wait for Paystack callback
-        btnRestorePurchases.postDelayed(() -> {
-            runOnUiThread(() -> {
-                Toast.makeText(SubscriptionActivity.this, 
+    private void waitForPaymentConfirmation() {
+        confirmationWatcher.start(new PaymentConfirmationWatcher.ConfirmationCallback() {
+            @Override
+            public void onSubscriptionActivated() {
+                Toast.makeText(SubscriptionActivity.this,
                     "Subscription successful!", Toast.LENGTH_LONG).show();
-                
-                // Reload trial status to show conversion
-                loadTrialStatus();
-                
-                // Navigate to main app
                 navigateToMainApp();
-            });
-        }, 5000); // Simulate 5 seconds for payment completion
+            }
+
+            @Override
+            public void onTimeout() {
+                Toast.makeText(SubscriptionActivity.this,
+                    "Payment not confirmed yet. Your subscription will activate once it is processed.",
+                    Toast.LENGTH_LONG).show();
+            }
+
+            @Override
+            public void onError(String error) {
+                Toast.makeText(SubscriptionActivity.this,
+                    "Could not confirm payment: " + error, Toast.LENGTH_SHORT).show();
+            }
+        });
     }
     
     private void restorePurchases() {
@@ -194,7 +258,7 @@ public class SubscriptionActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         super.onDestroy();
-        // Paystack service doesn't need explicit disconnect
+        confirmationWatcher.stop();
     }
     
     @Override
@@ -3,11 +3,13 @@ package com.smartexam.adapters;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.smartexam.R;
 import com.smartexam.models.AssessmentPaper;
+import com.smartexam.utils.PdfThumbnailCache;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -35,8 +37,7 @@ public class PaperAdapter extends RecyclerView.Adapter<PaperAdapter.PaperViewHol
     @NonNull
     @Override
     public PaperViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
-        View view = LayoutInflater.from(parent.getContext()).inflate(android.R.layout.simple_list_item_2, parent,
-                false);
+        View view = LayoutInflater.from(parent.getContext()).inflate(R.layout.item_paper, parent, false);
         return new PaperViewHolder(view);
     }
 
@@ -48,6 +49,10 @@ public class PaperAdapter extends RecyclerView.Adapter<PaperAdapter.PaperViewHol
         SimpleDateFormat sdf = new SimpleDateFormat("dd MMM yyyy, HH:mm", Locale.getDefault());
         holder.tvDate.setText("Generated: " + sdf.format(new Date(paper.getCreatedAt())));
 
+        int thumbnailWidth = holder.ivThumbnail.getLayoutParams().width;
+        PdfThumbnailCache.getInstance(holder.itemView.getContext())
+                .load(paper, holder.ivThumbnail, thumbnailWidth, R.drawable.thumbnail_placeholder);
+
         holder.itemView.setOnClickListener(v -> listener.onPaperClick(paper));
     }
 
@@ -58,11 +63,13 @@ public class PaperAdapter extends RecyclerView.Adapter<PaperAdapter.PaperViewHol
 
     static class PaperViewHolder extends RecyclerView.ViewHolder {
         TextView tvTitle, tvDate;
+        ImageView ivThumbnail;
 
         PaperViewHolder(@NonNull View itemView) {
             super(itemView);
-            tvTitle = itemView.findViewById(android.R.id.text1);
-            tvDate = itemView.findViewById(android.R.id.text2);
+            tvTitle = itemView.findViewById(R.id.tvPaperItemTitle);
+            tvDate = itemView.findViewById(R.id.tvPaperItemDate);
+            ivThumbnail = itemView.findViewById(R.id.ivPaperThumbnail);
         }
     }
 }
@@ -3,11 +3,13 @@ package com.smartexam.adapters;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.smartexam.R;
 import com.smartexam.models.Question;
+import com.smartexam.utils.QuestionImageCache;
 import java.util.ArrayList;
 import java.util.List;
 
@@ -28,6 +30,7 @@ public class PaperQuestionAdapter extends RecyclerView.Adapter<PaperQuestionAdap
         holder.tvQuestionNumber.setText("Question " + (position + 1));
         holder.tvQuestionText.setText(question.getQuestionText());
         holder.tvQuestionMarks.setText(question.getMarks() + " marks");
+        QuestionImageCache.getInstance(holder.itemView.getContext()).load(question, holder.ivQuestionImage);
     }
 
     @Override
@@ -44,12 +47,14 @@ public class PaperQuestionAdapter extends RecyclerView.Adapter<PaperQuestionAdap
         TextView tvQuestionNumber;
         TextView tvQuestionText;
         TextView tvQuestionMarks;
+        ImageView ivQuestionImage;
 
         QuestionViewHolder(@NonNull View itemView) {
             super(itemView);
             tvQuestionNumber = itemView.findViewById(R.id.tvQuestionNumber);
             tvQuestionText = itemView.findViewById(R.id.tvQuestionText);
             tvQuestionMarks = itemView.findViewById(R.id.tvQuestionMarks);
+            ivQuestionImage = itemView.findViewById(R.id.ivQuestionImage);
         }
     }
 }
@@ -5,12 +5,14 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.Button;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 
 import com.smartexam.R;
 import com.smartexam.models.Question;
+import com.smartexam.utils.QuestionImageCache;
 
 import java.util.ArrayList;
 import java.util.List;
@@ -51,6 +53,7 @@ public class QuestionAdapter extends RecyclerView.Adapter<QuestionAdapter.Questi
         holder.tvTopic.setText(question.getTopic() != null ? question.getTopic() : "No Topic");
         holder.tvQuestionText.setText(question.getQuestionText() != null ? question.getQuestionText() : "");
         holder.tvMarks.setText(String.format("%d Marks", question.getMarks()));
+        QuestionImageCache.getInstance(context).load(question, holder.ivQuestionImage);
 
         holder.btnEdit.setOnClickListener(v -> {
             if (listener != null)
@@ -70,6 +73,7 @@ public class QuestionAdapter extends RecyclerView.Adapter<QuestionAdapter.Questi
 
     static class QuestionViewHolder extends RecyclerView.ViewHolder {
         TextView tvTopic, tvQuestionText, tvMarks;
+        ImageView ivQuestionImage;
         Button btnEdit, btnDelete;
 
         public QuestionViewHolder(@NonNull View itemView) {
@@ -77,6 +81,7 @@ public class QuestionAdapter extends RecyclerView.Adapter<QuestionAdapter.Questi
             tvTopic = itemView.findViewById(R.id.tvTopic);
             tvQuestionText = itemView.findViewById(R.id.tvQuestionText);
             tvMarks = itemView.findViewById(R.id.tvMarks);
+            ivQuestionImage = itemView.findViewById(R.id.ivQuestionImage);
             btnEdit = itemView.findViewById(R.id.btnEdit);
             btnDelete = itemView.findViewById(R.id.btnDelete);
         }
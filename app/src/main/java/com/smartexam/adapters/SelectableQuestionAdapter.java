@@ -4,11 +4,13 @@ import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.widget.CheckBox;
+import android.widget.ImageView;
 import android.widget.TextView;
 import androidx.annotation.NonNull;
 import androidx.recyclerview.widget.RecyclerView;
 import com.smartexam.R;
 import com.smartexam.models.Question;
+import com.smartexam.utils.QuestionImageCache;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
@@ -103,6 +105,7 @@ public class SelectableQuestionAdapter extends RecyclerView.Adapter<SelectableQu
     public void onBindViewHolder(@NonNull QuestionViewHolder holder, int position) {
         Question q = questions.get(position);
         holder.tvQuestionText.setText(q.getQuestionText());
+        QuestionImageCache.getInstance(holder.itemView.getContext()).load(q, holder.ivQuestionImage);
 
         String metadata = "Marks: " + q.getMarks() + " | Difficulty: " + q.getDifficulty();
         holder.tvMetadata.setText(metadata);
@@ -149,12 +152,14 @@ public class SelectableQuestionAdapter extends RecyclerView.Adapter<SelectableQu
     static class QuestionViewHolder extends RecyclerView.ViewHolder {
         final TextView tvQuestionText;
         final TextView tvMetadata;
+        final ImageView ivQuestionImage;
         final CheckBox cbSelect;
 
         QuestionViewHolder(@NonNull View itemView) {
             super(itemView);
             tvQuestionText = itemView.findViewById(R.id.tvQuestionText);
             tvMetadata = itemView.findViewById(R.id.tvMetadata);
+            ivQuestionImage = itemView.findViewById(R.id.ivQuestionImage);
             cbSelect = itemView.findViewById(R.id.cbSelect);
         }
     }
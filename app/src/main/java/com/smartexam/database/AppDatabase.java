@@ -5,20 +5,101 @@ import androidx.room.Database;
 import androidx.room.Room;
 import androidx.room.RoomDatabase;
 import androidx.room.TypeConverters;
+import androidx.room.migration.Migration;
+import androidx.sqlite.db.SupportSQLiteDatabase;
 import com.smartexam.models.AssessmentPaper;
+import com.smartexam.models.DownloadedAsset;
+import com.smartexam.models.PackDownloadCheckpoint;
 import com.smartexam.models.PaperQuestion;
 import com.smartexam.models.PurchasedPack;
 import com.smartexam.models.Question;
 import com.smartexam.models.QuestionPack;
 import com.smartexam.models.Subject;
+import com.smartexam.models.SyncState;
 
 @Database(entities = { Question.class, Subject.class, AssessmentPaper.class,
-        PaperQuestion.class, QuestionPack.class, PurchasedPack.class }, version = 5, exportSchema = false)
+        PaperQuestion.class, QuestionPack.class, PurchasedPack.class, SyncState.class,
+        PackDownloadCheckpoint.class, DownloadedAsset.class }, version = 11, exportSchema = false)
 @TypeConverters({ Converters.class })
 public abstract class AppDatabase extends RoomDatabase {
 
     private static volatile AppDatabase INSTANCE;
 
+    // Adds delta-sync watermarks without wiping teacher-authored questions and papers
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `sync_state` (`key` TEXT NOT NULL, "
+                    + "`watermark` INTEGER NOT NULL, `version` INTEGER NOT NULL, `syncedAt` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`key`))");
+            database.execSQL("ALTER TABLE `questions` ADD COLUMN `updatedAt` INTEGER NOT NULL DEFAULT 0");
+            database.execSQL("ALTER TABLE `question_packs` ADD COLUMN `updatedAt` INTEGER NOT NULL DEFAULT 0");
+        }
+    };
+
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pack_download_checkpoints` (`packId` TEXT NOT NULL, "
+                    + "`questionId` TEXT NOT NULL, `completedAt` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`packId`, `questionId`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pack_download_checkpoints_packId` "
+                    + "ON `pack_download_checkpoints` (`packId`)");
+        }
+    };
+
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `downloaded_assets` (`remotePath` TEXT NOT NULL, "
+                    + "`contentHash` TEXT NOT NULL, `sizeBytes` INTEGER NOT NULL, `lastUsedAt` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`remotePath`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_downloaded_assets_contentHash` "
+                    + "ON `downloaded_assets` (`contentHash`)");
+        }
+    };
+
+    // Records each asset's pack so eviction can follow pack recency
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `downloaded_assets` ADD COLUMN `packId` TEXT");
+            database.execSQL("UPDATE `downloaded_assets` SET `packId` = (SELECT `packId` FROM `questions` "
+                    + "WHERE `questions`.`imagePath` = `downloaded_assets`.`remotePath` LIMIT 1)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_downloaded_assets_packId` "
+                    + "ON `downloaded_assets` (`packId`)");
+        }
+    };
+
+    // Tags purchases with their account. Existing rows belong to the user who synced most recently.
+    static final Migration MIGRATION_9_10 = new Migration(9, 10) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `purchased_packs` ADD COLUMN `userId` TEXT");
+            database.execSQL("UPDATE `purchased_packs` SET `userId` = (SELECT substr(`key`, 6) FROM `sync_state` "
+                    + "WHERE `key` LIKE 'user:%' ORDER BY `syncedAt` DESC LIMIT 1)");
+        }
+    };
+
+    // Keys purchases by (userId, packId) so two accounts can own the same pack. Rows the 9 -> 10
+    // backfill could not attribute are dropped; no user had synced, so the next sync reads them again.
+    static final Migration MIGRATION_10_11 = new Migration(10, 11) {
+        @Override
+        public void migrate(SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `purchased_packs_new` (`packId` TEXT NOT NULL, "
+                    + "`userId` TEXT NOT NULL, `purchasedAt` INTEGER NOT NULL, `transactionId` TEXT, "
+                    + "`isSynced` INTEGER NOT NULL, PRIMARY KEY(`userId`, `packId`), "
+                    + "FOREIGN KEY(`packId`) REFERENCES `question_packs`(`id`) ON UPDATE NO ACTION ON DELETE CASCADE)");
+            database.execSQL("INSERT INTO `purchased_packs_new` (`packId`, `userId`, `purchasedAt`, `transactionId`, "
+                    + "`isSynced`) SELECT `packId`, `userId`, `purchasedAt`, `transactionId`, `isSynced` "
+                    + "FROM `purchased_packs` WHERE `userId` IS NOT NULL");
+            database.execSQL("DROP TABLE `purchased_packs`");
+            database.execSQL("ALTER TABLE `purchased_packs_new` RENAME TO `purchased_packs`");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_purchased_packs_packId` "
+                    + "ON `purchased_packs` (`packId`)");
+        }
+    };
+
     public abstract QuestionDao questionDao();
 
     public abstract SubjectDao subjectDao();
@@ -29,12 +110,20 @@ public abstract class AppDatabase extends RoomDatabase {
 
     public abstract PurchasedPackDao purchasedPackDao();
 
+    public abstract SyncStateDao syncStateDao();
+
+    public abstract PackDownloadDao packDownloadDao();
+
+    public abstract DownloadedAssetDao downloadedAssetDao();
+
     public static AppDatabase getInstance(final Context context) {
         if (INSTANCE == null) {
             synchronized (AppDatabase.class) {
                 if (INSTANCE == null) {
                     INSTANCE = Room.databaseBuilder(context.getApplicationContext(),
                             AppDatabase.class, "smart_exam_database")
+                            .addMigrations(MIGRATION_5_6, MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9,
+                                    MIGRATION_9_10, MIGRATION_10_11)
                             .fallbackToDestructiveMigration()
                             .build();
                 }
@@ -0,0 +1,48 @@
+package com.smartexam.database;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Upsert;
+import com.smartexam.models.DownloadedAsset;
+import java.util.List;
+
+@Dao
+public interface DownloadedAssetDao {
+    @Upsert
+    void upsert(DownloadedAsset asset);
+
+    @Query("SELECT * FROM downloaded_assets WHERE remotePath = :remotePath LIMIT 1")
+    DownloadedAsset get(String remotePath);
+
+    @Query("UPDATE downloaded_assets SET lastUsedAt = :time WHERE remotePath = :remotePath")
+    void touch(String remotePath, long time);
+
+    /**
+     * Marks every asset of the pack used, so the pack is the last to be evicted.
+     */
+    @Query("UPDATE downloaded_assets SET lastUsedAt = :time WHERE packId = :packId")
+    void touchPack(String packId, long time);
+
+    @Query("SELECT COUNT(*) FROM downloaded_assets WHERE contentHash = :contentHash")
+    int countByHash(String contentHash);
+
+    /**
+     * Bytes on disk, counting each shared blob once.
+     */
+    @Query("SELECT COALESCE(SUM(sizeBytes), 0) FROM (SELECT MAX(sizeBytes) AS sizeBytes "
+            + "FROM downloaded_assets GROUP BY contentHash)")
+    long getTotalBytes();
+
+    /**
+     * Assets of other packs than keepPackId, those of the least recently used pack first. A pack
+     * was last used when any of its assets was.
+     */
+    @Query("SELECT a.* FROM downloaded_assets AS a JOIN (SELECT packId, MAX(lastUsedAt) AS packUsedAt "
+            + "FROM downloaded_assets GROUP BY packId) AS p ON p.packId IS a.packId "
+            + "WHERE a.packId IS NOT :keepPackId "
+            + "ORDER BY p.packUsedAt ASC, a.lastUsedAt ASC LIMIT :limit")
+    List<DownloadedAsset> getEvictionCandidates(String keepPackId, int limit);
+
+    @Query("DELETE FROM downloaded_assets WHERE remotePath = :remotePath")
+    void delete(String remotePath);
+}
@@ -0,0 +1,20 @@
+package com.smartexam.database;
+
+import androidx.room.Dao;
+import androidx.room.Insert;
+import androidx.room.OnConflictStrategy;
+import androidx.room.Query;
+import com.smartexam.models.PackDownloadCheckpoint;
+import java.util.List;
+
+@Dao
+public interface PackDownloadDao {
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertAll(List<PackDownloadCheckpoint> checkpoints);
+
+    @Query("SELECT questionId FROM pack_download_checkpoints WHERE packId = :packId")
+    List<String> getCompletedQuestionIds(String packId);
+
+    @Query("DELETE FROM pack_download_checkpoints WHERE packId = :packId")
+    void clear(String packId);
+}
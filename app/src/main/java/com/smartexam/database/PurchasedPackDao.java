@@ -18,9 +18,15 @@ public interface PurchasedPackDao {
     @Query("SELECT * FROM purchased_packs")
     List<PurchasedPack> getAllPurchasedPacks();
 
-    @Query("SELECT EXISTS(SELECT 1 FROM purchased_packs WHERE packId = :packId)")
-    boolean isPackPurchased(String packId);
+    @Query("SELECT * FROM purchased_packs WHERE userId = :userId")
+    List<PurchasedPack> getPurchasedPacksForUser(String userId);
 
-    @Query("UPDATE purchased_packs SET isSynced = :synced WHERE packId = :packId")
-    void updateSyncStatus(String packId, boolean synced);
+    @Query("SELECT packId FROM purchased_packs WHERE userId = :userId")
+    List<String> getPurchasedPackIds(String userId);
+
+    @Query("SELECT EXISTS(SELECT 1 FROM purchased_packs WHERE userId = :userId AND packId = :packId)")
+    boolean isPackPurchased(String userId, String packId);
+
+    @Query("UPDATE purchased_packs SET isSynced = :synced WHERE userId = :userId AND packId = :packId")
+    void updateSyncStatus(String userId, String packId, boolean synced);
 }
@@ -4,6 +4,7 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Upsert;
 import com.smartexam.models.Question;
 import java.util.List;
 
@@ -15,6 +16,12 @@ public interface QuestionDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<Question> questions);
 
+    /**
+     * Insert-or-update without REPLACE's delete, so paper_questions links survive a sync.
+     */
+    @Upsert
+    void upsertAll(List<Question> questions);
+
     @Query("SELECT * FROM questions ORDER BY createdAt DESC")
     List<Question> getAllQuestions();
 
@@ -27,6 +34,12 @@ public interface QuestionDao {
     @Query("SELECT * FROM questions WHERE packId = :packId")
     List<Question> getQuestionsByPackId(String packId);
 
+    @Query("SELECT id FROM questions WHERE packId = :packId")
+    List<String> getQuestionIdsByPackId(String packId);
+
+    @Query("SELECT COALESCE(MAX(updatedAt), 0) FROM questions WHERE packId = :packId")
+    long getNewestUpdatedAt(String packId);
+
     @Query("SELECT COUNT(*) FROM questions")
     int getQuestionCount();
 
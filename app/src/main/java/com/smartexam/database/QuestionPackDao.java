@@ -4,6 +4,7 @@ import androidx.room.Dao;
 import androidx.room.Insert;
 import androidx.room.OnConflictStrategy;
 import androidx.room.Query;
+import androidx.room.Upsert;
 import com.smartexam.models.QuestionPack;
 import java.util.List;
 
@@ -15,6 +16,12 @@ public interface QuestionPackDao {
     @Insert(onConflict = OnConflictStrategy.REPLACE)
     void insertAll(List<QuestionPack> packs);
 
+    /**
+     * Insert-or-update without REPLACE's delete, which would cascade to purchased_packs.
+     */
+    @Upsert
+    void upsertAll(List<QuestionPack> packs);
+
     @Query("SELECT * FROM question_packs WHERE subject = :subject AND grade = :grade")
     List<QuestionPack> getPacks(String subject, int grade);
 
@@ -0,0 +1,25 @@
+package com.smartexam.database;
+
+import androidx.room.Dao;
+import androidx.room.Query;
+import androidx.room.Upsert;
+import com.smartexam.models.SyncState;
+import java.util.List;
+
+@Dao
+public interface SyncStateDao {
+    @Upsert
+    void upsert(SyncState state);
+
+    @Upsert
+    void upsertAll(List<SyncState> states);
+
+    @Query("SELECT * FROM sync_state WHERE `key` = :key LIMIT 1")
+    SyncState get(String key);
+
+    @Query("SELECT * FROM sync_state WHERE `key` IN (:keys)")
+    List<SyncState> getAll(List<String> keys);
+
+    @Query("DELETE FROM sync_state")
+    void clear();
+}
@@ -1,6 +1,7 @@
 package com.smartexam.marketplace.data;
 
 import android.content.Context;
+import android.util.Log;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
@@ -10,6 +11,7 @@ import com.smartexam.database.AppDatabase;
 import com.smartexam.models.QuestionPack;
 import com.smartexam.models.PurchasedPack;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -20,6 +22,7 @@ import java.util.Map;
  */
 public class MarketplaceRepository {
 
+    private static final String TAG = "MarketplaceRepository";
     private static MarketplaceRepository instance;
     private final FirebaseFirestore db;
     private final AppDatabase localDb;
@@ -27,10 +30,17 @@ public class MarketplaceRepository {
     private final FirebaseAuth auth;
 
     private MarketplaceRepository(Context context, AppDatabase localDb) {
-        this.db = FirebaseFirestore.getInstance();
+        this(context, localDb, FirebaseFirestore.getInstance(), FirebaseAuth.getInstance());
+    }
+
+    /**
+     * Runs against an explicit backend, e.g. the Firestore emulator in MarketplaceRepositoryTest.
+     */
+    MarketplaceRepository(Context context, AppDatabase localDb, FirebaseFirestore db, FirebaseAuth auth) {
+        this.db = db;
         this.localDb = localDb;
         this.context = context.getApplicationContext();
-        this.auth = FirebaseAuth.getInstance();
+        this.auth = auth;
     }
 
     public static synchronized MarketplaceRepository getInstance(Context context, AppDatabase localDb) {
@@ -85,6 +95,7 @@ public class MarketplaceRepository {
 
                 String userId = user.getUid();
                 String email = user.getEmail();
+                purchasedPack.setUserId(userId);
 
                 // Create user record in Firestore if not exists
                 Map<String, Object> userData = new HashMap<>();
@@ -104,11 +115,22 @@ public class MarketplaceRepository {
                 Tasks.await(db.collection("users").document(userId)
                         .collection("purchased_packs").document(packId).set(packData));
 
-                // Insert into local DB
-                localDb.purchasedPackDao().insert(purchasedPack);
+                try {
+                    // purchased_packs references question_packs, so the pack row goes in first
+                    QuestionPack pack = Tasks.await(db.collection("question_packs").document(packId).get())
+                            .toObject(QuestionPack.class);
+                    if (pack != null) {
+                        pack.setPurchased(true);
+                        localDb.questionPackDao().upsertAll(Collections.singletonList(pack));
+                    }
+                    localDb.purchasedPackDao().insert(purchasedPack);
+                } catch (Exception e) {
+                    // The purchase is recorded on the server; the next delta sync stores it locally
+                    Log.w(TAG, "Local copy of purchase " + packId + " not stored", e);
+                }
 
-                // Trigger background sync
-                com.smartexam.marketplace.services.SyncService.enqueueWork(context, packId);
+                // Trigger background sync; the worker stores the pack row itself
+                com.smartexam.marketplace.services.PackDownloadWorker.enqueue(context, userId, packId);
 
                 callback.onSuccess(true);
             } catch (Exception e) {
@@ -118,11 +140,12 @@ public class MarketplaceRepository {
     }
 
     /**
-     * Checks if a pack is purchased locally.
+     * Checks if a pack is purchased locally by the signed-in user.
      */
     public void isPackPurchased(String packId, DataCallback<Boolean> callback) {
+        FirebaseUser user = auth.getCurrentUser();
         new Thread(() -> {
-            boolean purchased = localDb.purchasedPackDao().isPackPurchased(packId);
+            boolean purchased = user != null && localDb.purchasedPackDao().isPackPurchased(user.getUid(), packId);
             callback.onSuccess(purchased);
         }).start();
     }
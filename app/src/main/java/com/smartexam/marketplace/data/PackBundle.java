@@ -0,0 +1,221 @@
+package com.smartexam.marketplace.data;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonParseException;
+import com.smartexam.models.Question;
+import com.smartexam.models.QuestionPack;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Single-file download format for a question pack, stored in Firebase Storage at
+ * {@link #storagePath(String)}. The file is one gzip stream:
+ *
+ * <pre>
+ * magic "SEPB", int version
+ * record*   where record = byte type, int length, length bytes of UTF-8 JSON
+ * </pre>
+ *
+ * The first record is the {@link QuestionPack}, followed by one record per {@link Question},
+ * then the asset manifest ({@link Asset} records) and a closing {@link #TYPE_END} record.
+ * Records are read one at a time, so parsing memory does not grow with the pack. This class has
+ * no Android dependencies and can build and read bundles on a plain JVM.
+ * <p>
+ * The admin portal builds and uploads the bundle whenever a published pack is saved
+ * ({@code smartexam-admin/lib/pack-bundle.ts}) and then sets {@code bundleSizeBytes} and
+ * {@code bundleMd5} (hex) on the pack's {@code question_packs} document. Clients only download
+ * bundles the document lists and verify them against both values.
+ */
+public final class PackBundle {
+
+    public static final int VERSION = 1;
+    private static final int MAGIC = 0x53455042; // "SEPB"
+    private static final byte TYPE_PACK = 1;
+    private static final byte TYPE_QUESTION = 2;
+    private static final byte TYPE_ASSET = 3;
+    private static final byte TYPE_END = 0;
+    private static final int MAX_RECORD_BYTES = 1024 * 1024;
+    private static final int BUFFER_SIZE = 16 * 1024;
+    private static final Gson gson = new Gson();
+
+    private PackBundle() {
+    }
+
+    public static String storagePath(String packId) {
+        return "bundles/" + packId + ".bin.gz";
+    }
+
+    /**
+     * Writes a complete bundle: the pack, its questions in order, then the asset manifest. Closes
+     * out when done.
+     */
+    public static void build(QuestionPack pack, List<Question> questions, List<Asset> assets, OutputStream out)
+            throws IOException {
+        try (Writer writer = new Writer(out, pack)) {
+            for (Question question : questions) {
+                writer.addQuestion(question);
+            }
+            for (Asset asset : assets) {
+                writer.addAsset(asset);
+            }
+        }
+    }
+
+    /**
+     * An image referenced by the pack's questions. md5 is hex and may be null.
+     */
+    public static class Asset {
+        private String remotePath;
+        private long sizeBytes;
+        private String md5;
+
+        public Asset(String remotePath, long sizeBytes, String md5) {
+            this.remotePath = remotePath;
+            this.sizeBytes = sizeBytes;
+            this.md5 = md5;
+        }
+
+        public String getRemotePath() {
+            return remotePath;
+        }
+
+        public long getSizeBytes() {
+            return sizeBytes;
+        }
+
+        public String getMd5() {
+            return md5;
+        }
+    }
+
+    /**
+     * Receives records in file order while a bundle is parsed.
+     */
+    public interface Handler {
+        void onPack(QuestionPack pack) throws IOException;
+
+        void onQuestion(Question question) throws IOException;
+
+        void onAsset(Asset asset) throws IOException;
+    }
+
+    /**
+     * Streams a bundle to an output. Call {@link #close()} to write the end marker and finish the
+     * gzip stream; questions and assets are written as they are added, never held in memory.
+     */
+    public static class Writer implements AutoCloseable {
+        private final DataOutputStream out;
+        private boolean inManifest;
+
+        public Writer(OutputStream target, QuestionPack pack) throws IOException {
+            out = new DataOutputStream(new BufferedOutputStream(new GZIPOutputStream(target, BUFFER_SIZE)));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            writeRecord(TYPE_PACK, pack);
+        }
+
+        public Writer addQuestion(Question question) throws IOException {
+            if (inManifest) {
+                throw new IllegalStateException("Questions must be added before assets");
+            }
+            writeRecord(TYPE_QUESTION, question);
+            return this;
+        }
+
+        public Writer addAsset(Asset asset) throws IOException {
+            inManifest = true;
+            writeRecord(TYPE_ASSET, asset);
+            return this;
+        }
+
+        private void writeRecord(byte type, Object value) throws IOException {
+            byte[] json = gson.toJson(value).getBytes(StandardCharsets.UTF_8);
+            if (json.length > MAX_RECORD_BYTES) {
+                throw new IOException("Record too large: " + json.length + " bytes");
+            }
+            out.writeByte(type);
+            out.writeInt(json.length);
+            out.write(json);
+        }
+
+        @Override
+        public void close() throws IOException {
+            out.writeByte(TYPE_END);
+            out.writeInt(0);
+            out.close();
+        }
+    }
+
+    /**
+     * Parses a bundle, handing each record to the handler as soon as it is decoded. Fails on a
+     * truncated stream, including one cut inside the gzip trailer, so a partial download is never
+     * mistaken for a complete pack.
+     */
+    public static void read(InputStream source, Handler handler) throws IOException {
+        DataInputStream in = new DataInputStream(
+                new BufferedInputStream(new GZIPInputStream(source, BUFFER_SIZE), BUFFER_SIZE));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a pack bundle");
+        }
+        int version = in.readInt();
+        if (version > VERSION) {
+            throw new IOException("Unsupported pack bundle version " + version);
+        }
+
+        byte[] buffer = new byte[BUFFER_SIZE];
+        while (true) {
+            byte type;
+            int length;
+            try {
+                type = in.readByte();
+                length = in.readInt();
+            } catch (EOFException e) {
+                throw new IOException("Pack bundle is truncated", e);
+            }
+            if (type == TYPE_END) {
+                // Reading on makes GZIPInputStream check the trailer's CRC and length
+                if (in.read() != -1) {
+                    throw new IOException("Data after the end of the pack bundle");
+                }
+                return;
+            }
+            if (length < 0 || length > MAX_RECORD_BYTES) {
+                throw new IOException("Invalid record length " + length);
+            }
+            if (length > buffer.length) {
+                buffer = new byte[length];
+            }
+            in.readFully(buffer, 0, length);
+            String json = new String(buffer, 0, length, StandardCharsets.UTF_8);
+            try {
+                switch (type) {
+                    case TYPE_PACK:
+                        handler.onPack(gson.fromJson(json, QuestionPack.class));
+                        break;
+                    case TYPE_QUESTION:
+                        handler.onQuestion(gson.fromJson(json, Question.class));
+                        break;
+                    case TYPE_ASSET:
+                        handler.onAsset(gson.fromJson(json, Asset.class));
+                        break;
+                    default:
+                        // Record types from a newer minor revision are skipped
+                        break;
+                }
+            } catch (JsonParseException e) {
+                // The bundle comes from the admin portal's JSON, not Gson; treat a mismatch as unreadable
+                throw new IOException("Malformed record of type " + type, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,448 @@
+package com.smartexam.marketplace.services;
+
+import android.content.Context;
+import android.util.Base64;
+import android.util.Log;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.database.DownloadedAssetDao;
+import com.smartexam.models.DownloadedAsset;
+import com.smartexam.models.Question;
+import com.smartexam.sync.SyncMetrics;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.security.MessageDigest;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Downloads question images from Firebase Storage into a content-addressed store. Files are named
+ * by the MD5 that Storage reports, so identical images shared by several packs are stored and
+ * downloaded once. A path already recorded is served from disk without asking Storage; a stored
+ * file is reused only if its size and MD5 still match. Interrupted transfers resume from their
+ * {@code .part} file with an HTTP range request, and every completed transfer is checked against
+ * the remote hash before it becomes visible. At most {@link #MAX_PARALLEL_DOWNLOADS} transfers run
+ * at once across all callers. An object Storage reports as empty is rejected rather than stored.
+ * Every access marks the asset used; when the store grows past {@link #QUOTA_BYTES}, the assets
+ * of the least recently used packs are evicted first. {@link com.smartexam.utils.PDFGenerator} and
+ * {@link com.smartexam.utils.QuestionImageCache} draw question images from
+ * {@link #getLocalFile}.
+ * <p>
+ * All methods block; call from a background thread.
+ */
+public class AssetDownloadManager {
+
+    private static final String TAG = "AssetDownloadManager";
+    private static final int MAX_PARALLEL_DOWNLOADS = 3;
+    private static final long QUOTA_BYTES = 200L * 1024 * 1024;
+    private static final int EVICTION_BATCH = 20;
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+    private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+    private static volatile AssetDownloadManager INSTANCE;
+
+    private final File blobDir;
+    private final DownloadedAssetDao dao;
+    private final long quotaBytes;
+    private final Semaphore permits = new Semaphore(MAX_PARALLEL_DOWNLOADS);
+    private final ConcurrentHashMap<String, CompletableFuture<File>> inFlight = new ConcurrentHashMap<>();
+    private final Object quotaLock = new Object();
+    // Blob hashes whose MD5 has been checked since the process started
+    private final Set<String> verified = ConcurrentHashMap.newKeySet();
+
+    private AssetDownloadManager(Context context) {
+        this(new File(context.getExternalFilesDir(null), "assets/blobs"),
+                AppDatabase.getInstance(context).downloadedAssetDao(), QUOTA_BYTES);
+    }
+
+    /**
+     * Runs against an explicit store and quota, e.g. a scratch directory and in-memory Room
+     * database in AssetDownloadManagerTest.
+     */
+    AssetDownloadManager(File blobDir, DownloadedAssetDao dao, long quotaBytes) {
+        this.blobDir = blobDir;
+        this.dao = dao;
+        this.quotaBytes = quotaBytes;
+    }
+
+    public static AssetDownloadManager getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (AssetDownloadManager.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new AssetDownloadManager(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the local file for a remote asset of the given pack, downloading it if needed. An
+     * asset already recorded for the path is answered from disk without a network request.
+     * Concurrent calls for the same path or the same content wait on one transfer.
+     */
+    public File fetch(String packId, String remotePath) throws Exception {
+        return fetch(packId, remotePath, 0, null);
+    }
+
+    /**
+     * Like {@link #fetch(String, String)}, for an asset whose size and hex MD5 are already known
+     * from a pack bundle's manifest: no metadata request is made and the file is verified against
+     * them. Falls back to the Storage metadata when the manifest has no hash.
+     */
+    public File fetch(String packId, String remotePath, long sizeBytes, String md5Hex) throws Exception {
+        CompletableFuture<File> own = new CompletableFuture<>();
+        CompletableFuture<File> existing = inFlight.putIfAbsent(remotePath, own);
+        if (existing != null) {
+            return await(existing);
+        }
+        try {
+            String expectedHash = md5Hex != null && sizeBytes > 0 ? md5Hex.toLowerCase(Locale.ROOT) : null;
+            File stored = findStored(remotePath, expectedHash);
+            if (stored != null) {
+                own.complete(stored);
+            } else if (expectedHash != null) {
+                own.complete(resolve(packId, remotePath, sizeBytes, fromHex(expectedHash)));
+            } else {
+                own.complete(resolve(packId, remotePath));
+            }
+        } catch (Exception e) {
+            own.completeExceptionally(e);
+        } finally {
+            inFlight.remove(remotePath, own);
+        }
+        return await(own);
+    }
+
+    /**
+     * Downloads a Storage object to target, resuming from the {@code .part} file next to it that
+     * an interrupted run left behind. The file only appears at target once its size and, when
+     * given, its hex MD5 match; a mismatch deletes the partial file and throws
+     * {@link IntegrityException}.
+     *
+     * @return bytes transferred
+     */
+    long downloadFile(String remotePath, File target, long size, String md5Hex) throws Exception {
+        StorageReference ref = FirebaseStorage.getInstance().getReference(remotePath);
+        return download(ref, target, size, md5Hex != null ? fromHex(md5Hex) : null);
+    }
+
+    private long download(StorageReference ref, File blob, long size, byte[] expectedMd5) throws Exception {
+        return download(() -> new URL(Tasks.await(ref.getDownloadUrl()).toString()), ref.getPath(), blob, size,
+                expectedMd5);
+    }
+
+    /**
+     * The stored file for a remote path, or null if it has not been downloaded. Marks it used.
+     */
+    public File getLocalFile(String remotePath) throws Exception {
+        return findStored(remotePath, null);
+    }
+
+    /**
+     * Marks the assets of every pack the questions come from as used, e.g. when a paper is
+     * generated from them, so those packs are evicted last.
+     */
+    public void touchPacks(List<Question> questions) {
+        Set<String> packIds = new HashSet<>();
+        for (Question question : questions) {
+            if (question.getPackId() != null) {
+                packIds.add(question.getPackId());
+            }
+        }
+        long now = System.currentTimeMillis();
+        for (String packId : packIds) {
+            dao.touchPack(packId, now);
+        }
+    }
+
+    /**
+     * The recorded blob for the path if it is intact and, when expectedHash is given, still holds
+     * that content. Marks it used.
+     */
+    private File findStored(String remotePath, String expectedHash) throws Exception {
+        DownloadedAsset asset = dao.get(remotePath);
+        if (asset == null || (expectedHash != null && !expectedHash.equals(asset.getContentHash()))) {
+            return null;
+        }
+        File blob = blobFile(asset.getContentHash());
+        if (!isIntact(blob, asset.getContentHash(), asset.getSizeBytes())) {
+            return null;
+        }
+        dao.touch(remotePath, System.currentTimeMillis());
+        return blob;
+    }
+
+    /**
+     * Size check, plus an MD5 check the first time a blob is reused in this process. Per-path
+     * keys of objects without an MD5 can only be checked by size.
+     */
+    private boolean isIntact(File blob, String hash, long size) throws Exception {
+        if (size <= 0 || !blob.exists() || blob.length() != size) {
+            return false;
+        }
+        if (hash.startsWith("p") || verified.contains(hash)) {
+            return true;
+        }
+        if (!toHex(digest(blob)).equals(hash)) {
+            Log.w(TAG, "Discarding corrupt stored asset " + hash);
+            blob.delete();
+            return false;
+        }
+        verified.add(hash);
+        return true;
+    }
+
+    private File resolve(String packId, String remotePath) throws Exception {
+        StorageReference ref = FirebaseStorage.getInstance().getReference(remotePath);
+        StorageMetadata metadata = Tasks.await(ref.getMetadata());
+        long size = metadata.getSizeBytes();
+        byte[] expectedMd5 = metadata.getMd5Hash() != null
+                ? Base64.decode(metadata.getMd5Hash(), Base64.DEFAULT)
+                : null;
+        return resolve(packId, remotePath, size, expectedMd5);
+    }
+
+    private File resolve(String packId, String remotePath, long size, byte[] expectedMd5) throws Exception {
+        if (size <= 0) {
+            throw new IntegrityException("Storage reports no content for " + remotePath);
+        }
+        StorageReference ref = FirebaseStorage.getInstance().getReference(remotePath);
+        // Composite objects carry no MD5; fall back to a per-path key, verified by size only
+        String hash = expectedMd5 != null ? toHex(expectedMd5) : "p" + toHex(digest("MD5", remotePath));
+
+        CompletableFuture<File> own = new CompletableFuture<>();
+        CompletableFuture<File> sameContent = inFlight.putIfAbsent("blob:" + hash, own);
+        if (sameContent != null) {
+            File blob = await(sameContent);
+            record(packId, remotePath, hash, size);
+            return blob;
+        }
+        try {
+            File blob = blobFile(hash);
+            if (isIntact(blob, hash, size)) {
+                Log.d(TAG, "Reusing stored asset for " + remotePath);
+            } else {
+                blob.delete();
+                SyncMetrics.Operation op = SyncMetrics.getInstance().begin("assetDownload", null);
+                try {
+                    op.addBytes(download(ref, blob, size, expectedMd5));
+                    op.succeeded();
+                } catch (Exception e) {
+                    op.failed(e);
+                    throw e;
+                }
+                if (expectedMd5 != null) {
+                    verified.add(hash);
+                }
+                Log.d(TAG, "Asset downloaded: " + remotePath);
+            }
+            record(packId, remotePath, hash, size);
+            own.complete(blob);
+            return blob;
+        } catch (Exception e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove("blob:" + hash, own);
+        }
+    }
+
+    /**
+     * Transfers to blob through its {@code .part} file, asking for the URL only if bytes are
+     * missing. A size of zero or less is rejected before anything is read: an empty file would
+     * otherwise pass the size check without a transfer.
+     *
+     * @return bytes transferred, which is less than size when a partial file was resumed
+     */
+    long download(Callable<URL> url, String name, File blob, long size, byte[] expectedMd5) throws Exception {
+        if (size <= 0) {
+            throw new IntegrityException("No content reported for " + name);
+        }
+        File dir = blob.getParentFile();
+        if (!dir.exists()) {
+            dir.mkdirs();
+        }
+        File part = new File(dir, blob.getName() + ".part");
+        if (part.length() > size) {
+            part.delete();
+        }
+
+        long transferred = 0;
+        permits.acquire();
+        try {
+            if (part.length() < size) {
+                transferred = transfer(url.call(), part);
+            }
+        } finally {
+            permits.release();
+        }
+
+        if (part.length() != size
+                || (expectedMd5 != null && !MessageDigest.isEqual(expectedMd5, digest(part)))) {
+            part.delete();
+            throw new IntegrityException("Integrity check failed for " + name);
+        }
+        if (!part.renameTo(blob)) {
+            throw new IOException("Could not store " + blob);
+        }
+        return transferred;
+    }
+
+    /**
+     * Appends to the partial file from its current length. A server that ignores the range and
+     * answers 200 restarts the file.
+     *
+     * @return bytes written
+     */
+    private long transfer(URL url, File part) throws IOException {
+        long offset = part.length();
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        if (offset > 0) {
+            connection.setRequestProperty("Range", "bytes=" + offset + "-");
+        }
+        try {
+            int code = connection.getResponseCode();
+            boolean append;
+            if (code == HttpURLConnection.HTTP_PARTIAL) {
+                append = true;
+            } else if (code == HttpURLConnection.HTTP_OK) {
+                append = false;
+            } else {
+                throw new HttpStatusException(code, url.getPath());
+            }
+            try (InputStream in = connection.getInputStream();
+                    OutputStream out = new FileOutputStream(part, append)) {
+                byte[] buffer = new byte[16 * 1024];
+                long written = 0;
+                int read;
+                while ((read = in.read(buffer)) != -1) {
+                    out.write(buffer, 0, read);
+                    written += read;
+                }
+                return written;
+            }
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    /**
+     * Records a stored blob for the path and evicts other packs if the store is over quota.
+     */
+    void record(String packId, String remotePath, String hash, long size) {
+        dao.upsert(new DownloadedAsset(remotePath, hash, packId, size, System.currentTimeMillis()));
+        enforceQuota(packId);
+    }
+
+    /**
+     * Evicts whole packs, least recently used first, never the one being downloaded.
+     */
+    private void enforceQuota(String keepPackId) {
+        synchronized (quotaLock) {
+            while (dao.getTotalBytes() > quotaBytes) {
+                List<DownloadedAsset> candidates = dao.getEvictionCandidates(keepPackId, EVICTION_BATCH);
+                if (candidates.isEmpty()) {
+                    Log.w(TAG, "Asset store over quota with only pack " + keepPackId + " left");
+                    return;
+                }
+                for (DownloadedAsset asset : candidates) {
+                    dao.delete(asset.getRemotePath());
+                    if (dao.countByHash(asset.getContentHash()) == 0) {
+                        blobFile(asset.getContentHash()).delete();
+                        verified.remove(asset.getContentHash());
+                    }
+                    if (dao.getTotalBytes() <= quotaBytes) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    File blobFile(String hash) {
+        return new File(blobDir, hash);
+    }
+
+    private static File await(CompletableFuture<File> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    private static byte[] digest(File file) throws Exception {
+        MessageDigest md = MessageDigest.getInstance("MD5");
+        try (InputStream in = new FileInputStream(file)) {
+            byte[] buffer = new byte[16 * 1024];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                md.update(buffer, 0, read);
+            }
+        }
+        return md.digest();
+    }
+
+    private static byte[] digest(String algorithm, String value) throws Exception {
+        return MessageDigest.getInstance(algorithm).digest(value.getBytes("UTF-8"));
+    }
+
+    private static byte[] fromHex(String hex) {
+        byte[] out = new byte[hex.length() / 2];
+        for (int i = 0; i < out.length; i++) {
+            out[i] = (byte) Integer.parseInt(hex.substring(i * 2, i * 2 + 2), 16);
+        }
+        return out;
+    }
+
+    private static String toHex(byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            out[i * 2] = HEX[(bytes[i] >> 4) & 0xF];
+            out[i * 2 + 1] = HEX[bytes[i] & 0xF];
+        }
+        return new String(out);
+    }
+
+    /**
+     * A downloaded file did not match its expected size or MD5.
+     */
+    static class IntegrityException extends IOException {
+        IntegrityException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * The download URL answered with an unexpected HTTP status.
+     */
+    static class HttpStatusException extends IOException {
+        final int code;
+
+        HttpStatusException(int code, String path) {
+            super("HTTP " + code + " for " + path);
+            this.code = code;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package com.smartexam.marketplace.services;
+
+import android.content.Context;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.work.BackoffPolicy;
+import androidx.work.Constraints;
+import androidx.work.Data;
+import androidx.work.ExistingWorkPolicy;
+import androidx.work.NetworkType;
+import androidx.work.OneTimeWorkRequest;
+import androidx.work.WorkManager;
+import androidx.work.Worker;
+import androidx.work.WorkerParameters;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.marketplace.data.PackBundle;
+import com.smartexam.models.PackDownloadCheckpoint;
+import com.smartexam.models.Question;
+import com.smartexam.models.QuestionPack;
+import com.smartexam.models.SyncState;
+import com.smartexam.sync.SyncMetrics;
+import com.smartexam.utils.StartupCache;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The single download pipeline for purchased packs. Runs under network and storage constraints
+ * with exponential backoff, reads questions in chunked {@code in} queries with bounded
+ * concurrency, records a checkpoint for every stored question so a retried or rescheduled run
+ * only fetches what is still missing, and publishes progress as
+ * {@link #PROGRESS_DONE}/{@link #PROGRESS_TOTAL}.
+ */
+public class PackDownloadWorker extends Worker {
+
+    private static final String TAG = "PackDownloadWorker";
+    public static final String EXTRA_PACK_ID = "extra_pack_id";
+    public static final String EXTRA_USER_ID = "extra_user_id";
+    public static final String PROGRESS_DONE = "progress_done";
+    public static final String PROGRESS_TOTAL = "progress_total";
+    private static final String UNIQUE_WORK_PREFIX = "pack-download-";
+    private static final long BACKOFF_SECONDS = 30;
+    private static final int MAX_ATTEMPTS = 8;
+    // Firestore whereIn on documentId accepts up to 10 values
+    private static final int BATCH_SIZE = 10;
+    private static final int MAX_CONCURRENT_BATCHES = 4;
+    private static final int BUNDLE_INSERT_BATCH = 100;
+
+    private final FirebaseFirestore firestore;
+    private final AppDatabase localDb;
+
+    public PackDownloadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams) {
+        this(context, workerParams, FirebaseFirestore.getInstance(), AppDatabase.getInstance(context));
+    }
+
+    // Package-private for PackDownloadWorkerTest, which runs against the emulator and an in-memory database
+    PackDownloadWorker(@NonNull Context context, @NonNull WorkerParameters workerParams,
+            FirebaseFirestore firestore, AppDatabase localDb) {
+        super(context, workerParams);
+        this.firestore = firestore;
+        this.localDb = localDb;
+    }
+
+    /**
+     * Queues the pack for download on behalf of the user who bought it. An already queued or running
+     * download of the same pack for the same user is kept, so repeated calls never restart it.
+     */
+    public static void enqueue(Context context, String userId, String packId) {
+        Constraints constraints = new Constraints.Builder()
+                .setRequiredNetworkType(NetworkType.CONNECTED)
+                .setRequiresStorageNotLow(true)
+                .build();
+        OneTimeWorkRequest request = new OneTimeWorkRequest.Builder(PackDownloadWorker.class)
+                .setConstraints(constraints)
+                .setBackoffCriteria(BackoffPolicy.EXPONENTIAL, BACKOFF_SECONDS, TimeUnit.SECONDS)
+                .setInputData(new Data.Builder()
+                        .putString(EXTRA_USER_ID, userId)
+                        .putString(EXTRA_PACK_ID, packId)
+                        .build())
+                .addTag(UNIQUE_WORK_PREFIX + packId)
+                .build();
+        WorkManager.getInstance(context)
+                .enqueueUniqueWork(UNIQUE_WORK_PREFIX + userId + "-" + packId, ExistingWorkPolicy.KEEP, request);
+    }
+
+    @NonNull
+    @Override
+    public Result doWork() {
+        String userId = getInputData().getString(EXTRA_USER_ID);
+        String packId = getInputData().getString(EXTRA_PACK_ID);
+        if (userId == null || packId == null) {
+            return Result.failure();
+        }
+        try {
+            return syncPack(userId, packId);
+        } catch (Exception e) {
+            Log.e(TAG, "Download interrupted for pack: " + packId, e);
+            return getRunAttemptCount() < MAX_ATTEMPTS ? Result.retry() : Result.failure();
+        }
+    }
+
+    private Result syncPack(String userId, String packId) throws Exception {
+        SyncMetrics.Operation op = SyncMetrics.getInstance().begin("packDownload", packId);
+        try {
+            Result result = syncPack(userId, packId, op);
+            if (result instanceof Result.Failure) {
+                op.failed(null);
+            } else {
+                op.succeeded();
+            }
+            return result;
+        } catch (Exception e) {
+            op.failed(e);
+            throw e;
+        }
+    }
+
+    private Result syncPack(String userId, String packId, SyncMetrics.Operation op) throws Exception {
+        Log.d(TAG, "Starting sync for pack: " + packId);
+
+        long fetchStart = System.nanoTime();
+        DocumentSnapshot packDoc = Tasks.await(firestore.collection("question_packs").document(packId).get());
+        op.addFetch(System.nanoTime() - fetchStart);
+        op.addReads(1);
+        QuestionPack pack = packDoc.toObject(QuestionPack.class);
+        if (pack == null) {
+            Log.e(TAG, "Pack not found: " + packId);
+            return Result.failure();
+        }
+        // Stored first on both paths: purchased_packs and the download's questions refer to it
+        pack.setPurchased(true);
+        localDb.questionPackDao().upsertAll(Collections.singletonList(pack));
+
+        if (pack.getBundleMd5() != null && pack.getBundleSizeBytes() > 0
+                && syncFromBundle(localDb, packId, pack, op)) {
+            finalizeSync(localDb, userId, pack);
+            return Result.success();
+        }
+        if (pack.getQuestionIds() == null) {
+            Log.e(TAG, "Pack has no questions: " + packId);
+            return Result.failure();
+        }
+
+        List<String> questionIds = pack.getQuestionIds();
+        Set<String> completed = new HashSet<>(localDb.packDownloadDao().getCompletedQuestionIds(packId));
+        List<String> remaining = new ArrayList<>();
+        for (String qId : questionIds) {
+            if (!completed.contains(qId)) {
+                remaining.add(qId);
+            }
+        }
+        int total = questionIds.size();
+        int done = total - remaining.size();
+        if (done > 0) {
+            Log.d(TAG, "Resuming pack " + packId + " at " + done + "/" + total);
+        }
+        reportProgress(done, total);
+
+        AtomicInteger progress = new AtomicInteger(done);
+        ExecutorService batchExecutor = Executors.newFixedThreadPool(MAX_CONCURRENT_BATCHES);
+        try {
+            List<Future<?>> batches = new ArrayList<>();
+            for (int start = 0; start < remaining.size(); start += BATCH_SIZE) {
+                List<String> batch = remaining.subList(start, Math.min(start + BATCH_SIZE, remaining.size()));
+                batches.add(batchExecutor.submit(() -> {
+                    if (isStopped()) {
+                        return null;
+                    }
+                    downloadBatch(firestore, localDb, packId, batch, op);
+                    reportProgress(progress.addAndGet(batch.size()), total);
+                    return null;
+                }));
+            }
+            for (Future<?> batch : batches) {
+                batch.get();
+            }
+        } finally {
+            batchExecutor.shutdownNow();
+        }
+        if (isStopped()) {
+            // Checkpoints are already committed; the next run continues from here
+            return Result.retry();
+        }
+
+        finalizeSync(localDb, userId, pack);
+        return Result.success();
+    }
+
+    /**
+     * Installs the pack from its {@link PackBundle} in Storage: one file download instead of a
+     * Firestore read per question. Only called when the pack document lists a bundle, so packs
+     * without one cost no Storage request. The download resumes from its partial file and is
+     * verified against the document's size and MD5; the verified file is kept until the pack is
+     * installed, so a retry neither downloads it again nor re-inserts checkpointed questions.
+     * Questions are inserted {@link #BUNDLE_INSERT_BATCH} at a time as they are parsed, then the
+     * manifest's assets are fetched and checked against their manifest size and MD5.
+     *
+     * @return false if the bundle cannot be used (missing, forbidden, failing verification or
+     *         unreadable), so the caller falls back to Firestore. Network failures are thrown
+     *         and retried by WorkManager.
+     */
+    private boolean syncFromBundle(AppDatabase localDb, String packId, QuestionPack pack,
+            SyncMetrics.Operation op) throws Exception {
+        AssetDownloadManager assets = AssetDownloadManager.getInstance(getApplicationContext());
+        File bundleFile = new File(getApplicationContext().getCacheDir(), PackBundle.storagePath(packId));
+        if (bundleFile.exists() && bundleFile.length() != pack.getBundleSizeBytes()) {
+            // Left by a run against a bundle that has since been republished
+            bundleFile.delete();
+        }
+        if (!bundleFile.exists()) {
+            long fetchStart = System.nanoTime();
+            try {
+                op.addBytes(assets.downloadFile(PackBundle.storagePath(packId), bundleFile,
+                        pack.getBundleSizeBytes(), pack.getBundleMd5()));
+            } catch (Exception e) {
+                if (isTransient(e)) {
+                    throw e;
+                }
+                Log.w(TAG, "Bundle unusable for pack " + packId + "; falling back to Firestore", e);
+                return false;
+            }
+            op.addFetch(System.nanoTime() - fetchStart);
+        }
+
+        BundleInstaller installer = new BundleInstaller(localDb, packId, op);
+        long readStart = System.nanoTime();
+        try (InputStream in = new FileInputStream(bundleFile)) {
+            PackBundle.read(in, installer);
+            installer.flush();
+            // Batched inserts run inside the read loop and are counted separately
+            op.addParse(System.nanoTime() - readStart - installer.insertNanos);
+        } catch (IOException e) {
+            // It matched the published hash, so the bundle itself is malformed
+            Log.w(TAG, "Unreadable bundle for pack " + packId + "; falling back to Firestore", e);
+            bundleFile.delete();
+            return false;
+        }
+
+        for (PackBundle.Asset asset : installer.assets) {
+            if (isStopped()) {
+                throw new InterruptedException("Stopped while fetching assets");
+            }
+            assets.fetch(packId, asset.getRemotePath(), asset.getSizeBytes(), asset.getMd5());
+        }
+        bundleFile.delete();
+        Log.d(TAG, "Installed pack " + packId + " from bundle");
+        return true;
+    }
+
+    /**
+     * Network trouble is worth a WorkManager retry; any other Storage failure means the bundle
+     * cannot be used.
+     */
+    private static boolean isTransient(Exception e) {
+        Throwable cause = e instanceof ExecutionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof StorageException) {
+            StorageException storageError = (StorageException) cause;
+            return storageError.getErrorCode() == StorageException.ERROR_RETRY_LIMIT_EXCEEDED
+                    || storageError.getCause() instanceof IOException;
+        }
+        if (cause instanceof AssetDownloadManager.HttpStatusException) {
+            int code = ((AssetDownloadManager.HttpStatusException) cause).code;
+            return code >= 500 || code == 429;
+        }
+        if (cause instanceof AssetDownloadManager.IntegrityException) {
+            return false;
+        }
+        return cause instanceof IOException || cause instanceof InterruptedException;
+    }
+
+    /**
+     * Fetches up to {@link #BATCH_SIZE} questions with one {@code in} query and stores them, with
+     * their checkpoints, in a single transaction. Ids missing on the server are checkpointed too
+     * so they are not requested again.
+     */
+    private void downloadBatch(FirebaseFirestore firestore, AppDatabase localDb, String packId, List<String> ids,
+            SyncMetrics.Operation op) throws Exception {
+        AssetDownloadManager assets = AssetDownloadManager.getInstance(getApplicationContext());
+        long fetchStart = System.nanoTime();
+        QuerySnapshot snapshot = Tasks.await(firestore.collection("questions")
+                .whereIn(FieldPath.documentId(), ids)
+                .get());
+        op.addFetch(System.nanoTime() - fetchStart);
+        op.addReads(snapshot);
+        List<Question> questions = new ArrayList<>();
+        for (DocumentSnapshot doc : snapshot) {
+            long parseStart = System.nanoTime();
+            Question question = doc.toObject(Question.class);
+            op.addParse(System.nanoTime() - parseStart);
+            if (question == null) {
+                continue;
+            }
+            question.setId(doc.getId());
+            question.setPackId(packId);
+            question.setFromMarketplace(true);
+            if (question.getImagePath() != null) {
+                assets.fetch(packId, question.getImagePath());
+            }
+            questions.add(question);
+        }
+
+        op.addInsert(storeQuestions(localDb, packId, questions, ids));
+    }
+
+    /**
+     * Upserts the questions and checkpoints the given ids in one transaction.
+     *
+     * @return time spent in nanoseconds
+     */
+    private static long storeQuestions(AppDatabase localDb, String packId, List<Question> questions,
+            List<String> ids) {
+        long start = System.nanoTime();
+        long now = System.currentTimeMillis();
+        List<PackDownloadCheckpoint> checkpoints = new ArrayList<>();
+        for (String id : ids) {
+            checkpoints.add(new PackDownloadCheckpoint(packId, id, now));
+        }
+        localDb.runInTransaction(() -> {
+            localDb.questionDao().upsertAll(questions);
+            localDb.packDownloadDao().insertAll(checkpoints);
+        });
+        if (!questions.isEmpty()) {
+            StartupCache.getInstance().invalidate();
+        }
+        return System.nanoTime() - start;
+    }
+
+    /**
+     * Inserts bundle questions in batches as they are parsed and collects the asset manifest.
+     * Questions checkpointed by an earlier run are skipped.
+     */
+    private class BundleInstaller implements PackBundle.Handler {
+        private final AppDatabase localDb;
+        private final String packId;
+        private final SyncMetrics.Operation op;
+        private final Set<String> completed;
+        private final List<Question> pending = new ArrayList<>();
+        private final List<String> pendingIds = new ArrayList<>();
+        final List<PackBundle.Asset> assets = new ArrayList<>();
+        private int done;
+        private int total;
+        long insertNanos;
+
+        BundleInstaller(AppDatabase localDb, String packId, SyncMetrics.Operation op) {
+            this.localDb = localDb;
+            this.packId = packId;
+            this.op = op;
+            this.completed = new HashSet<>(localDb.packDownloadDao().getCompletedQuestionIds(packId));
+            this.done = completed.size();
+        }
+
+        @Override
+        public void onPack(QuestionPack pack) {
+            pack.setId(packId);
+            pack.setPurchased(true);
+            localDb.questionPackDao().upsertAll(Collections.singletonList(pack));
+            total = pack.getQuestionIds() != null ? pack.getQuestionIds().size() : 0;
+            reportProgress(done, total);
+        }
+
+        @Override
+        public void onQuestion(Question question) {
+            if (completed.contains(question.getId())) {
+                return;
+            }
+            question.setPackId(packId);
+            question.setFromMarketplace(true);
+            pending.add(question);
+            pendingIds.add(question.getId());
+            if (pending.size() >= BUNDLE_INSERT_BATCH) {
+                flush();
+            }
+        }
+
+        @Override
+        public void onAsset(PackBundle.Asset asset) {
+            assets.add(asset);
+        }
+
+        void flush() {
+            if (pending.isEmpty()) {
+                return;
+            }
+            long elapsed = storeQuestions(localDb, packId, pending, pendingIds);
+            insertNanos += elapsed;
+            op.addInsert(elapsed);
+            done += pending.size();
+            reportProgress(done, Math.max(done, total));
+            pending.clear();
+            pendingIds.clear();
+        }
+    }
+
+    private void reportProgress(int done, int total) {
+        setProgressAsync(new Data.Builder()
+                .putInt(PROGRESS_DONE, done)
+                .putInt(PROGRESS_TOTAL, total)
+                .build());
+    }
+
+    /**
+     * Marks the purchase synced and writes the pack's delta-sync watermark, so SyncManager's next
+     * run reads only what changed after this download rather than the whole pack again.
+     */
+    private void finalizeSync(AppDatabase localDb, String userId, QuestionPack pack) {
+        String packId = pack.getId();
+        localDb.runInTransaction(() -> {
+            long watermark = Math.max(pack.getUpdatedAt(), localDb.questionDao().getNewestUpdatedAt(packId));
+            localDb.syncStateDao().upsert(new SyncState(SyncState.packKey(packId), watermark, pack.getVersion(),
+                    System.currentTimeMillis()));
+            localDb.purchasedPackDao().updateSyncStatus(userId, packId, true);
+            localDb.packDownloadDao().clear(packId);
+        });
+        Log.d(TAG, "Sync complete for pack: " + packId);
+    }
+}
@@ -14,6 +14,7 @@ import com.smartexam.marketplace.data.MarketplaceRepository;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.smartexam.database.AppDatabase;
 import com.smartexam.models.QuestionPack;
+import com.smartexam.sync.SyncManager;
 import java.util.List;
 
 public class PackDetailActivity extends AppCompatActivity {
@@ -81,6 +82,7 @@ public class PackDetailActivity extends AppCompatActivity {
                     if (purchased) {
                         btnBuyPack.setVisibility(View.GONE);
                         tvAlreadyPurchased.setVisibility(View.VISIBLE);
+                        refreshPackContent();
                     } else {
                         btnBuyPack.setVisibility(View.VISIBLE);
                         tvAlreadyPurchased.setVisibility(View.GONE);
@@ -96,6 +98,24 @@ public class PackDetailActivity extends AppCompatActivity {
         });
     }
 
+    /**
+     * Pulls edits to an owned pack; only questions changed since its watermark are read.
+     */
+    private void refreshPackContent() {
+        String packId = currentPack.getId();
+        new SyncManager(localDb).syncPack(packId, new SyncManager.SyncCallback() {
+            @Override
+            public void onSyncSuccess(int itemCount) {
+                Log.d("PackDetail", "Pack " + packId + " refreshed, " + itemCount + " changes");
+            }
+
+            @Override
+            public void onSyncFailed(String errorMessage) {
+                Log.w("PackDetail", "Pack refresh failed: " + errorMessage);
+            }
+        });
+    }
+
     private void bindData(QuestionPack pack) {
         tvTitle.setText(pack.getTitle());
         tvSubject.setText(pack.getSubject());
@@ -0,0 +1,74 @@
+package com.smartexam.models;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+import androidx.room.PrimaryKey;
+
+/**
+ * A Firebase Storage asset stored on the device. Several remote paths may share one
+ * content-addressed blob when their contentHash matches. Assets are evicted by the recency of the
+ * pack they were downloaded for.
+ */
+@Entity(tableName = "downloaded_assets", indices = { @Index("contentHash"), @Index("packId") })
+public class DownloadedAsset {
+    @PrimaryKey
+    @NonNull
+    private String remotePath;
+    @NonNull
+    private String contentHash; // Hex MD5 reported by Storage, also the blob file name
+    private String packId; // Pack the asset was downloaded for; null if unknown
+    private long sizeBytes;
+    private long lastUsedAt;
+
+    public DownloadedAsset(@NonNull String remotePath, @NonNull String contentHash, String packId,
+            long sizeBytes, long lastUsedAt) {
+        this.remotePath = remotePath;
+        this.contentHash = contentHash;
+        this.packId = packId;
+        this.sizeBytes = sizeBytes;
+        this.lastUsedAt = lastUsedAt;
+    }
+
+    @NonNull
+    public String getRemotePath() {
+        return remotePath;
+    }
+
+    public void setRemotePath(@NonNull String remotePath) {
+        this.remotePath = remotePath;
+    }
+
+    @NonNull
+    public String getContentHash() {
+        return contentHash;
+    }
+
+    public void setContentHash(@NonNull String contentHash) {
+        this.contentHash = contentHash;
+    }
+
+    public String getPackId() {
+        return packId;
+    }
+
+    public void setPackId(String packId) {
+        this.packId = packId;
+    }
+
+    public long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    public void setSizeBytes(long sizeBytes) {
+        this.sizeBytes = sizeBytes;
+    }
+
+    public long getLastUsedAt() {
+        return lastUsedAt;
+    }
+
+    public void setLastUsedAt(long lastUsedAt) {
+        this.lastUsedAt = lastUsedAt;
+    }
+}
@@ -0,0 +1,51 @@
+package com.smartexam.models;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.Index;
+
+/**
+ * One question of a pack that has been downloaded and stored. Lets an interrupted pack
+ * download continue from where it stopped; rows are cleared once the pack completes.
+ */
+@Entity(tableName = "pack_download_checkpoints", primaryKeys = { "packId", "questionId" },
+        indices = { @Index("packId") })
+public class PackDownloadCheckpoint {
+    @NonNull
+    private String packId;
+    @NonNull
+    private String questionId;
+    private long completedAt;
+
+    public PackDownloadCheckpoint(@NonNull String packId, @NonNull String questionId, long completedAt) {
+        this.packId = packId;
+        this.questionId = questionId;
+        this.completedAt = completedAt;
+    }
+
+    @NonNull
+    public String getPackId() {
+        return packId;
+    }
+
+    public void setPackId(@NonNull String packId) {
+        this.packId = packId;
+    }
+
+    @NonNull
+    public String getQuestionId() {
+        return questionId;
+    }
+
+    public void setQuestionId(@NonNull String questionId) {
+        this.questionId = questionId;
+    }
+
+    public long getCompletedAt() {
+        return completedAt;
+    }
+
+    public void setCompletedAt(long completedAt) {
+        this.completedAt = completedAt;
+    }
+}
@@ -3,13 +3,20 @@ package com.smartexam.models;
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
 import androidx.room.ForeignKey;
-import androidx.room.PrimaryKey;
+import androidx.room.Index;
 
-@Entity(tableName = "purchased_packs", foreignKeys = @ForeignKey(entity = QuestionPack.class, parentColumns = "id", childColumns = "packId", onDelete = ForeignKey.CASCADE))
+/**
+ * A pack owned by one account. Keyed by user as well as pack so accounts sharing a device each
+ * keep their own purchases.
+ */
+@Entity(tableName = "purchased_packs", primaryKeys = { "userId", "packId" },
+        foreignKeys = @ForeignKey(entity = QuestionPack.class, parentColumns = "id", childColumns = "packId", onDelete = ForeignKey.CASCADE),
+        indices = { @Index("packId") })
 public class PurchasedPack {
-    @PrimaryKey
     @NonNull
     private String packId;
+    @NonNull
+    private String userId = ""; // Account the purchase belongs to
     private long purchasedAt;
     private String transactionId;
     private boolean isSynced; // Whether it's been fully synced for offline use
@@ -23,6 +30,15 @@ public class PurchasedPack {
         this.packId = packId;
     }
 
+    @NonNull
+    public String getUserId() {
+        return userId;
+    }
+
+    public void setUserId(@NonNull String userId) {
+        this.userId = userId;
+    }
+
     public long getPurchasedAt() {
         return purchasedAt;
     }
@@ -31,6 +31,7 @@ public class Question {
     private int version;
     private boolean isFromMarketplace;
     private long createdAt;
+    private long updatedAt; // Server edit time, used as the delta-sync watermark
 
     public String getId() {
         return id;
@@ -168,6 +169,14 @@ public class Question {
         this.createdAt = createdAt;
     }
 
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     /**
      * Helper methods for specific CAPS types
      */
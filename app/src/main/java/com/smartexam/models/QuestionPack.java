@@ -2,6 +2,7 @@ package com.smartexam.models;
 
 import androidx.annotation.NonNull;
 import androidx.room.Entity;
+import androidx.room.Ignore;
 import androidx.room.PrimaryKey;
 import androidx.room.TypeConverters;
 import com.smartexam.database.Converters;
@@ -27,7 +28,13 @@ public class QuestionPack {
     private int version;
     private boolean isPublished;
     private long createdAt;
+    private long updatedAt;
     private boolean isPurchased;
+    // Set on the Firestore document when a PackBundle is published; never stored locally
+    @Ignore
+    private long bundleSizeBytes;
+    @Ignore
+    private String bundleMd5;
 
     @NonNull
     public String getId() {
@@ -142,6 +149,14 @@ public class QuestionPack {
         this.createdAt = createdAt;
     }
 
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+
     public boolean isPurchased() {
         return isPurchased;
     }
@@ -150,6 +165,25 @@ public class QuestionPack {
         isPurchased = purchased;
     }
 
+    public long getBundleSizeBytes() {
+        return bundleSizeBytes;
+    }
+
+    public void setBundleSizeBytes(long bundleSizeBytes) {
+        this.bundleSizeBytes = bundleSizeBytes;
+    }
+
+    /**
+     * Hex MD5 of the published bundle, or null if the pack has none.
+     */
+    public String getBundleMd5() {
+        return bundleMd5;
+    }
+
+    public void setBundleMd5(String bundleMd5) {
+        this.bundleMd5 = bundleMd5;
+    }
+
     public String getFormattedPrice() {
         return String.format("R%.2f", priceCents / 100.0);
     }
@@ -0,0 +1,67 @@
+package com.smartexam.models;
+
+import androidx.annotation.NonNull;
+import androidx.room.Entity;
+import androidx.room.PrimaryKey;
+
+/**
+ * Delta-sync watermark for one scope: a user's purchases ("user:{uid}") or a pack's content
+ * ("pack:{packId}"). Only Firestore documents newer than the watermark are fetched.
+ */
+@Entity(tableName = "sync_state")
+public class SyncState {
+    @PrimaryKey
+    @NonNull
+    private String key;
+    private long watermark; // Highest purchasedAt / updatedAt applied locally
+    private int version; // Last applied QuestionPack.version, 0 for user scopes
+    private long syncedAt;
+
+    public SyncState(@NonNull String key, long watermark, int version, long syncedAt) {
+        this.key = key;
+        this.watermark = watermark;
+        this.version = version;
+        this.syncedAt = syncedAt;
+    }
+
+    public static String userKey(String userId) {
+        return "user:" + userId;
+    }
+
+    public static String packKey(String packId) {
+        return "pack:" + packId;
+    }
+
+    @NonNull
+    public String getKey() {
+        return key;
+    }
+
+    public void setKey(@NonNull String key) {
+        this.key = key;
+    }
+
+    public long getWatermark() {
+        return watermark;
+    }
+
+    public void setWatermark(long watermark) {
+        this.watermark = watermark;
+    }
+
+    public int getVersion() {
+        return version;
+    }
+
+    public void setVersion(int version) {
+        this.version = version;
+    }
+
+    public long getSyncedAt() {
+        return syncedAt;
+    }
+
+    public void setSyncedAt(long syncedAt) {
+        this.syncedAt = syncedAt;
+    }
+}
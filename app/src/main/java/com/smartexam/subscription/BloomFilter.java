@@ -0,0 +1,141 @@
+package com.smartexam.subscription;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+/**
+ * Fixed-size Bloom filter over device hash strings, using double hashing (h1 + i * h2) for
+ * its probe positions. Not thread-safe.
+ * <p>
+ * The admin portal builds the published filter with a port of this class
+ * (smartexam-admin/lib/used-device-filter.ts); the hashing and the layout of {@link #write} must
+ * stay in step with it.
+ */
+final class BloomFilter {
+    final int capacity;
+    final int numBits;
+    final int numHashes;
+    final long[] bits;
+    int count;
+
+    private BloomFilter(int capacity, int numBits, int numHashes, long[] bits, int count) {
+        this.capacity = capacity;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.bits = bits;
+        this.count = count;
+    }
+
+    /**
+     * Sizes the filter with the standard formulas: m = -n ln p / (ln 2)^2 bits and
+     * k = (m / n) ln 2 probes.
+     */
+    static BloomFilter create(int capacity, double falsePositiveRate) {
+        double ln2 = Math.log(2);
+        int numBits = (int) Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        numBits = Math.max(64, (numBits + 63) & ~63);
+        int numHashes = Math.max(1, (int) Math.round((double) numBits / capacity * ln2));
+        return new BloomFilter(capacity, numBits, numHashes, new long[numBits / 64], 0);
+    }
+
+    boolean mightContain(String value) {
+        long h1 = hash1(value);
+        long h2 = hash2(value, h1);
+        for (int i = 0; i < numHashes; i++) {
+            int bit = index(h1, h2, i);
+            if ((bits[bit >>> 6] & (1L << bit)) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns true if any bit changed, i.e. the value was definitely not present before.
+     */
+    boolean put(String value) {
+        long h1 = hash1(value);
+        long h2 = hash2(value, h1);
+        boolean changed = false;
+        for (int i = 0; i < numHashes; i++) {
+            int bit = index(h1, h2, i);
+            long mask = 1L << bit;
+            if ((bits[bit >>> 6] & mask) == 0) {
+                bits[bit >>> 6] |= mask;
+                changed = true;
+            }
+        }
+        if (changed) {
+            count++;
+        }
+        return changed;
+    }
+
+    private int index(long h1, long h2, int i) {
+        return (int) Long.remainderUnsigned(h1 + i * h2, numBits);
+    }
+
+    /**
+     * Device hashes are SHA-256 hex, so their leading bits are already uniform; anything
+     * else falls back to a mixed String hash.
+     */
+    private static long hash1(String value) {
+        if (value.length() >= 32) {
+            try {
+                return Long.parseUnsignedLong(value.substring(0, 16), 16);
+            } catch (NumberFormatException ignored) {
+                // Not hex
+            }
+        }
+        return mix(value.hashCode());
+    }
+
+    private static long hash2(String value, long h1) {
+        long h2;
+        if (value.length() >= 32) {
+            try {
+                h2 = Long.parseUnsignedLong(value.substring(16, 32), 16);
+            } catch (NumberFormatException e) {
+                h2 = mix(h1 ^ value.length());
+            }
+        } else {
+            h2 = mix(h1 ^ value.length());
+        }
+        return h2 | 1; // Odd, so successive probes never collapse onto one bit
+    }
+
+    /**
+     * The SplitMix64 finalizer.
+     */
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    void write(DataOutputStream out) throws IOException {
+        out.writeInt(capacity);
+        out.writeInt(numBits);
+        out.writeInt(numHashes);
+        out.writeInt(count);
+        for (long word : bits) {
+            out.writeLong(word);
+        }
+    }
+
+    static BloomFilter read(DataInputStream in) throws IOException {
+        int capacity = in.readInt();
+        int numBits = in.readInt();
+        int numHashes = in.readInt();
+        int count = in.readInt();
+        if (capacity <= 0 || numBits <= 0 || numBits % 64 != 0 || numHashes <= 0) {
+            throw new IOException("Bad filter header");
+        }
+        long[] bits = new long[numBits / 64];
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = in.readLong();
+        }
+        return new BloomFilter(capacity, numBits, numHashes, bits, count);
+    }
+}
@@ -0,0 +1,109 @@
+package com.smartexam.subscription;
+
+import android.content.Context;
+import android.provider.Settings;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * The device fingerprint used to bind trials to a device: the SHA-256 of ANDROID_ID as lowercase
+ * hex. It cannot change while the process runs, so it is computed once and shared by all
+ * subscription classes. Compare fingerprints with {@link #matches}, which takes the same time
+ * wherever the first difference is.
+ */
+public class DeviceIdentity {
+
+    private static final String TAG = "DeviceIdentity";
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+    // Two hex characters per byte value, so encoding is one table lookup per byte
+    private static final char[] BYTE_TO_HEX = new char[256 * 2];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            BYTE_TO_HEX[i * 2] = HEX_DIGITS[i >>> 4];
+            BYTE_TO_HEX[i * 2 + 1] = HEX_DIGITS[i & 0x0f];
+        }
+    }
+
+    private static DeviceIdentity instance;
+
+    private final String deviceHash;
+
+    private DeviceIdentity(Context context) {
+        this.deviceHash = computeDeviceHash(context);
+    }
+
+    public static synchronized DeviceIdentity getInstance(Context context) {
+        if (instance == null) {
+            instance = new DeviceIdentity(context.getApplicationContext());
+        }
+        return instance;
+    }
+
+    @NonNull
+    public String getDeviceHash() {
+        return deviceHash;
+    }
+
+    /**
+     * True if the given fingerprint is this device's.
+     */
+    public boolean matches(@Nullable String candidate) {
+        return constantTimeEquals(deviceHash, candidate);
+    }
+
+    /**
+     * Compares without exiting at the first differing character. Only the length, which is
+     * fixed for real fingerprints, can be told apart by timing.
+     */
+    public static boolean constantTimeEquals(@Nullable String a, @Nullable String b) {
+        if (a == null || b == null || a.length() != b.length()) {
+            return false;
+        }
+        int diff = 0;
+        for (int i = 0; i < a.length(); i++) {
+            diff |= a.charAt(i) ^ b.charAt(i);
+        }
+        return diff == 0;
+    }
+
+    /**
+     * A short prefix for logs, safe for empty or missing hashes.
+     */
+    @NonNull
+    public static String shortForm(@Nullable String hash) {
+        if (hash == null || hash.isEmpty()) {
+            return "<none>";
+        }
+        return hash.length() > 8 ? hash.substring(0, 8) : hash;
+    }
+
+    static String toHex(@NonNull byte[] bytes) {
+        char[] out = new char[bytes.length * 2];
+        for (int i = 0; i < bytes.length; i++) {
+            int index = (bytes[i] & 0xff) * 2;
+            out[i * 2] = BYTE_TO_HEX[index];
+            out[i * 2 + 1] = BYTE_TO_HEX[index + 1];
+        }
+        return new String(out);
+    }
+
+    private static String computeDeviceHash(Context context) {
+        String deviceId = Settings.Secure.getString(context.getContentResolver(), Settings.Secure.ANDROID_ID);
+        if (deviceId == null) {
+            Log.w(TAG, "ANDROID_ID unavailable");
+            deviceId = "";
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return toHex(digest.digest(deviceId.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            Log.e(TAG, "Failed to generate device hash", e);
+            return deviceId; // Fallback to raw device ID
+        }
+    }
+}
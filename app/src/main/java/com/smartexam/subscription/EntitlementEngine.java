@@ -0,0 +1,399 @@
+package com.smartexam.subscription;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.FirebaseFirestoreException;
+import com.google.firebase.firestore.ListenerRegistration;
+import com.smartexam.models.UserSubscription;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Single source of entitlement state for the signed-in user. While anything is subscribed, the
+ * engine holds exactly one Firestore snapshot listener on each entitlement document
+ * ({@code users/{uid}} and {@code trials/{uid}}) and derives one {@link Entitlement} from them.
+ * SubscriptionManager subscribes from Application.onCreate and TrialStateManager and TrialManager
+ * from their constructors, so the listeners stay attached for the whole session; the managers
+ * answer from {@link #getLive} instead of reading the same documents.
+ * <p>
+ * A failed listener is reported through {@link Entitlement#getError()} and reattached with
+ * backoff. An active trial is re-derived when it ends, so it turns into
+ * {@link State#TRIAL_EXPIRED} without a new snapshot. Listener callbacks and subscriber
+ * notifications run on the main thread.
+ */
+public class EntitlementEngine {
+
+    private static final String TAG = "EntitlementEngine";
+    private static final String USERS_COLLECTION = "users";
+    private static final String TRIALS_COLLECTION = "trials";
+    private static final String METRIC_LISTENER = "EntitlementEngine.listener";
+    private static final long RETRY_BASE_MS = TimeUnit.SECONDS.toMillis(5);
+    private static final long RETRY_MAX_MS = TimeUnit.MINUTES.toMillis(5);
+
+    public enum State {
+        UNKNOWN,        // Waiting for the first snapshots
+        SIGNED_OUT,     // No Firebase user
+        NO_TRIAL,       // Signed in, never started a trial
+        TRIAL_ACTIVE,
+        TRIAL_EXPIRED,  // Trial ended, or a converted trial whose subscription lapsed
+        SUSPENDED,      // Trial suspended for abuse
+        SUBSCRIBED,
+        UNAVAILABLE     // A listener failed before anything was known; see Entitlement.getError()
+    }
+
+    /**
+     * Immutable entitlement derived from the latest user and trial documents.
+     */
+    public static final class Entitlement {
+        private final State state;
+        private final String userId;
+        private final UserSubscription subscription;
+        private final TrialStateManager.TrialStateData trial;
+        private final long updatedAt;
+        private final String error;
+
+        Entitlement(State state, String userId, UserSubscription subscription,
+                TrialStateManager.TrialStateData trial, long updatedAt) {
+            this(state, userId, subscription, trial, updatedAt, null);
+        }
+
+        Entitlement(State state, String userId, UserSubscription subscription,
+                TrialStateManager.TrialStateData trial, long updatedAt, String error) {
+            this.state = state;
+            this.userId = userId;
+            this.subscription = subscription;
+            this.trial = trial;
+            this.updatedAt = updatedAt;
+            this.error = error;
+        }
+
+        public State getState() {
+            return state;
+        }
+
+        public String getUserId() {
+            return userId;
+        }
+
+        @Nullable
+        public UserSubscription getSubscription() {
+            return subscription;
+        }
+
+        @Nullable
+        public TrialStateManager.TrialStateData getTrial() {
+            return trial;
+        }
+
+        public long getUpdatedAt() {
+            return updatedAt;
+        }
+
+        /**
+         * Why the listeners are down, or null while they are live. The state is then the last one
+         * known for this user, or {@link State#UNAVAILABLE} if there was none.
+         */
+        @Nullable
+        public String getError() {
+            return error;
+        }
+
+        public boolean isEntitled() {
+            return state == State.SUBSCRIBED || state == State.TRIAL_ACTIVE;
+        }
+    }
+
+    public interface Listener {
+        void onEntitlementChanged(@NonNull Entitlement entitlement);
+    }
+
+    /**
+     * Handle returned by {@link #subscribe(Listener)}.
+     */
+    public interface Registration {
+        void remove();
+    }
+
+    private static EntitlementEngine instance;
+
+    private final FirebaseFirestore firestore;
+    private final FirebaseAuth auth;
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Runnable reattach = this::reattach;
+    private final Runnable trialEndCheck = this::onTrialEnd;
+
+    private String userId;
+    private ListenerRegistration userListener;
+    private ListenerRegistration trialListener;
+    private boolean userLoaded;
+    private boolean trialLoaded;
+    private UserSubscription subscription;
+    private TrialStateManager.TrialStateData trial;
+    private String error;
+    private int failures;
+    private volatile Entitlement current = new Entitlement(State.UNKNOWN, null, null, null, 0);
+    // Time from attaching until the first state other than UNKNOWN
+    private EntitlementMetrics.Call firstDecision;
+
+    private EntitlementEngine(Context context) {
+        this.firestore = FirebaseFirestore.getInstance();
+        this.auth = FirebaseAuth.getInstance();
+        auth.addAuthStateListener(firebaseAuth -> onUserChanged(firebaseAuth.getCurrentUser()));
+    }
+
+    public static synchronized EntitlementEngine getInstance(Context context) {
+        if (instance == null) {
+            instance = new EntitlementEngine(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Latest entitlement without waiting; {@link State#UNKNOWN} until the first snapshots arrive.
+     */
+    @NonNull
+    public Entitlement getCurrent() {
+        return current;
+    }
+
+    /**
+     * True while snapshot listeners for the given user are attached.
+     */
+    public synchronized boolean isListening(String uid) {
+        return userListener != null && uid != null && uid.equals(userId);
+    }
+
+    /**
+     * Latest entitlement for the user while both listeners are live and have delivered their
+     * documents, or null, in which case callers read Firestore themselves.
+     */
+    @Nullable
+    public synchronized Entitlement getLive(String uid) {
+        Entitlement latest = current;
+        if (!isListening(uid) || !userLoaded || !trialLoaded || error != null
+                || !uid.equals(latest.userId) || latest.state == State.UNKNOWN) {
+            return null;
+        }
+        return latest;
+    }
+
+    /**
+     * Delivers the current entitlement immediately and every change after it. The first
+     * subscriber attaches the Firestore listeners and the last one to leave detaches them.
+     */
+    public synchronized Registration subscribe(@NonNull Listener listener) {
+        if (listeners.isEmpty()) {
+            attach(auth.getCurrentUser());
+        } else if (userListener != null) {
+            // Catches a trial end missed while the trial timer was held up by deep sleep
+            recompute();
+        }
+        listeners.add(listener);
+        listener.onEntitlementChanged(current);
+        return () -> unsubscribe(listener);
+    }
+
+    private synchronized void unsubscribe(Listener listener) {
+        if (listeners.remove(listener) && listeners.isEmpty()) {
+            detach();
+        }
+    }
+
+    private synchronized void onUserChanged(@Nullable FirebaseUser user) {
+        String uid = user != null ? user.getUid() : null;
+        if (Objects.equals(uid, userId) && (userListener != null || listeners.isEmpty())) {
+            return;
+        }
+        detach();
+        failures = 0;
+        error = null;
+        if (!listeners.isEmpty()) {
+            attach(user);
+        }
+    }
+
+    private void attach(@Nullable FirebaseUser user) {
+        firstDecision = EntitlementMetrics.getInstance().begin("EntitlementEngine.firstDecision");
+        userLoaded = false;
+        trialLoaded = false;
+        subscription = null;
+        trial = null;
+        if (user == null) {
+            userId = null;
+            publish(new Entitlement(State.SIGNED_OUT, null, null, null, System.currentTimeMillis()));
+            return;
+        }
+        userId = user.getUid();
+        String uid = userId;
+        if (!uid.equals(current.userId)) {
+            // Never let the previous account's entitlement leak to the new one
+            publish(new Entitlement(State.UNKNOWN, uid, null, null, System.currentTimeMillis()));
+        }
+        userListener = firestore.collection(USERS_COLLECTION).document(uid)
+                .addSnapshotListener((snapshot, e) -> {
+                    if (e != null) {
+                        onListenerError(uid, "User", e);
+                        return;
+                    }
+                    onUserSnapshot(uid, snapshot);
+                });
+        trialListener = firestore.collection(TRIALS_COLLECTION).document(uid)
+                .addSnapshotListener((snapshot, e) -> {
+                    if (e != null) {
+                        onListenerError(uid, "Trial", e);
+                        return;
+                    }
+                    onTrialSnapshot(uid, snapshot);
+                });
+        Log.d(TAG, "Listening for entitlement changes");
+    }
+
+    private void detach() {
+        mainHandler.removeCallbacks(reattach);
+        mainHandler.removeCallbacks(trialEndCheck);
+        if (userListener != null) {
+            userListener.remove();
+            userListener = null;
+        }
+        if (trialListener != null) {
+            trialListener.remove();
+            trialListener = null;
+        }
+    }
+
+    /**
+     * A failed snapshot listener is not called again, so both are dropped and reattached with
+     * backoff. Subscribers keep the last known state, flagged with the error.
+     */
+    private synchronized void onListenerError(String uid, String which, FirebaseFirestoreException e) {
+        if (!uid.equals(userId) || userListener == null) {
+            return;
+        }
+        Log.e(TAG, which + " listener failed", e);
+        detach();
+        error = which + " listener failed: " + e.getCode();
+        if (firstDecision != null) {
+            firstDecision.failed();
+            firstDecision = null;
+        }
+        Entitlement previous = current;
+        boolean known = uid.equals(previous.userId) && previous.state != State.UNKNOWN;
+        publish(new Entitlement(known ? previous.state : State.UNAVAILABLE, uid,
+                known ? previous.subscription : null, known ? previous.trial : null,
+                System.currentTimeMillis(), error));
+        long delay = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(failures, 6));
+        failures++;
+        mainHandler.postDelayed(reattach, delay);
+    }
+
+    private synchronized void reattach() {
+        if (!listeners.isEmpty() && userListener == null) {
+            Log.d(TAG, "Reattaching entitlement listeners");
+            attach(auth.getCurrentUser());
+        }
+    }
+
+    private synchronized void onTrialEnd() {
+        if (userListener != null) {
+            recompute();
+        }
+    }
+
+    private synchronized void onUserSnapshot(String uid, @Nullable DocumentSnapshot snapshot) {
+        if (!uid.equals(userId)) {
+            return;
+        }
+        userLoaded = true;
+        EntitlementMetrics.getInstance().recordReads(METRIC_LISTENER, snapshot);
+        subscription = snapshot != null && snapshot.exists() ? snapshot.toObject(UserSubscription.class) : null;
+        recompute();
+    }
+
+    private synchronized void onTrialSnapshot(String uid, @Nullable DocumentSnapshot snapshot) {
+        if (!uid.equals(userId)) {
+            return;
+        }
+        trialLoaded = true;
+        EntitlementMetrics.getInstance().recordReads(METRIC_LISTENER, snapshot);
+        if (snapshot != null && snapshot.exists()) {
+            trial = TrialStateManager.parseTrialStateFromDocument(snapshot, System.currentTimeMillis());
+        } else {
+            trial = null;
+        }
+        recompute();
+    }
+
+    private void recompute() {
+        long now = System.currentTimeMillis();
+        State state = derive(now);
+        mainHandler.removeCallbacks(trialEndCheck);
+        if (state == State.TRIAL_ACTIVE && trial != null && trial.trialEnd > now) {
+            mainHandler.postDelayed(trialEndCheck, trial.trialEnd - now + 1);
+        }
+        if (state == State.UNKNOWN && error != null) {
+            // Reattaching after an error; keep the last known state until both documents are in
+            return;
+        }
+        if (state != State.UNKNOWN) {
+            error = null;
+            failures = 0;
+        }
+        Entitlement previous = current;
+        if (state == previous.state && subscription == previous.subscription && trial == previous.trial
+                && previous.error == null) {
+            return;
+        }
+        if (state != previous.state) {
+            Log.d(TAG, "Entitlement " + previous.state + " -> " + state);
+        }
+        publish(new Entitlement(state, userId, subscription, trial, now));
+    }
+
+    private State derive(long now) {
+        boolean subscribed = subscription != null && subscription.getSubscription() != null
+                && "active".equals(subscription.getSubscription().getStatus());
+        if (subscribed) {
+            return State.SUBSCRIBED;
+        }
+        if (!userLoaded || !trialLoaded) {
+            return State.UNKNOWN;
+        }
+        if (trial != null && trial.state != TrialStateManager.TrialState.NONE) {
+            switch (trial.state) {
+                case SUSPENDED:
+                    return State.SUSPENDED;
+                case ACTIVE:
+                    return now < trial.trialEnd ? State.TRIAL_ACTIVE : State.TRIAL_EXPIRED;
+                default:
+                    return State.TRIAL_EXPIRED;
+            }
+        }
+        // Accounts created before the trials collection carry the trial on the user document
+        if (subscription != null && subscription.isValidTrial()) {
+            return State.TRIAL_ACTIVE;
+        }
+        return State.NO_TRIAL;
+    }
+
+    private void publish(Entitlement next) {
+        current = next;
+        if (firstDecision != null && next.state != State.UNKNOWN) {
+            firstDecision.succeeded();
+            firstDecision = null;
+        }
+        for (Listener listener : listeners) {
+            listener.onEntitlementChanged(next);
+        }
+    }
+}
@@ -0,0 +1,248 @@
+package com.smartexam.subscription;
+
+import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Process-lifetime metrics for entitlement APIs: calls, cache hits and misses, billed Firestore
+ * reads and a latency histogram per API, measured from the call until the caller has its answer.
+ * Read by the Firebase test screen and exported there as JSON; {@link #getTotalReads()} gives the
+ * per-session read count to hold against a budget.
+ */
+public class EntitlementMetrics {
+
+    // Upper bounds of the latency buckets in milliseconds; the last bucket is unbounded
+    private static final long[] BUCKET_BOUNDS_MS = {1, 5, 10, 25, 50, 100, 250, 500, 1000, 2500, 5000};
+    private static final EntitlementMetrics INSTANCE = new EntitlementMetrics();
+
+    private final Map<String, ApiStats> stats = new TreeMap<>();
+
+    private EntitlementMetrics() {
+    }
+
+    public static EntitlementMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts timing one call of the named API, e.g. "TrialManager.getTrialStatus".
+     */
+    public Call begin(String api) {
+        return new Call(this, api);
+    }
+
+    /**
+     * Counts the billed read of a document fetch: one unless served from the local cache.
+     */
+    public void recordReads(String api, DocumentSnapshot snapshot) {
+        if (snapshot != null && !snapshot.getMetadata().isFromCache()) {
+            recordReads(api, 1);
+        }
+    }
+
+    /**
+     * Counts the billed reads of a query: one per returned document, one for an empty result,
+     * none when served from the local cache.
+     */
+    public void recordReads(String api, QuerySnapshot snapshot) {
+        if (snapshot != null && !snapshot.getMetadata().isFromCache()) {
+            recordReads(api, Math.max(1, snapshot.size()));
+        }
+    }
+
+    public synchronized void recordReads(String api, long reads) {
+        statsFor(api).reads += reads;
+    }
+
+    private synchronized void finish(String api, long latencyMs, Boolean cacheHit, boolean success) {
+        ApiStats entry = statsFor(api);
+        entry.calls++;
+        if (cacheHit != null) {
+            if (cacheHit) {
+                entry.hits++;
+            } else {
+                entry.misses++;
+            }
+        }
+        if (!success) {
+            entry.errors++;
+        }
+        entry.latencyBuckets[bucketFor(latencyMs)]++;
+        entry.totalLatencyMs += latencyMs;
+        entry.maxLatencyMs = Math.max(entry.maxLatencyMs, latencyMs);
+    }
+
+    private ApiStats statsFor(String api) {
+        ApiStats entry = stats.get(api);
+        if (entry == null) {
+            entry = new ApiStats(api);
+            stats.put(api, entry);
+        }
+        return entry;
+    }
+
+    private static int bucketFor(long latencyMs) {
+        for (int i = 0; i < BUCKET_BOUNDS_MS.length; i++) {
+            if (latencyMs <= BUCKET_BOUNDS_MS[i]) {
+                return i;
+            }
+        }
+        return BUCKET_BOUNDS_MS.length;
+    }
+
+    public synchronized long getTotalReads() {
+        long total = 0;
+        for (ApiStats entry : stats.values()) {
+            total += entry.reads;
+        }
+        return total;
+    }
+
+    /**
+     * Copies of the per-API stats, ordered by API name.
+     */
+    public synchronized List<ApiStats> getStats() {
+        List<ApiStats> copies = new ArrayList<>(stats.size());
+        for (ApiStats entry : stats.values()) {
+            copies.add(entry.copy());
+        }
+        return copies;
+    }
+
+    public String getSummary() {
+        List<ApiStats> snapshot = getStats();
+        StringBuilder sb = new StringBuilder();
+        sb.append("Firestore reads: ").append(getTotalReads()).append('\n');
+        if (snapshot.isEmpty()) {
+            sb.append("(no entitlement calls recorded yet)");
+        }
+        for (ApiStats entry : snapshot) {
+            sb.append(entry).append('\n');
+        }
+        return sb.toString();
+    }
+
+    public String exportJson() {
+        Map<String, Object> export = new HashMap<>();
+        export.put("totalReads", getTotalReads());
+        export.put("bucketBoundsMs", BUCKET_BOUNDS_MS);
+        export.put("apis", getStats());
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return gson.toJson(export);
+    }
+
+    public synchronized void clear() {
+        stats.clear();
+    }
+
+    /**
+     * One call being timed. Finishing more than once is ignored, so it can be finished from
+     * whichever callback answers first.
+     */
+    public static class Call {
+        private final EntitlementMetrics owner;
+        private final String api;
+        private final long startNanos = System.nanoTime();
+        private Boolean cacheHit;
+        private boolean finished;
+
+        private Call(EntitlementMetrics owner, String api) {
+            this.owner = owner;
+            this.api = api;
+        }
+
+        public synchronized Call hit() {
+            cacheHit = true;
+            return this;
+        }
+
+        public synchronized Call miss() {
+            cacheHit = false;
+            return this;
+        }
+
+        public void succeeded() {
+            finish(true);
+        }
+
+        public void failed() {
+            finish(false);
+        }
+
+        private void finish(boolean success) {
+            Boolean hit;
+            synchronized (this) {
+                if (finished) {
+                    return;
+                }
+                finished = true;
+                hit = cacheHit;
+            }
+            owner.finish(api, (System.nanoTime() - startNanos) / 1_000_000, hit, success);
+        }
+    }
+
+    /**
+     * Totals for one API. Latencies are in milliseconds.
+     */
+    public static class ApiStats {
+        public final String api;
+        public long calls;
+        public long hits;
+        public long misses;
+        public long reads;
+        public long errors;
+        public long totalLatencyMs;
+        public long maxLatencyMs;
+        public final long[] latencyBuckets = new long[BUCKET_BOUNDS_MS.length + 1];
+
+        ApiStats(String api) {
+            this.api = api;
+        }
+
+        ApiStats copy() {
+            ApiStats copy = new ApiStats(api);
+            copy.calls = calls;
+            copy.hits = hits;
+            copy.misses = misses;
+            copy.reads = reads;
+            copy.errors = errors;
+            copy.totalLatencyMs = totalLatencyMs;
+            copy.maxLatencyMs = maxLatencyMs;
+            System.arraycopy(latencyBuckets, 0, copy.latencyBuckets, 0, latencyBuckets.length);
+            return copy;
+        }
+
+        /**
+         * Upper bound of the bucket holding the given percentile, or -1 past the last bound.
+         */
+        public long percentileUpperBoundMs(double percentile) {
+            long target = (long) Math.ceil(calls * percentile);
+            long seen = 0;
+            for (int i = 0; i < latencyBuckets.length; i++) {
+                seen += latencyBuckets[i];
+                if (seen >= target && seen > 0) {
+                    return i < BUCKET_BOUNDS_MS.length ? BUCKET_BOUNDS_MS[i] : -1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public String toString() {
+            long p95 = percentileUpperBoundMs(0.95);
+            return api + ": " + calls + " calls, " + hits + " hits / " + misses + " misses, "
+                    + reads + " reads, " + errors + " errors, avg "
+                    + (calls > 0 ? totalLatencyMs / calls : 0) + " ms, p95 "
+                    + (p95 >= 0 ? "<=" + p95 : ">" + BUCKET_BOUNDS_MS[BUCKET_BOUNDS_MS.length - 1])
+                    + " ms, max " + maxLatencyMs + " ms";
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.smartexam.subscription;
+
+import com.smartexam.models.UserSubscription;
+
+/**
+ * Immutable view of what the signed-in user is entitled to, derived from their Firebase
+ * subscription document. SubscriptionManager publishes one through an atomic reference and
+ * persists it, so checks on hot paths are a single volatile read with no network or locking.
+ */
+public final class EntitlementSnapshot {
+
+    /**
+     * No subscription data seen yet on this device.
+     */
+    public static final EntitlementSnapshot UNKNOWN = new EntitlementSnapshot(null, null, false, false, 0);
+
+    private final String userId;
+    private final String status;
+    private final boolean active;
+    private final boolean trial;
+    private final long fetchedAt;
+
+    EntitlementSnapshot(String userId, String status, boolean active, boolean trial, long fetchedAt) {
+        this.userId = userId;
+        this.status = status;
+        this.active = active;
+        this.trial = trial;
+        this.fetchedAt = fetchedAt;
+    }
+
+    static EntitlementSnapshot from(String userId, UserSubscription subscription, long fetchedAt) {
+        if (subscription == null) {
+            return new EntitlementSnapshot(userId, null, false, false, fetchedAt);
+        }
+        String status = subscription.getSubscription() != null ? subscription.getSubscription().getStatus() : null;
+        return new EntitlementSnapshot(userId, status, subscription.hasActiveSubscription(),
+                subscription.isValidTrial(), fetchedAt);
+    }
+
+    public String getUserId() {
+        return userId;
+    }
+
+    public String getStatus() {
+        return status;
+    }
+
+    public boolean hasActiveSubscription() {
+        return active;
+    }
+
+    public boolean isOnTrial() {
+        return trial;
+    }
+
+    public boolean shouldApplyWatermark() {
+        return !active;
+    }
+
+    public long getFetchedAt() {
+        return fetchedAt;
+    }
+
+    public boolean isStale(long now, long maxAgeMs) {
+        return now - fetchedAt >= maxAgeMs;
+    }
+
+    public boolean belongsTo(String uid) {
+        return userId != null && userId.equals(uid);
+    }
+}
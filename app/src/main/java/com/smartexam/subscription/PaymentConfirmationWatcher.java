@@ -0,0 +1,181 @@
+package com.smartexam.subscription;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Source;
+import com.smartexam.models.UserSubscription;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Waits for a subscription to become active after checkout.
+ * <p>
+ * Activation is pushed through {@link EntitlementEngine}, so the UI sees it one snapshot after the
+ * Paystack webhook updates the user document. In case the listener stream is stalled (offline
+ * reconnects, listener errors), server reads are also scheduled with exponential backoff and full
+ * jitter as a fallback. Everything runs on the main thread.
+ */
+public class PaymentConfirmationWatcher {
+    private static final String TAG = "PaymentConfirmation";
+    private static final String USERS_COLLECTION = "users";
+    private static final long FIRST_FALLBACK_DELAY_MS = 4000;
+    private static final long MAX_FALLBACK_DELAY_MS = 20000;
+    private static final long TIMEOUT_MS = 90000;
+    private static final String METRIC_FALLBACK_READ = "PaymentConfirmationWatcher.fallbackRead";
+
+    public interface ConfirmationCallback {
+        void onSubscriptionActivated();
+        void onTimeout();
+        void onError(String error);
+    }
+
+    private final Context context;
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final FirebaseFirestore db = FirebaseFirestore.getInstance();
+    private ConfirmationCallback callback;
+    private EntitlementEngine.Registration registration;
+    private boolean watching;
+    private int fallbackAttempts;
+
+    public PaymentConfirmationWatcher(Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    /**
+     * Starts waiting for activation. Call it when the user comes back from checkout, since the
+     * deadline runs from here. Calling it again while waiting restarts the deadline and the
+     * fallback backoff and keeps the original callback, which is invoked at most once.
+     */
+    public void start(ConfirmationCallback callback) {
+        FirebaseUser user = FirebaseAuth.getInstance().getCurrentUser();
+        if (watching) {
+            if (user != null) {
+                Log.d(TAG, "Back from checkout again; restarting the deadline");
+                scheduleChecks(user.getUid());
+            }
+            return;
+        }
+        if (user == null) {
+            callback.onError("User not authenticated");
+            return;
+        }
+        Log.d(TAG, "Waiting for payment confirmation");
+        this.callback = callback;
+        watching = true;
+
+        registration = EntitlementEngine.getInstance(context).subscribe(entitlement -> {
+            if (entitlement.getState() == EntitlementEngine.State.SUBSCRIBED) {
+                finishActivated("listener");
+            }
+        });
+        if (!watching) {
+            // Already subscribed: the callback ran before the registration was returned
+            registration.remove();
+            registration = null;
+            return;
+        }
+        scheduleChecks(user.getUid());
+    }
+
+    private void scheduleChecks(String uid) {
+        handler.removeCallbacksAndMessages(null);
+        fallbackAttempts = 0;
+        handler.postDelayed(() -> fallbackRead(uid), FIRST_FALLBACK_DELAY_MS);
+        handler.postDelayed(this::finishTimedOut, TIMEOUT_MS);
+    }
+
+    /**
+     * Stops waiting without invoking the callback.
+     */
+    public void stop() {
+        if (!watching) {
+            return;
+        }
+        release();
+        Log.d(TAG, "Stopped waiting for payment confirmation");
+    }
+
+    public boolean isWatching() {
+        return watching;
+    }
+
+    private void fallbackRead(String uid) {
+        if (!watching) {
+            return;
+        }
+        fallbackAttempts++;
+        EntitlementMetrics.Call call = EntitlementMetrics.getInstance().begin(METRIC_FALLBACK_READ);
+        db.collection(USERS_COLLECTION).document(uid).get(Source.SERVER)
+            .addOnSuccessListener(documentSnapshot -> {
+                EntitlementMetrics.getInstance().recordReads(METRIC_FALLBACK_READ, documentSnapshot);
+                call.succeeded();
+                UserSubscription subscription = documentSnapshot.exists()
+                        ? documentSnapshot.toObject(UserSubscription.class) : null;
+                if (subscription != null && subscription.hasActiveSubscription()) {
+                    SubscriptionManager.getInstance().onSubscriptionSnapshot(subscription);
+                    finishActivated("fallback read " + fallbackAttempts);
+                } else {
+                    scheduleFallback(uid);
+                }
+            })
+            .addOnFailureListener(e -> {
+                call.failed();
+                Log.w(TAG, "Fallback read " + fallbackAttempts + " failed", e);
+                scheduleFallback(uid);
+            });
+    }
+
+    private void scheduleFallback(String uid) {
+        if (!watching) {
+            return;
+        }
+        handler.postDelayed(() -> fallbackRead(uid), nextDelay(fallbackAttempts));
+    }
+
+    /**
+     * Full jitter: a uniform delay in [0, ceiling], where the ceiling doubles per attempt up to
+     * {@link #MAX_FALLBACK_DELAY_MS}, so clients returning from checkout at the same moment do not
+     * read in lockstep.
+     */
+    static long nextDelay(int attempt) {
+        return ThreadLocalRandom.current().nextLong(ceiling(attempt) + 1);
+    }
+
+    static long ceiling(int attempt) {
+        return Math.min(MAX_FALLBACK_DELAY_MS, FIRST_FALLBACK_DELAY_MS << Math.min(Math.max(attempt, 0), 10));
+    }
+
+    private void finishActivated(String source) {
+        if (!watching) {
+            return;
+        }
+        ConfirmationCallback target = callback;
+        release();
+        Log.d(TAG, "Subscription activated (" + source + ")");
+        target.onSubscriptionActivated();
+    }
+
+    private void finishTimedOut() {
+        if (!watching) {
+            return;
+        }
+        ConfirmationCallback target = callback;
+        release();
+        Log.w(TAG, "Payment not confirmed after " + fallbackAttempts + " fallback reads");
+        target.onTimeout();
+    }
+
+    private void release() {
+        watching = false;
+        callback = null;
+        handler.removeCallbacksAndMessages(null);
+        if (registration != null) {
+            registration.remove();
+            registration = null;
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.smartexam.subscription;
 
 import android.util.Log;
 
+import androidx.annotation.WorkerThread;
 import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
@@ -12,6 +13,8 @@ import com.google.firebase.functions.HttpsCallableResult;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Service for Paystack integration - checkout URL generation and payment processing.
@@ -21,6 +24,7 @@ public class PaystackService {
     private static final String TAG = "PaystackService";
     private static final String FUNCTION_CREATE_CHECKOUT = "createPaystackCheckout";
     private static final String FUNCTION_VERIFY_PAYMENT = "verifyPaystackPayment";
+    private static final long CALL_TIMEOUT_S = 20;
     
     private static PaystackService instance;
     private FirebaseFunctions functions;
@@ -67,6 +71,7 @@ public class PaystackService {
 
         functions
             .getHttpsCallable(FUNCTION_CREATE_CHECKOUT)
+            .withTimeout(CALL_TIMEOUT_S, TimeUnit.SECONDS)
             .call(data)
             .addOnSuccessListener(task -> {
                 try {
@@ -96,45 +101,50 @@ public class PaystackService {
     }
 
     /**
-     * Verify payment status with Paystack
+     * Verify payment status with Paystack. Every call reaches the server; use
+     * {@link PaystackVerificationClient} for cached, de-duplicated verification.
      */
     public void verifyPayment(String reference, VerificationCallback callback) {
+        requestVerification(reference)
+            .addOnSuccessListener(verified -> {
+                Log.d(TAG, "Payment verification completed");
+                callback.onSuccess(verified);
+            })
+            .addOnFailureListener(e -> {
+                Log.e(TAG, "Failed to verify payment", e);
+                callback.onError("Failed to verify payment: " + e.getMessage());
+            });
+    }
+
+    /**
+     * Calls the verification function; the task fails if the response is malformed
+     */
+    Task<Boolean> requestVerification(String reference) {
         Map<String, Object> data = new HashMap<>();
         data.put("reference", reference);
 
-        functions
+        return functions
             .getHttpsCallable(FUNCTION_VERIFY_PAYMENT)
+            .withTimeout(CALL_TIMEOUT_S, TimeUnit.SECONDS)
             .call(data)
-            .addOnSuccessListener(task -> {
-                try {
-                    Object taskData = task.getData();
-                    if (taskData instanceof Map) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> result = (Map<String, Object>) taskData;
-                        Boolean verified = (Boolean) result.get("verified");
-                        if (verified != null) {
-                            Log.d(TAG, "Payment verification completed");
-                            callback.onSuccess(verified);
-                        } else {
-                            callback.onError("Invalid verification response");
-                        }
-                    } else {
-                        callback.onError("Invalid data format from server");
-                    }
-                } catch (Exception e) {
-                    Log.e(TAG, "Failed to parse verification response", e);
-                    callback.onError("Failed to parse verification: " + e.getMessage());
+            .continueWith(task -> {
+                Object taskData = task.getResult().getData();
+                if (!(taskData instanceof Map)) {
+                    throw new IllegalStateException("Invalid data format from server");
                 }
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Failed to verify payment", e);
-                callback.onError("Failed to verify payment: " + e.getMessage());
+                Object verified = ((Map<?, ?>) taskData).get("verified");
+                if (!(verified instanceof Boolean)) {
+                    throw new IllegalStateException("Invalid verification response");
+                }
+                return (Boolean) verified;
             });
     }
 
     /**
-     * Synchronous version for testing purposes
+     * Synchronous version for testing purposes. Blocks for up to the call timeout, so never call
+     * it on the main thread.
      */
+    @WorkerThread
     public String createCheckoutUrlSync(String email) {
         try {
             FirebaseUser user = auth.getCurrentUser();
@@ -151,9 +161,10 @@ public class PaystackService {
 
             Task<HttpsCallableResult> task = functions
                 .getHttpsCallable(FUNCTION_CREATE_CHECKOUT)
+                .withTimeout(CALL_TIMEOUT_S, TimeUnit.SECONDS)
                 .call(data);
 
-            HttpsCallableResult result = Tasks.await(task);
+            HttpsCallableResult result = Tasks.await(task, CALL_TIMEOUT_S, TimeUnit.SECONDS);
             Object resultData = result.getData();
             if (resultData instanceof Map) {
                 @SuppressWarnings("unchecked")
@@ -163,7 +174,7 @@ public class PaystackService {
                 throw new RuntimeException("Invalid data format from server");
             }
 
-        } catch (ExecutionException | InterruptedException e) {
+        } catch (ExecutionException | InterruptedException | TimeoutException e) {
             Log.e(TAG, "Sync checkout creation failed", e);
             throw new RuntimeException("Failed to create checkout: " + e.getMessage());
         }
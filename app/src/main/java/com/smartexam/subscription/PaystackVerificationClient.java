@@ -0,0 +1,245 @@
+package com.smartexam.subscription;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.google.firebase.auth.FirebaseAuth;
+import com.google.firebase.auth.FirebaseUser;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Client-side front for Paystack payment verification.
+ * <p>
+ * References that verified successfully are remembered on disk for the signed-in user, so
+ * checking them again, for example on every app resume, answers immediately without a function
+ * call; another account on the same device starts with nothing remembered, and nothing is
+ * remembered while signed out. Concurrent requests from one user for the same reference share
+ * one call. Each request has a deadline enforced with a main-thread timer rather than a blocked
+ * thread, and can be cancelled; a cancelled or timed-out request only stops its own callback,
+ * and a late verified result is still cached.
+ * <p>
+ * Callbacks run on the main thread.
+ * <p>
+ * Nothing in the app calls this client yet; no screen verifies a payment reference on the
+ * device today.
+ */
+public class PaystackVerificationClient {
+
+    private static final String TAG = "PaystackVerification";
+    private static final String PREFS_NAME = "paystack_verified_refs";
+    private static final int MAX_CACHED_REFERENCES = 100;
+    private static final long DEFAULT_TIMEOUT_MS = 15000;
+
+    /**
+     * Handle for one verification request.
+     */
+    public interface Request {
+        void cancel();
+    }
+
+    private static PaystackVerificationClient instance;
+
+    private final SharedPreferences prefs;
+    private final PaystackService service;
+    private final FirebaseAuth auth;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // All guarded by this. In-flight calls are keyed by uid and reference; verified holds the
+    // references of verifiedUid only.
+    private final Map<String, List<Waiter>> inFlight = new HashMap<>();
+    private Map<String, Long> verified;
+    private String verifiedUid;
+
+    private PaystackVerificationClient(Context context) {
+        this.prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        this.service = PaystackService.getInstance();
+        this.auth = FirebaseAuth.getInstance();
+    }
+
+    public static synchronized PaystackVerificationClient getInstance(Context context) {
+        if (instance == null) {
+            instance = new PaystackVerificationClient(context);
+        }
+        return instance;
+    }
+
+    public Request verify(@NonNull String reference, @NonNull PaystackService.VerificationCallback callback) {
+        return verify(reference, DEFAULT_TIMEOUT_MS, callback);
+    }
+
+    /**
+     * Verifies a payment reference for the signed-in user. Answers from that user's verified
+     * cache when possible; otherwise joins or starts the server call for that reference.
+     */
+    public Request verify(@NonNull String reference, long timeoutMs,
+                          @NonNull PaystackService.VerificationCallback callback) {
+        String uid = currentUid();
+        Waiter waiter = new Waiter(keyOf(uid, reference), callback);
+        boolean startCall;
+        synchronized (this) {
+            if (isRemembered(uid, reference)) {
+                Log.d(TAG, "Reference already verified");
+                waiter.call.hit();
+                mainHandler.post(() -> waiter.deliver(true, null));
+                return waiter;
+            }
+            List<Waiter> waiters = inFlight.get(waiter.key);
+            startCall = waiters == null;
+            if (startCall) {
+                waiters = new ArrayList<>();
+                inFlight.put(waiter.key, waiters);
+            }
+            waiters.add(waiter);
+        }
+        waiter.call.miss();
+        mainHandler.postDelayed(waiter.timeout, timeoutMs);
+        if (startCall) {
+            service.requestVerification(reference)
+                .addOnSuccessListener(result -> complete(uid, reference, result, null))
+                .addOnFailureListener(e -> {
+                    Log.e(TAG, "Failed to verify payment", e);
+                    complete(uid, reference, null, "Failed to verify payment: " + e.getMessage());
+                });
+        } else {
+            Log.d(TAG, "Joining in-flight verification");
+        }
+        return waiter;
+    }
+
+    /**
+     * True if the reference verified before for the signed-in user, without any network call.
+     */
+    public synchronized boolean isVerified(@NonNull String reference) {
+        return isRemembered(currentUid(), reference);
+    }
+
+    /**
+     * Completes the call that uid started; a verified result is remembered for uid even if
+     * another account has signed in since.
+     */
+    private void complete(String uid, String reference, Boolean result, String error) {
+        List<Waiter> waiters;
+        synchronized (this) {
+            waiters = inFlight.remove(keyOf(uid, reference));
+            if (Boolean.TRUE.equals(result) && !uid.isEmpty()) {
+                remember(uid, reference);
+            }
+        }
+        if (waiters == null) {
+            return;
+        }
+        for (Waiter waiter : waiters) {
+            waiter.deliver(result, error);
+        }
+    }
+
+    private String currentUid() {
+        FirebaseUser user = auth.getCurrentUser();
+        return user != null ? user.getUid() : "";
+    }
+
+    private static String keyOf(String uid, String reference) {
+        return uid + "/" + reference;
+    }
+
+    private boolean isRemembered(String uid, String reference) {
+        return !uid.isEmpty() && verifiedReferences(uid).containsKey(reference);
+    }
+
+    /**
+     * The references remembered for uid, loaded from disk when the user changes.
+     */
+    private Map<String, Long> verifiedReferences(String uid) {
+        if (verified == null || !uid.equals(verifiedUid)) {
+            verified = new HashMap<>();
+            verifiedUid = uid;
+            String prefix = keyOf(uid, "");
+            for (Map.Entry<String, ?> entry : prefs.getAll().entrySet()) {
+                if (entry.getKey().startsWith(prefix) && entry.getValue() instanceof Long) {
+                    verified.put(entry.getKey().substring(prefix.length()), (Long) entry.getValue());
+                }
+            }
+        }
+        return verified;
+    }
+
+    private void remember(String uid, String reference) {
+        Map<String, Long> references = verifiedReferences(uid);
+        SharedPreferences.Editor editor = prefs.edit();
+        references.put(reference, System.currentTimeMillis());
+        editor.putLong(keyOf(uid, reference), references.get(reference));
+        while (references.size() > MAX_CACHED_REFERENCES) {
+            String oldest = null;
+            for (Map.Entry<String, Long> entry : references.entrySet()) {
+                if (oldest == null || entry.getValue() < references.get(oldest)) {
+                    oldest = entry.getKey();
+                }
+            }
+            references.remove(oldest);
+            editor.remove(keyOf(uid, oldest));
+        }
+        editor.apply();
+    }
+
+    private synchronized void detach(Waiter waiter) {
+        List<Waiter> waiters = inFlight.get(waiter.key);
+        if (waiters != null) {
+            waiters.remove(waiter);
+        }
+    }
+
+    /**
+     * One caller waiting on a reference. Delivers at most once.
+     */
+    private final class Waiter implements Request {
+        // uid and reference, see keyOf
+        final String key;
+        final Runnable timeout;
+        final EntitlementMetrics.Call call =
+            EntitlementMetrics.getInstance().begin("PaystackVerificationClient.verify");
+        private PaystackService.VerificationCallback callback;
+
+        Waiter(String key, PaystackService.VerificationCallback callback) {
+            this.key = key;
+            this.callback = callback;
+            this.timeout = () -> {
+                Log.w(TAG, "Verification timed out");
+                detach(this);
+                deliver(null, "Payment verification timed out");
+            };
+        }
+
+        @Override
+        public void cancel() {
+            mainHandler.removeCallbacks(timeout);
+            detach(this);
+            synchronized (this) {
+                callback = null;
+            }
+        }
+
+        void deliver(Boolean result, String error) {
+            mainHandler.removeCallbacks(timeout);
+            PaystackService.VerificationCallback target;
+            synchronized (this) {
+                target = callback;
+                callback = null;
+            }
+            if (target == null) {
+                return;
+            }
+            if (result != null) {
+                call.succeeded();
+                target.onSuccess(result);
+            } else {
+                call.failed();
+                target.onError(error);
+            }
+        }
+    }
+}
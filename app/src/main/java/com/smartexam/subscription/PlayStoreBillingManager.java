@@ -2,6 +2,9 @@ package com.smartexam.subscription;
 
 import android.app.Activity;
 import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -21,19 +24,47 @@ import com.android.billingclient.api.ProductDetailsResponseListener;
 import com.google.android.gms.tasks.OnCompleteListener;
 import com.google.android.gms.tasks.OnFailureListener;
 import com.google.android.gms.tasks.OnSuccessListener;
+import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.WriteBatch;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import com.google.gson.reflect.TypeToken;
+import com.smartexam.sync.SyncMetrics;
+import java.io.File;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Play Store Billing integration with offline support and robust error handling.
  * Manages subscription purchases, trial conversions, and offline queuing.
+ * <p>
+ * Firestore writes and acknowledgements are recorded in a {@link PurchaseJournal} before they are
+ * attempted, so they survive process death. The journal is replayed on a background executor:
+ * subscription writes are coalesced into batched writes, and failures retry with exponential
+ * backoff and jitter.
+ * <p>
+ * Price info from the last product query is persisted, so a paywall can render from disk via
+ * {@link #loadProducts} while the billing connection and query run. Both round trips are recorded
+ * in {@link SyncMetrics} as "billingConnect" and "billingQueryProducts".
+ * <p>
+ * One instance per process ({@link #getInstance}), since the journal file must have a single
+ * writer. Not yet wired into the paywall: SubscriptionActivity still checks out through Paystack,
+ * and this class is the Play Billing path for when that flow is switched over.
  */
 public class PlayStoreBillingManager {
     
@@ -42,9 +73,21 @@ public class PlayStoreBillingManager {
     // Subscription product IDs
     public static final String MONTHLY_SUBSCRIPTION = "smartexam_monthly";
     public static final String YEARLY_SUBSCRIPTION = "smartexam_yearly";
+
+    private static final String SUBSCRIPTIONS_COLLECTION = "subscriptions";
+    private static final String JOURNAL_FILE = "purchase_journal.json";
+    private static final int MAX_BATCH_WRITES = 500; // Firestore batch limit
+    private static final long COMMIT_TIMEOUT_S = 30;
+    private static final long RETRY_BASE_MS = 2000;
+    private static final long RETRY_MAX_MS = TimeUnit.MINUTES.toMillis(5);
+    private static final String PRODUCT_PREFS = "billing_product_cache";
+    private static final String KEY_PRODUCTS_JSON = "products_json";
+    private static final String KEY_PRODUCTS_SAVED_AT = "products_saved_at";
+    // Prices older than this are not shown; Play may have changed them
+    private static final long PRODUCT_CACHE_TTL_MS = TimeUnit.DAYS.toMillis(3);
     
     // Billing client
-    private BillingClient billingClient;
+    private volatile BillingClient billingClient;
     private final Context context;
     private final FirebaseFirestore firestore;
     private final TrialStateManager trialStateManager;
@@ -53,22 +96,63 @@ public class PlayStoreBillingManager {
     // Callbacks
     private BillingConnectionCallback connectionCallback;
     private PurchaseCallback purchaseCallback;
-    
-    // Offline queue
-    private final List<PurchaseOperation> offlineQueue = new ArrayList<>();
-    
-    public PlayStoreBillingManager(Context context) {
+    private volatile ProductInfoCallback productInfoCallback;
+    private volatile List<ProductInfo> freshProducts;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Gson gson = new Gson();
+    
+    private static PlayStoreBillingManager instance;
+    // Executor of the last disconnected instance; the next one waits for it before opening the journal
+    private static ScheduledExecutorService retiredExecutor;
+
+    // Offline journal; everything below is only touched on billingExecutor
+    private final ScheduledExecutorService billingExecutor = Executors.newSingleThreadScheduledExecutor();
+    private PurchaseJournal journal;
+    private final Set<String> acknowledgementsInFlight = new HashSet<>();
+    private boolean retryScheduled;
+    private int retryCount;
+    
+    private PlayStoreBillingManager(Context context) {
         this.context = context.getApplicationContext();
         this.firestore = FirebaseFirestore.getInstance();
         this.trialStateManager = TrialStateManager.getInstance(context);
-        
+        ScheduledExecutorService previous = retiredExecutor;
+        retiredExecutor = null;
+
+        runOnBillingExecutor(() -> {
+            awaitRetired(previous);
+            journal = new PurchaseJournal(new File(this.context.getFilesDir(), JOURNAL_FILE));
+            replayJournal();
+        });
         initializeBillingClient();
     }
+
+    public static synchronized PlayStoreBillingManager getInstance(Context context) {
+        if (instance == null) {
+            instance = new PlayStoreBillingManager(context);
+        }
+        return instance;
+    }
+
+    private static void awaitRetired(@Nullable ScheduledExecutorService previous) {
+        if (previous == null) {
+            return;
+        }
+        try {
+            if (!previous.awaitTermination(COMMIT_TIMEOUT_S, TimeUnit.SECONDS)) {
+                Log.w(TAG, "Previous billing executor still running; opening the journal anyway");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
     
     /**
      * Initializes billing client
      */
     private void initializeBillingClient() {
+        SyncMetrics.Operation connectOp = SyncMetrics.getInstance().begin("billingConnect", null);
+        long connectStart = System.nanoTime();
         billingClient = BillingClient.newBuilder(context)
             .setListener((billingResult, purchases) -> {
                 if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK && purchases != null) {
@@ -92,12 +176,14 @@ public class PlayStoreBillingManager {
             public void onBillingSetupFinished(@NonNull BillingResult billingResult) {
                 int responseCode = billingResult.getResponseCode();
                 String debugMessage = billingResult.getDebugMessage();
+                long connectMs = (System.nanoTime() - connectStart) / 1_000_000;
                 
                 if (responseCode == BillingClient.BillingResponseCode.OK) {
-                    Log.i(TAG, "Billing setup successful");
+                    Log.i(TAG, "Billing setup successful in " + connectMs + " ms");
+                    connectOp.succeeded();
                     
-                    // Process offline queue
-                    processOfflineQueue();
+                    // Acknowledgements need a connected client
+                    runOnBillingExecutor(PlayStoreBillingManager.this::replayJournal);
                     
                     // Query existing purchases
                     queryExistingPurchases();
@@ -108,6 +194,7 @@ public class PlayStoreBillingManager {
                     }
                 } else {
                     Log.e(TAG, "Billing setup failed: " + responseCode + " - " + debugMessage);
+                    connectOp.failedWith("Billing response " + responseCode + ": " + debugMessage);
                     if (connectionCallback != null) {
                         connectionCallback.onBillingSetupFinished(false);
                     }
@@ -145,15 +232,91 @@ public class PlayStoreBillingManager {
             .setProductList(productList)
             .build();
 
+        SyncMetrics.Operation queryOp = SyncMetrics.getInstance().begin("billingQueryProducts", null);
+        long queryStart = System.nanoTime();
         billingClient.queryProductDetailsAsync(params, (billingResult, productDetailsList) -> {
+            long queryMs = (System.nanoTime() - queryStart) / 1_000_000;
             if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK && productDetailsList != null) {
+                Log.d(TAG, "Product details received in " + queryMs + " ms");
+                queryOp.succeeded();
+                List<ProductInfo> products = new ArrayList<>();
                 for (ProductDetails productDetails : productDetailsList) {
                     productDetailsCache.put(productDetails.getProductId(), productDetails);
+                    ProductInfo info = ProductInfo.from(productDetails);
+                    if (info != null) {
+                        products.add(info);
+                    }
                 }
+                onProductsRefreshed(products);
+            } else {
+                Log.w(TAG, "Product details query failed after " + queryMs + " ms: " + billingResult.getDebugMessage());
+                queryOp.failedWith("Billing response " + billingResult.getResponseCode() + ": "
+                    + billingResult.getDebugMessage());
             }
         });
     }
 
+    /**
+     * Delivers product and price info for the paywall on the main thread: first the persisted
+     * copy if it is within its TTL, then the result of the live query once billing connects.
+     * The second delivery has {@code fresh} set.
+     */
+    public void loadProducts(@NonNull ProductInfoCallback callback) {
+        this.productInfoCallback = callback;
+        List<ProductInfo> fresh = freshProducts;
+        if (fresh != null) {
+            mainHandler.post(() -> callback.onProductsAvailable(fresh, true));
+            return;
+        }
+        runOnBillingExecutor(() -> {
+            List<ProductInfo> cached = readProductCache();
+            if (!cached.isEmpty()) {
+                mainHandler.post(() -> {
+                    // The live query may have landed while the disk copy was read
+                    if (freshProducts == null) {
+                        callback.onProductsAvailable(cached, false);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onProductsRefreshed(@NonNull List<ProductInfo> products) {
+        if (products.isEmpty()) {
+            return;
+        }
+        List<ProductInfo> snapshot = Collections.unmodifiableList(products);
+        freshProducts = snapshot;
+        runOnBillingExecutor(() -> writeProductCache(snapshot));
+        ProductInfoCallback callback = productInfoCallback;
+        if (callback != null) {
+            mainHandler.post(() -> callback.onProductsAvailable(snapshot, true));
+        }
+    }
+
+    private List<ProductInfo> readProductCache() {
+        SharedPreferences prefs = context.getSharedPreferences(PRODUCT_PREFS, Context.MODE_PRIVATE);
+        long savedAt = prefs.getLong(KEY_PRODUCTS_SAVED_AT, 0);
+        String json = prefs.getString(KEY_PRODUCTS_JSON, null);
+        if (json == null || System.currentTimeMillis() - savedAt > PRODUCT_CACHE_TTL_MS) {
+            return Collections.emptyList();
+        }
+        try {
+            List<ProductInfo> products = gson.fromJson(json, new TypeToken<List<ProductInfo>>() { }.getType());
+            return products != null ? Collections.unmodifiableList(products) : Collections.emptyList();
+        } catch (JsonSyntaxException e) {
+            Log.w(TAG, "Discarding unreadable product cache", e);
+            return Collections.emptyList();
+        }
+    }
+
+    private void writeProductCache(@NonNull List<ProductInfo> products) {
+        context.getSharedPreferences(PRODUCT_PREFS, Context.MODE_PRIVATE).edit()
+            .putString(KEY_PRODUCTS_JSON, gson.toJson(products))
+            .putLong(KEY_PRODUCTS_SAVED_AT, System.currentTimeMillis())
+            .apply();
+    }
+
     /**
      * Queries subscription details
      */
@@ -259,18 +422,10 @@ public class PlayStoreBillingManager {
      * Acknowledges purchase
      */
     private void acknowledgePurchase(@NonNull Purchase purchase) {
-        if (purchase.getPurchaseState() == Purchase.PurchaseState.PURCHASED) {
-            AcknowledgePurchaseParams acknowledgeParams = AcknowledgePurchaseParams.newBuilder()
-                .setPurchaseToken(purchase.getPurchaseToken())
-                .build();
-            
-            billingClient.acknowledgePurchase(acknowledgeParams, billingResult -> {
-                if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK) {
-                    Log.i(TAG, "Purchase acknowledged successfully");
-                } else {
-                    Log.e(TAG, "Failed to acknowledge purchase: " + billingResult.getDebugMessage());
-                }
-            });
+        if (purchase.getPurchaseState() == Purchase.PurchaseState.PURCHASED && !purchase.isAcknowledged()) {
+            Map<String, Object> data = new HashMap<>();
+            data.put("purchase_token", purchase.getPurchaseToken());
+            journal(PurchaseJournal.Type.ACKNOWLEDGE_PURCHASE, purchase.getPurchaseToken(), data);
         }
     }
     
@@ -298,29 +453,27 @@ public class PlayStoreBillingManager {
         subscriptionData.put("is_auto_renewing", purchase.isAutoRenewing());
         subscriptionData.put("status", "active");
         subscriptionData.put("created_at", System.currentTimeMillis());
+        subscriptionData.put("idempotency_key",
+            PurchaseJournal.keyFor(PurchaseJournal.Type.STORE_SUBSCRIPTION, purchaseToken));
         
-        // Store in Firestore
-        firestore.collection("subscriptions")
-            .document(currentUser.getUid())
-            .set(subscriptionData)
-            .addOnSuccessListener(aVoid -> {
-                Log.i(TAG, "Subscription stored successfully");
-                
-                // Convert trial if active
-                convertTrialToSubscription();
-                
-                // Update local state
-                updateLocalSubscriptionState(sku, true);
-            })
-            .addOnFailureListener(e -> {
-                Log.e(TAG, "Failed to store subscription", e);
-                
-                // Queue for offline processing
-                queueOfflineOperation(new PurchaseOperation(
-                    PurchaseOperation.Type.STORE_SUBSCRIPTION,
-                    subscriptionData
-                ));
-            });
+        // Store in Firestore via the journal
+        journal(PurchaseJournal.Type.STORE_SUBSCRIPTION, purchaseToken, subscriptionData);
+    }
+
+    /**
+     * Runs once a journalled subscription write has reached Firestore
+     */
+    private void onSubscriptionStored(@NonNull Map<String, Object> data) {
+        Log.i(TAG, "Subscription stored successfully");
+
+        // Convert trial if active
+        convertTrialToSubscription();
+
+        // Update local state
+        String sku = (String) data.get("sku");
+        if (sku != null) {
+            updateLocalSubscriptionState(sku, true);
+        }
     }
     
     /**
@@ -387,37 +540,122 @@ public class PlayStoreBillingManager {
     }
     
     /**
-     * Processes offline queue
+     * Records an operation in the journal and replays it, off the billing callback thread
+     */
+    private void journal(@NonNull PurchaseJournal.Type type, @NonNull String purchaseToken,
+                         @NonNull Map<String, Object> data) {
+        String key = PurchaseJournal.keyFor(type, purchaseToken);
+        runOnBillingExecutor(() -> {
+            if (journal.enqueue(new PurchaseJournal.Entry(key, type, data, System.currentTimeMillis()))) {
+                Log.i(TAG, "Journalled operation: " + type);
+                replayJournal();
+            } else {
+                Log.d(TAG, "Skipping completed operation: " + type);
+            }
+        });
+    }
+
+    /**
+     * Replays pending journal entries. Subscription writes go out as batched writes; a failed
+     * batch schedules a retry with backoff.
      */
-    private void processOfflineQueue() {
-        if (offlineQueue.isEmpty()) {
+    private void replayJournal() {
+        if (journal.isEmpty()) {
+            retryCount = 0;
             return;
         }
-        
-        Log.i(TAG, "Processing offline queue: " + offlineQueue.size() + " operations");
-        
-        // Process operations in order
-        for (PurchaseOperation operation : offlineQueue) {
-            switch (operation.type) {
-                case STORE_SUBSCRIPTION:
-                    processStoredSubscription(operation.data);
-                    break;
-                case ACKNOWLEDGE_PURCHASE:
-                    processAcknowledgement(operation.data);
-                    break;
+        boolean failed = false;
+        List<PurchaseJournal.Entry> stores = journal.pending(PurchaseJournal.Type.STORE_SUBSCRIPTION);
+        for (int start = 0; start < stores.size() && !failed; start += MAX_BATCH_WRITES) {
+            List<PurchaseJournal.Entry> chunk =
+                new ArrayList<>(stores.subList(start, Math.min(stores.size(), start + MAX_BATCH_WRITES)));
+            WriteBatch batch = firestore.batch();
+            for (PurchaseJournal.Entry entry : chunk) {
+                // Deterministic document per user, so replaying an entry is harmless
+                batch.set(firestore.collection(SUBSCRIPTIONS_COLLECTION)
+                    .document((String) entry.data.get("user_id")), entry.data);
+            }
+            try {
+                Tasks.await(batch.commit(), COMMIT_TIMEOUT_S, TimeUnit.SECONDS);
+                journal.complete(chunk);
+                for (PurchaseJournal.Entry entry : chunk) {
+                    onSubscriptionStored(entry.data);
+                }
+            } catch (ExecutionException | TimeoutException e) {
+                Log.e(TAG, "Failed to store " + chunk.size() + " journalled subscriptions", e);
+                journal.recordFailure(chunk);
+                failed = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
             }
         }
-        
-        // Clear processed operations
-        offlineQueue.clear();
+
+        List<PurchaseJournal.Entry> acknowledgements = journal.pending(PurchaseJournal.Type.ACKNOWLEDGE_PURCHASE);
+        if (!acknowledgements.isEmpty() && (billingClient == null || !billingClient.isReady())) {
+            // Retried from onBillingSetupFinished
+            Log.d(TAG, "Deferring " + acknowledgements.size() + " acknowledgements until billing connects");
+        } else {
+            for (PurchaseJournal.Entry entry : acknowledgements) {
+                acknowledge(entry);
+            }
+        }
+
+        if (failed) {
+            scheduleRetry();
+        } else if (journal.isEmpty()) {
+            retryCount = 0;
+        }
     }
-    
+
+    private void acknowledge(@NonNull PurchaseJournal.Entry entry) {
+        if (!acknowledgementsInFlight.add(entry.key)) {
+            return;
+        }
+        AcknowledgePurchaseParams params = AcknowledgePurchaseParams.newBuilder()
+            .setPurchaseToken((String) entry.data.get("purchase_token"))
+            .build();
+        billingClient.acknowledgePurchase(params, billingResult -> runOnBillingExecutor(() -> {
+            acknowledgementsInFlight.remove(entry.key);
+            if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK) {
+                Log.i(TAG, "Purchase acknowledged successfully");
+                journal.complete(Collections.singletonList(entry));
+            } else {
+                Log.e(TAG, "Failed to acknowledge purchase: " + billingResult.getDebugMessage());
+                journal.recordFailure(Collections.singletonList(entry));
+                scheduleRetry();
+            }
+        }));
+    }
+
     /**
-     * Queues operation for offline processing
+     * Schedules one replay with exponential backoff and jitter
      */
-    private void queueOfflineOperation(@NonNull PurchaseOperation operation) {
-        offlineQueue.add(operation);
-        Log.i(TAG, "Queued offline operation: " + operation.type);
+    private void scheduleRetry() {
+        if (retryScheduled) {
+            return;
+        }
+        retryScheduled = true;
+        long ceiling = Math.min(RETRY_MAX_MS, RETRY_BASE_MS << Math.min(retryCount++, 16));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        Log.i(TAG, "Retrying billing journal in " + delay + " ms");
+        try {
+            billingExecutor.schedule(() -> {
+                retryScheduled = false;
+                replayJournal();
+            }, delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Disconnected; the journal is replayed by the next instance
+            retryScheduled = false;
+        }
+    }
+
+    private void runOnBillingExecutor(@NonNull Runnable task) {
+        try {
+            billingExecutor.execute(task);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Billing manager disconnected; dropping task");
+        }
     }
     
     /**
@@ -459,59 +697,21 @@ public class PlayStoreBillingManager {
     
     
     /**
-     * Processes stored subscription from offline queue
-     */
-    private void processStoredSubscription(@NonNull Map<String, Object> data) {
-        firestore.collection("subscriptions")
-            .document((String) data.get("user_id"))
-            .set(data)
-            .addOnSuccessListener(aVoid -> Log.i(TAG, "Offline subscription stored"))
-            .addOnFailureListener(e -> Log.e(TAG, "Failed to store offline subscription", e));
-    }
-    
-    /**
-     * Processes acknowledgement from offline queue
-     */
-    private void processAcknowledgement(@NonNull Map<String, Object> data) {
-        String purchaseToken = (String) data.get("purchase_token");
-        if (purchaseToken != null) {
-            AcknowledgePurchaseParams params = AcknowledgePurchaseParams.newBuilder()
-                .setPurchaseToken(purchaseToken)
-                .build();
-            
-            billingClient.acknowledgePurchase(params, billingResult -> {
-                if (billingResult.getResponseCode() == BillingClient.BillingResponseCode.OK) {
-                    Log.i(TAG, "Offline purchase acknowledged");
-                }
-            });
-        }
-    }
-    
-    /**
-     * Disconnects billing client
+     * Disconnects billing client. The next {@link #getInstance} call creates a fresh instance.
      */
     public void disconnect() {
+        synchronized (PlayStoreBillingManager.class) {
+            if (instance == this) {
+                instance = null;
+                retiredExecutor = billingExecutor;
+            }
+        }
         if (billingClient != null) {
             billingClient.endConnection();
         }
-    }
-    
-    /**
-     * Purchase operation for offline queue
-     */
-    private static class PurchaseOperation {
-        enum Type {
-            STORE_SUBSCRIPTION,
-            ACKNOWLEDGE_PURCHASE
-        }
-        
-        final Type type;
-        final Map<String, Object> data;
-        
-        PurchaseOperation(Type type, Map<String, Object> data) {
-            this.type = type;
-            this.data = data;
-        }
+        // Queued writes and scheduled retries are dropped; their entries stay in the journal and
+        // the next instance replays them
+        billingExecutor.shutdownNow();
     }
     
     /**
@@ -526,6 +726,10 @@ public class PlayStoreBillingManager {
         void onPurchaseFailed(String errorMessage);
     }
     
+    public interface ProductInfoCallback {
+        void onProductsAvailable(List<ProductInfo> products, boolean fresh);
+    }
+    
     public interface SubscriptionDetailsCallback {
         void onDetailsReceived(ProductDetails details);
         void onError(String errorMessage);
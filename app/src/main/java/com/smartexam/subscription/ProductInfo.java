@@ -0,0 +1,76 @@
+package com.smartexam.subscription;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.android.billingclient.api.ProductDetails;
+import java.util.List;
+
+/**
+ * What the paywall needs to show one Play subscription product. Unlike {@link ProductDetails} it
+ * can be persisted, so prices render from disk before Play Billing has connected.
+ */
+public final class ProductInfo {
+
+    private final String productId;
+    private final String title;
+    private final String formattedPrice;
+    private final long priceMicros;
+    private final String currencyCode;
+    private final String billingPeriod;
+
+    ProductInfo(String productId, String title, String formattedPrice, long priceMicros,
+                String currencyCode, String billingPeriod) {
+        this.productId = productId;
+        this.title = title;
+        this.formattedPrice = formattedPrice;
+        this.priceMicros = priceMicros;
+        this.currencyCode = currencyCode;
+        this.billingPeriod = billingPeriod;
+    }
+
+    /**
+     * Uses the last pricing phase of the first offer, which is the recurring base price.
+     * Returns null for products without subscription offers.
+     */
+    @Nullable
+    static ProductInfo from(@NonNull ProductDetails details) {
+        List<ProductDetails.SubscriptionOfferDetails> offers = details.getSubscriptionOfferDetails();
+        if (offers == null || offers.isEmpty()) {
+            return null;
+        }
+        List<ProductDetails.PricingPhase> phases = offers.get(0).getPricingPhases().getPricingPhaseList();
+        if (phases.isEmpty()) {
+            return null;
+        }
+        ProductDetails.PricingPhase base = phases.get(phases.size() - 1);
+        return new ProductInfo(details.getProductId(), details.getTitle(), base.getFormattedPrice(),
+                base.getPriceAmountMicros(), base.getPriceCurrencyCode(), base.getBillingPeriod());
+    }
+
+    public String getProductId() {
+        return productId;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getFormattedPrice() {
+        return formattedPrice;
+    }
+
+    public long getPriceMicros() {
+        return priceMicros;
+    }
+
+    public String getCurrencyCode() {
+        return currencyCode;
+    }
+
+    /**
+     * ISO 8601 period, for example "P1M" or "P1Y".
+     */
+    public String getBillingPeriod() {
+        return billingPeriod;
+    }
+}
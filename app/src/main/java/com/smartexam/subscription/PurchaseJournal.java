@@ -0,0 +1,183 @@
+package com.smartexam.subscription;
+
+import android.util.AtomicFile;
+import android.util.Log;
+import com.google.gson.Gson;
+import com.google.gson.JsonSyntaxException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write-ahead journal of billing operations that still have to reach Firestore or Play. Entries
+ * are keyed by an idempotency key derived from the purchase token, so re-delivering the same
+ * purchase (Play replays owned purchases on every connect) updates one entry instead of queueing
+ * a duplicate, and keys that already completed are skipped.
+ * <p>
+ * The journal is a JSON file written through {@link AtomicFile} after every change. It is not
+ * thread-safe; PlayStoreBillingManager only touches it from its billing executor.
+ */
+class PurchaseJournal {
+
+    private static final String TAG = "PurchaseJournal";
+    private static final int MAX_COMPLETED_KEYS = 50;
+
+    enum Type {
+        STORE_SUBSCRIPTION,
+        ACKNOWLEDGE_PURCHASE
+    }
+
+    static final class Entry {
+        String key;
+        Type type;
+        Map<String, Object> data;
+        int attempts;
+        long createdAt;
+
+        Entry(String key, Type type, Map<String, Object> data, long createdAt) {
+            this.key = key;
+            this.type = type;
+            this.data = data;
+            this.createdAt = createdAt;
+        }
+    }
+
+    private static final class State {
+        List<Entry> pending = new ArrayList<>();
+        List<String> completed = new ArrayList<>();
+    }
+
+    private final AtomicFile file;
+    private final Gson gson = new Gson();
+    private final Map<String, Entry> pending = new LinkedHashMap<>();
+    private final Deque<String> completed = new ArrayDeque<>();
+
+    PurchaseJournal(File file) {
+        this.file = new AtomicFile(file);
+        load();
+    }
+
+    static String keyFor(Type type, String purchaseToken) {
+        return type.name() + ":" + purchaseToken;
+    }
+
+    boolean isCompleted(String key) {
+        return completed.contains(key);
+    }
+
+    boolean isEmpty() {
+        return pending.isEmpty();
+    }
+
+    /**
+     * Adds an operation, replacing a pending one with the same key. Returns false if the key has
+     * already completed.
+     */
+    boolean enqueue(Entry entry) {
+        if (isCompleted(entry.key)) {
+            return false;
+        }
+        Entry existing = pending.get(entry.key);
+        if (existing != null) {
+            entry.attempts = existing.attempts;
+            entry.createdAt = existing.createdAt;
+        }
+        pending.put(entry.key, entry);
+        save();
+        return true;
+    }
+
+    List<Entry> pending(Type type) {
+        List<Entry> result = new ArrayList<>();
+        for (Entry entry : pending.values()) {
+            if (entry.type == type) {
+                result.add(entry);
+            }
+        }
+        return result;
+    }
+
+    void complete(Collection<Entry> entries) {
+        for (Entry entry : entries) {
+            pending.remove(entry.key);
+            completed.remove(entry.key);
+            completed.addLast(entry.key);
+            while (completed.size() > MAX_COMPLETED_KEYS) {
+                completed.removeFirst();
+            }
+        }
+        save();
+    }
+
+    void recordFailure(Collection<Entry> entries) {
+        for (Entry entry : entries) {
+            entry.attempts++;
+        }
+        save();
+    }
+
+    private void load() {
+        if (!file.getBaseFile().exists()) {
+            return;
+        }
+        try {
+            String json = new String(file.readFully(), StandardCharsets.UTF_8);
+            State state = gson.fromJson(json, State.class);
+            if (state == null) {
+                return;
+            }
+            for (Entry entry : state.pending) {
+                if (entry.key != null && entry.type != null && entry.data != null) {
+                    entry.data = restoreNumbers(entry.data);
+                    pending.put(entry.key, entry);
+                }
+            }
+            completed.addAll(state.completed);
+            Log.i(TAG, "Loaded " + pending.size() + " pending billing operations");
+        } catch (IOException | JsonSyntaxException e) {
+            Log.w(TAG, "Discarding unreadable purchase journal", e);
+            file.delete();
+        }
+    }
+
+    private void save() {
+        State state = new State();
+        state.pending.addAll(pending.values());
+        state.completed.addAll(completed);
+        FileOutputStream out = null;
+        try {
+            out = file.startWrite();
+            out.write(gson.toJson(state).getBytes(StandardCharsets.UTF_8));
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist purchase journal", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    /**
+     * Gson reads every JSON number in an untyped map as a double; timestamps must go back to
+     * Firestore as integers.
+     */
+    private static Map<String, Object> restoreNumbers(Map<String, Object> data) {
+        Map<String, Object> restored = new LinkedHashMap<>(data.size());
+        for (Map.Entry<String, Object> field : data.entrySet()) {
+            Object value = field.getValue();
+            if (value instanceof Double && (Double) value == Math.rint((Double) value)) {
+                value = ((Double) value).longValue();
+            }
+            restored.put(field.getKey(), value);
+        }
+        return restored;
+    }
+}
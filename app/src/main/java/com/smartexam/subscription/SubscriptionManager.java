@@ -1,5 +1,7 @@
 package com.smartexam.subscription;
 
+import android.content.Context;
+import android.content.SharedPreferences;
 import android.util.Log;
 
 import com.google.firebase.auth.FirebaseAuth;
@@ -7,29 +9,49 @@ import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
-import com.google.firebase.firestore.ListenerRegistration;
+import com.google.gson.Gson;
 import com.smartexam.models.UserSubscription;
 
-import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Manages subscription state by reading from Firebase.
  * WinDev never decides subscription status - Firebase does.
+ *
+ * Entitlement checks read an {@link EntitlementSnapshot} published through an atomic reference
+ * and persisted to disk. A stale snapshot is still served and refreshed in the background
+ * (stale-while-revalidate), so callers such as PDF rendering never wait on the network.
+ * From {@link #initialize} on, the manager stays subscribed to {@link EntitlementEngine}, whose
+ * listener keeps the snapshot current; reads only happen while that listener is down.
  */
 public class SubscriptionManager {
     private static final String TAG = "SubscriptionManager";
     private static final String USERS_COLLECTION = "users";
     private static final long CACHE_DURATION_MS = TimeUnit.HOURS.toMillis(1); // Cache for 1 hour
+    private static final String PREFS_NAME = "entitlement_prefs";
+    private static final String KEY_SNAPSHOT_JSON = "snapshot_json";
+    // Free mode: no watermark restrictions until 100+ users
+    private static final boolean FREE_MODE = true;
     
     private static SubscriptionManager instance;
     private FirebaseFirestore db;
     private FirebaseAuth auth;
+    private final Gson gson = new Gson();
+    private final ExecutorService diskExecutor = Executors.newSingleThreadExecutor();
+    private SharedPreferences prefs;
     
-    private UserSubscription cachedSubscription;
-    private long cacheTimestamp = 0;
+    private final AtomicReference<CacheEntry> cachedSubscription = new AtomicReference<>();
+    private final AtomicReference<EntitlementSnapshot> snapshot =
+            new AtomicReference<>(EntitlementSnapshot.UNKNOWN);
+    private final AtomicBoolean revalidating = new AtomicBoolean();
     private SubscriptionListener listener;
-    private ListenerRegistration firestoreListener;
+    private EntitlementEngine.Registration engineRegistration;
+    private EntitlementEngine engine;
+    private UserSubscription lastPushed;
 
     public interface SubscriptionListener {
         void onSubscriptionChanged(UserSubscription subscription);
@@ -48,26 +70,110 @@ public class SubscriptionManager {
         return instance;
     }
 
+    /**
+     * Restores the last persisted entitlement snapshot off the main thread and subscribes to the
+     * entitlement listener for the rest of the session. Call once from Application.onCreate; until
+     * the snapshot is restored checks see {@link EntitlementSnapshot#UNKNOWN}.
+     */
+    public void initialize(Context context) {
+        prefs = context.getApplicationContext().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        diskExecutor.execute(() -> {
+            String json = prefs.getString(KEY_SNAPSHOT_JSON, null);
+            if (json == null) {
+                return;
+            }
+            try {
+                EntitlementSnapshot stored = gson.fromJson(json, EntitlementSnapshot.class);
+                // A snapshot fetched while loading must not be replaced by the older disk copy
+                if (stored != null) {
+                    snapshot.compareAndSet(EntitlementSnapshot.UNKNOWN, stored);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Discarding unreadable entitlement snapshot", e);
+            }
+        });
+        engine = EntitlementEngine.getInstance(context);
+        engine.subscribe(entitlement -> {
+            // Trial-only changes republish the same user document; apply each document once
+            UserSubscription pushed = entitlement.getSubscription();
+            if (entitlement.getError() == null && pushed != null && pushed != lastPushed) {
+                lastPushed = pushed;
+                onSubscriptionSnapshot(pushed);
+            }
+        });
+    }
+
+    /**
+     * Current entitlement for the signed-in user without blocking. When the snapshot is older than
+     * the cache duration, it is still returned and a background refresh is started.
+     */
+    public EntitlementSnapshot getEntitlement() {
+        EntitlementMetrics.Call call = EntitlementMetrics.getInstance().begin("SubscriptionManager.getEntitlement");
+        FirebaseUser user = auth.getCurrentUser();
+        EntitlementSnapshot current = snapshot.get();
+        if (user == null) {
+            call.miss().succeeded();
+            return EntitlementSnapshot.UNKNOWN;
+        }
+        if (!current.belongsTo(user.getUid())) {
+            current = EntitlementSnapshot.UNKNOWN;
+        }
+        if (current.isStale(System.currentTimeMillis(), CACHE_DURATION_MS) && !isLive(user.getUid())) {
+            call.miss();
+            revalidate(user);
+        } else {
+            call.hit();
+        }
+        call.succeeded();
+        return current;
+    }
+
+    private void revalidate(FirebaseUser user) {
+        if (!revalidating.compareAndSet(false, true)) {
+            return;
+        }
+        db.collection(USERS_COLLECTION).document(user.getUid()).get()
+            .addOnSuccessListener(documentSnapshot -> {
+                EntitlementMetrics.getInstance().recordReads("SubscriptionManager.revalidate", documentSnapshot);
+                if (documentSnapshot.exists()) {
+                    updateCache(documentSnapshot.toObject(UserSubscription.class));
+                }
+                revalidating.set(false);
+            })
+            .addOnFailureListener(e -> {
+                Log.w(TAG, "Entitlement refresh failed; keeping previous snapshot", e);
+                revalidating.set(false);
+            });
+    }
+
     /**
      * Get current subscription state with caching
      */
-    public void getSubscription(SubscriptionListener callback) {
+    public void getSubscription(SubscriptionListener listener) {
+        EntitlementMetrics.Call call = EntitlementMetrics.getInstance().begin("SubscriptionManager.getSubscription");
+        SubscriptionListener callback = timed(call, listener);
         FirebaseUser user = auth.getCurrentUser();
         if (user == null) {
             callback.onError("User not authenticated");
             return;
         }
 
-        // Check cache first
-        if (isCacheValid()) {
+        // The live listener holds the current document; otherwise check the cache
+        EntitlementEngine.Entitlement live = engine != null ? engine.getLive(user.getUid()) : null;
+        UserSubscription cached = live != null && live.getSubscription() != null
+                ? live.getSubscription() : getCachedSubscription();
+        if (cached != null) {
             Log.d(TAG, "Returning cached subscription data");
-            callback.onSubscriptionChanged(cachedSubscription);
+            call.hit();
+            callback.onSubscriptionChanged(cached);
             return;
         }
 
+        call.miss();
         DocumentReference userRef = db.collection(USERS_COLLECTION).document(user.getUid());
         userRef.get()
             .addOnSuccessListener(documentSnapshot -> {
+                EntitlementMetrics.getInstance().recordReads("SubscriptionManager.getSubscription", documentSnapshot);
                 if (documentSnapshot.exists()) {
                     UserSubscription subscription = documentSnapshot.toObject(UserSubscription.class);
                     updateCache(subscription);
@@ -84,7 +190,36 @@ public class SubscriptionManager {
     }
 
     /**
-     * Listen for real-time subscription updates
+     * True while the engine's listener keeps this user's snapshot current, so age alone does not
+     * call for a read.
+     */
+    private boolean isLive(String uid) {
+        EntitlementEngine.Entitlement live = engine != null ? engine.getLive(uid) : null;
+        return live != null && live.getSubscription() != null;
+    }
+
+    /**
+     * Finishes the metrics call when the listener gets its first answer
+     */
+    private static SubscriptionListener timed(EntitlementMetrics.Call call, SubscriptionListener callback) {
+        return new SubscriptionListener() {
+            @Override
+            public void onSubscriptionChanged(UserSubscription subscription) {
+                call.succeeded();
+                callback.onSubscriptionChanged(subscription);
+            }
+
+            @Override
+            public void onError(String error) {
+                call.failed();
+                callback.onError(error);
+            }
+        };
+    }
+
+    /**
+     * Listen for real-time subscription updates. Shares the {@link EntitlementEngine} listener
+     * rather than opening a second one on the same document.
      */
     public void listenForSubscriptionUpdates(SubscriptionListener callback) {
         FirebaseUser user = auth.getCurrentUser();
@@ -92,26 +227,20 @@ public class SubscriptionManager {
             callback.onError("User not authenticated");
             return;
         }
+        if (engine == null) {
+            callback.onError("SubscriptionManager not initialized");
+            return;
+        }
 
         // Remove existing listener
-        if (firestoreListener != null) {
-            firestoreListener.remove();
-        }
+        stopListening();
 
         this.listener = callback;
-        DocumentReference userRef = db.collection(USERS_COLLECTION).document(user.getUid());
-        
-        firestoreListener = userRef.addSnapshotListener((documentSnapshot, e) -> {
-            if (e != null) {
-                Log.e(TAG, "Listen failed", e);
-                callback.onError("Listen failed: " + e.getMessage());
-                return;
-            }
-
-            if (documentSnapshot != null && documentSnapshot.exists()) {
-                UserSubscription subscription = documentSnapshot.toObject(UserSubscription.class);
-                updateCache(subscription);
-                callback.onSubscriptionChanged(subscription);
+        engineRegistration = engine.subscribe(entitlement -> {
+            if (entitlement.getError() != null) {
+                callback.onError(entitlement.getError());
+            } else if (entitlement.getSubscription() != null) {
+                callback.onSubscriptionChanged(entitlement.getSubscription());
             }
         });
     }
@@ -120,13 +249,21 @@ public class SubscriptionManager {
      * Stop listening for subscription updates
      */
     public void stopListening() {
-        if (firestoreListener != null) {
-            firestoreListener.remove();
-            firestoreListener = null;
+        if (engineRegistration != null) {
+            engineRegistration.remove();
+            engineRegistration = null;
         }
         listener = null;
     }
 
+    /**
+     * Applies a user document pushed by {@link EntitlementEngine} or read by
+     * PaymentConfirmationWatcher.
+     */
+    void onSubscriptionSnapshot(UserSubscription subscription) {
+        updateCache(subscription);
+    }
+
     /**
      * Create trial user in Firebase
      */
@@ -160,19 +297,23 @@ public class SubscriptionManager {
     }
 
     /**
-     * Check if cached data is still valid
+     * Update cached subscription data and publish the matching entitlement snapshot
      */
-    private boolean isCacheValid() {
-        return cachedSubscription != null && 
-               (System.currentTimeMillis() - cacheTimestamp) < CACHE_DURATION_MS;
+    private void updateCache(UserSubscription subscription) {
+        FirebaseUser user = auth.getCurrentUser();
+        long now = System.currentTimeMillis();
+        cachedSubscription.set(new CacheEntry(subscription, now));
+        EntitlementSnapshot next = EntitlementSnapshot.from(user != null ? user.getUid() : null, subscription, now);
+        snapshot.set(next);
+        persist(next);
     }
 
-    /**
-     * Update cached subscription data
-     */
-    private void updateCache(UserSubscription subscription) {
-        this.cachedSubscription = subscription;
-        this.cacheTimestamp = System.currentTimeMillis();
+    private void persist(EntitlementSnapshot value) {
+        if (prefs == null) {
+            return;
+        }
+        String json = gson.toJson(value);
+        diskExecutor.execute(() -> prefs.edit().putString(KEY_SNAPSHOT_JSON, json).apply());
     }
 
     /**
@@ -186,31 +327,48 @@ public class SubscriptionManager {
      * Clear cache (useful for testing or forced refresh)
      */
     public void clearCache() {
-        cachedSubscription = null;
-        cacheTimestamp = 0;
+        cachedSubscription.set(null);
+        snapshot.set(EntitlementSnapshot.UNKNOWN);
+        if (prefs != null) {
+            diskExecutor.execute(() -> prefs.edit().remove(KEY_SNAPSHOT_JSON).apply());
+        }
     }
 
     /**
      * Get cached subscription synchronously (may be null)
      */
     public UserSubscription getCachedSubscription() {
-        return isCacheValid() ? cachedSubscription : null;
+        CacheEntry entry = cachedSubscription.get();
+        return entry != null && System.currentTimeMillis() - entry.timestamp < CACHE_DURATION_MS
+                ? entry.subscription
+                : null;
     }
 
     /**
-     * Check if user can print without watermark
+     * Check if user can print without watermark. Never blocks; safe on the render path.
      * In free mode, always return true until 100+ users
      */
     public boolean canPrintClean() {
-        // Free mode: no watermark restrictions
-        return true;
+        return FREE_MODE || !getEntitlement().shouldApplyWatermark();
     }
 
     /**
      * Check if user is on trial
      */
     public boolean isOnTrial() {
-        UserSubscription sub = getCachedSubscription();
-        return sub != null && sub.isValidTrial();
+        return getEntitlement().isOnTrial();
+    }
+
+    /**
+     * Subscription paired with the time it was read, swapped atomically as one value.
+     */
+    private static final class CacheEntry {
+        final UserSubscription subscription;
+        final long timestamp;
+
+        CacheEntry(UserSubscription subscription, long timestamp) {
+            this.subscription = subscription;
+            this.timestamp = timestamp;
+        }
     }
 }
@@ -1,12 +1,10 @@
 package com.smartexam.subscription;
 
 import android.content.Context;
-import android.provider.Settings;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import com.google.firebase.firestore.FirebaseFirestore;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import com.google.firebase.firestore.Query;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -20,26 +18,55 @@ public class TrialAbuseDetector {
     private static final String TAG = "TrialAbuseDetector";
     private static final int MAX_TRIALS_PER_DEVICE = 1;
     private static final int MAX_TRIALS_PER_IP_RANGE = 10; // Basic IP-based protection
+    private static final long FILTER_OVERLAP_MS = TimeUnit.HOURS.toMillis(1);
+    private static final String METRIC_CHECK_ELIGIBILITY = "TrialAbuseDetector.checkDeviceEligibility";
     
     private final Context context;
     private final FirebaseFirestore firestore;
+    private final UsedDeviceFilter usedDevices;
     
     public TrialAbuseDetector(Context context) {
         this.context = context;
         this.firestore = FirebaseFirestore.getInstance();
+        this.usedDevices = UsedDeviceFilter.getInstance(context);
     }
     
     /**
-     * Checks if device is eligible for a new trial
+     * Checks if this device is eligible for a new trial
+     */
+    public void checkDeviceEligibility(EligibilityCallback callback) {
+        checkDeviceEligibility(DeviceIdentity.getInstance(context).getDeviceHash(), callback);
+    }
+    
+    /**
+     * Checks if device is eligible for a new trial. A definite miss in the local used-device
+     * filter narrows the query to trials started since the filter was generated; possible hits
+     * and an unsynced filter query the device's whole trial history.
      */
     public void checkDeviceEligibility(String deviceHash, EligibilityCallback callback) {
-        Log.d(TAG, "Checking device eligibility for: " + deviceHash.substring(0, 8));
+        Log.d(TAG, "Checking device eligibility for: " + DeviceIdentity.shortForm(deviceHash));
+
+        EntitlementMetrics.Call call = EntitlementMetrics.getInstance().begin(METRIC_CHECK_ELIGIBILITY);
+        UsedDeviceFilter.Check check = usedDevices.check(deviceHash);
+        Query query = firestore.collection("trials").whereEqualTo("device_hash", deviceHash);
+        if (check.verdict == UsedDeviceFilter.Verdict.DEFINITELY_UNUSED) {
+            // Only trials the filter cannot know about, served by the (device_hash, trial_start)
+            // index. trial_start comes from client clocks and the rebuild takes time to page
+            // through trials, so the window reaches back past generatedAt.
+            long since = check.generatedAt - FILTER_OVERLAP_MS;
+            Log.d(TAG, "Device eligibility check: not in used device filter, checking trials since " + since);
+            query = query.whereGreaterThan("trial_start", since);
+            call.hit();
+        } else {
+            call.miss();
+        }
         
         // Query for existing trials with this device hash
-        firestore.collection("trials")
-            .whereEqualTo("device_hash", deviceHash)
+        query.limit(MAX_TRIALS_PER_DEVICE)
             .get()
             .addOnSuccessListener(querySnapshot -> {
+                EntitlementMetrics.getInstance().recordReads(METRIC_CHECK_ELIGIBILITY, querySnapshot);
+                call.succeeded();
                 int existingTrials = querySnapshot.size();
                 boolean isEligible = existingTrials < MAX_TRIALS_PER_DEVICE;
                 
@@ -53,6 +80,7 @@ public class TrialAbuseDetector {
             })
             .addOnFailureListener(e -> {
                 Log.e(TAG, "Failed to check device eligibility", e);
+                call.failed();
                 callback.onError("Failed to verify eligibility: " + e.getMessage());
             });
     }
@@ -82,6 +110,23 @@ public class TrialAbuseDetector {
     public void analyzeUsagePatterns(String uid, PatternAnalysisCallback callback) {
         // This would analyze user behavior patterns
         // For now, implement basic checks
+
+        // The signed-in user's trial is already held by the entitlement listener
+        EntitlementEngine.Entitlement live = EntitlementEngine.getInstance(context).getLive(uid);
+        if (live != null) {
+            TrialStateManager.TrialStateData trial = live.getTrial();
+            if (trial == null) {
+                callback.onAnalysisComplete(true);
+                return;
+            }
+            boolean isSuspicious = analyzeForSuspiciousPatterns(trial.trialStart > 0 ? trial.trialStart : null,
+                    trial.deviceHash);
+            if (isSuspicious) {
+                reportSuspiciousActivity("suspicious_pattern", "Unusual usage pattern detected", trial.deviceHash);
+            }
+            callback.onAnalysisComplete(!isSuspicious);
+            return;
+        }
         
         firestore.collection("trials")
             .document(uid)
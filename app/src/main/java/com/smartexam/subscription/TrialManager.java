@@ -2,7 +2,6 @@ package com.smartexam.subscription;
 
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.provider.Settings;
 import android.util.Log;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
@@ -17,8 +16,6 @@ import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
 
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
@@ -31,6 +28,7 @@ import java.util.concurrent.TimeUnit;
 public class TrialManager {
 
     private static final String TAG = "TrialManager";
+    private static final String METRIC_GET_TRIAL_STATUS = "TrialManager.getTrialStatus";
     private static final String PREFS_NAME = "trial_management";
     private static final String KEY_TRIAL_START = "trial_start_timestamp";
     private static final String KEY_TERMS_ACCEPTED = "terms_accepted_timestamp";
@@ -48,12 +46,22 @@ public class TrialManager {
     private final SharedPreferences preferences;
     private final FirebaseFirestore firestore;
     private final FirebaseAuth auth;
+    private final EntitlementEngine engine;
+    private TrialStateManager.TrialStateData lastPushed;
 
     private TrialManager(Context context) {
         this.context = context.getApplicationContext();
         this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         this.firestore = FirebaseFirestore.getInstance();
         this.auth = FirebaseAuth.getInstance();
+        this.engine = EntitlementEngine.getInstance(this.context);
+        engine.subscribe(entitlement -> {
+            TrialStateManager.TrialStateData pushed = entitlement.getTrial();
+            if (entitlement.getError() == null && pushed != null && pushed != lastPushed) {
+                lastPushed = pushed;
+                onServerRecord(pushed.trialStart);
+            }
+        });
     }
 
     public static synchronized TrialManager getInstance(Context context) {
@@ -71,7 +79,7 @@ public class TrialManager {
         Log.d(TAG, "Starting trial after terms acceptance");
 
         // Generate device hash for binding
-        String deviceHash = generateDeviceHash();
+        String deviceHash = DeviceIdentity.getInstance(context).getDeviceHash();
 
         // Get current Firebase user
         FirebaseUser currentUser = auth.getCurrentUser();
@@ -132,6 +140,7 @@ public class TrialManager {
 
                     // Store locally for offline access
                     storeTrialLocally(currentTime, deviceHash, true);
+                    UsedDeviceFilter.getInstance(context).add(deviceHash);
 
                     callback.onSuccess(new TrialStatus(
                             currentTime,
@@ -161,23 +170,54 @@ public class TrialManager {
     }
 
     /**
-     * Gets current trial status with server verification when possible
+     * Applies a trial record pushed by {@link EntitlementEngine}, which also counts as a server
+     * sync so {@link #getTrialStatus} does not fetch the same document again.
      */
-    public void getTrialStatus(@NonNull TrialStatusCallback callback) {
+    void onServerRecord(long trialStart) {
+        if (trialStart > 0) {
+            storeTrialLocally(trialStart, preferences.getString(KEY_DEVICE_HASH, ""), true);
+        }
+    }
+
+    /**
+     * Gets current trial status with server verification when possible. While the entitlement
+     * listener is live, its copy of the server record is the verified status.
+     */
+    public void getTrialStatus(@NonNull TrialStatusCallback listener) {
+        EntitlementMetrics.Call call = EntitlementMetrics.getInstance().begin(METRIC_GET_TRIAL_STATUS);
+        TrialStatusCallback callback = status -> {
+            call.succeeded();
+            listener.onStatusReceived(status);
+        };
+
+        FirebaseUser currentUser = auth.getCurrentUser();
+        EntitlementEngine.Entitlement live = currentUser != null ? engine.getLive(currentUser.getUid()) : null;
+        if (live != null) {
+            call.hit();
+            TrialStateManager.TrialStateData trial = live.getTrial();
+            callback.onStatusReceived(trial == null
+                    ? new TrialStatus(0, 0, false, "No trial found")
+                    : new TrialStatus(trial.trialStart, trial.trialEnd, trial.isActive(), "Server verified trial status"));
+            return;
+        }
+
         // Check local status first
         TrialStatus localStatus = getLocalTrialStatus();
 
         if (localStatus == null) {
             // No trial found locally
+            call.hit();
             callback.onStatusReceived(new TrialStatus(0, 0, false, "No trial found"));
             return;
         }
 
         // Try to verify with server if online and due for sync
         if (shouldSyncWithServer()) {
+            call.miss();
             verifyTrialWithServer(localStatus, callback);
         } else {
             // Return local status
+            call.hit();
             callback.onStatusReceived(localStatus);
         }
     }
@@ -214,6 +254,7 @@ public class TrialManager {
                 .document(currentUser.getUid())
                 .get()
                 .addOnSuccessListener(documentSnapshot -> {
+                    EntitlementMetrics.getInstance().recordReads(METRIC_GET_TRIAL_STATUS, documentSnapshot);
                     if (documentSnapshot.exists()) {
                         TrialStatus serverStatus = parseTrialStatusFromDocument(documentSnapshot);
 
@@ -258,44 +299,16 @@ public class TrialManager {
         return (currentTime - lastSync) > SYNC_THRESHOLD_MS;
     }
 
-    /**
-     * Generates device hash for binding
-     */
-    private String generateDeviceHash() {
-        String deviceId = Settings.Secure.getString(
-                context.getContentResolver(),
-                Settings.Secure.ANDROID_ID);
-
-        try {
-            MessageDigest digest = MessageDigest.getInstance("SHA-256");
-            byte[] hash = digest.digest(deviceId.getBytes());
-            StringBuilder hexString = new StringBuilder();
-
-            for (byte b : hash) {
-                String hex = Integer.toHexString(0xff & b);
-                if (hex.length() == 1) {
-                    hexString.append('0');
-                }
-                hexString.append(hex);
-            }
-
-            return hexString.toString();
-        } catch (NoSuchAlgorithmException e) {
-            Log.e(TAG, "Failed to generate device hash", e);
-            return deviceId; // Fallback to raw device ID
-        }
-    }
-
     /**
      * Checks if current device matches trial device
      */
     public boolean isDeviceValidForTrial() {
         String storedDeviceHash = preferences.getString(KEY_DEVICE_HASH, "");
-        String currentDeviceHash = generateDeviceHash();
+        DeviceIdentity identity = DeviceIdentity.getInstance(context);
 
-        boolean isValid = storedDeviceHash.equals(currentDeviceHash);
-        Log.d(TAG, "Device validation: stored=" + storedDeviceHash.substring(0, 8) +
-                ", current=" + currentDeviceHash.substring(0, 8) + ", valid=" + isValid);
+        boolean isValid = identity.matches(storedDeviceHash);
+        Log.d(TAG, "Device validation: stored=" + DeviceIdentity.shortForm(storedDeviceHash) +
+                ", current=" + DeviceIdentity.shortForm(identity.getDeviceHash()) + ", valid=" + isValid);
 
         return isValid;
     }
@@ -15,7 +15,9 @@ import com.google.firebase.firestore.DocumentReference;
 import com.google.firebase.firestore.DocumentSnapshot;
 import com.google.firebase.firestore.FirebaseFirestore;
 import com.google.firebase.firestore.Query;
+import java.io.File;
 import java.util.HashMap;
+import java.util.Locale;
 import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
@@ -27,9 +29,11 @@ public class TrialStateManager {
     
     private static final String TAG = "TrialStateManager";
     private static final String PREFS_NAME = "trial_state";
+    // Written by earlier versions in an unreadable format; removed on first start
     private static final String KEY_TRIAL_STATE = "trial_state_json";
     private static final String KEY_LAST_SYNC = "last_sync_timestamp";
-    private static final String KEY_CONFLICT_RESOLUTION = "conflict_resolution_count";
+    private static final String STATE_FILE = "trial_state.bin";
+    private static final String METRIC_GET_TRIAL_STATE = "TrialStateManager.getTrialState";
     
     // Trial states
     public enum TrialState {
@@ -89,14 +93,41 @@ public class TrialStateManager {
     private final SharedPreferences preferences;
     private final FirebaseFirestore firestore;
     private final FirebaseAuth auth;
-    private final TrialManager trialManager;
+    private final TrialStateStore store;
+    private final EntitlementEngine engine;
+    private TrialStateData lastPushed;
     
     private TrialStateManager(Context context) {
+        this(context, FirebaseFirestore.getInstance(), FirebaseAuth.getInstance(),
+                new File(context.getApplicationContext().getFilesDir(), STATE_FILE),
+                EntitlementEngine.getInstance(context.getApplicationContext()));
+    }
+
+    /**
+     * Runs against an explicit backend and state file, e.g. the Firestore emulator in
+     * TrialStateManagerTest. Without an engine every answer comes from the store or the server.
+     */
+    TrialStateManager(Context context, FirebaseFirestore firestore, FirebaseAuth auth, File stateFile,
+            @Nullable EntitlementEngine engine) {
         this.context = context.getApplicationContext();
         this.preferences = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
-        this.firestore = FirebaseFirestore.getInstance();
-        this.auth = FirebaseAuth.getInstance();
-        this.trialManager = TrialManager.getInstance(context);
+        this.firestore = firestore;
+        this.auth = auth;
+        this.store = new TrialStateStore(stateFile);
+        if (preferences.contains(KEY_TRIAL_STATE)) {
+            preferences.edit().remove(KEY_TRIAL_STATE).remove(KEY_LAST_SYNC).apply();
+        }
+        // Trial documents from the session-long listener keep the local store current
+        this.engine = engine;
+        if (engine != null) {
+            engine.subscribe(entitlement -> {
+                TrialStateData pushed = entitlement.getTrial();
+                if (entitlement.getError() == null && pushed != null && pushed != lastPushed) {
+                    lastPushed = pushed;
+                    onServerState(entitlement.getUserId(), pushed);
+                }
+            });
+        }
     }
     
     public static synchronized TrialStateManager getInstance(Context context) {
@@ -107,24 +138,65 @@ public class TrialStateManager {
     }
     
     /**
-     * Gets current trial state with automatic conflict resolution
+     * True if the trial was started on this device
      */
-    public void getTrialState(@NonNull TrialStateCallback callback) {
-        TrialStateData localState = getLocalTrialState();
+    public boolean isBoundToThisDevice(@NonNull TrialStateData state) {
+        return DeviceIdentity.getInstance(context).matches(state.deviceHash);
+    }
+    
+    /**
+     * Gets current trial state with automatic conflict resolution. While the entitlement listener
+     * is live it already holds the server document, so no read is made.
+     */
+    public void getTrialState(@NonNull TrialStateCallback listener) {
+        EntitlementMetrics.Call call = EntitlementMetrics.getInstance().begin(METRIC_GET_TRIAL_STATE);
+        TrialStateCallback callback = timed(call, listener);
+        FirebaseUser currentUser = auth.getCurrentUser();
+        EntitlementEngine.Entitlement live = currentUser != null && engine != null
+                ? engine.getLive(currentUser.getUid()) : null;
+        if (live != null) {
+            call.hit();
+            callback.onStateReceived(live.getTrial() != null ? live.getTrial()
+                    : new TrialStateData(TrialState.NONE, 0, 0, live.getUpdatedAt(), "", true, new HashMap<>()));
+            return;
+        }
+        TrialStateData localState = getLocalTrialState(uidOf(currentUser));
         
         if (localState == null || !localState.isValid()) {
             // No valid local state - fetch from server
+            call.miss();
             fetchTrialStateFromServer(callback);
         } else {
             // Have local state - check if sync is needed
             if (shouldSyncWithServer(localState)) {
+                call.miss();
                 syncTrialStateWithServer(localState, callback);
             } else {
                 // Return cached state
+                call.hit();
                 callback.onStateReceived(localState);
             }
         }
     }
+
+    /**
+     * Finishes the metrics call when the callback gets its answer
+     */
+    private static TrialStateCallback timed(EntitlementMetrics.Call call, TrialStateCallback callback) {
+        return new TrialStateCallback() {
+            @Override
+            public void onStateReceived(TrialStateData state) {
+                call.succeeded();
+                callback.onStateReceived(state);
+            }
+
+            @Override
+            public void onError(String errorMessage) {
+                call.failed();
+                callback.onError(errorMessage);
+            }
+        };
+    }
     
     /**
      * Updates trial state with conflict resolution
@@ -133,13 +205,14 @@ public class TrialStateManager {
         Log.d(TAG, "Updating trial state to: " + newState.state);
         
         // Validate state transition
-        if (!isValidStateTransition(getLocalTrialState(), newState)) {
+        String uid = uidOf(auth.getCurrentUser());
+        if (!isValidStateTransition(getLocalTrialState(uid), newState)) {
             callback.onError("Invalid state transition");
             return;
         }
         
         // Update locally first for immediate response
-        storeTrialStateLocally(newState);
+        storeTrialStateLocally(uid, newState);
         
         // Then sync to server
         syncTrialStateToServer(newState, callback);
@@ -153,60 +226,31 @@ public class TrialStateManager {
     }
     
     /**
-     * Gets trial state from local storage
+     * Stores a server state pushed by {@link EntitlementEngine}. The listener delivered it just
+     * now, so it is stamped as synced and {@link #getTrialState} can serve it without a fetch
+     * after the listener stops.
+     */
+    void onServerState(@NonNull String uid, @NonNull TrialStateData serverState) {
+        storeTrialStateLocally(uid, new TrialStateData(serverState.state, serverState.trialStart,
+                serverState.trialEnd, System.currentTimeMillis(), serverState.deviceHash, true,
+                serverState.metadata));
+    }
+
+    /**
+     * Gets the account's trial state from local storage
      */
     @Nullable
-    private TrialStateData getLocalTrialState() {
-        try {
-            String stateJson = preferences.getString(KEY_TRIAL_STATE, null);
-            if (stateJson == null) return null;
-            
-            // Parse JSON (simplified - in production, use Gson)
-            Map<String, Object> data = parseStateJson(stateJson);
-            if (data == null) return null;
-            
-            TrialState state = TrialState.valueOf((String) data.get("state"));
-            long trialStart = (long) data.get("trialStart");
-            long trialEnd = (long) data.get("trialEnd");
-            long lastSync = (long) data.get("lastSync");
-            String deviceHash = (String) data.get("deviceHash");
-            boolean serverVerified = (boolean) data.get("serverVerified");
-            @SuppressWarnings("unchecked")
-            Map<String, Object> metadata = (Map<String, Object>) data.get("metadata");
-            
-            return new TrialStateData(state, trialStart, trialEnd, lastSync, 
-                                   deviceHash, serverVerified, metadata);
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to parse local trial state", e);
-            return null;
-        }
+    private TrialStateData getLocalTrialState(@NonNull String uid) {
+        return store.read(uid);
     }
     
     /**
-     * Stores trial state locally
+     * Stores trial state locally for the account it was read or written for, which may no
+     * longer be the signed-in one when a server call completes
      */
-    private void storeTrialStateLocally(@NonNull TrialStateData state) {
-        try {
-            Map<String, Object> data = new HashMap<>();
-            data.put("state", state.state.name());
-            data.put("trialStart", state.trialStart);
-            data.put("trialEnd", state.trialEnd);
-            data.put("lastSync", state.lastSync);
-            data.put("deviceHash", state.deviceHash);
-            data.put("serverVerified", state.serverVerified);
-            data.put("metadata", state.metadata);
-            
-            String stateJson = serializeStateData(data);
-            
-            SharedPreferences.Editor editor = preferences.edit();
-            editor.putString(KEY_TRIAL_STATE, stateJson);
-            editor.putLong(KEY_LAST_SYNC, System.currentTimeMillis());
-            editor.apply();
-            
-            Log.d(TAG, "Trial state stored locally: " + state.state);
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to store trial state locally", e);
-        }
+    private void storeTrialStateLocally(@NonNull String uid, @NonNull TrialStateData state) {
+        store.write(uid, state);
+        Log.d(TAG, "Trial state stored locally: " + state.state);
     }
     
     /**
@@ -223,22 +267,23 @@ public class TrialStateManager {
             .document(currentUser.getUid())
             .get()
             .addOnSuccessListener(documentSnapshot -> {
+                EntitlementMetrics.getInstance().recordReads(METRIC_GET_TRIAL_STATE, documentSnapshot);
                 if (documentSnapshot.exists()) {
-                    TrialStateData serverState = parseTrialStateFromDocument(documentSnapshot);
-                    storeTrialStateLocally(serverState);
+                    TrialStateData serverState = parseTrialStateFromDocument(documentSnapshot, System.currentTimeMillis());
+                    storeTrialStateLocally(currentUser.getUid(), serverState);
                     callback.onStateReceived(serverState);
                 } else {
                     // No trial found on server
                     TrialStateData noTrialState = new TrialStateData(TrialState.NONE, 0, 0, 
                         System.currentTimeMillis(), "", false, new HashMap<>());
-                    storeTrialStateLocally(noTrialState);
+                    storeTrialStateLocally(currentUser.getUid(), noTrialState);
                     callback.onStateReceived(noTrialState);
                 }
             })
             .addOnFailureListener(e -> {
                 Log.e(TAG, "Failed to fetch trial state from server", e);
                 // Return local state if available
-                TrialStateData localState = getLocalTrialState();
+                TrialStateData localState = getLocalTrialState(currentUser.getUid());
                 if (localState != null) {
                     callback.onStateReceived(localState);
                 } else {
@@ -261,20 +306,21 @@ public class TrialStateManager {
             .document(currentUser.getUid())
             .get()
             .addOnSuccessListener(documentSnapshot -> {
+                EntitlementMetrics.getInstance().recordReads(METRIC_GET_TRIAL_STATE, documentSnapshot);
                 if (documentSnapshot.exists()) {
-                    TrialStateData serverState = parseTrialStateFromDocument(documentSnapshot);
+                    TrialStateData serverState = parseTrialStateFromDocument(documentSnapshot, System.currentTimeMillis());
                     
                     // Resolve conflicts
                     TrialStateData resolvedState = resolveStateConflict(localState, serverState);
                     
                     if (resolvedState != localState) {
-                        storeTrialStateLocally(resolvedState);
+                        storeTrialStateLocally(currentUser.getUid(), resolvedState);
                     }
                     
                     callback.onStateReceived(resolvedState);
                 } else {
                     // Server has no record - possible abuse or new device
-                    handleMissingServerRecord(localState, callback);
+                    handleMissingServerRecord(currentUser.getUid(), localState, callback);
                 }
             })
             .addOnFailureListener(e -> {
@@ -351,7 +397,8 @@ public class TrialStateManager {
     /**
      * Handles missing server record
      */
-    private void handleMissingServerRecord(@NonNull TrialStateData localState, @NonNull TrialStateCallback callback) {
+    private void handleMissingServerRecord(@NonNull String uid, @NonNull TrialStateData localState,
+            @NonNull TrialStateCallback callback) {
         // Check if this is legitimate (new device) or abuse
         if (localState.serverVerified && localState.trialStart > 0) {
             // Legitimate local state - sync to server
@@ -360,11 +407,19 @@ public class TrialStateManager {
             // Possible abuse - reset to NONE
             TrialStateData resetState = new TrialStateData(TrialState.NONE, 0, 0, 
                 System.currentTimeMillis(), "", false, new HashMap<>());
-            storeTrialStateLocally(resetState);
+            storeTrialStateLocally(uid, resetState);
             callback.onStateReceived(resetState);
         }
     }
     
+    /**
+     * The key of the local record: the uid, or empty while signed out
+     */
+    @NonNull
+    private static String uidOf(@Nullable FirebaseUser user) {
+        return user != null ? user.getUid() : "";
+    }
+    
     /**
      * Checks if sync with server is needed
      */
@@ -417,12 +472,21 @@ public class TrialStateManager {
     /**
      * Parses trial state from Firestore document
      */
-    private TrialStateData parseTrialStateFromDocument(@NonNull DocumentSnapshot document) {
+    static TrialStateData parseTrialStateFromDocument(@NonNull DocumentSnapshot document, long now) {
         String stateStr = document.getString("state");
-        TrialState state = stateStr != null ? TrialState.valueOf(stateStr) : TrialState.NONE;
+        if (stateStr == null && document.getString("status") != null) {
+            // Records created by TrialManager only carry the lowercase status field
+            stateStr = document.getString("status").toUpperCase(Locale.ROOT);
+        }
+        TrialState state;
+        try {
+            state = stateStr != null ? TrialState.valueOf(stateStr) : TrialState.NONE;
+        } catch (IllegalArgumentException e) {
+            state = TrialState.NONE;
+        }
         long trialStart = document.getLong("trial_start") != null ? document.getLong("trial_start") : 0;
         long trialEnd = document.getLong("trial_end") != null ? document.getLong("trial_end") : 0;
-        long lastSync = document.getLong("last_sync") != null ? document.getLong("last_sync") : System.currentTimeMillis();
+        long lastSync = document.getLong("last_sync") != null ? document.getLong("last_sync") : now;
         String deviceHash = document.getString("device_hash") != null ? document.getString("device_hash") : "";
         
         @SuppressWarnings("unchecked")
@@ -431,38 +495,6 @@ public class TrialStateManager {
         return new TrialStateData(state, trialStart, trialEnd, lastSync, deviceHash, true, metadata);
     }
     
-    /**
-     * Simplified JSON parsing (use Gson in production)
-     */
-    private Map<String, Object> parseStateJson(String json) {
-        // This is a simplified implementation
-        // In production, use Gson or similar JSON library
-        Map<String, Object> data = new HashMap<>();
-        try {
-            // Basic parsing - implement proper JSON parsing
-            data.put("state", "ACTIVE");
-            data.put("trialStart", System.currentTimeMillis());
-            data.put("trialEnd", System.currentTimeMillis() + TimeUnit.DAYS.toMillis(14));
-            data.put("lastSync", System.currentTimeMillis());
-            data.put("deviceHash", "");
-            data.put("serverVerified", false);
-            data.put("metadata", new HashMap<>());
-        } catch (Exception e) {
-            Log.e(TAG, "Failed to parse JSON", e);
-            return null;
-        }
-        return data;
-    }
-    
-    /**
-     * Simplified JSON serialization (use Gson in production)
-     */
-    private String serializeStateData(Map<String, Object> data) {
-        // This is a simplified implementation
-        // In production, use Gson or similar JSON library
-        return data.toString();
-    }
-    
     /**
      * Callback interface for trial state operations
      */
@@ -0,0 +1,243 @@
+package com.smartexam.subscription;
+
+import android.util.AtomicFile;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.CRC32;
+
+/**
+ * Local copy of {@link TrialStateManager.TrialStateData} in a small versioned binary file:
+ *
+ * <pre>
+ * int magic, byte version, UTF uid, state record, long crc32(of everything before it)
+ * </pre>
+ *
+ * Writes go through {@link AtomicFile}, so a crash leaves either the old or the new file. A file
+ * with a bad magic, unknown version or checksum mismatch is deleted and reads as absent, which
+ * sends the caller back to the server. The record belongs to the account that wrote it: reading
+ * as any other uid clears it and reads as absent, so a trial never carries over to the next user
+ * signed in on the device. The decoded record is kept in memory after the first read, so repeated
+ * checks do not touch the disk.
+ */
+class TrialStateStore {
+
+    private static final String TAG = "TrialStateStore";
+    private static final int MAGIC = 0x54525354; // "TRST"
+    // Version 1 had no uid; such files are discarded and refetched
+    private static final byte VERSION = 2;
+
+    // Metadata value tags
+    private static final byte TAG_NULL = 0;
+    private static final byte TAG_STRING = 1;
+    private static final byte TAG_LONG = 2;
+    private static final byte TAG_DOUBLE = 3;
+    private static final byte TAG_BOOLEAN = 4;
+
+    private final AtomicFile file;
+    private final ExecutorService writer = Executors.newSingleThreadExecutor();
+    private volatile Record cached;
+    private volatile boolean loaded;
+
+    TrialStateStore(File file) {
+        this.file = new AtomicFile(file);
+    }
+
+    /**
+     * The state stored for {@code uid}, or null if there is none or it belongs to another account.
+     */
+    @Nullable
+    TrialStateManager.TrialStateData read(@NonNull String uid) {
+        if (!loaded) {
+            synchronized (this) {
+                if (!loaded) {
+                    cached = readFromDisk();
+                    loaded = true;
+                }
+            }
+        }
+        Record record = cached;
+        if (record == null) {
+            return null;
+        }
+        if (!record.uid.equals(uid)) {
+            Log.d(TAG, "Trial state belongs to another account; discarding it");
+            discard(record);
+            return null;
+        }
+        return record.state;
+    }
+
+    /**
+     * Updates the in-memory copy immediately and persists it in the background, in call order.
+     */
+    void write(@NonNull String uid, TrialStateManager.TrialStateData state) {
+        Record record = new Record(uid, state);
+        synchronized (this) {
+            cached = record;
+            loaded = true;
+        }
+        writer.execute(() -> writeToDisk(record));
+    }
+
+    /**
+     * Deletes the record, unless a write has replaced it since it was read.
+     */
+    private synchronized void discard(Record record) {
+        if (cached == record) {
+            cached = null;
+            writer.execute(file::delete);
+        }
+    }
+
+    @Nullable
+    private Record readFromDisk() {
+        if (!file.getBaseFile().exists()) {
+            return null;
+        }
+        try {
+            return decode(file.readFully());
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Discarding unreadable trial state", e);
+            file.delete();
+            return null;
+        }
+    }
+
+    private void writeToDisk(Record record) {
+        FileOutputStream out = null;
+        try {
+            byte[] bytes = encode(record.uid, record.state);
+            out = file.startWrite();
+            out.write(bytes);
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist trial state", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+
+    static byte[] encode(@NonNull String uid, TrialStateManager.TrialStateData state) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeByte(VERSION);
+        out.writeUTF(uid);
+        out.writeUTF(state.state.name());
+        out.writeLong(state.trialStart);
+        out.writeLong(state.trialEnd);
+        out.writeLong(state.lastSync);
+        out.writeUTF(state.deviceHash != null ? state.deviceHash : "");
+        out.writeBoolean(state.serverVerified);
+        out.writeShort(state.metadata.size());
+        for (Map.Entry<String, Object> entry : state.metadata.entrySet()) {
+            out.writeUTF(entry.getKey());
+            writeValue(out, entry.getValue());
+        }
+        out.flush();
+
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeLong(crc.getValue());
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static Record decode(byte[] data) throws IOException {
+        if (data.length < Long.BYTES + 5) {
+            throw new IOException("Trial state file too short");
+        }
+        int bodyLength = data.length - Long.BYTES;
+        CRC32 crc = new CRC32();
+        crc.update(data, 0, bodyLength);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a trial state file");
+        }
+        byte version = in.readByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported trial state version " + version);
+        }
+        String uid = in.readUTF();
+        TrialStateManager.TrialState state = TrialStateManager.TrialState.valueOf(in.readUTF());
+        long trialStart = in.readLong();
+        long trialEnd = in.readLong();
+        long lastSync = in.readLong();
+        String deviceHash = in.readUTF();
+        boolean serverVerified = in.readBoolean();
+        int metadataCount = in.readUnsignedShort();
+        Map<String, Object> metadata = new HashMap<>();
+        for (int i = 0; i < metadataCount; i++) {
+            metadata.put(in.readUTF(), readValue(in));
+        }
+        if (data.length - in.available() != bodyLength || in.readLong() != crc.getValue()) {
+            throw new IOException("Trial state checksum mismatch");
+        }
+        return new Record(uid, new TrialStateManager.TrialStateData(state, trialStart, trialEnd, lastSync,
+                deviceHash, serverVerified, metadata));
+    }
+
+    private static void writeValue(DataOutputStream out, Object value) throws IOException {
+        if (value == null) {
+            out.writeByte(TAG_NULL);
+        } else if (value instanceof Boolean) {
+            out.writeByte(TAG_BOOLEAN);
+            out.writeBoolean((Boolean) value);
+        } else if (value instanceof Long || value instanceof Integer || value instanceof Short
+                || value instanceof Byte) {
+            out.writeByte(TAG_LONG);
+            out.writeLong(((Number) value).longValue());
+        } else if (value instanceof Number) {
+            out.writeByte(TAG_DOUBLE);
+            out.writeDouble(((Number) value).doubleValue());
+        } else {
+            // Nested maps, lists and timestamps from Firestore are kept as their string form
+            out.writeByte(TAG_STRING);
+            out.writeUTF(value.toString());
+        }
+    }
+
+    private static Object readValue(DataInputStream in) throws IOException {
+        byte tag = in.readByte();
+        switch (tag) {
+            case TAG_NULL:
+                return null;
+            case TAG_STRING:
+                return in.readUTF();
+            case TAG_LONG:
+                return in.readLong();
+            case TAG_DOUBLE:
+                return in.readDouble();
+            case TAG_BOOLEAN:
+                return in.readBoolean();
+            default:
+                throw new IOException("Unknown metadata tag " + tag);
+        }
+    }
+
+    /**
+     * A stored state and the uid of the account it belongs to.
+     */
+    static final class Record {
+        final String uid;
+        final TrialStateManager.TrialStateData state;
+
+        Record(String uid, TrialStateManager.TrialStateData state) {
+            this.uid = uid;
+            this.state = state;
+        }
+    }
+}
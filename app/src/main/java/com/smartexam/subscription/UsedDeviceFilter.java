@@ -0,0 +1,281 @@
+package com.smartexam.subscription;
+
+import android.content.Context;
+import android.util.AtomicFile;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import com.google.android.gms.tasks.Tasks;
+import com.google.firebase.storage.FirebaseStorage;
+import com.google.firebase.storage.StorageException;
+import com.google.firebase.storage.StorageMetadata;
+import com.google.firebase.storage.StorageReference;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Local copy of the Bloom filter of device hashes that have already started a trial.
+ * TrialAbuseDetector consults it before querying the {@code trials} collection: a possible hit is
+ * confirmed against the device's whole trial history, while a definite miss only covers trials
+ * started up to the filter's {@code generatedAt}, so the detector asks Firestore for just the
+ * trials started since. That keeps a device that started a trial after the last publish, then
+ * cleared its data, from passing as unused.
+ * <p>
+ * The filter is built by the admin portal ({@code POST /api/device-filter}) and published to
+ * Storage at {@link #STORAGE_PATH}, so clients never page through {@code trials} or receive other
+ * users' device hashes. Every {@link #SYNC_INTERVAL_MS} the client compares the blob's
+ * {@code generatedAt} metadata with its copy and downloads it only when newer. A filter generated
+ * more than {@link #MAX_STALENESS_MS} ago, or none at all, answers {@link Verdict#UNKNOWN}, so
+ * callers go to the server whenever publishing stops.
+ */
+class UsedDeviceFilter {
+
+    private static final String TAG = "UsedDeviceFilter";
+    static final String STORAGE_PATH = "device_filter/used_devices.bloom";
+    private static final String FILE_NAME = "used_devices.bloom";
+    // Header shared with smartexam-admin/lib/used-device-filter.ts
+    static final int MAGIC = 0x55444246; // "UDBF"
+    static final byte VERSION = 2;
+    private static final long MAX_BLOB_BYTES = 4 * 1024 * 1024;
+    private static final long SYNC_INTERVAL_MS = TimeUnit.HOURS.toMillis(6);
+    private static final long MAX_STALENESS_MS = TimeUnit.DAYS.toMillis(1);
+    private static final long REQUEST_TIMEOUT_S = 30;
+    private static final String METRIC_SYNC = "UsedDeviceFilter.sync";
+
+    enum Verdict {
+        DEFINITELY_UNUSED,
+        POSSIBLY_USED,
+        UNKNOWN
+    }
+
+    /**
+     * A verdict together with the generatedAt of the filter that gave it, read under one lock so
+     * a sync landing in between cannot pair one filter's miss with another's coverage.
+     */
+    static final class Check {
+        final Verdict verdict;
+        /** Trials started after this are not in the filter; 0 with {@link Verdict#UNKNOWN}. */
+        final long generatedAt;
+
+        Check(Verdict verdict, long generatedAt) {
+            this.verdict = verdict;
+            this.generatedAt = generatedAt;
+        }
+    }
+
+    private static UsedDeviceFilter instance;
+
+    private final AtomicFile file;
+    private final StorageReference blob;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean syncing = new AtomicBoolean();
+    // Guarded by this
+    private BloomFilter filter;
+    private long generatedAt;
+    private long lastSyncAt;
+
+    private UsedDeviceFilter(Context context) {
+        this.file = new AtomicFile(new File(context.getApplicationContext().getFilesDir(), FILE_NAME));
+        this.blob = FirebaseStorage.getInstance().getReference(STORAGE_PATH);
+        executor.execute(this::load);
+        syncIfDue();
+    }
+
+    static synchronized UsedDeviceFilter getInstance(Context context) {
+        if (instance == null) {
+            instance = new UsedDeviceFilter(context);
+        }
+        return instance;
+    }
+
+    /**
+     * Answers from memory only, and starts a background sync when one is due.
+     */
+    Check check(@NonNull String deviceHash) {
+        Check check;
+        synchronized (this) {
+            if (filter == null || System.currentTimeMillis() - generatedAt > MAX_STALENESS_MS) {
+                check = new Check(Verdict.UNKNOWN, 0);
+            } else {
+                check = new Check(filter.mightContain(deviceHash) ? Verdict.POSSIBLY_USED
+                        : Verdict.DEFINITELY_UNUSED, generatedAt);
+            }
+        }
+        syncIfDue();
+        return check;
+    }
+
+    /**
+     * Records a trial started on this device, so the filter covers it before the next published
+     * one does.
+     */
+    void add(@NonNull String deviceHash) {
+        executor.execute(() -> {
+            synchronized (this) {
+                if (filter == null || !filter.put(deviceHash)) {
+                    return;
+                }
+            }
+            save();
+        });
+    }
+
+    void syncIfDue() {
+        synchronized (this) {
+            if (System.currentTimeMillis() - lastSyncAt < SYNC_INTERVAL_MS) {
+                return;
+            }
+        }
+        if (syncing.compareAndSet(false, true)) {
+            executor.execute(() -> {
+                try {
+                    sync();
+                } finally {
+                    syncing.set(false);
+                }
+            });
+        }
+    }
+
+    private void sync() {
+        long known;
+        synchronized (this) {
+            // Requested before the persisted filter was loaded
+            if (System.currentTimeMillis() - lastSyncAt < SYNC_INTERVAL_MS) {
+                return;
+            }
+            known = filter != null ? generatedAt : 0;
+        }
+        EntitlementMetrics.Call call = EntitlementMetrics.getInstance().begin(METRIC_SYNC);
+        try {
+            StorageMetadata metadata = Tasks.await(blob.getMetadata(), REQUEST_TIMEOUT_S, TimeUnit.SECONDS);
+            long published = parseLong(metadata.getCustomMetadata("generatedAt"));
+            if (published > 0 && published <= known) {
+                call.hit();
+            } else {
+                call.miss();
+                byte[] bytes = Tasks.await(blob.getBytes(MAX_BLOB_BYTES), REQUEST_TIMEOUT_S, TimeUnit.SECONDS);
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+                long blobGeneratedAt = readHeader(in);
+                BloomFilter downloaded = BloomFilter.read(in);
+                synchronized (this) {
+                    filter = downloaded;
+                    generatedAt = blobGeneratedAt;
+                }
+                Log.d(TAG, "Downloaded used device filter: " + downloaded.count + " devices, "
+                        + bytes.length + " bytes");
+            }
+            synchronized (this) {
+                lastSyncAt = System.currentTimeMillis();
+            }
+            save();
+            call.succeeded();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof StorageException
+                    && ((StorageException) e.getCause()).getErrorCode() == StorageException.ERROR_OBJECT_NOT_FOUND) {
+                // Nothing published yet; checks keep answering UNKNOWN until there is
+                Log.i(TAG, "No used device filter published");
+                synchronized (this) {
+                    lastSyncAt = System.currentTimeMillis();
+                }
+                call.succeeded();
+            } else {
+                Log.w(TAG, "Used device filter sync failed", e);
+                call.failed();
+            }
+        } catch (IOException | TimeoutException e) {
+            Log.w(TAG, "Used device filter sync failed", e);
+            call.failed();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            call.failed();
+        }
+    }
+
+    private static long parseLong(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(value);
+        } catch (NumberFormatException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Reads the header shared by the published blob and the local file, returning generatedAt.
+     */
+    static long readHeader(DataInputStream in) throws IOException {
+        if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+            throw new IOException("Not a used device filter");
+        }
+        return in.readLong();
+    }
+
+    private void load() {
+        BloomFilter loaded = null;
+        long loadedGeneratedAt = 0;
+        long loadedSyncAt = 0;
+        if (file.getBaseFile().exists()) {
+            try {
+                DataInputStream in = new DataInputStream(new ByteArrayInputStream(file.readFully()));
+                loadedGeneratedAt = readHeader(in);
+                loaded = BloomFilter.read(in);
+                loadedSyncAt = in.readLong();
+            } catch (IOException | RuntimeException e) {
+                // Includes the version 1 file, which held a client-built filter
+                Log.w(TAG, "Discarding unreadable used device filter", e);
+                file.delete();
+                loaded = null;
+                loadedGeneratedAt = 0;
+                loadedSyncAt = 0;
+            }
+        }
+        synchronized (this) {
+            filter = loaded;
+            generatedAt = loadedGeneratedAt;
+            lastSyncAt = loadedSyncAt;
+        }
+    }
+
+    /**
+     * Writes the published layout followed by the local sync time.
+     */
+    private void save() {
+        FileOutputStream out = null;
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream data = new DataOutputStream(bytes);
+            synchronized (this) {
+                if (filter == null) {
+                    return;
+                }
+                data.writeInt(MAGIC);
+                data.writeByte(VERSION);
+                data.writeLong(generatedAt);
+                filter.write(data);
+                data.writeLong(lastSyncAt);
+            }
+            data.flush();
+            out = file.startWrite();
+            out.write(bytes.toByteArray());
+            file.finishWrite(out);
+        } catch (IOException e) {
+            Log.e(TAG, "Failed to persist used device filter", e);
+            if (out != null) {
+                file.failWrite(out);
+            }
+        }
+    }
+}
@@ -0,0 +1,191 @@
+package com.smartexam.sync;
+
+import android.util.LruCache;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.models.PurchasedPack;
+import com.smartexam.models.Question;
+import com.smartexam.models.SyncState;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Process-wide cache for SyncManager. Each tier is a bounded, thread-safe {@link LruCache} whose
+ * misses fall through to Room: sync times to the sync_state table, purchased packs and questions
+ * to their own tables. A new process therefore starts from local state instead of Firestore.
+ * Reads that miss memory hit the database, so call from a background thread.
+ */
+public class SyncCache {
+
+    private static final int MAX_USERS = 4;
+    private static final int MAX_CACHED_QUESTIONS = 2000;
+
+    private static volatile SyncCache INSTANCE;
+
+    private final AppDatabase db;
+
+    private final LruCache<String, Long> lastSyncTimes = new LruCache<String, Long>(MAX_USERS) {
+        @Override
+        protected Long create(String userId) {
+            SyncState state = db.syncStateDao().get(SyncState.userKey(userId));
+            return state != null && state.getSyncedAt() > 0 ? state.getSyncedAt() : null;
+        }
+    };
+
+    private final LruCache<String, List<PurchasedPack>> purchasedPacks =
+            new LruCache<String, List<PurchasedPack>>(MAX_USERS) {
+        @Override
+        protected List<PurchasedPack> create(String userId) {
+            List<PurchasedPack> packs = db.purchasedPackDao().getPurchasedPacksForUser(userId);
+            return packs.isEmpty() ? null : Collections.unmodifiableList(packs);
+        }
+    };
+
+    private final LruCache<String, List<Question>> questions =
+            new LruCache<String, List<Question>>(MAX_CACHED_QUESTIONS) {
+        @Override
+        protected int sizeOf(String packId, List<Question> value) {
+            return Math.max(1, value.size());
+        }
+
+        @Override
+        protected List<Question> create(String packId) {
+            List<Question> local = db.questionDao().getQuestionsByPackId(packId);
+            return local.isEmpty() ? null : Collections.unmodifiableList(local);
+        }
+    };
+
+    // Package-private for isolated instances such as SyncLoadTest; the app uses getInstance
+    SyncCache(AppDatabase db) {
+        this.db = db;
+    }
+
+    public static SyncCache getInstance(AppDatabase db) {
+        if (INSTANCE == null) {
+            synchronized (SyncCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new SyncCache(db);
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Last successful sync time for the user, or 0 if never synced on this device.
+     */
+    public long getLastSyncTime(String userId) {
+        Long time = lastSyncTimes.get(userId);
+        return time != null ? time : 0;
+    }
+
+    /**
+     * Records a successful sync. The persistent copy is written by SyncManager in the same
+     * transaction as the synced data.
+     */
+    public void putLastSyncTime(String userId, long time) {
+        lastSyncTimes.put(userId, time);
+    }
+
+    public List<PurchasedPack> getPurchasedPacks(String userId) {
+        return purchasedPacks.get(userId);
+    }
+
+    public void putPurchasedPacks(String userId, List<PurchasedPack> packs) {
+        purchasedPacks.put(userId, Collections.unmodifiableList(packs));
+    }
+
+    public List<Question> getQuestions(String packId) {
+        return questions.get(packId);
+    }
+
+    public void putQuestions(String packId, List<Question> packQuestions) {
+        questions.put(packId, Collections.unmodifiableList(packQuestions));
+    }
+
+    public void invalidateQuestions(String packId) {
+        questions.remove(packId);
+    }
+
+    /**
+     * Drops the memory tier only; Room remains the source of truth.
+     */
+    public void clearMemory() {
+        lastSyncTimes.evictAll();
+        purchasedPacks.evictAll();
+        questions.evictAll();
+    }
+
+    /**
+     * Drops both tiers: the memory tier and the persisted sync times and watermarks, so the next
+     * sync for any user starts cold. Synced packs and questions stay in their tables. Writes to
+     * Room, so call from a background thread.
+     */
+    public void clear() {
+        db.syncStateDao().clear();
+        clearMemory();
+    }
+
+    public void invalidateUser(String userId) {
+        lastSyncTimes.remove(userId);
+        purchasedPacks.remove(userId);
+    }
+
+    public Stats getStats() {
+        return new Stats(lastSyncTimes, purchasedPacks, questions);
+    }
+
+    /**
+     * Hit and miss counts since process start. A memory hit was served from the LRU; a
+     * persistent hit missed memory but was loaded from Room; a miss found nothing locally.
+     */
+    public static class Stats {
+        private final long memoryHits;
+        private final long persistentHits;
+        private final long misses;
+        private final long evictions;
+
+        Stats(LruCache<?, ?>... tiers) {
+            long memory = 0;
+            long persistent = 0;
+            long missed = 0;
+            long evicted = 0;
+            for (LruCache<?, ?> tier : tiers) {
+                memory += tier.hitCount();
+                persistent += tier.createCount();
+                missed += tier.missCount() - tier.createCount();
+                evicted += tier.evictionCount();
+            }
+            this.memoryHits = memory;
+            this.persistentHits = persistent;
+            this.misses = missed;
+            this.evictions = evicted;
+        }
+
+        public long getMemoryHits() {
+            return memoryHits;
+        }
+
+        public long getPersistentHits() {
+            return persistentHits;
+        }
+
+        public long getMisses() {
+            return misses;
+        }
+
+        public long getEvictions() {
+            return evictions;
+        }
+
+        public double getHitRatio() {
+            long total = memoryHits + persistentHits + misses;
+            return total == 0 ? 0 : (double) (memoryHits + persistentHits) / total;
+        }
+
+        @Override
+        public String toString() {
+            return "memory=" + memoryHits + " persistent=" + persistentHits + " miss=" + misses
+                    + " evicted=" + evictions;
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package com.smartexam.sync;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Single-flight gate for sync requests. The first caller for a key runs the sync; callers that
+ * arrive while it is in flight are attached to it and receive the same result. Once the result
+ * is delivered the key is released, so a later request starts a fresh sync.
+ */
+public class SyncCoalescer {
+
+    /**
+     * The sync to run for the leading caller; it must eventually call exactly one method of done.
+     */
+    public interface Work {
+        void run(SyncManager.SyncCallback done);
+    }
+
+    private final ConcurrentHashMap<String, List<SyncManager.SyncCallback>> inFlight = new ConcurrentHashMap<>();
+
+    public void execute(String key, SyncManager.SyncCallback callback, Work work) {
+        boolean[] leader = new boolean[1];
+        inFlight.compute(key, (k, waiters) -> {
+            if (waiters == null) {
+                waiters = new ArrayList<>();
+                leader[0] = true;
+            }
+            waiters.add(callback);
+            return waiters;
+        });
+        if (!leader[0]) {
+            return;
+        }
+
+        try {
+            work.run(new SyncManager.SyncCallback() {
+                @Override
+                public void onSyncSuccess(int itemCount) {
+                    for (SyncManager.SyncCallback waiter : release(key)) {
+                        waiter.onSyncSuccess(itemCount);
+                    }
+                }
+
+                @Override
+                public void onSyncFailed(String errorMessage) {
+                    for (SyncManager.SyncCallback waiter : release(key)) {
+                        waiter.onSyncFailed(errorMessage);
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            for (SyncManager.SyncCallback waiter : release(key)) {
+                waiter.onSyncFailed(e.getMessage());
+            }
+        }
+    }
+
+    public boolean isInFlight(String key) {
+        return inFlight.containsKey(key);
+    }
+
+    private List<SyncManager.SyncCallback> release(String key) {
+        List<SyncManager.SyncCallback> waiters = inFlight.remove(key);
+        return waiters != null ? waiters : new ArrayList<>();
+    }
+}
@@ -2,21 +2,30 @@ package com.smartexam.sync;
 
 import android.util.Log;
 import androidx.annotation.NonNull;
-import com.google.android.gms.tasks.OnCompleteListener;
-import com.google.android.gms.tasks.Task;
 import com.google.android.gms.tasks.Tasks;
 import com.google.firebase.auth.FirebaseAuth;
 import com.google.firebase.auth.FirebaseUser;
 import com.google.firebase.firestore.DocumentSnapshot;
+import com.google.firebase.firestore.FieldPath;
 import com.google.firebase.firestore.FirebaseFirestore;
+import com.google.firebase.firestore.Query;
 import com.google.firebase.firestore.QuerySnapshot;
 import com.smartexam.database.AppDatabase;
 import com.smartexam.models.Question;
 import com.smartexam.models.PurchasedPack;
+import com.smartexam.models.QuestionPack;
+import com.smartexam.models.SyncState;
+import com.smartexam.utils.StartupCache;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 
 public class SyncManager {
@@ -24,24 +33,38 @@ public class SyncManager {
     private static final String TAG = "SyncManager";
     private static final long SYNC_INTERVAL_MINUTES = 30; // Sync every 30 minutes max
     private static final long CACHE_VALIDITY_MINUTES = 60; // Cache valid for 1 hour
+    private static final int IN_QUERY_LIMIT = 10; // Firestore whereIn on documentId accepts up to 10 values
+    private static final String FORCED_KEY_SUFFIX = "/forced";
     
     private final AppDatabase db;
     private final FirebaseFirestore firestore;
     private final FirebaseAuth mAuth;
+    // Shared by every SyncManager so syncs from different screens are serialised and coalesced
+    private static final ExecutorService SYNC_EXECUTOR = Executors.newSingleThreadExecutor();
+    private static final SyncCoalescer COALESCER = new SyncCoalescer();
     
-    // Local cache to prevent repeated Firebase reads
-    private final Map<String, Long> lastSyncTimestamps = new HashMap<>();
-    private final Map<String, List<PurchasedPack>> purchasedPacksCache = new HashMap<>();
-    private final Map<String, List<Question>> questionsCache = new HashMap<>();
+    // Bounded memory tier over Room to prevent repeated Firebase reads
+    private final SyncCache cache;
 
     public SyncManager(AppDatabase db) {
+        this(db, FirebaseFirestore.getInstance(), FirebaseAuth.getInstance(), SyncCache.getInstance(db));
+    }
+
+    /**
+     * Runs against an explicit backend and cache, e.g. the Firestore emulator in SyncLoadTest.
+     */
+    SyncManager(AppDatabase db, FirebaseFirestore firestore, FirebaseAuth auth, SyncCache cache) {
         this.db = db;
-        this.firestore = FirebaseFirestore.getInstance();
-        this.mAuth = FirebaseAuth.getInstance();
+        this.firestore = firestore;
+        this.mAuth = auth;
+        this.cache = cache;
     }
 
     /**
-     * Optimized sync with local caching and rate limiting
+     * Rate-limited delta sync of the user's purchased packs. Only purchases newer than the user's
+     * watermark and packs whose updatedAt/version moved past their own watermark are read, so the
+     * cost follows what changed rather than the size of the library. Callbacks run on the sync
+     * executor, not the main thread.
      */
     public void syncPurchasedPacks(SyncCallback callback) {
         FirebaseUser user = mAuth.getCurrentUser();
@@ -52,217 +75,342 @@ public class SyncManager {
         }
 
         String userId = user.getUid();
-        long currentTime = System.currentTimeMillis();
-        
-        // Check if we recently synced (rate limiting)
-        Long lastSync = lastSyncTimestamps.get(userId);
-        if (lastSync != null && (currentTime - lastSync) < TimeUnit.MINUTES.toMillis(SYNC_INTERVAL_MINUTES)) {
-            Log.d(TAG, "Using cached purchased packs data (rate limited)");
-            List<PurchasedPack> cachedPacks = purchasedPacksCache.get(userId);
-            if (cachedPacks != null) {
-                callback.onSyncSuccess(cachedPacks.size());
-                return;
+        COALESCER.execute(SyncState.userKey(userId), callback, done -> SYNC_EXECUTOR.execute(() -> {
+            // Check if we recently synced (rate limiting); survives restarts via sync_state
+            long lastSync = cache.getLastSyncTime(userId);
+            if (System.currentTimeMillis() - lastSync < TimeUnit.MINUTES.toMillis(SYNC_INTERVAL_MINUTES)) {
+                List<PurchasedPack> cachedPacks = cache.getPurchasedPacks(userId);
+                if (cachedPacks != null) {
+                    Log.d(TAG, "Using cached purchased packs data (rate limited)");
+                    done.onSyncSuccess(cachedPacks.size());
+                    return;
+                }
             }
-        }
+            runDeltaSync(userId, done);
+        }));
+    }
 
-        // Check local database first (avoid Firebase read)
-        List<PurchasedPack> localPacks = db.purchasedPackDao().getAllPurchasedPacks();
-        if (!localPacks.isEmpty()) {
-            Log.d(TAG, "Using local purchased packs data: " + localPacks.size() + " packs");
-            purchasedPacksCache.put(userId, localPacks);
-            lastSyncTimestamps.put(userId, currentTime);
-            callback.onSyncSuccess(localPacks.size());
+    /**
+     * Delta sync of a single purchased pack's content. Fails without reading anything if the pack
+     * is not among the user's purchases. Concurrent calls for the same user and pack share one sync.
+     */
+    public void syncPack(String packId, SyncCallback callback) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        if (user == null) {
+            callback.onSyncFailed("User not authenticated");
             return;
         }
+        String userId = user.getUid();
+        String key = SyncState.userKey(userId) + "/" + SyncState.packKey(packId);
+        COALESCER.execute(key, callback, done -> SYNC_EXECUTOR.execute(() -> {
+            if (!db.purchasedPackDao().isPackPurchased(userId, packId)) {
+                Log.w(TAG, "Refusing to sync unpurchased pack: " + packId);
+                done.onSyncFailed("Pack not purchased");
+                return;
+            }
+            SyncMetrics.Operation op = SyncMetrics.getInstance().begin("syncPack", packId);
+            try {
+                Set<String> packIds = new LinkedHashSet<>();
+                packIds.add(packId);
+                int changed = applyPackChanges(userId, packIds, new ArrayList<>(), false, 0, op);
+                op.succeeded();
+                done.onSyncSuccess(changed);
+            } catch (Exception e) {
+                op.failed(e);
+                Log.e(TAG, "Pack sync failed: " + packId, e);
+                done.onSyncFailed("Error syncing pack: " + e.getMessage());
+            }
+        }));
+    }
 
-        // Only fetch from Firebase if local data is empty
-        Log.d(TAG, "Fetching purchased packs from Firebase for user: " + userId);
-        fetchPurchasedPacksFromFirebase(userId, callback);
+    /**
+     * Runs the delta sync inline; callers must already be on SYNC_EXECUTOR.
+     */
+    private void runDeltaSync(String userId, SyncCallback callback) {
+        SyncMetrics.Operation op = SyncMetrics.getInstance().begin("deltaSync", null);
+        try {
+            int changed = deltaSync(userId, op);
+            cache.putPurchasedPacks(userId, db.purchasedPackDao().getPurchasedPacksForUser(userId));
+            cache.putLastSyncTime(userId, System.currentTimeMillis());
+            op.succeeded();
+            Log.d(TAG, "Sync cache: " + cache.getStats());
+            callback.onSyncSuccess(changed);
+        } catch (Exception e) {
+            op.failed(e);
+            Log.e(TAG, "Delta sync failed for user: " + userId, e);
+            callback.onSyncFailed("Error syncing purchased packs: " + e.getMessage());
+        }
     }
 
     /**
-     * Fetch from Firebase only when absolutely necessary
+     * Fetches everything changed since the stored watermarks and applies it in one Room
+     * transaction. Blocks; must run on the sync executor.
+     *
+     * @return number of purchases, packs and questions applied
      */
-    private void fetchPurchasedPacksFromFirebase(String userId, SyncCallback callback) {
-        firestore.collection("users")
-            .document(userId)
-            .collection("purchased_packs")
-            .get()
-            .addOnCompleteListener(task -> {
-                if (task.isSuccessful()) {
-                    List<PurchasedPack> purchasedPacks = new ArrayList<>();
-                    List<String> packIds = new ArrayList<>();
-                    
-                    // Process documents efficiently
-                    for (DocumentSnapshot document : task.getResult()) {
-                        try {
-                            PurchasedPack pack = document.toObject(PurchasedPack.class);
-                            if (pack != null) {
-                                pack.setPackId(document.getId());
-                                purchasedPacks.add(pack);
-                                packIds.add(pack.getPackId());
-                            }
-                        } catch (Exception e) {
-                            Log.e(TAG, "Error parsing pack document: " + document.getId(), e);
-                        }
-                    }
-                    
-                    // Cache the results
-                    purchasedPacksCache.put(userId, purchasedPacks);
-                    lastSyncTimestamps.put(userId, System.currentTimeMillis());
-                    
-                    // Save locally for future use
-                    savePurchasedPacksLocally(purchasedPacks);
-                    
-                    // Batch fetch questions for all packs (avoid multiple reads)
-                    if (!packIds.isEmpty()) {
-                        fetchQuestionsForPacksBatch(packIds, callback);
-                    } else {
-                        callback.onSyncSuccess(purchasedPacks.size());
-                    }
-                    
-                } else {
-                    Log.e(TAG, "Error fetching purchased packs", task.getException());
-                    callback.onSyncFailed("Error fetching purchased packs: " + task.getException().getMessage());
+    private int deltaSync(String userId, SyncMetrics.Operation op) throws Exception {
+        String userKey = SyncState.userKey(userId);
+        SyncState userState = db.syncStateDao().get(userKey);
+        long userWatermark = userState != null ? userState.getWatermark() : 0;
+
+        // 1. New purchases since the user watermark. The bound is inclusive so purchases sharing the
+        // watermark's timestamp are not lost; ones already stored are dropped by packId below.
+        Query purchasesQuery = firestore.collection("users").document(userId).collection("purchased_packs");
+        if (userWatermark > 0) {
+            purchasesQuery = purchasesQuery.whereGreaterThanOrEqualTo("purchasedAt", userWatermark);
+        }
+        Set<String> packIds = new LinkedHashSet<>(db.purchasedPackDao().getPurchasedPackIds(userId));
+        Map<String, PurchasedPack> newPurchases = new LinkedHashMap<>();
+        QuerySnapshot purchases = fetch(purchasesQuery, op);
+        long parseStart = System.nanoTime();
+        for (DocumentSnapshot document : purchases) {
+            try {
+                PurchasedPack pack = document.toObject(PurchasedPack.class);
+                if (pack != null && !packIds.contains(document.getId())) {
+                    pack.setPackId(document.getId());
+                    pack.setUserId(userId);
+                    newPurchases.putIfAbsent(pack.getPackId(), pack);
                 }
-            });
+            } catch (Exception e) {
+                Log.e(TAG, "Error parsing pack document: " + document.getId(), e);
+            }
+        }
+        op.addParse(System.nanoTime() - parseStart);
+
+        packIds.addAll(newPurchases.keySet());
+        return applyPackChanges(userId, packIds, new ArrayList<>(newPurchases.values()), true, userWatermark, op);
     }
 
     /**
-     * Batch fetch questions for multiple packs in one operation
+     * Steps 2-4 of a delta sync for the given packs: read changed pack documents and their changed
+     * questions, then apply them together with any new purchases and watermarks in one transaction.
+     *
+     * @param advanceUser whether the user's sync_state watermark advances over the inserted
+     *                    purchases; false for a pack-only sync
      */
-    private void fetchQuestionsForPacksBatch(List<String> packIds, SyncCallback callback) {
-        List<Task<QuerySnapshot>> tasks = new ArrayList<>();
-        
-        // Create tasks for all question collections
+    private int applyPackChanges(String userId, Set<String> packIds, List<PurchasedPack> newPurchases,
+            boolean advanceUser, long userWatermark, SyncMetrics.Operation op) throws Exception {
+        // 2. Pack documents changed since their watermarks
+        Map<String, SyncState> packStates = new HashMap<>();
+        List<String> packKeys = new ArrayList<>();
         for (String packId : packIds) {
-            // Check cache first
-            if (questionsCache.containsKey(packId)) {
-                continue; // Skip if already cached
+            packKeys.add(SyncState.packKey(packId));
+        }
+        if (!packKeys.isEmpty()) {
+            for (SyncState state : db.syncStateDao().getAll(packKeys)) {
+                packStates.put(state.getKey(), state);
             }
-            
-            Task<QuerySnapshot> task = firestore.collection("question_packs")
-                .document(packId)
-                .collection("questions")
-                .get();
-            tasks.add(task);
         }
-        
-        // Execute all tasks in parallel (more efficient than sequential)
-        Tasks.whenAllComplete(tasks)
-            .addOnCompleteListener(results -> {
-                List<Question> allQuestions = new ArrayList<>();
-                int successCount = 0;
-                
-                for (int i = 0; i < tasks.size(); i++) {
-                    Task<QuerySnapshot> task = tasks.get(i);
-                    String packId = packIds.get(i);
-                    
-                    if (task.isSuccessful()) {
-                        List<Question> packQuestions = new ArrayList<>();
-                        for (DocumentSnapshot document : task.getResult()) {
-                            try {
-                                Question question = document.toObject(Question.class);
-                                if (question != null) {
-                                    question.setId(document.getId());
-                                    packQuestions.add(question);
-                                    allQuestions.add(question);
-                                }
-                            } catch (Exception e) {
-                                Log.e(TAG, "Error parsing question document: " + document.getId(), e);
-                            }
-                        }
-                        
-                        // Cache questions for this pack
-                        questionsCache.put(packId, packQuestions);
-                        successCount++;
-                    } else {
-                        Log.e(TAG, "Error fetching questions for pack: " + packId, task.getException());
-                    }
+        List<QuestionPack> changedPacks = fetchChangedPacks(new ArrayList<>(packIds), packStates, op);
+
+        // 3. Questions changed inside those packs. They live in the top-level questions collection,
+        // listed by the pack's questionIds, as the admin portal and PackDownloadWorker store them.
+        Map<String, List<Question>> changedQuestions = new HashMap<>();
+        Set<String> syncedPacks = new HashSet<>();
+        List<SyncState> newStates = new ArrayList<>();
+        long now = System.currentTimeMillis();
+        int questionCount = 0;
+        for (QuestionPack pack : changedPacks) {
+            SyncState state = packStates.get(SyncState.packKey(pack.getId()));
+            boolean fullRead = state == null || state.getWatermark() == 0 || pack.getVersion() != state.getVersion();
+            Set<String> stored = new HashSet<>(db.questionDao().getQuestionIdsByPackId(pack.getId()));
+            // Questions newly listed on the pack may predate its watermark, so they are read in full
+            List<String> unseen = new ArrayList<>();
+            List<String> known = new ArrayList<>();
+            if (pack.getQuestionIds() != null) {
+                for (String questionId : pack.getQuestionIds()) {
+                    (fullRead || !stored.contains(questionId) ? unseen : known).add(questionId);
                 }
-                
-                Log.d(TAG, "Batch fetch completed: " + successCount + "/" + packIds.size() + " packs successful");
-                
-                // Save all questions locally
-                if (!allQuestions.isEmpty()) {
-                    saveQuestionsLocally(allQuestions);
+            }
+            List<Question> questions = new ArrayList<>();
+            long packWatermark = pack.getUpdatedAt();
+            packWatermark = Math.max(packWatermark, fetchQuestions(pack.getId(), unseen, 0, questions, op));
+            if (!known.isEmpty()) {
+                packWatermark = Math.max(packWatermark,
+                        fetchQuestions(pack.getId(), known, state.getWatermark(), questions, op));
+            }
+            changedQuestions.put(pack.getId(), questions);
+            questionCount += questions.size();
+            if (stored.isEmpty() && questions.isEmpty()) {
+                // Nothing to offer offline; no watermark either, so the next sync tries again
+                Log.w(TAG, "No questions found for pack " + pack.getId() + "; leaving it unsynced");
+                continue;
+            }
+            syncedPacks.add(pack.getId());
+            newStates.add(new SyncState(SyncState.packKey(pack.getId()), packWatermark, pack.getVersion(), now));
+        }
+
+        // 4. Apply atomically: a failed sync leaves both data and watermarks untouched
+        int[] inserted = new int[1];
+        long insertStart = System.nanoTime();
+        db.runInTransaction(() -> {
+            db.questionPackDao().upsertAll(changedPacks);
+            long insertedUpTo = userWatermark;
+            long skippedFrom = Long.MAX_VALUE;
+            for (PurchasedPack purchase : newPurchases) {
+                // purchased_packs references question_packs; skip purchases whose pack is unpublished
+                if (db.questionPackDao().getPackById(purchase.getPackId()) != null) {
+                    // Questions are shared between accounts; another account may already have synced them
+                    purchase.setSynced(packStates.containsKey(SyncState.packKey(purchase.getPackId())));
+                    db.purchasedPackDao().insert(purchase);
+                    insertedUpTo = Math.max(insertedUpTo, purchase.getPurchasedAt());
+                    inserted[0]++;
+                } else {
+                    skippedFrom = Math.min(skippedFrom, purchase.getPurchasedAt());
                 }
-                
-                callback.onSyncSuccess(allQuestions.size());
-            });
+            }
+            for (List<Question> questions : changedQuestions.values()) {
+                db.questionDao().upsertAll(questions);
+            }
+            for (String packId : syncedPacks) {
+                db.purchasedPackDao().updateSyncStatus(userId, packId, true);
+            }
+            if (advanceUser) {
+                // Never move past a skipped purchase, so the next sync fetches it again
+                newStates.add(new SyncState(SyncState.userKey(userId), Math.min(insertedUpTo, skippedFrom), 0, now));
+            }
+            db.syncStateDao().upsertAll(newStates);
+        });
+        op.addInsert(System.nanoTime() - insertStart);
+        for (QuestionPack pack : changedPacks) {
+            cache.invalidateQuestions(pack.getId());
+        }
+        if (questionCount > 0) {
+            StartupCache.getInstance().invalidate();
+        }
+
+        if (inserted[0] < newPurchases.size()) {
+            Log.w(TAG, (newPurchases.size() - inserted[0]) + " purchases wait for their pack to be published");
+        }
+        Log.d(TAG, "Delta sync applied: " + inserted[0] + " purchases, " + changedPacks.size()
+                + " packs, " + questionCount + " questions");
+        return inserted[0] + changedPacks.size() + questionCount;
     }
 
     /**
-     * Get questions from local cache or database (avoid Firebase reads)
+     * Reads pack documents in chunks of {@link #IN_QUERY_LIMIT}, filtered server-side to those
+     * updated after the oldest watermark in the chunk and then client-side per pack.
      */
-    public List<Question> getQuestionsForPack(String packId) {
-        // Check memory cache first
-        List<Question> cachedQuestions = questionsCache.get(packId);
-        if (cachedQuestions != null) {
-            Log.d(TAG, "Using cached questions for pack: " + packId);
-            return cachedQuestions;
+    private List<QuestionPack> fetchChangedPacks(List<String> packIds, Map<String, SyncState> packStates,
+            SyncMetrics.Operation op) throws Exception {
+        List<QuestionPack> changed = new ArrayList<>();
+        for (int start = 0; start < packIds.size(); start += IN_QUERY_LIMIT) {
+            List<String> chunk = packIds.subList(start, Math.min(start + IN_QUERY_LIMIT, packIds.size()));
+            long since = Long.MAX_VALUE;
+            for (String packId : chunk) {
+                SyncState state = packStates.get(SyncState.packKey(packId));
+                since = Math.min(since, state != null ? state.getWatermark() : 0);
+            }
+
+            Query query = firestore.collection("question_packs").whereIn(FieldPath.documentId(), chunk);
+            if (since > 0) {
+                query = query.whereGreaterThan("updatedAt", since);
+            }
+            QuerySnapshot snapshot = fetch(query, op);
+            long parseStart = System.nanoTime();
+            for (DocumentSnapshot document : snapshot) {
+                QuestionPack pack = document.toObject(QuestionPack.class);
+                if (pack == null) {
+                    continue;
+                }
+                pack.setId(document.getId());
+                pack.setPurchased(true);
+                SyncState state = packStates.get(SyncState.packKey(pack.getId()));
+                if (state == null || pack.getUpdatedAt() > state.getWatermark()
+                        || pack.getVersion() != state.getVersion()) {
+                    changed.add(pack);
+                }
+            }
+            op.addParse(System.nanoTime() - parseStart);
         }
-        
-        // Check local database
-        List<Question> localQuestions = db.questionDao().getQuestionsByPackId(packId);
-        if (!localQuestions.isEmpty()) {
-            Log.d(TAG, "Using local questions for pack: " + packId + " (" + localQuestions.size() + " questions)");
-            // Cache for future use
-            questionsCache.put(packId, localQuestions);
-            return localQuestions;
+        return changed;
+    }
+
+    /**
+     * Reads the given questions of a pack from the top-level collection in chunks of
+     * {@link #IN_QUERY_LIMIT}, the same {@code in} queries PackDownloadWorker uses. When
+     * {@code since} is positive only questions updated after it are returned.
+     *
+     * @return the newest updatedAt among the questions read, or 0 if none
+     */
+    private long fetchQuestions(String packId, List<String> questionIds, long since, List<Question> out,
+            SyncMetrics.Operation op) throws Exception {
+        long newest = 0;
+        for (int start = 0; start < questionIds.size(); start += IN_QUERY_LIMIT) {
+            List<String> chunk = questionIds.subList(start, Math.min(start + IN_QUERY_LIMIT, questionIds.size()));
+            Query query = firestore.collection("questions").whereIn(FieldPath.documentId(), chunk);
+            if (since > 0) {
+                query = query.whereGreaterThan("updatedAt", since);
+            }
+            QuerySnapshot snapshot = fetch(query, op);
+            long parseStart = System.nanoTime();
+            for (DocumentSnapshot document : snapshot) {
+                try {
+                    Question question = document.toObject(Question.class);
+                    if (question != null) {
+                        question.setId(document.getId());
+                        question.setPackId(packId);
+                        question.setFromMarketplace(true);
+                        out.add(question);
+                        newest = Math.max(newest, question.getUpdatedAt());
+                    }
+                } catch (Exception e) {
+                    Log.e(TAG, "Error parsing question document: " + document.getId(), e);
+                }
+            }
+            op.addParse(System.nanoTime() - parseStart);
         }
-        
-        Log.d(TAG, "No questions found locally for pack: " + packId);
-        return new ArrayList<>();
+        return newest;
     }
 
     /**
-     * Check if pack is purchased locally (avoid Firebase read)
+     * Runs the query, recording its wall time and billed reads.
      */
-    public boolean isPackPurchased(String packId) {
-        return db.purchasedPackDao().isPackPurchased(packId);
+    private static QuerySnapshot fetch(Query query, SyncMetrics.Operation op) throws Exception {
+        long start = System.nanoTime();
+        QuerySnapshot snapshot = Tasks.await(query.get());
+        op.addFetch(System.nanoTime() - start);
+        op.addReads(snapshot);
+        return snapshot;
     }
 
     /**
-     * Save purchased packs to local Room database
+     * Get questions from the memory tier or database (avoid Firebase reads). Call off the main thread.
      */
-    private void savePurchasedPacksLocally(List<PurchasedPack> packs) {
-        new Thread(() -> {
-            try {
-                db.purchasedPackDao().insertAll(packs);
-                Log.d(TAG, "Saved " + packs.size() + " purchased packs to local database");
-            } catch (Exception e) {
-                Log.e(TAG, "Error saving purchased packs locally", e);
-            }
-        }).start();
+    public List<Question> getQuestionsForPack(String packId) {
+        List<Question> questions = cache.getQuestions(packId);
+        if (questions != null) {
+            return questions;
+        }
+        Log.d(TAG, "No questions found locally for pack: " + packId);
+        return new ArrayList<>();
+    }
+
+    public SyncCache.Stats getCacheStats() {
+        return cache.getStats();
     }
 
     /**
-     * Save questions to local Room database
+     * Check if pack is purchased locally by the signed-in user (avoid Firebase read)
      */
-    private void saveQuestionsLocally(List<Question> questions) {
-        new Thread(() -> {
-            try {
-                db.questionDao().insertAll(questions);
-                Log.d(TAG, "Saved " + questions.size() + " questions to local database");
-            } catch (Exception e) {
-                Log.e(TAG, "Error saving questions locally", e);
-            }
-        }).start();
+    public boolean isPackPurchased(String packId) {
+        FirebaseUser user = mAuth.getCurrentUser();
+        return user != null && db.purchasedPackDao().isPackPurchased(user.getUid(), packId);
     }
 
     /**
-     * Clear cache (useful for logout or refresh)
+     * Clear cache (useful for logout or refresh). Memory and the persisted sync times and
+     * watermarks are dropped on the sync executor, after any sync already queued.
      */
     public void clearCache() {
-        lastSyncTimestamps.clear();
-        purchasedPacksCache.clear();
-        questionsCache.clear();
-        Log.d(TAG, "Cache cleared");
+        SYNC_EXECUTOR.execute(() -> {
+            cache.clear();
+            Log.d(TAG, "Cache cleared");
+        });
     }
 
     /**
-     * Force refresh from Firebase (bypass cache)
+     * Force a delta sync now, bypassing the rate limit. Watermarks are kept, so only changes are read.
      */
     public void forceRefresh(SyncCallback callback) {
         FirebaseUser user = mAuth.getCurrentUser();
@@ -271,13 +419,12 @@ public class SyncManager {
             return;
         }
         
-        // Clear cache for this user
+        // Skip the rate limit; watermarks still bound what is read. A key of its own, so a forced
+        // refresh never joins a rate-limited sync that may answer from the cache
         String userId = user.getUid();
-        lastSyncTimestamps.remove(userId);
-        purchasedPacksCache.remove(userId);
-        
-        // Force sync
-        syncPurchasedPacks(callback);
+        cache.invalidateUser(userId);
+        COALESCER.execute(SyncState.userKey(userId) + FORCED_KEY_SUFFIX, callback,
+                done -> SYNC_EXECUTOR.execute(() -> runDeltaSync(userId, done)));
     }
 
     /**
@@ -312,6 +459,7 @@ public class SyncManager {
         if (questionsArray != null) {
             new Thread(() -> {
                 db.questionDao().insertAll(java.util.Arrays.asList(questionsArray));
+                StartupCache.getInstance().invalidate();
                 Log.d(TAG, "Processed mock pack with " + questionsArray.length + " questions");
             }).start();
         }
@@ -0,0 +1,231 @@
+package com.smartexam.sync;
+
+import com.google.firebase.firestore.QuerySnapshot;
+import com.google.gson.Gson;
+import com.google.gson.GsonBuilder;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Structured metrics for sync, pack downloads and billing round trips. Each operation is
+ * measured by an {@link Operation} and, when finished, stored as a {@link Record} in a fixed-size
+ * ring buffer so memory stays bounded; running totals and failures per pack cover the whole process
+ * lifetime. Read by the Firebase test screen and exported there as JSON.
+ */
+public class SyncMetrics {
+
+    private static final int CAPACITY = 200;
+    private static final SyncMetrics INSTANCE = new SyncMetrics();
+
+    private final Record[] ring = new Record[CAPACITY];
+    private int next;
+    private int size;
+    private long totalReads;
+    private long totalBytes;
+    private long totalOperations;
+    private final Map<String, Integer> failuresByPack = new HashMap<>();
+
+    private SyncMetrics() {
+    }
+
+    public static SyncMetrics getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts measuring an operation.
+     *
+     * @param packId the pack it concerns, or null for a user-wide sync
+     */
+    public Operation begin(String name, String packId) {
+        return new Operation(this, name, packId);
+    }
+
+    private synchronized void record(Record record) {
+        ring[next] = record;
+        next = (next + 1) % CAPACITY;
+        size = Math.min(size + 1, CAPACITY);
+        totalOperations++;
+        totalReads += record.reads;
+        totalBytes += record.bytes;
+        if (!record.success && record.packId != null) {
+            failuresByPack.merge(record.packId, 1, Integer::sum);
+        }
+    }
+
+    /**
+     * Buffered records, oldest first.
+     */
+    public synchronized List<Record> getRecords() {
+        List<Record> records = new ArrayList<>(size);
+        int start = (next - size + CAPACITY) % CAPACITY;
+        for (int i = 0; i < size; i++) {
+            records.add(ring[(start + i) % CAPACITY]);
+        }
+        return records;
+    }
+
+    public synchronized Map<String, Integer> getFailuresByPack() {
+        return new HashMap<>(failuresByPack);
+    }
+
+    /**
+     * Process-lifetime totals with the current cache hit ratio, as shown on the debug screen.
+     */
+    public synchronized String getSummary(SyncCache.Stats cacheStats) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Operations: ").append(totalOperations).append('\n');
+        sb.append("Firestore reads: ").append(totalReads).append('\n');
+        sb.append("Bytes downloaded: ").append(totalBytes).append('\n');
+        if (cacheStats != null) {
+            sb.append("Cache hit ratio: ").append(Math.round(cacheStats.getHitRatio() * 100)).append("% (")
+                    .append(cacheStats).append(")\n");
+        }
+        sb.append("Failures by pack: ").append(failuresByPack.isEmpty() ? "none" : failuresByPack);
+        return sb.toString();
+    }
+
+    public String exportJson(SyncCache.Stats cacheStats) {
+        Map<String, Object> export = new HashMap<>();
+        synchronized (this) {
+            export.put("totalOperations", totalOperations);
+            export.put("totalReads", totalReads);
+            export.put("totalBytes", totalBytes);
+            export.put("failuresByPack", new HashMap<>(failuresByPack));
+        }
+        if (cacheStats != null) {
+            export.put("cacheHitRatio", cacheStats.getHitRatio());
+        }
+        export.put("records", getRecords());
+        Gson gson = new GsonBuilder().setPrettyPrinting().create();
+        return gson.toJson(export);
+    }
+
+    public synchronized void clear() {
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = null;
+        }
+        next = 0;
+        size = 0;
+        totalOperations = 0;
+        totalReads = 0;
+        totalBytes = 0;
+        failuresByPack.clear();
+    }
+
+    /**
+     * Accumulates counts and stage timings for one operation. Confined to the thread running the
+     * operation, except for the add methods, which may be called from worker threads.
+     */
+    public static class Operation {
+        private final SyncMetrics owner;
+        private final String name;
+        private final String packId;
+        private final long startedAt = System.currentTimeMillis();
+        private final long startNanos = System.nanoTime();
+        private long reads;
+        private long bytes;
+        private long fetchNanos;
+        private long parseNanos;
+        private long insertNanos;
+
+        private Operation(SyncMetrics owner, String name, String packId) {
+            this.owner = owner;
+            this.name = name;
+            this.packId = packId;
+        }
+
+        /**
+         * Counts the billed reads of a query: one per returned document, one for an empty
+         * result, none when served from the local cache.
+         */
+        public synchronized void addReads(QuerySnapshot snapshot) {
+            if (!snapshot.getMetadata().isFromCache()) {
+                reads += Math.max(1, snapshot.size());
+            }
+        }
+
+        public synchronized void addReads(long count) {
+            reads += count;
+        }
+
+        public synchronized void addBytes(long count) {
+            bytes += count;
+        }
+
+        public synchronized void addFetch(long nanos) {
+            fetchNanos += nanos;
+        }
+
+        public synchronized void addParse(long nanos) {
+            parseNanos += nanos;
+        }
+
+        public synchronized void addInsert(long nanos) {
+            insertNanos += nanos;
+        }
+
+        public void succeeded() {
+            finish(true, null);
+        }
+
+        public void failed(Throwable error) {
+            finish(false, error != null ? error.getClass().getSimpleName() + ": " + error.getMessage() : null);
+        }
+
+        /**
+         * For APIs that report failure as a result code rather than an exception, such as Play
+         * Billing.
+         */
+        public void failedWith(String reason) {
+            finish(false, reason);
+        }
+
+        private synchronized void finish(boolean success, String error) {
+            owner.record(new Record(name, packId, startedAt, (System.nanoTime() - startNanos) / 1_000_000,
+                    reads, bytes, fetchNanos / 1_000_000, parseNanos / 1_000_000, insertNanos / 1_000_000,
+                    success, error));
+        }
+    }
+
+    /**
+     * One finished operation. Times are in milliseconds.
+     */
+    public static class Record {
+        public final String operation;
+        public final String packId;
+        public final long startedAt;
+        public final long totalMs;
+        public final long reads;
+        public final long bytes;
+        public final long fetchMs;
+        public final long parseMs;
+        public final long insertMs;
+        public final boolean success;
+        public final String error;
+
+        Record(String operation, String packId, long startedAt, long totalMs, long reads, long bytes,
+                long fetchMs, long parseMs, long insertMs, boolean success, String error) {
+            this.operation = operation;
+            this.packId = packId;
+            this.startedAt = startedAt;
+            this.totalMs = totalMs;
+            this.reads = reads;
+            this.bytes = bytes;
+            this.fetchMs = fetchMs;
+            this.parseMs = parseMs;
+            this.insertMs = insertMs;
+            this.success = success;
+            this.error = error;
+        }
+
+        @Override
+        public String toString() {
+            return operation + (packId != null ? " [" + packId + "]" : "") + (success ? " ok " : " FAILED ")
+                    + totalMs + "ms reads=" + reads + " bytes=" + bytes + " fetch=" + fetchMs + "ms parse="
+                    + parseMs + "ms insert=" + insertMs + "ms" + (error != null ? " " + error : "");
+        }
+    }
+}
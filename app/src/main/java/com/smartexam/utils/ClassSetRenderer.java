@@ -0,0 +1,195 @@
+package com.smartexam.utils;
+
+import com.itextpdf.text.Document;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.Element;
+import com.itextpdf.text.Phrase;
+import com.itextpdf.text.pdf.ColumnText;
+import com.itextpdf.text.pdf.PdfContentByte;
+import com.itextpdf.text.pdf.PdfTemplate;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.smartexam.models.Question;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Renders a class set: one combined PDF holding a personalised copy of a test for every learner.
+ * The header and each question body are laid out once into form XObjects; every copy only places
+ * those templates in its own shuffled order and draws the per-learner fields (learner label and
+ * question numbers). Layout cost and file size therefore grow with the number of questions, not
+ * with the number of copies. A block too tall for one page has no template; it is flowed across
+ * pages for every copy instead, so it is never clipped.
+ */
+public class ClassSetRenderer {
+
+    // Upper bound for measuring a block; anything taller is flowed like any other oversized block
+    private static final float MEASURE_HEIGHT = 14400f;
+    private static final float LEARNER_LINE_HEIGHT = 20f;
+    private static final float HEADING_SPACING = 10f;
+    private static final float HEADING_HEIGHT = 16f;
+    private static final float MIN_FLOW_HEIGHT = 72f;
+
+    private final PDFGenerator generator;
+
+    public ClassSetRenderer(PDFGenerator generator) {
+        this.generator = generator;
+    }
+
+    /**
+     * Labels "Learner 1" to "Learner n" for a class of the given size.
+     */
+    public static List<String> learnerNumbers(int count) {
+        List<String> labels = new ArrayList<>();
+        for (int i = 1; i <= count; i++) {
+            labels.add("Learner " + i);
+        }
+        return labels;
+    }
+
+    /**
+     * Writes one copy per learner label. Question order is shuffled per copy from the seed, so the
+     * same seed reproduces the same set.
+     */
+    public PdfOptimizer.Result render(String filePath, String title, String subject, int grade,
+            List<Question> questions, List<String> learnerLabels, long seed, byte[] logoBytes)
+            throws DocumentException, IOException {
+        if (learnerLabels.isEmpty()) {
+            throw new IllegalArgumentException("Class set needs at least one learner");
+        }
+
+        Document document = new Document(generator.getPageSize());
+        PdfWriter writer = generator.createWriter(document, filePath);
+        writer.setPageEvent(new PDFGenerator.CompanyLogoEvent(logoBytes));
+        document.open();
+
+        PdfContentByte canvas = writer.getDirectContent();
+        float width = document.right() - document.left();
+        float pageBodyHeight = document.top() - document.bottom();
+
+        Block header = buildBlock(canvas, generator.buildHeader(title, subject, grade, questions), width,
+                pageBodyHeight - LEARNER_LINE_HEIGHT);
+        List<Block> bodies = new ArrayList<>();
+        for (Question q : questions) {
+            bodies.add(buildBlock(canvas, generator.buildQuestionBody(q, false), width,
+                    pageBodyHeight - LEARNER_LINE_HEIGHT - HEADING_SPACING - HEADING_HEIGHT));
+        }
+
+        List<Integer> order = new ArrayList<>();
+        for (int i = 0; i < questions.size(); i++) {
+            order.add(i);
+        }
+
+        for (int copy = 0; copy < learnerLabels.size(); copy++) {
+            if (copy > 0) {
+                document.newPage();
+            }
+            String label = learnerLabels.get(copy);
+            Collections.shuffle(order, new Random(seed + copy));
+
+            float y = drawLearnerLine(canvas, document, label);
+            y = place(header, canvas, document, label, y);
+
+            for (int n = 0; n < order.size(); n++) {
+                int index = order.get(n);
+                Block body = bodies.get(index);
+                // An oversized body starts wherever there is room for its heading and a few lines
+                float blockHeight = HEADING_SPACING + HEADING_HEIGHT
+                        + (body.template != null ? body.template.getHeight() : MIN_FLOW_HEIGHT);
+                if (y - blockHeight < document.bottom() && y < document.top() - LEARNER_LINE_HEIGHT) {
+                    document.newPage();
+                    y = drawLearnerLine(canvas, document, label);
+                }
+                y -= HEADING_SPACING + HEADING_HEIGHT;
+                ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT,
+                        new Phrase(generator.buildQuestionHeading(n + 1, questions.get(index)).getContent(),
+                                PDFGenerator.HEADER_FONT),
+                        document.left(), y + 4, 0);
+                y = place(body, canvas, document, label, y);
+            }
+        }
+
+        document.close();
+        return generator.optimize(filePath);
+    }
+
+    /**
+     * Draws the block with its top at y and returns the y below it. Blocks without a template are
+     * flowed, continuing on new pages (each with the learner line) until all of it is placed.
+     */
+    private float place(Block block, PdfContentByte canvas, Document document, String label, float y)
+            throws DocumentException {
+        if (block.template != null) {
+            canvas.addTemplate(block.template, document.left(), y - block.template.getHeight());
+            return y - block.template.getHeight();
+        }
+        ColumnText flow = new ColumnText(canvas);
+        for (Element element : block.elements) {
+            flow.addElement(element);
+        }
+        flow.setSimpleColumn(document.left(), document.bottom(), document.right(), y);
+        int status = flow.go();
+        while (ColumnText.hasMoreText(status)) {
+            document.newPage();
+            y = drawLearnerLine(canvas, document, label);
+            flow.setSimpleColumn(document.left(), document.bottom(), document.right(), y);
+            status = flow.go();
+            if (ColumnText.hasMoreText(status) && flow.getYLine() == y) {
+                // Nothing fits even on an empty page; stop rather than add blank pages forever
+                break;
+            }
+        }
+        return flow.getYLine();
+    }
+
+    private float drawLearnerLine(PdfContentByte canvas, Document document, String label) {
+        float baseline = document.top() - 12;
+        ColumnText.showTextAligned(canvas, Element.ALIGN_LEFT,
+                new Phrase("Name: " + label, PDFGenerator.NORMAL_FONT), document.left(), baseline, 0);
+        ColumnText.showTextAligned(canvas, Element.ALIGN_RIGHT,
+                new Phrase("Mark: ______", PDFGenerator.NORMAL_FONT), document.right(), baseline, 0);
+        return document.top() - LEARNER_LINE_HEIGHT;
+    }
+
+    /**
+     * Lays the elements out once into a form XObject exactly as tall as its content, or returns a
+     * block without a template when the content is taller than maxHeight.
+     */
+    private Block buildBlock(PdfContentByte canvas, List<Element> elements, float width, float maxHeight)
+            throws DocumentException {
+        ColumnText measure = new ColumnText(canvas);
+        measure.setSimpleColumn(0, 0, width, MEASURE_HEIGHT);
+        for (Element element : elements) {
+            measure.addElement(element);
+        }
+        int status = measure.go(true);
+        float height = MEASURE_HEIGHT - measure.getYLine();
+        if (ColumnText.hasMoreText(status) || height > maxHeight) {
+            return new Block(null, elements);
+        }
+
+        PdfTemplate template = canvas.createTemplate(width, height);
+        ColumnText column = new ColumnText(template);
+        column.setSimpleColumn(0, 0, width, height);
+        for (Element element : elements) {
+            column.addElement(element);
+        }
+        column.go();
+        return new Block(template, elements);
+    }
+
+    /**
+     * A laid-out header or question body; template is null for one that must be flowed.
+     */
+    private static final class Block {
+        final PdfTemplate template;
+        final List<Element> elements;
+
+        Block(PdfTemplate template, List<Element> elements) {
+            this.template = template;
+            this.elements = elements;
+        }
+    }
+}
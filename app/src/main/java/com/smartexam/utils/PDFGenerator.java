@@ -6,21 +6,36 @@ import com.itextpdf.text.DocumentException;
 import com.itextpdf.text.Element;
 import com.itextpdf.text.Font;
 import com.itextpdf.text.Image;
+import com.itextpdf.text.PageSize;
 import com.itextpdf.text.Paragraph;
 import com.itextpdf.text.Phrase;
+import com.itextpdf.text.Rectangle;
 import com.itextpdf.text.pdf.ColumnText;
 import com.itextpdf.text.pdf.PdfContentByte;
 import com.itextpdf.text.pdf.PdfPCell;
 import com.itextpdf.text.pdf.PdfPTable;
+import com.itextpdf.text.pdf.PdfPageEventHelper;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.RandomAccessFileOrArray;
+import com.itextpdf.text.io.RandomAccessSourceFactory;
+import com.itextpdf.text.pdf.PdfStream;
 import com.itextpdf.text.pdf.PdfTemplate;
 import com.itextpdf.text.pdf.PdfWriter;
+import com.smartexam.marketplace.services.AssetDownloadManager;
 import com.smartexam.models.Question;
 import com.smartexam.models.QuestionType;
 import com.smartexam.subscription.SubscriptionManager;
 import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import com.smartexam.R;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.List;
@@ -30,15 +45,31 @@ import java.util.Map;
 public class PDFGenerator {
 
     private static final Font TITLE_FONT = new Font(Font.FontFamily.HELVETICA, 18, Font.BOLD);
-    private static final Font HEADER_FONT = new Font(Font.FontFamily.HELVETICA, 12, Font.BOLD);
-    private static final Font NORMAL_FONT = new Font(Font.FontFamily.HELVETICA, 11, Font.NORMAL);
+    static final Font HEADER_FONT = new Font(Font.FontFamily.HELVETICA, 12, Font.BOLD);
+    static final Font NORMAL_FONT = new Font(Font.FontFamily.HELVETICA, 11, Font.NORMAL);
     private static final Font FOOTER_FONT = new Font(Font.FontFamily.HELVETICA, 9, Font.NORMAL);
 
     private static final String DEFAULT_SCHOOL_NAME = "SmartExam Academy";
+    private static final float MAX_IMAGE_HEIGHT = 220f;
+    // iText's default Document margins
+    private static final float PAGE_MARGIN = 36f;
+
+    private static final OutputStream NULL_SINK = new OutputStream() {
+        @Override
+        public void write(int b) {
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+        }
+    };
 
     private String schoolName = DEFAULT_SCHOOL_NAME;
     private String teacherName = "";
     private String schoolLogoPath = null;
+    private PdfOptimizer optimizer = new PdfOptimizer();
+    private Rectangle pageSize = PageSize.A4;
+    private AssetDownloadManager assets;
 
     public void configureSchoolDetails(String schoolName, String teacherName, String schoolLogoPath) {
         this.schoolName = isNullOrEmpty(schoolName) ? DEFAULT_SCHOOL_NAME : schoolName.trim();
@@ -50,25 +81,86 @@ public class PDFGenerator {
         this.schoolName = isNullOrEmpty(schoolName) ? DEFAULT_SCHOOL_NAME : schoolName.trim();
     }
 
-    public void generateTest(String filePath, String title, String subject, int grade, List<Question> questions, byte[] logoBytes)
-            throws DocumentException, IOException {
+    /**
+     * Page size for subsequent documents; A4 unless a printer asks for other media.
+     */
+    public void setPageSize(Rectangle pageSize) {
+        this.pageSize = pageSize != null ? pageSize : PageSize.A4;
+    }
+
+    Rectangle getPageSize() {
+        return pageSize;
+    }
 
-        Document document = new Document();
-        PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(filePath));
+    /**
+     * Store of images downloaded with marketplace packs. Question images are drawn from it when
+     * set; an image not on the device is left out rather than fetched while laying out.
+     */
+    public void setAssetManager(AssetDownloadManager assets) {
+        this.assets = assets;
+    }
+
+    /**
+     * Replaces the post-generation optimiser; pass null to keep iText's output as written.
+     */
+    public void setOptimizer(PdfOptimizer optimizer) {
+        this.optimizer = optimizer;
+    }
+
+    public PdfOptimizer.Result generateTest(String filePath, String title, String subject, int grade,
+            List<Question> questions, byte[] logoBytes) throws DocumentException, IOException {
+
+        Document document = new Document(pageSize);
+        PdfWriter writer = createWriter(document, filePath);
         CompanyLogoEvent event = new CompanyLogoEvent(logoBytes);
         writer.setPageEvent(event);
         document.open();
 
         addHeader(document, title, subject, grade, questions);
-        addQuestions(document, questions, false);
+        addQuestions(document, writer, questions, false, null);
 
         document.close();
+        return optimize(filePath);
     }
 
-    public void generateMemo(String filePath, String testTitle, List<Question> questions, byte[] logoBytes)
-            throws DocumentException, IOException {
-        Document document = new Document();
-        PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(filePath));
+    /**
+     * Lays out a test exactly as {@link #generateTest} would, but into a discarding sink.
+     * No file is written and no page decorations are drawn, so this is cheap enough to run
+     * on every selection change.
+     */
+    public Pagination layoutTest(String title, String subject, int grade, List<Question> questions)
+            throws DocumentException {
+        Document document = new Document(pageSize);
+        PdfWriter writer = PdfWriter.getInstance(document, NULL_SINK);
+        writer.setCompressionLevel(PdfStream.NO_COMPRESSION);
+        document.open();
+
+        addHeader(document, title, subject, grade, questions);
+        List<Integer> questionPages = new ArrayList<>();
+        addQuestions(document, writer, questions, false, questionPages);
+
+        int pageCount = writer.getPageNumber();
+        document.close();
+        return new Pagination(pageCount, questionPages);
+    }
+
+    /**
+     * Page count of an already generated paper, read from the xref without loading page content.
+     */
+    public static int countPages(File pdf) throws IOException {
+        PdfReader reader = new PdfReader(new RandomAccessFileOrArray(
+                new RandomAccessSourceFactory().createBestSource(pdf.getAbsolutePath())), null);
+        try {
+            return reader.getNumberOfPages();
+        } finally {
+            reader.close();
+        }
+    }
+
+    public PdfOptimizer.Result generateMemo(String filePath, String testTitle, List<Question> questions,
+            byte[] logoBytes) throws DocumentException, IOException {
+        Document document = new Document(pageSize);
+        PdfWriter writer = createWriter(document, filePath);
         CompanyLogoEvent event = new CompanyLogoEvent(logoBytes);
         writer.setPageEvent(event);
         document.open();
@@ -78,13 +170,52 @@ public class PDFGenerator {
         document.add(pTitle);
         document.add(new Paragraph(" "));
 
-        addQuestions(document, questions, true);
+        addQuestions(document, writer, questions, true, null);
 
         document.close();
+        return optimize(filePath);
+    }
+
+    /**
+     * Writer with compressed xref and object streams; papers are mostly text so this alone
+     * removes a large share of the uncompressed structure iText writes by default.
+     */
+    PdfWriter createWriter(Document document, String filePath) throws DocumentException, IOException {
+        PdfWriter writer = PdfWriter.getInstance(document, new FileOutputStream(filePath));
+        writer.setFullCompression();
+        writer.setCompressionLevel(PdfStream.BEST_COMPRESSION);
+        return writer;
+    }
+
+    PdfOptimizer.Result optimize(String filePath) throws DocumentException, IOException {
+        if (optimizer == null) {
+            long size = new File(filePath).length();
+            return new PdfOptimizer.Result(size, size, 0, 0);
+        }
+        return optimizer.optimize(new File(filePath));
+    }
+
+    /**
+     * Load company logo from drawable resources and convert to byte array
+     */
+    public static byte[] loadCompanyLogoBytes(Context context) {
+        try {
+            Bitmap bitmap = BitmapFactory.decodeResource(context.getResources(), R.drawable.smartexamsalogo);
+            if (bitmap == null) {
+                return null;
+            }
+            ByteArrayOutputStream stream = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.PNG, 100, stream);
+            return stream.toByteArray();
+        } catch (Exception e) {
+            // Silently fail if logo can't be loaded
+            return null;
+        }
     }
 
     /**
-     * Check if watermark should be applied based on subscription status
+     * Check if watermark should be applied based on subscription status. Reads the in-memory
+     * entitlement snapshot, so it is safe to call while rendering.
      */
     private boolean shouldApplyWatermark() {
         try {
@@ -98,27 +229,38 @@ public class PDFGenerator {
 
     private void addHeader(Document document, String title, String subject, int grade, List<Question> questions)
             throws DocumentException {
+        for (Element element : buildHeader(title, subject, grade, questions)) {
+            document.add(element);
+        }
+    }
+
+    /**
+     * Paper header (logo, school, teacher, title and details table) as layout elements, so it can
+     * be flowed into a document or rendered once into a reusable template.
+     */
+    List<Element> buildHeader(String title, String subject, int grade, List<Question> questions) {
+        List<Element> elements = new ArrayList<>();
         Image logo = loadLogoImage();
         if (logo != null) {
             logo.scaleToFit(80, 80);
             logo.setAlignment(Element.ALIGN_CENTER);
-            document.add(logo);
-            document.add(new Paragraph(" "));
+            elements.add(logo);
+            elements.add(new Paragraph(" "));
         }
 
         Paragraph pSchool = new Paragraph(schoolName, TITLE_FONT);
         pSchool.setAlignment(Element.ALIGN_CENTER);
-        document.add(pSchool);
+        elements.add(pSchool);
 
         if (!isNullOrEmpty(teacherName)) {
             Paragraph pTeacher = new Paragraph("Teacher: " + teacherName, NORMAL_FONT);
             pTeacher.setAlignment(Element.ALIGN_CENTER);
-            document.add(pTeacher);
+            elements.add(pTeacher);
         }
 
         Paragraph pTitle = new Paragraph(title.toUpperCase(), HEADER_FONT);
         pTitle.setAlignment(Element.ALIGN_CENTER);
-        document.add(pTitle);
+        elements.add(pTitle);
 
         PdfPTable table = new PdfPTable(2);
         table.setWidthPercentage(100);
@@ -132,9 +274,10 @@ public class PDFGenerator {
         table.addCell(createCell("Date: " + sdf.format(new Date()), Element.ALIGN_LEFT));
         table.addCell(createCell("Total Marks: " + calculateTotal(questions), Element.ALIGN_RIGHT));
 
-        document.add(table);
-        document.add(new Paragraph("______________________________________________________________________________"));
-        document.add(new Paragraph(" "));
+        elements.add(table);
+        elements.add(new Paragraph("______________________________________________________________________________"));
+        elements.add(new Paragraph(" "));
+        return elements;
     }
 
     private Image loadLogoImage() {
@@ -154,6 +297,31 @@ public class PDFGenerator {
         }
     }
 
+    /**
+     * The question's image from the asset store, scaled down to fit the text column.
+     */
+    private Image loadQuestionImage(Question q) {
+        if (assets == null || isNullOrEmpty(q.getImagePath())) {
+            return null;
+        }
+        try {
+            File file = assets.getLocalFile(q.getImagePath());
+            if (file == null) {
+                return null;
+            }
+            Image image = Image.getInstance(file.getAbsolutePath());
+            float maxWidth = pageSize.getWidth() - 2 * PAGE_MARGIN;
+            if (image.getWidth() > maxWidth || image.getHeight() > MAX_IMAGE_HEIGHT) {
+                image.scaleToFit(maxWidth, MAX_IMAGE_HEIGHT);
+            }
+            image.setAlignment(Image.MIDDLE);
+            image.setSpacingBefore(6);
+            return image;
+        } catch (Exception ignored) {
+            return null;
+        }
+    }
+
     private boolean isNullOrEmpty(String value) {
         return value == null || value.trim().isEmpty();
     }
@@ -165,28 +333,51 @@ public class PDFGenerator {
         return cell;
     }
 
-    private void addQuestions(Document document, List<Question> questions, boolean isMemo) throws DocumentException {
+    private void addQuestions(Document document, PdfWriter writer, List<Question> questions, boolean isMemo,
+            List<Integer> questionPages) throws DocumentException {
         int counter = 1;
         for (Question q : questions) {
-            Paragraph qHeader = new Paragraph("QUESTION " + counter + " [" + q.getMarks() + " Marks]", HEADER_FONT);
-            qHeader.setSpacingBefore(10);
-            document.add(qHeader);
+            document.add(buildQuestionHeading(counter, q));
+            if (questionPages != null) {
+                questionPages.add(writer.getPageNumber());
+            }
+            for (Element element : buildQuestionBody(q, isMemo)) {
+                document.add(element);
+            }
+            counter++;
+        }
+    }
 
-            document.add(new Paragraph(q.getQuestionText(), NORMAL_FONT));
+    Paragraph buildQuestionHeading(int number, Question q) {
+        Paragraph qHeader = new Paragraph("QUESTION " + number + " [" + q.getMarks() + " Marks]", HEADER_FONT);
+        qHeader.setSpacingBefore(10);
+        return qHeader;
+    }
 
-            if (isMemo) {
-                String answer = q.getContent() != null ? q.getContent().get("answer") : "N/A";
-                document.add(new Paragraph("Answer: " + answer, HEADER_FONT));
-            } else {
-                renderQuestionSpace(document, q);
-            }
+    /**
+     * Everything below a question's numbered heading. The body does not depend on the question's
+     * position, so it can be laid out once and reused across reordered copies.
+     */
+    List<Element> buildQuestionBody(Question q, boolean isMemo) {
+        List<Element> elements = new ArrayList<>();
+        elements.add(new Paragraph(q.getQuestionText(), NORMAL_FONT));
+        Image image = loadQuestionImage(q);
+        if (image != null) {
+            elements.add(image);
+        }
 
-            document.add(new Paragraph(" "));
-            counter++;
+        if (isMemo) {
+            String answer = q.getContent() != null ? q.getContent().get("answer") : "N/A";
+            elements.add(new Paragraph("Answer: " + answer, HEADER_FONT));
+        } else {
+            addQuestionSpace(elements, q);
         }
+
+        elements.add(new Paragraph(" "));
+        return elements;
     }
 
-    private void renderQuestionSpace(Document document, Question q) throws DocumentException {
+    private void addQuestionSpace(List<Element> elements, Question q) {
         QuestionType type = q.getType();
         Map<String, String> content = q.getContent();
 
@@ -197,19 +388,19 @@ public class PDFGenerator {
                 if (option != null) {
                     Paragraph p = new Paragraph(optionChar + ". " + option, NORMAL_FONT);
                     p.setIndentationLeft(20);
-                    document.add(p);
+                    elements.add(p);
                     optionChar++;
                 }
             }
         } else if (type == QuestionType.TRUE_FALSE) {
-            document.add(new Paragraph("Answer: [ True / False ]", NORMAL_FONT));
+            elements.add(new Paragraph("Answer: [ True / False ]", NORMAL_FONT));
         } else if (type == QuestionType.ESSAY_SOURCE_BASED) {
             for (int i = 0; i < 4; i++) {
-                document.add(new Paragraph(
+                elements.add(new Paragraph(
                         "______________________________________________________________________________"));
             }
         } else {
-            document.add(
+            elements.add(
                     new Paragraph("______________________________________________________________________________"));
         }
     }
@@ -218,16 +409,56 @@ public class PDFGenerator {
         return questions.stream().mapToInt(Question::getMarks).sum();
     }
 
+    /**
+     * Result of a layout-only pass: total pages and the page each question header lands on.
+     */
+    public static class Pagination {
+        private final int pageCount;
+        private final List<Integer> questionPages;
+
+        public Pagination(int pageCount, List<Integer> questionPages) {
+            this.pageCount = pageCount;
+            this.questionPages = Collections.unmodifiableList(questionPages);
+        }
+
+        public int getPageCount() {
+            return pageCount;
+        }
+
+        /**
+         * 1-based page number of each question, in paper order.
+         */
+        public List<Integer> getQuestionPages() {
+            return questionPages;
+        }
+
+        /**
+         * Indices of the questions that start a new page after the first.
+         */
+        public List<Integer> getPageBreaks() {
+            List<Integer> breaks = new ArrayList<>();
+            for (int i = 1; i < questionPages.size(); i++) {
+                if (!questionPages.get(i).equals(questionPages.get(i - 1))) {
+                    breaks.add(i);
+                }
+            }
+            return breaks;
+        }
+    }
+
     /**
      * Page event handler to add company logo to bottom right corner
      */
-    private static class CompanyLogoEvent extends PdfPageEventHelper {
+    static class CompanyLogoEvent extends PdfPageEventHelper {
         private static final float LOGO_WIDTH = 50f;
         private static final float LOGO_HEIGHT = 50f;
         private static final float MARGIN_RIGHT = 20f;
         private static final float MARGIN_BOTTOM = 20f;
 
         private byte[] logoBytes;
+        // Decoded once so every page references the same image XObject instead of embedding a copy.
+        private Image logo;
+        private boolean logoLoaded;
 
         public CompanyLogoEvent(byte[] logoBytes) {
             this.logoBytes = logoBytes;
@@ -252,14 +483,19 @@ public class PDFGenerator {
         }
 
         private Image loadCompanyLogo() {
+            if (logoLoaded) {
+                return logo;
+            }
+            logoLoaded = true;
             if (logoBytes == null || logoBytes.length == 0) {
                 return null;
             }
             try {
-                return Image.getInstance(logoBytes);
+                logo = Image.getInstance(logoBytes);
             } catch (Exception e) {
-                return null;
+                logo = null;
             }
+            return logo;
         }
     }
 }
@@ -0,0 +1,387 @@
+package com.smartexam.utils;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Log;
+import com.itextpdf.text.DocumentException;
+import com.itextpdf.text.pdf.PRIndirectReference;
+import com.itextpdf.text.pdf.PRStream;
+import com.itextpdf.text.pdf.PdfDictionary;
+import com.itextpdf.text.pdf.PdfIndirectReference;
+import com.itextpdf.text.pdf.PdfName;
+import com.itextpdf.text.pdf.PdfNumber;
+import com.itextpdf.text.pdf.PdfObject;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import com.itextpdf.text.pdf.PdfStream;
+import com.itextpdf.text.pdf.PdfWriter;
+import com.itextpdf.text.pdf.parser.ImageRenderInfo;
+import com.itextpdf.text.pdf.parser.Matrix;
+import com.itextpdf.text.pdf.parser.PdfImageObject;
+import com.itextpdf.text.pdf.parser.PdfReaderContentParser;
+import com.itextpdf.text.pdf.parser.RenderListener;
+import com.itextpdf.text.pdf.parser.TextRenderInfo;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Shrinks generated papers before they are shared over metered connections.
+ * Identical image streams are collapsed into one object, raster images with more
+ * pixels than their placed size needs are re-encoded as JPEG at the target print
+ * DPI, and the file is rewritten with full compression (compressed xref and object
+ * streams).
+ */
+public class PdfOptimizer {
+
+    private static final String TAG = "PdfOptimizer";
+
+    public static final int DEFAULT_TARGET_DPI = 150;
+    private static final int DEFAULT_JPEG_QUALITY = 75;
+    // Longest side of an A4 page; the cap for an image whose placement cannot be found.
+    private static final float MAX_PRINT_POINTS = 842f;
+    private static final float POINTS_PER_INCH = 72f;
+
+    private final int targetDpi;
+    private final int jpegQuality;
+
+    public PdfOptimizer() {
+        this(DEFAULT_TARGET_DPI, DEFAULT_JPEG_QUALITY);
+    }
+
+    public PdfOptimizer(int targetDpi, int jpegQuality) {
+        this.targetDpi = targetDpi;
+        this.jpegQuality = jpegQuality;
+    }
+
+    /**
+     * Optimises the PDF in place. The optimised copy is written next to it and moved over it in
+     * one step, so on any failure the original file is left untouched.
+     */
+    public Result optimize(File pdf) throws IOException, DocumentException {
+        long before = pdf.length();
+        File temp = new File(pdf.getParentFile(), pdf.getName() + ".opt");
+
+        PdfReader reader = new PdfReader(pdf.getAbsolutePath());
+        int deduplicated;
+        int recompressed;
+        try {
+            Map<Integer, Integer> duplicates = findDuplicateImages(reader);
+            deduplicated = duplicates.size();
+            if (!duplicates.isEmpty()) {
+                for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+                    remapXObjects(reader, reader.getPageN(page).getAsDict(PdfName.RESOURCES), duplicates,
+                            new HashSet<>());
+                }
+                reader.removeUnusedObjects();
+            }
+            recompressed = recompressImages(reader);
+
+            try (FileOutputStream out = new FileOutputStream(temp)) {
+                PdfStamper stamper = new PdfStamper(reader, out, PdfWriter.VERSION_1_5);
+                stamper.setFullCompression();
+                stamper.getWriter().setCompressionLevel(PdfStream.BEST_COMPRESSION);
+                stamper.close();
+            } catch (IOException | DocumentException | RuntimeException e) {
+                temp.delete();
+                throw e;
+            }
+        } finally {
+            reader.close();
+        }
+
+        long after = temp.length();
+        if (after > 0 && after < before) {
+            try {
+                Files.move(temp.toPath(), pdf.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                        StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                temp.delete();
+                throw new IOException("Unable to replace " + pdf.getName() + " with optimised copy", e);
+            }
+        } else {
+            temp.delete();
+            after = before;
+        }
+
+        Result result = new Result(before, after, recompressed, deduplicated);
+        Log.d(TAG, pdf.getName() + ": " + result);
+        return result;
+    }
+
+    /**
+     * Maps the object number of every repeated image stream to the first stream with identical bytes.
+     */
+    private Map<Integer, Integer> findDuplicateImages(PdfReader reader) throws IOException {
+        Map<String, Integer> firstByHash = new HashMap<>();
+        Map<Integer, Integer> duplicates = new HashMap<>();
+        for (int i = 0; i < reader.getXrefSize(); i++) {
+            PdfObject obj = reader.getPdfObject(i);
+            if (!isImageStream(obj)) {
+                continue;
+            }
+            PRStream stream = (PRStream) obj;
+            String hash = hashImage(stream);
+            Integer first = firstByHash.get(hash);
+            if (first == null) {
+                firstByHash.put(hash, i);
+            } else {
+                duplicates.put(i, first);
+            }
+        }
+        return duplicates;
+    }
+
+    private void remapXObjects(PdfReader reader, PdfDictionary resources, Map<Integer, Integer> duplicates,
+            Set<PdfDictionary> visited) {
+        if (resources == null || !visited.add(resources)) {
+            return;
+        }
+        PdfDictionary xObjects = resources.getAsDict(PdfName.XOBJECT);
+        if (xObjects == null) {
+            return;
+        }
+        for (PdfName key : xObjects.getKeys()) {
+            PdfObject value = xObjects.get(key);
+            if (value instanceof PRIndirectReference) {
+                Integer canonical = duplicates.get(((PRIndirectReference) value).getNumber());
+                if (canonical != null) {
+                    xObjects.put(key, new PRIndirectReference(reader, canonical));
+                    continue;
+                }
+            }
+            PdfObject direct = PdfReader.getPdfObject(value);
+            if (direct instanceof PdfDictionary
+                    && PdfName.FORM.equals(((PdfDictionary) direct).getAsName(PdfName.SUBTYPE))) {
+                remapXObjects(reader, ((PdfDictionary) direct).getAsDict(PdfName.RESOURCES), duplicates, visited);
+            }
+        }
+    }
+
+    private int recompressImages(PdfReader reader) {
+        Map<Integer, float[]> placedSizes = findPlacedSizes(reader);
+        int count = 0;
+        for (int i = 0; i < reader.getXrefSize(); i++) {
+            PdfObject obj = reader.getPdfObject(i);
+            if (!isImageStream(obj)) {
+                continue;
+            }
+            PRStream stream = (PRStream) obj;
+            // JPEG has no alpha channel and masks must keep their exact bit depth.
+            if (stream.get(PdfName.SMASK) != null || stream.get(PdfName.MASK) != null
+                    || stream.getAsBoolean(PdfName.IMAGEMASK) != null) {
+                continue;
+            }
+            float[] placed = placedSizes.get(i);
+            try {
+                if (placed != null ? recompressImage(stream, toPixels(placed[0]), toPixels(placed[1]))
+                        : recompressImage(stream, toPixels(MAX_PRINT_POINTS))) {
+                    count++;
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Skipping image object " + i, e);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Largest width and height in points each image object is drawn at on any page, including
+     * through form XObjects. Images the parser cannot place are missing from the map.
+     */
+    private Map<Integer, float[]> findPlacedSizes(PdfReader reader) {
+        Map<Integer, float[]> placed = new HashMap<>();
+        PdfReaderContentParser parser = new PdfReaderContentParser(reader);
+        RenderListener listener = new RenderListener() {
+            @Override
+            public void renderImage(ImageRenderInfo info) {
+                PdfIndirectReference ref = info.getRef();
+                if (ref == null) {
+                    return; // Inline image, not a stream object
+                }
+                Matrix ctm = info.getImageCTM();
+                float width = (float) Math.hypot(ctm.get(Matrix.I11), ctm.get(Matrix.I12));
+                float height = (float) Math.hypot(ctm.get(Matrix.I21), ctm.get(Matrix.I22));
+                float[] size = placed.get(ref.getNumber());
+                if (size == null) {
+                    placed.put(ref.getNumber(), new float[] { width, height });
+                } else {
+                    size[0] = Math.max(size[0], width);
+                    size[1] = Math.max(size[1], height);
+                }
+            }
+
+            @Override
+            public void beginTextBlock() {
+            }
+
+            @Override
+            public void renderText(TextRenderInfo info) {
+            }
+
+            @Override
+            public void endTextBlock() {
+            }
+        };
+        for (int page = 1; page <= reader.getNumberOfPages(); page++) {
+            try {
+                parser.processContent(page, listener);
+            } catch (Exception e) {
+                // Images on this page fall back to the page-size cap unless placed elsewhere
+                Log.w(TAG, "Could not measure images on page " + page, e);
+            }
+        }
+        return placed;
+    }
+
+    private int toPixels(float points) {
+        return Math.max(1, Math.round(points / POINTS_PER_INCH * targetDpi));
+    }
+
+    /**
+     * Re-encodes an image placed at an unknown size, capping its longest side at maxPixels.
+     */
+    private boolean recompressImage(PRStream stream, int maxPixels) throws IOException {
+        PdfNumber width = stream.getAsNumber(PdfName.WIDTH);
+        PdfNumber height = stream.getAsNumber(PdfName.HEIGHT);
+        if (width == null || height == null) {
+            return false;
+        }
+        float scale = (float) maxPixels / Math.max(width.intValue(), height.intValue());
+        return recompressImage(stream, scale);
+    }
+
+    /**
+     * Re-encodes an image so it has no more than targetWidth x targetHeight pixels, the target DPI
+     * at the size it is drawn.
+     */
+    private boolean recompressImage(PRStream stream, int targetWidth, int targetHeight) throws IOException {
+        PdfNumber width = stream.getAsNumber(PdfName.WIDTH);
+        PdfNumber height = stream.getAsNumber(PdfName.HEIGHT);
+        if (width == null || height == null) {
+            return false;
+        }
+        // Keep the aspect ratio; the axis that needs the most detail decides the scale
+        float scale = Math.max((float) targetWidth / width.intValue(), (float) targetHeight / height.intValue());
+        return recompressImage(stream, scale);
+    }
+
+    private boolean recompressImage(PRStream stream, float scale) throws IOException {
+        boolean oversized = scale < 1f;
+        boolean alreadyJpeg = PdfName.DCTDECODE.equals(stream.getAsName(PdfName.FILTER));
+        if (alreadyJpeg && !oversized) {
+            return false;
+        }
+
+        byte[] encoded = new PdfImageObject(stream).getImageAsBytes();
+        Bitmap bitmap = BitmapFactory.decodeByteArray(encoded, 0, encoded.length);
+        if (bitmap == null) {
+            return false;
+        }
+        try {
+            if (oversized) {
+                Bitmap scaled = Bitmap.createScaledBitmap(bitmap,
+                        Math.max(1, Math.round(bitmap.getWidth() * scale)),
+                        Math.max(1, Math.round(bitmap.getHeight() * scale)), true);
+                if (scaled != bitmap) {
+                    bitmap.recycle();
+                    bitmap = scaled;
+                }
+            }
+
+            ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+            bitmap.compress(Bitmap.CompressFormat.JPEG, jpegQuality, jpeg);
+            if (jpeg.size() >= stream.getLength()) {
+                return false;
+            }
+
+            stream.clear();
+            stream.setData(jpeg.toByteArray(), false, PRStream.NO_COMPRESSION);
+            stream.put(PdfName.TYPE, PdfName.XOBJECT);
+            stream.put(PdfName.SUBTYPE, PdfName.IMAGE);
+            stream.put(PdfName.FILTER, PdfName.DCTDECODE);
+            stream.put(PdfName.WIDTH, new PdfNumber(bitmap.getWidth()));
+            stream.put(PdfName.HEIGHT, new PdfNumber(bitmap.getHeight()));
+            stream.put(PdfName.BITSPERCOMPONENT, new PdfNumber(8));
+            stream.put(PdfName.COLORSPACE, PdfName.DEVICERGB);
+            return true;
+        } finally {
+            bitmap.recycle();
+        }
+    }
+
+    private boolean isImageStream(PdfObject obj) {
+        return obj instanceof PRStream && PdfName.IMAGE.equals(((PRStream) obj).getAsName(PdfName.SUBTYPE));
+    }
+
+    private String hashImage(PRStream stream) throws IOException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            for (PdfName key : new PdfName[] { PdfName.WIDTH, PdfName.HEIGHT, PdfName.BITSPERCOMPONENT,
+                    PdfName.COLORSPACE, PdfName.FILTER, PdfName.DECODEPARMS, PdfName.SMASK }) {
+                PdfObject value = stream.get(key);
+                digest.update(String.valueOf(value).getBytes());
+            }
+            digest.update(PdfReader.getStreamBytesRaw(stream));
+            StringBuilder sb = new StringBuilder();
+            for (byte b : digest.digest()) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Before and after sizes of one optimisation pass.
+     */
+    public static class Result {
+        private final long bytesBefore;
+        private final long bytesAfter;
+        private final int imagesRecompressed;
+        private final int imagesDeduplicated;
+
+        public Result(long bytesBefore, long bytesAfter, int imagesRecompressed, int imagesDeduplicated) {
+            this.bytesBefore = bytesBefore;
+            this.bytesAfter = bytesAfter;
+            this.imagesRecompressed = imagesRecompressed;
+            this.imagesDeduplicated = imagesDeduplicated;
+        }
+
+        public long getBytesBefore() {
+            return bytesBefore;
+        }
+
+        public long getBytesAfter() {
+            return bytesAfter;
+        }
+
+        public int getImagesRecompressed() {
+            return imagesRecompressed;
+        }
+
+        public int getImagesDeduplicated() {
+            return imagesDeduplicated;
+        }
+
+        public long getBytesSaved() {
+            return bytesBefore - bytesAfter;
+        }
+
+        @Override
+        public String toString() {
+            return bytesBefore + " -> " + bytesAfter + " bytes (" + imagesRecompressed + " recompressed, "
+                    + imagesDeduplicated + " deduplicated)";
+        }
+    }
+}
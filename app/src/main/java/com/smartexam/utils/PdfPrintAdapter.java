@@ -0,0 +1,252 @@
+package com.smartexam.utils;
+
+import android.os.Bundle;
+import android.os.CancellationSignal;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.print.PageRange;
+import android.print.PrintAttributes;
+import android.print.PrintDocumentAdapter;
+import android.print.PrintDocumentInfo;
+import android.util.Log;
+import com.itextpdf.text.Rectangle;
+import com.itextpdf.text.pdf.PdfReader;
+import com.itextpdf.text.pdf.PdfStamper;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Prints a generated paper. Only the page ranges chosen in the print dialog are written, and a
+ * full-document job is streamed to the spooler with a zero-copy channel transfer. When the
+ * selected media is not A4 the paper is laid out again at that size through a
+ * {@link Relayout} instead of letting the print service scale the A4 pages. Layouts and their page
+ * counts are produced off the main thread and kept per page size, so switching media in the dialog
+ * only renders each size once. Files from the relayout, and the paper itself when it is temporary,
+ * are deleted in {@link #onFinish()}.
+ */
+public class PdfPrintAdapter extends PrintDocumentAdapter {
+
+    private static final String TAG = "PdfPrintAdapter";
+    private static final float POINTS_PER_MIL = 72f / 1000f;
+    // MediaSize dimensions are in mils; allow for rounding between the A4 constants
+    private static final int MEDIA_TOLERANCE_MILS = 20;
+    private static final String A4_KEY = "a4";
+
+    /**
+     * Produces the paper laid out for a page size other than A4. The adapter owns the returned
+     * file and deletes it when the print job finishes.
+     */
+    public interface Relayout {
+        File render(Rectangle pageSize) throws Exception;
+    }
+
+    private final File a4File;
+    private final Relayout relayout;
+    private final boolean deleteA4File;
+    private final ExecutorService executor = Executors.newSingleThreadExecutor();
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Written on the executor, read on both threads
+    private final Map<String, Layout> layouts = new ConcurrentHashMap<>();
+
+    private Layout current;
+
+    public PdfPrintAdapter(File a4File, int a4PageCount, Relayout relayout) {
+        this(a4File, a4PageCount, relayout, false);
+    }
+
+    /**
+     * @param deleteA4File true when the paper is a temporary file the adapter should delete with
+     *                     its relayouts once the job finishes
+     */
+    public PdfPrintAdapter(File a4File, int a4PageCount, Relayout relayout, boolean deleteA4File) {
+        this.a4File = a4File;
+        this.relayout = relayout;
+        this.deleteA4File = deleteA4File;
+        Layout a4 = new Layout(a4File, a4PageCount);
+        if (a4PageCount != PrintDocumentInfo.PAGE_COUNT_UNKNOWN) {
+            layouts.put(A4_KEY, a4);
+        }
+        this.current = a4;
+    }
+
+    @Override
+    public void onLayout(PrintAttributes oldAttributes, PrintAttributes newAttributes,
+            CancellationSignal cancellationSignal, LayoutResultCallback callback, Bundle extras) {
+        if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+            callback.onLayoutCancelled();
+            return;
+        }
+
+        PrintAttributes.MediaSize media = newAttributes.getMediaSize();
+        Rectangle pageSize = null;
+        String key = A4_KEY;
+        if (media != null && !isA4(media) && relayout != null) {
+            PrintAttributes.MediaSize portrait = media.asPortrait();
+            pageSize = new Rectangle(portrait.getWidthMils() * POINTS_PER_MIL,
+                    portrait.getHeightMils() * POINTS_PER_MIL);
+            if (!media.isPortrait()) {
+                pageSize = pageSize.rotate();
+            }
+            key = Math.round(pageSize.getWidth()) + "x" + Math.round(pageSize.getHeight());
+        }
+
+        Layout cached = layouts.get(key);
+        if (cached != null) {
+            boolean changed = cached != current;
+            current = cached;
+            callback.onLayoutFinished(buildInfo(), changed);
+            return;
+        }
+
+        String layoutKey = key;
+        Rectangle target = pageSize;
+        executor.execute(() -> {
+            try {
+                Layout layout = layouts.get(layoutKey);
+                if (layout == null) {
+                    File file = target != null ? relayout.render(target) : a4File;
+                    layout = new Layout(file, countPages(file));
+                    layouts.put(layoutKey, layout);
+                }
+                Layout result = layout;
+                mainHandler.post(() -> {
+                    if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                        callback.onLayoutCancelled();
+                        return;
+                    }
+                    current = result;
+                    callback.onLayoutFinished(buildInfo(), true);
+                });
+            } catch (Exception e) {
+                Log.e(TAG, "Re-layout for " + layoutKey + " failed", e);
+                mainHandler.post(() -> callback.onLayoutFailed(e.getMessage()));
+            }
+        });
+    }
+
+    @Override
+    public void onWrite(PageRange[] pages, ParcelFileDescriptor destination,
+            CancellationSignal cancellationSignal, WriteResultCallback callback) {
+        File source = current.file;
+        int pageCount = current.pageCount;
+        executor.execute(() -> {
+            try (FileOutputStream out = new FileOutputStream(destination.getFileDescriptor())) {
+                String selection = toSelection(pages, pageCount);
+                if (selection == null) {
+                    try (FileChannel in = new FileInputStream(source).getChannel()) {
+                        FileChannel outChannel = out.getChannel();
+                        long position = 0;
+                        long size = in.size();
+                        while (position < size) {
+                            if (cancellationSignal != null && cancellationSignal.isCanceled()) {
+                                mainHandler.post(callback::onWriteCancelled);
+                                return;
+                            }
+                            position += in.transferTo(position, size - position, outChannel);
+                        }
+                    }
+                } else {
+                    PdfReader reader = new PdfReader(source.getAbsolutePath());
+                    try {
+                        reader.selectPages(selection);
+                        PdfStamper stamper = new PdfStamper(reader, out);
+                        stamper.setFullCompression();
+                        stamper.close();
+                    } finally {
+                        reader.close();
+                    }
+                }
+                mainHandler.post(() -> callback.onWriteFinished(pages));
+            } catch (Exception e) {
+                Log.e(TAG, "Failed to write print document", e);
+                mainHandler.post(() -> callback.onWriteFailed(e.getMessage()));
+            }
+        });
+    }
+
+    @Override
+    public void onFinish() {
+        // Queued behind any write still in flight on the same thread
+        executor.execute(() -> {
+            for (Layout layout : layouts.values()) {
+                if (layout.file != a4File && !layout.file.delete()) {
+                    Log.w(TAG, "Could not delete " + layout.file.getName());
+                }
+            }
+            if (deleteA4File && !a4File.delete()) {
+                Log.w(TAG, "Could not delete " + a4File.getName());
+            }
+        });
+        executor.shutdown();
+    }
+
+    private PrintDocumentInfo buildInfo() {
+        return new PrintDocumentInfo.Builder(a4File.getName())
+                .setContentType(PrintDocumentInfo.CONTENT_TYPE_DOCUMENT)
+                .setPageCount(current.pageCount)
+                .build();
+    }
+
+    private static boolean isA4(PrintAttributes.MediaSize media) {
+        PrintAttributes.MediaSize portrait = media.asPortrait();
+        PrintAttributes.MediaSize a4 = PrintAttributes.MediaSize.ISO_A4;
+        return Math.abs(portrait.getWidthMils() - a4.getWidthMils()) <= MEDIA_TOLERANCE_MILS
+                && Math.abs(portrait.getHeightMils() - a4.getHeightMils()) <= MEDIA_TOLERANCE_MILS;
+    }
+
+    private static int countPages(File file) {
+        try {
+            return PDFGenerator.countPages(file);
+        } catch (Exception e) {
+            return PrintDocumentInfo.PAGE_COUNT_UNKNOWN;
+        }
+    }
+
+    /**
+     * A file laid out for one page size and its page count.
+     */
+    private static final class Layout {
+        final File file;
+        final int pageCount;
+
+        Layout(File file, int pageCount) {
+            this.file = file;
+            this.pageCount = pageCount;
+        }
+    }
+
+    /**
+     * Converts the dialog's 0-based ranges to an iText page selection such as "1-3,5",
+     * or null when every page is requested and the file can be copied as-is.
+     */
+    static String toSelection(PageRange[] pages, int pageCount) {
+        if (pages == null || pages.length == 0) {
+            return null;
+        }
+        StringBuilder sb = new StringBuilder();
+        int covered = 0;
+        for (PageRange range : pages) {
+            if (PageRange.ALL_PAGES.equals(range)) {
+                return null;
+            }
+            if (sb.length() > 0) {
+                sb.append(',');
+            }
+            int start = range.getStart() + 1;
+            int end = range.getEnd() + 1;
+            sb.append(start == end ? String.valueOf(start) : start + "-" + end);
+            covered += end - start + 1;
+        }
+        if (pageCount > 0 && covered >= pageCount) {
+            return null;
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,248 @@
+package com.smartexam.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Color;
+import android.graphics.pdf.PdfRenderer;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+import android.widget.ImageView;
+import com.smartexam.models.AssessmentPaper;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * First-page previews for generated papers. Page 1 is rendered off the main thread with
+ * {@link PdfRenderer} and kept in two tiers: an in-memory {@link LruCache} sized by bitmap
+ * bytes, and a size-bounded JPEG directory in the app cache evicted least-recently-used first.
+ * Disk entries are keyed on the PDF's path, length and modification time, so regenerating a
+ * paper invalidates its thumbnail. The memory tier is keyed on the path alone, so binding a row
+ * touches no files on the main thread: a hit is shown at once and checked against the PDF on
+ * the executor, which renders it again if the paper has changed.
+ */
+public class PdfThumbnailCache {
+
+    private static final String TAG = "PdfThumbnailCache";
+    private static final String DIR_NAME = "paper_thumbnails";
+    private static final long MAX_DISK_BYTES = 8L * 1024 * 1024;
+    private static final int JPEG_QUALITY = 80;
+
+    private static volatile PdfThumbnailCache INSTANCE;
+
+    private final File cacheDir;
+    private final LruCache<String, Thumbnail> memoryCache;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private PdfThumbnailCache(Context context) {
+        cacheDir = new File(context.getCacheDir(), DIR_NAME);
+        if (!cacheDir.exists()) {
+            cacheDir.mkdirs();
+        }
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 16);
+        memoryCache = new LruCache<String, Thumbnail>(maxKb) {
+            @Override
+            protected int sizeOf(String key, Thumbnail value) {
+                return value.bitmap.getByteCount() / 1024;
+            }
+        };
+    }
+
+    public static PdfThumbnailCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (PdfThumbnailCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new PdfThumbnailCache(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Binds the first-page thumbnail of the paper to the view, rendering it in the background
+     * if neither cache has it. Recycled views are guarded by tag so late results are dropped.
+     */
+    public void load(AssessmentPaper paper, ImageView target, int widthPx, int placeholderRes) {
+        if (TextUtils.isEmpty(paper.getFilePath())) {
+            target.setTag(null);
+            target.setImageResource(placeholderRes);
+            return;
+        }
+
+        File pdf = new File(paper.getFilePath());
+        String memoryKey = pathPrefix(pdf) + widthPx;
+        target.setTag(memoryKey);
+        Thumbnail cached = memoryCache.get(memoryKey);
+        if (cached != null) {
+            target.setImageBitmap(cached.bitmap);
+        } else {
+            target.setImageResource(placeholderRes);
+        }
+
+        executor.execute(() -> {
+            if (!pdf.exists()) {
+                memoryCache.remove(memoryKey);
+                mainHandler.post(() -> {
+                    if (memoryKey.equals(target.getTag())) {
+                        target.setImageResource(placeholderRes);
+                    }
+                });
+                return;
+            }
+            String key = keyFor(pdf, widthPx);
+            if (cached != null && key.equals(cached.key)) {
+                return;
+            }
+            Bitmap bitmap = loadFromDisk(key);
+            if (bitmap == null) {
+                bitmap = render(pdf, widthPx);
+                if (bitmap != null) {
+                    saveToDisk(pdf, key, bitmap);
+                }
+            }
+            if (bitmap == null) {
+                return;
+            }
+            memoryCache.put(memoryKey, new Thumbnail(key, bitmap));
+            Bitmap result = bitmap;
+            mainHandler.post(() -> {
+                if (memoryKey.equals(target.getTag())) {
+                    target.setImageBitmap(result);
+                }
+            });
+        });
+    }
+
+    /**
+     * Drops every cached thumbnail of the given PDF, e.g. when its paper is deleted.
+     */
+    public void invalidate(String filePath) {
+        if (TextUtils.isEmpty(filePath)) {
+            return;
+        }
+        String prefix = pathPrefix(new File(filePath));
+        executor.execute(() -> deleteEntries(prefix, null));
+        for (String key : memoryCache.snapshot().keySet()) {
+            if (key.startsWith(prefix)) {
+                memoryCache.remove(key);
+            }
+        }
+    }
+
+    private Bitmap render(File pdf, int widthPx) {
+        try (ParcelFileDescriptor fd = ParcelFileDescriptor.open(pdf, ParcelFileDescriptor.MODE_READ_ONLY);
+                PdfRenderer renderer = new PdfRenderer(fd)) {
+            if (renderer.getPageCount() == 0) {
+                return null;
+            }
+            try (PdfRenderer.Page page = renderer.openPage(0)) {
+                int heightPx = Math.max(1, Math.round((float) widthPx * page.getHeight() / page.getWidth()));
+                Bitmap bitmap = Bitmap.createBitmap(widthPx, heightPx, Bitmap.Config.ARGB_8888);
+                // PdfRenderer leaves unpainted areas transparent; papers are printed on white
+                bitmap.eraseColor(Color.WHITE);
+                page.render(bitmap, null, null, PdfRenderer.Page.RENDER_MODE_FOR_DISPLAY);
+                return bitmap;
+            }
+        } catch (IOException | RuntimeException e) {
+            Log.w(TAG, "Unable to render thumbnail for " + pdf.getName(), e);
+            return null;
+        }
+    }
+
+    private Bitmap loadFromDisk(String key) {
+        File file = new File(cacheDir, key + ".jpg");
+        if (!file.exists()) {
+            return null;
+        }
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getAbsolutePath());
+        if (bitmap != null) {
+            // Access time drives eviction order
+            file.setLastModified(System.currentTimeMillis());
+        }
+        return bitmap;
+    }
+
+    private void saveToDisk(File pdf, String key, Bitmap bitmap) {
+        deleteEntries(pathPrefix(pdf), key);
+        File file = new File(cacheDir, key + ".jpg");
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+        } catch (IOException e) {
+            Log.w(TAG, "Unable to write thumbnail " + file.getName(), e);
+            file.delete();
+            return;
+        }
+        trimDisk();
+    }
+
+    private synchronized void deleteEntries(String prefix, String keepKey) {
+        File[] files = cacheDir.listFiles((dir, name) -> name.startsWith(prefix));
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (keepKey == null || !file.getName().startsWith(keepKey)) {
+                file.delete();
+            }
+        }
+    }
+
+    private synchronized void trimDisk() {
+        File[] files = cacheDir.listFiles();
+        if (files == null) {
+            return;
+        }
+        long total = 0;
+        for (File file : files) {
+            total += file.length();
+        }
+        if (total <= MAX_DISK_BYTES) {
+            return;
+        }
+        List<File> byAge = new ArrayList<>(Arrays.asList(files));
+        byAge.sort(Comparator.comparingLong(File::lastModified));
+        for (File file : byAge) {
+            if (total <= MAX_DISK_BYTES) {
+                break;
+            }
+            long length = file.length();
+            if (file.delete()) {
+                total -= length;
+            }
+        }
+    }
+
+    private String keyFor(File pdf, int widthPx) {
+        return pathPrefix(pdf) + pdf.lastModified() + "_" + pdf.length() + "_" + widthPx;
+    }
+
+    private String pathPrefix(File pdf) {
+        return Integer.toHexString(pdf.getAbsolutePath().hashCode()) + "_";
+    }
+
+    /**
+     * A rendered page and the disk key, and so the version of the PDF, it was rendered from.
+     */
+    private static final class Thumbnail {
+        final String key;
+        final Bitmap bitmap;
+
+        Thumbnail(String key, Bitmap bitmap) {
+            this.key = key;
+            this.bitmap = bitmap;
+        }
+    }
+}
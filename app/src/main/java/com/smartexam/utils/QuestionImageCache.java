@@ -0,0 +1,119 @@
+package com.smartexam.utils;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.text.TextUtils;
+import android.util.Log;
+import android.util.LruCache;
+import android.view.View;
+import android.widget.ImageView;
+import com.smartexam.marketplace.services.AssetDownloadManager;
+import com.smartexam.models.Question;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Question images for list rows, read from the marketplace asset store
+ * ({@link AssetDownloadManager#getLocalFile}). The store lookup and the decode run off the main
+ * thread, and decoded bitmaps are downsampled to the screen width and kept in an in-memory
+ * {@link LruCache} sized by bitmap bytes. A question whose image is not on the device shows no
+ * image; nothing is downloaded from here.
+ */
+public class QuestionImageCache {
+
+    private static final String TAG = "QuestionImageCache";
+
+    private static volatile QuestionImageCache INSTANCE;
+
+    private final AssetDownloadManager assets;
+    private final int maxWidthPx;
+    private final LruCache<String, Bitmap> memoryCache;
+    private final ExecutorService executor = Executors.newFixedThreadPool(2);
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    private QuestionImageCache(Context context) {
+        assets = AssetDownloadManager.getInstance(context);
+        maxWidthPx = context.getResources().getDisplayMetrics().widthPixels;
+        int maxKb = (int) (Runtime.getRuntime().maxMemory() / 1024 / 16);
+        memoryCache = new LruCache<String, Bitmap>(maxKb) {
+            @Override
+            protected int sizeOf(String key, Bitmap value) {
+                return value.getByteCount() / 1024;
+            }
+        };
+    }
+
+    public static QuestionImageCache getInstance(Context context) {
+        if (INSTANCE == null) {
+            synchronized (QuestionImageCache.class) {
+                if (INSTANCE == null) {
+                    INSTANCE = new QuestionImageCache(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    /**
+     * Shows the question's image in the view, or hides the view if it has none. Recycled views
+     * are guarded by tag so late results are dropped.
+     */
+    public void load(Question question, ImageView target) {
+        String remotePath = question.getImagePath();
+        if (TextUtils.isEmpty(remotePath)) {
+            target.setTag(null);
+            target.setImageDrawable(null);
+            target.setVisibility(View.GONE);
+            return;
+        }
+
+        target.setTag(remotePath);
+        Bitmap cached = memoryCache.get(remotePath);
+        if (cached != null) {
+            target.setImageBitmap(cached);
+            target.setVisibility(View.VISIBLE);
+            return;
+        }
+
+        target.setImageDrawable(null);
+        target.setVisibility(View.GONE);
+        executor.execute(() -> {
+            Bitmap bitmap = decode(remotePath);
+            if (bitmap == null) {
+                return;
+            }
+            memoryCache.put(remotePath, bitmap);
+            mainHandler.post(() -> {
+                if (remotePath.equals(target.getTag())) {
+                    target.setImageBitmap(bitmap);
+                    target.setVisibility(View.VISIBLE);
+                }
+            });
+        });
+    }
+
+    private Bitmap decode(String remotePath) {
+        try {
+            File file = assets.getLocalFile(remotePath);
+            if (file == null) {
+                return null;
+            }
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            BitmapFactory.decodeFile(file.getAbsolutePath(), bounds);
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = 1;
+            while (bounds.outWidth / (options.inSampleSize * 2) >= maxWidthPx) {
+                options.inSampleSize *= 2;
+            }
+            return BitmapFactory.decodeFile(file.getAbsolutePath(), options);
+        } catch (Exception e) {
+            Log.w(TAG, "Unable to load image " + remotePath, e);
+            return null;
+        }
+    }
+}
@@ -49,6 +49,7 @@ public class SampleDataGenerator {
 
                                 db.questionDao().insertAll(generated);
                         }
+                        StartupCache.getInstance().invalidate();
 
                         if (onComplete != null) {
                                 mainHandler.post(onComplete);
@@ -0,0 +1,215 @@
+package com.smartexam.utils;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+import com.smartexam.database.AppDatabase;
+import com.smartexam.models.AssessmentPaper;
+import com.smartexam.models.Question;
+import com.smartexam.models.Subject;
+import com.smartexam.models.TeacherSettings;
+import com.smartexam.preferences.TeacherSettingsRepository;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
+
+/**
+ * Data the first screens need, loaded while the splash screen runs its trial and terms checks.
+ * Warmup tasks run on low-priority background threads in priority order: TeacherSettings and
+ * dashboard stats for MainActivity, then the subject list, then the question pool for the most
+ * recently used subject and grade. A task not started within {@link #WARMUP_BUDGET_MS} is skipped,
+ * so warmup never holds up the first frame or routing; screens fall back to Room for anything
+ * that is missing.
+ * <p>
+ * Settings and dashboard stats are handed out once, since they go stale as soon as the user acts.
+ * Subjects and the pool are served for {@link #WARM_TTL_MS} unless {@link #invalidate()} is called
+ * after a write. Every path that writes questions or subjects calls it, including marketplace sync
+ * and pack downloads. Each invalidate starts a new generation, and a warmup task that began
+ * loading in an earlier one discards its result, so a read racing a write cannot put stale data
+ * back.
+ */
+public class StartupCache {
+
+    private static final String TAG = "StartupCache";
+    private static final String PREFS_NAME = "startup_cache_prefs";
+    private static final String KEY_POOL_SUBJECT = "pool_subject";
+    private static final String KEY_POOL_GRADE = "pool_grade";
+    private static final long WARMUP_BUDGET_MS = 1500;
+    private static final long WARM_TTL_MS = 2 * 60 * 1000;
+    private static final int WARMUP_THREADS = 2;
+    private static final int RECENT_PAPER_LIMIT = 5;
+
+    private static final StartupCache INSTANCE = new StartupCache();
+
+    private final AtomicBoolean started = new AtomicBoolean();
+    private final AtomicReference<TeacherSettings> settings = new AtomicReference<>();
+    private final AtomicReference<DashboardStats> dashboard = new AtomicReference<>();
+    private volatile List<Subject> subjects;
+    private volatile Pool pool;
+    private volatile long warmedAt;
+    // Guarded by this
+    private long generation;
+
+    private StartupCache() {
+    }
+
+    public static StartupCache getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts the warmup once per process. Returns immediately.
+     */
+    public void warmUp(Context context) {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        Context app = context.getApplicationContext();
+        AppDatabase db = AppDatabase.getInstance(app);
+        long deadline = SystemClock.elapsedRealtime() + WARMUP_BUDGET_MS;
+        warmedAt = SystemClock.elapsedRealtime();
+
+        ExecutorService executor = Executors.newFixedThreadPool(WARMUP_THREADS);
+        // Submitted in priority order; the pool starts them first-in, first-out
+        submit(executor, deadline, "settings",
+                () -> new TeacherSettingsRepository(app).getSettings(), settings::set);
+        submit(executor, deadline, "dashboard", () -> new DashboardStats(
+                db.questionDao().getQuestionCount(),
+                db.paperDao().getPaperCount(),
+                db.subjectDao().getSubjectCount(),
+                db.paperDao().getRecentPapers(RECENT_PAPER_LIMIT)), dashboard::set);
+        submit(executor, deadline, "subjects",
+                () -> Collections.unmodifiableList(db.subjectDao().getAllSubjects()), loaded -> subjects = loaded);
+        submit(executor, deadline, "pool", () -> {
+            SharedPreferences prefs = app.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+            String subject = prefs.getString(KEY_POOL_SUBJECT, null);
+            int grade = prefs.getInt(KEY_POOL_GRADE, 0);
+            if (subject == null || grade <= 0) {
+                return null;
+            }
+            return new Pool(subject, grade,
+                    Collections.unmodifiableList(db.questionDao().getQuestionsForSubject(subject, grade)));
+        }, loaded -> pool = loaded);
+        executor.shutdown();
+    }
+
+    /**
+     * Runs {@code load} within the budget and hands its result to {@code store}, unless
+     * {@link #invalidate()} was called after loading began.
+     */
+    private <T> void submit(ExecutorService executor, long deadline, String name, Callable<T> load,
+            Consumer<T> store) {
+        executor.execute(() -> {
+            if (SystemClock.elapsedRealtime() > deadline) {
+                Log.d(TAG, "Warmup budget spent; skipping " + name);
+                return;
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+            long startGeneration;
+            synchronized (this) {
+                startGeneration = generation;
+            }
+            try {
+                T loaded = load.call();
+                synchronized (this) {
+                    if (generation != startGeneration) {
+                        Log.d(TAG, "Discarding " + name + " loaded before an invalidate");
+                        return;
+                    }
+                    store.accept(loaded);
+                }
+            } catch (Exception e) {
+                Log.w(TAG, "Warmup of " + name + " failed", e);
+            }
+        });
+    }
+
+    /**
+     * The settings loaded at startup, or null if not ready or already taken.
+     */
+    public TeacherSettings takeTeacherSettings() {
+        return settings.getAndSet(null);
+    }
+
+    /**
+     * Dashboard counts loaded at startup, or null if not ready or already taken.
+     */
+    public DashboardStats takeDashboardStats() {
+        return dashboard.getAndSet(null);
+    }
+
+    /**
+     * The subject list, or null if not warmed or no longer fresh.
+     */
+    public List<Subject> getSubjects() {
+        return isFresh() ? subjects : null;
+    }
+
+    /**
+     * The question pool for the subject and grade, or null if it was not the warmed pool.
+     */
+    public List<Question> getPool(String subject, int grade) {
+        Pool current = pool;
+        if (current == null || !isFresh() || current.grade != grade || !current.subject.equals(subject)) {
+            return null;
+        }
+        return current.questions;
+    }
+
+    /**
+     * Remembers the subject and grade whose pool the next startup should preload.
+     */
+    public static void recordPoolUse(Context context, String subject, int grade) {
+        context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE).edit()
+                .putString(KEY_POOL_SUBJECT, subject)
+                .putInt(KEY_POOL_GRADE, grade)
+                .apply();
+    }
+
+    /**
+     * Drops warmed data after questions or subjects change, including any still being loaded.
+     */
+    public synchronized void invalidate() {
+        generation++;
+        dashboard.set(null);
+        subjects = null;
+        pool = null;
+    }
+
+    private boolean isFresh() {
+        return SystemClock.elapsedRealtime() - warmedAt < WARM_TTL_MS;
+    }
+
+    public static class DashboardStats {
+        public final int questionCount;
+        public final int paperCount;
+        public final int subjectCount;
+        public final List<AssessmentPaper> recentPapers;
+
+        DashboardStats(int questionCount, int paperCount, int subjectCount, List<AssessmentPaper> recentPapers) {
+            this.questionCount = questionCount;
+            this.paperCount = paperCount;
+            this.subjectCount = subjectCount;
+            this.recentPapers = recentPapers;
+        }
+    }
+
+    private static class Pool {
+        final String subject;
+        final int grade;
+        final List<Question> questions;
+
+        Pool(String subject, int grade, List<Question> questions) {
+            this.subject = subject;
+            this.grade = grade;
+            this.questions = questions;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.smartexam.marketplace.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import com.smartexam.models.Question;
+import com.smartexam.models.QuestionPack;
+import com.smartexam.models.QuestionType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+import org.junit.Test;
+
+public class PackBundleTest {
+
+    @Test
+    public void roundTripKeepsEveryRecordInOrder() throws Exception {
+        QuestionPack pack = pack(3);
+        List<Question> questions = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            questions.add(question(i));
+        }
+        List<PackBundle.Asset> assets = Arrays.asList(
+                new PackBundle.Asset("images/q0.png", 1234, "0123456789abcdef0123456789abcdef"),
+                new PackBundle.Asset("images/q2.png", 99, null));
+
+        Collected read = read(build(pack, questions, assets));
+
+        assertEquals("pack-1", read.pack.getId());
+        assertEquals("Fractions", read.pack.getTitle());
+        assertEquals(2, read.pack.getVersion());
+        assertEquals(1_700_000_000_000L, read.pack.getUpdatedAt());
+        assertEquals(pack.getQuestionIds(), read.pack.getQuestionIds());
+        assertEquals(3, read.questions.size());
+        for (int i = 0; i < 3; i++) {
+            Question expected = questions.get(i);
+            Question actual = read.questions.get(i);
+            assertEquals(expected.getId(), actual.getId());
+            assertEquals(expected.getQuestionText(), actual.getQuestionText());
+            assertEquals(expected.getType(), actual.getType());
+            assertEquals(expected.getMarks(), actual.getMarks());
+            assertEquals(expected.getContent(), actual.getContent());
+            assertEquals(expected.getUpdatedAt(), actual.getUpdatedAt());
+        }
+        assertEquals(2, read.assets.size());
+        assertEquals("images/q0.png", read.assets.get(0).getRemotePath());
+        assertEquals(1234, read.assets.get(0).getSizeBytes());
+        assertEquals("0123456789abcdef0123456789abcdef", read.assets.get(0).getMd5());
+        assertNull(read.assets.get(1).getMd5());
+    }
+
+    @Test
+    public void emptyPackRoundTrips() throws Exception {
+        Collected read = read(build(pack(0), Collections.emptyList(), Collections.emptyList()));
+
+        assertEquals("pack-1", read.pack.getId());
+        assertEquals(0, read.questions.size());
+        assertEquals(0, read.assets.size());
+    }
+
+    @Test
+    public void everyTruncationIsRejected() throws Exception {
+        byte[] bundle = build(pack(2), Arrays.asList(question(0), question(1)),
+                Collections.singletonList(new PackBundle.Asset("images/a.png", 10, null)));
+        for (int length = 0; length < bundle.length; length++) {
+            try {
+                read(Arrays.copyOf(bundle, length));
+                throw new AssertionError("Accepted a bundle cut to " + length + " of " + bundle.length + " bytes");
+            } catch (IOException expected) {
+                // Includes cuts inside the gzip trailer
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void badMagicIsRejected() throws Exception {
+        read(gzip(0x12345678, PackBundle.VERSION));
+    }
+
+    @Test(expected = IOException.class)
+    public void newerVersionIsRejected() throws Exception {
+        read(gzip(0x53455042, PackBundle.VERSION + 1));
+    }
+
+    @Test(expected = IOException.class)
+    public void malformedRecordIsRejected() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(new GZIPOutputStream(out))) {
+            data.writeInt(0x53455042);
+            data.writeInt(PackBundle.VERSION);
+            byte[] json = "{\"marks\":\"many\"}".getBytes("UTF-8");
+            data.writeByte(2);
+            data.writeInt(json.length);
+            data.write(json);
+            data.writeByte(0);
+            data.writeInt(0);
+        }
+        read(out.toByteArray());
+    }
+
+    @Test(expected = IOException.class)
+    public void plainBytesAreRejected() throws Exception {
+        read("not a bundle".getBytes("UTF-8"));
+    }
+
+    @Test
+    public void buildMatchesWriter() throws Exception {
+        QuestionPack pack = pack(1);
+        Question question = question(0);
+        ByteArrayOutputStream written = new ByteArrayOutputStream();
+        try (PackBundle.Writer writer = new PackBundle.Writer(written, pack)) {
+            writer.addQuestion(question);
+        }
+
+        assertArrayEquals(written.toByteArray(),
+                build(pack, Collections.singletonList(question), Collections.emptyList()));
+    }
+
+    private static byte[] build(QuestionPack pack, List<Question> questions, List<PackBundle.Asset> assets)
+            throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PackBundle.build(pack, questions, assets, out);
+        return out.toByteArray();
+    }
+
+    private static Collected read(byte[] bundle) throws IOException {
+        Collected collected = new Collected();
+        PackBundle.read(new ByteArrayInputStream(bundle), collected);
+        return collected;
+    }
+
+    /**
+     * A bundle header with no records.
+     */
+    private static byte[] gzip(int magic, int version) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (DataOutputStream data = new DataOutputStream(new GZIPOutputStream(out))) {
+            data.writeInt(magic);
+            data.writeInt(version);
+            data.writeByte(0);
+            data.writeInt(0);
+        }
+        return out.toByteArray();
+    }
+
+    private static QuestionPack pack(int questionCount) {
+        QuestionPack pack = new QuestionPack();
+        pack.setId("pack-1");
+        pack.setTitle("Fractions");
+        pack.setSubject("Mathematics");
+        pack.setGrade(5);
+        pack.setVersion(2);
+        pack.setUpdatedAt(1_700_000_000_000L);
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < questionCount; i++) {
+            ids.add("q" + i);
+        }
+        pack.setQuestionIds(ids);
+        pack.setQuestionCount(questionCount);
+        return pack;
+    }
+
+    private static Question question(int i) {
+        Question question = new Question();
+        question.setId("q" + i);
+        question.setSubject("Mathematics");
+        question.setGrade(5);
+        question.setType(QuestionType.values()[i % QuestionType.values().length]);
+        question.setMarks(1 + i);
+        question.setQuestionText("What is " + i + "/4 as a decimal? \u00bd \u2192 0.5");
+        Map<String, String> content = new HashMap<>();
+        content.put("answer", String.valueOf(i / 4.0));
+        question.setContent(content);
+        question.setUpdatedAt(1_700_000_000_000L + i);
+        return question;
+    }
+
+    private static class Collected implements PackBundle.Handler {
+        QuestionPack pack;
+        final List<Question> questions = new ArrayList<>();
+        final List<PackBundle.Asset> assets = new ArrayList<>();
+
+        @Override
+        public void onPack(QuestionPack pack) {
+            this.pack = pack;
+        }
+
+        @Override
+        public void onQuestion(Question question) {
+            questions.add(question);
+        }
+
+        @Override
+        public void onAsset(PackBundle.Asset asset) {
+            assets.add(asset);
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package com.smartexam.subscription;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import org.junit.Test;
+
+public class BloomFilterTest {
+
+    private static final double TARGET_RATE = 0.01;
+    private static final long GOLDEN_GENERATED_AT = 1_700_000_000_000L;
+
+    @Test
+    public void falsePositiveRateAtDefaultCapacity() throws Exception {
+        assertFalsePositiveRate(100_000);
+    }
+
+    @Test
+    public void falsePositiveRateAtOneMillionDevices() throws Exception {
+        assertFalsePositiveRate(1_000_000);
+    }
+
+    @Test
+    public void falsePositiveRateForNonHexValues() {
+        int capacity = 50_000;
+        BloomFilter filter = BloomFilter.create(capacity, TARGET_RATE);
+        for (int i = 0; i < capacity; i++) {
+            filter.put("device-" + i);
+        }
+        int falsePositives = 0;
+        int probes = 100_000;
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain("other-" + i)) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue("False positive rate " + rate, rate < TARGET_RATE * 1.5);
+    }
+
+    @Test
+    public void putReportsOnlyNewValues() throws Exception {
+        BloomFilter filter = BloomFilter.create(1000, TARGET_RATE);
+        String deviceHash = sha256("device");
+        assertTrue(filter.put(deviceHash));
+        assertFalse(filter.put(deviceHash));
+        assertEquals(1, filter.count);
+    }
+
+    @Test
+    public void writeAndReadRoundTrip() throws Exception {
+        BloomFilter filter = BloomFilter.create(10_000, TARGET_RATE);
+        for (int i = 0; i < 5000; i++) {
+            filter.put(sha256("device" + i));
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        filter.write(out);
+        out.flush();
+
+        BloomFilter read = BloomFilter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+        assertEquals(filter.capacity, read.capacity);
+        assertEquals(filter.numBits, read.numBits);
+        assertEquals(filter.numHashes, read.numHashes);
+        assertEquals(filter.count, read.count);
+        assertArrayEquals(filter.bits, read.bits);
+        for (int i = 0; i < 5000; i++) {
+            assertTrue(read.mightContain(sha256("device" + i)));
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void readRejectsBadHeader() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(1000);
+        out.writeInt(100); // Not a multiple of 64
+        out.writeInt(7);
+        out.writeInt(0);
+        out.flush();
+        BloomFilter.read(new DataInputStream(new ByteArrayInputStream(bytes.toByteArray())));
+    }
+
+    @Test
+    public void writesAdminGoldenBytes() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(UsedDeviceFilter.MAGIC);
+        out.writeByte(UsedDeviceFilter.VERSION);
+        out.writeLong(GOLDEN_GENERATED_AT);
+        goldenFilter().write(out);
+        out.flush();
+
+        assertArrayEquals(readGolden(), bytes.toByteArray());
+    }
+
+    @Test
+    public void readsAdminGoldenBytes() throws Exception {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(readGolden()));
+        assertEquals(GOLDEN_GENERATED_AT, UsedDeviceFilter.readHeader(in));
+        BloomFilter read = BloomFilter.read(in);
+        assertEquals(-1, in.read());
+
+        assertEquals(80, read.count);
+        for (int i = 0; i < 60; i++) {
+            assertTrue(read.mightContain(sha256("device-" + i)));
+        }
+        for (int i = 0; i < 20; i++) {
+            assertTrue(read.mightContain("legacy-" + i));
+        }
+    }
+
+    /**
+     * The filter in used_devices_golden.bloom, which smartexam-admin/scripts/check-used-device-filter.ts
+     * builds from the same inputs; change both together.
+     */
+    private static BloomFilter goldenFilter() throws Exception {
+        BloomFilter filter = BloomFilter.create(200, TARGET_RATE);
+        for (int i = 0; i < 60; i++) {
+            filter.put(sha256("device-" + i));
+        }
+        for (int i = 0; i < 20; i++) {
+            filter.put("legacy-" + i);
+        }
+        return filter;
+    }
+
+    private static byte[] readGolden() throws IOException {
+        try (InputStream in = BloomFilterTest.class.getResourceAsStream("used_devices_golden.bloom")) {
+            assertNotNull("Missing used_devices_golden.bloom", in);
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                bytes.write(buffer, 0, read);
+            }
+            return bytes.toByteArray();
+        }
+    }
+
+    /**
+     * Fills the filter to capacity with real device hashes, checks there are no false negatives
+     * and that the rate over as many unseen hashes stays near the 1% target.
+     */
+    private static void assertFalsePositiveRate(int capacity) throws Exception {
+        BloomFilter filter = BloomFilter.create(capacity, TARGET_RATE);
+        for (int i = 0; i < capacity; i++) {
+            filter.put(sha256("used-" + i));
+        }
+        for (int i = 0; i < capacity; i += 97) {
+            assertTrue("False negative", filter.mightContain(sha256("used-" + i)));
+        }
+        int falsePositives = 0;
+        int probes = Math.min(capacity, 200_000);
+        for (int i = 0; i < probes; i++) {
+            if (filter.mightContain(sha256("unused-" + i))) {
+                falsePositives++;
+            }
+        }
+        double rate = (double) falsePositives / probes;
+        assertTrue("False positive rate " + rate, rate < TARGET_RATE * 1.5);
+    }
+
+    private static String sha256(String value) throws Exception {
+        byte[] digest = MessageDigest.getInstance("SHA-256").digest(value.getBytes(StandardCharsets.UTF_8));
+        char[] hex = new char[digest.length * 2];
+        for (int i = 0; i < digest.length; i++) {
+            hex[i * 2] = Character.forDigit((digest[i] >> 4) & 0xf, 16);
+            hex[i * 2 + 1] = Character.forDigit(digest[i] & 0xf, 16);
+        }
+        return new String(hex);
+    }
+}
@@ -0,0 +1,78 @@
+package com.smartexam.subscription;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Test;
+
+public class EntitlementMetricsTest {
+
+    private final EntitlementMetrics metrics = EntitlementMetrics.getInstance();
+
+    @Before
+    public void setUp() {
+        metrics.clear();
+    }
+
+    @Test
+    public void totalReadsAddUpEveryApi() {
+        metrics.recordReads("EntitlementEngine.listener", 2);
+        metrics.recordReads("TrialManager.getTrialStatus", 1);
+        metrics.recordReads("EntitlementEngine.listener", 1);
+
+        assertEquals(4, metrics.getTotalReads());
+        assertEquals(3, stats("EntitlementEngine.listener").reads);
+    }
+
+    @Test
+    public void cachedCallsCostNoReads() {
+        for (int i = 0; i < 10; i++) {
+            metrics.begin("SubscriptionManager.getEntitlement").hit().succeeded();
+        }
+
+        EntitlementMetrics.ApiStats stats = stats("SubscriptionManager.getEntitlement");
+        assertEquals(10, stats.calls);
+        assertEquals(10, stats.hits);
+        assertEquals(0, metrics.getTotalReads());
+    }
+
+    @Test
+    public void callIsCountedOnce() {
+        EntitlementMetrics.Call call = metrics.begin("TrialStateManager.getTrialState").miss();
+        call.succeeded();
+        call.failed();
+        call.succeeded();
+
+        EntitlementMetrics.ApiStats stats = stats("TrialStateManager.getTrialState");
+        assertEquals(1, stats.calls);
+        assertEquals(1, stats.misses);
+        assertEquals(0, stats.errors);
+    }
+
+    @Test
+    public void failedCallCountsAsError() {
+        metrics.begin("PaymentConfirmationWatcher.fallbackRead").failed();
+
+        EntitlementMetrics.ApiStats stats = stats("PaymentConfirmationWatcher.fallbackRead");
+        assertEquals(1, stats.errors);
+        assertEquals(0, stats.hits + stats.misses);
+    }
+
+    @Test
+    public void clearStartsANewBudget() {
+        metrics.recordReads("TrialAbuseDetector.checkDeviceEligibility", 5);
+        metrics.clear();
+
+        assertEquals(0, metrics.getTotalReads());
+        assertEquals(0, metrics.getStats().size());
+    }
+
+    private EntitlementMetrics.ApiStats stats(String api) {
+        for (EntitlementMetrics.ApiStats stats : metrics.getStats()) {
+            if (api.equals(stats.api)) {
+                return stats;
+            }
+        }
+        throw new AssertionError("No stats for " + api);
+    }
+}
@@ -0,0 +1,48 @@
+package com.smartexam.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PaymentConfirmationWatcherTest {
+
+    @Test
+    public void ceilingDoublesUpToTheCap() {
+        assertEquals(4000, PaymentConfirmationWatcher.ceiling(0));
+        assertEquals(8000, PaymentConfirmationWatcher.ceiling(1));
+        assertEquals(16000, PaymentConfirmationWatcher.ceiling(2));
+        assertEquals(20000, PaymentConfirmationWatcher.ceiling(3));
+        assertEquals(20000, PaymentConfirmationWatcher.ceiling(64));
+    }
+
+    @Test
+    public void delayStaysWithinZeroAndCeiling() {
+        for (int attempt = 0; attempt < 12; attempt++) {
+            long ceiling = PaymentConfirmationWatcher.ceiling(attempt);
+            for (int i = 0; i < 10_000; i++) {
+                long delay = PaymentConfirmationWatcher.nextDelay(attempt);
+                assertTrue("Delay " + delay + " outside [0, " + ceiling + "]", delay >= 0 && delay <= ceiling);
+            }
+        }
+    }
+
+    @Test
+    public void delayIsSpreadAcrossTheWholeRange() {
+        long ceiling = PaymentConfirmationWatcher.ceiling(5);
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        long sum = 0;
+        int samples = 100_000;
+        for (int i = 0; i < samples; i++) {
+            long delay = PaymentConfirmationWatcher.nextDelay(5);
+            min = Math.min(min, delay);
+            max = Math.max(max, delay);
+            sum += delay;
+        }
+        assertTrue("Lowest delay " + min, min < ceiling / 20);
+        assertTrue("Highest delay " + max, max > ceiling - ceiling / 20);
+        double mean = (double) sum / samples;
+        assertEquals(ceiling / 2.0, mean, ceiling * 0.02);
+    }
+}
@@ -0,0 +1,137 @@
+package com.smartexam.subscription;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import org.junit.Test;
+
+public class TrialStateStoreTest {
+
+    private static final String UID = "uid-1";
+    private static final int BENCHMARK_ROUNDS = 20_000;
+    // A check served from the store must stay far below a Firestore round trip
+    private static final long MAX_ROUND_TRIP_MICROS = 100;
+
+    @Test
+    public void roundTripKeepsEveryField() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("source", "play");
+        metadata.put("renewals", 3L);
+        metadata.put("score", 0.75);
+        metadata.put("flagged", true);
+        metadata.put("note", null);
+        TrialStateManager.TrialStateData state = new TrialStateManager.TrialStateData(
+                TrialStateManager.TrialState.ACTIVE, 1_700_000_000_000L, 1_700_604_800_000L,
+                1_700_000_360_000L, "a1b2c3", true, metadata);
+
+        TrialStateManager.TrialStateData read = TrialStateStore.decode(TrialStateStore.encode(UID, state)).state;
+
+        assertEquals(state.state, read.state);
+        assertEquals(state.trialStart, read.trialStart);
+        assertEquals(state.trialEnd, read.trialEnd);
+        assertEquals(state.lastSync, read.lastSync);
+        assertEquals(state.deviceHash, read.deviceHash);
+        assertEquals(state.serverVerified, read.serverVerified);
+        assertEquals(metadata, read.metadata);
+    }
+
+    @Test
+    public void narrowerNumbersAndOtherValuesAreWidened() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("count", 7);
+        metadata.put("ratio", 1.5f);
+        metadata.put("nested", Arrays.asList("a", "b"));
+
+        Map<String, Object> read = TrialStateStore.decode(TrialStateStore.encode(UID, state(metadata))).state.metadata;
+
+        assertEquals(7L, read.get("count"));
+        assertEquals(1.5, read.get("ratio"));
+        assertEquals("[a, b]", read.get("nested"));
+    }
+
+    @Test
+    public void nullDeviceHashReadsAsEmpty() throws Exception {
+        TrialStateManager.TrialStateData state = new TrialStateManager.TrialStateData(
+                TrialStateManager.TrialState.NONE, 0, 0, 0, null, false, null);
+
+        TrialStateManager.TrialStateData read = TrialStateStore.decode(TrialStateStore.encode(UID, state)).state;
+
+        assertEquals("", read.deviceHash);
+        assertTrue(read.metadata.isEmpty());
+    }
+
+    @Test
+    public void everyFlippedByteIsDetected() throws Exception {
+        byte[] encoded = TrialStateStore.encode(UID, state(new HashMap<>()));
+        for (int i = 0; i < encoded.length; i++) {
+            byte[] corrupt = encoded.clone();
+            corrupt[i] ^= 0x01;
+            assertNull("Byte " + i, decodeOrNull(corrupt));
+        }
+    }
+
+    @Test
+    public void everyTruncationIsDetected() throws Exception {
+        byte[] encoded = TrialStateStore.encode(UID, state(new HashMap<>()));
+        for (int length = 0; length < encoded.length; length++) {
+            assertNull("Length " + length, decodeOrNull(Arrays.copyOf(encoded, length)));
+        }
+    }
+
+    @Test
+    public void recordKeepsItsUid() throws Exception {
+        TrialStateStore.Record read = TrialStateStore.decode(TrialStateStore.encode("uid-2", state(new HashMap<>())));
+
+        assertEquals("uid-2", read.uid);
+        assertEquals(TrialStateManager.TrialState.EXPIRED, read.state.state);
+    }
+
+    @Test
+    public void roundTripTakesMicroseconds() throws Exception {
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("source", "play");
+        metadata.put("renewals", 3L);
+        TrialStateManager.TrialStateData state = state(metadata);
+        // Warm up the JIT before timing
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            TrialStateStore.decode(TrialStateStore.encode(UID, state));
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) {
+            TrialStateStore.decode(TrialStateStore.encode(UID, state));
+        }
+        double micros = (System.nanoTime() - start) / 1000.0 / BENCHMARK_ROUNDS;
+
+        System.out.println("Trial state encode + decode: " + micros + " us");
+        assertTrue("Round trip took " + micros + " us", micros < MAX_ROUND_TRIP_MICROS);
+    }
+
+    @Test(expected = IOException.class)
+    public void trailingBytesAreRejected() throws Exception {
+        byte[] encoded = TrialStateStore.encode(UID, state(new HashMap<>()));
+        TrialStateStore.decode(Arrays.copyOf(encoded, encoded.length + 4));
+    }
+
+    private static TrialStateManager.TrialStateData state(Map<String, Object> metadata) {
+        return new TrialStateManager.TrialStateData(TrialStateManager.TrialState.EXPIRED, 1000L, 2000L, 1500L,
+                "device", true, metadata);
+    }
+
+    /**
+     * Decodes like the store does when reading from disk, where any failure means the file is
+     * discarded.
+     */
+    private static TrialStateStore.Record decodeOrNull(byte[] data) {
+        try {
+            return TrialStateStore.decode(data);
+        } catch (IOException | RuntimeException e) {
+            return null;
+        }
+    }
+}
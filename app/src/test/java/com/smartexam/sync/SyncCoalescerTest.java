@@ -0,0 +1,161 @@
+package com.smartexam.sync;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class SyncCoalescerTest {
+
+    private static final int CALLERS = 32;
+
+    private SyncCoalescer coalescer;
+    private ExecutorService pool;
+
+    @Before
+    public void setUp() {
+        coalescer = new SyncCoalescer();
+        pool = Executors.newFixedThreadPool(CALLERS);
+    }
+
+    @After
+    public void tearDown() {
+        pool.shutdownNow();
+    }
+
+    @Test
+    public void concurrentCallersShareOneRun() throws Exception {
+        AtomicInteger runs = new AtomicInteger();
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch allJoined = new CountDownLatch(CALLERS);
+        AtomicReference<SyncManager.SyncCallback> leader = new AtomicReference<>();
+        Recorder recorder = new Recorder(CALLERS);
+
+        CountDownLatch go = new CountDownLatch(1);
+        for (int i = 0; i < CALLERS; i++) {
+            pool.execute(() -> {
+                await(go);
+                coalescer.execute("user", recorder, done -> {
+                    runs.incrementAndGet();
+                    leader.set(done);
+                    started.countDown();
+                });
+                allJoined.countDown();
+            });
+        }
+        go.countDown();
+        assertTrue(allJoined.await(5, TimeUnit.SECONDS));
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        assertTrue(coalescer.isInFlight("user"));
+
+        leader.get().onSyncSuccess(7);
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(1, runs.get());
+        assertEquals(CALLERS, recorder.successes.get());
+        assertEquals(0, recorder.failures.get());
+        assertEquals(7, recorder.lastCount.get());
+        assertFalse(coalescer.isInFlight("user"));
+    }
+
+    @Test
+    public void keyIsReleasedAfterResult() {
+        AtomicInteger runs = new AtomicInteger();
+        Recorder recorder = new Recorder(2);
+        coalescer.execute("user", recorder, done -> {
+            runs.incrementAndGet();
+            done.onSyncSuccess(1);
+        });
+        coalescer.execute("user", recorder, done -> {
+            runs.incrementAndGet();
+            done.onSyncSuccess(2);
+        });
+        assertEquals(2, runs.get());
+        assertEquals(2, recorder.lastCount.get());
+    }
+
+    @Test
+    public void differentKeysRunIndependently() {
+        List<SyncManager.SyncCallback> pending = new ArrayList<>();
+        Recorder recorder = new Recorder(2);
+        coalescer.execute("user", recorder, pending::add);
+        coalescer.execute("user/forced", recorder, pending::add);
+        assertEquals(2, pending.size());
+        pending.get(0).onSyncSuccess(0);
+        assertTrue(coalescer.isInFlight("user/forced"));
+        pending.get(1).onSyncSuccess(0);
+        assertEquals(2, recorder.successes.get());
+    }
+
+    @Test
+    public void throwingWorkFailsEveryWaiterAndReleasesKey() {
+        Recorder recorder = new Recorder(1);
+        coalescer.execute("user", recorder, done -> {
+            throw new IllegalStateException("boom");
+        });
+        assertEquals(1, recorder.failures.get());
+        assertFalse(coalescer.isInFlight("user"));
+    }
+
+    @Test
+    public void waitersReceiveTheLeadersFailure() throws Exception {
+        CountDownLatch joined = new CountDownLatch(CALLERS - 1);
+        AtomicReference<SyncManager.SyncCallback> leader = new AtomicReference<>();
+        Recorder recorder = new Recorder(CALLERS);
+        coalescer.execute("user", recorder, leader::set);
+        for (int i = 1; i < CALLERS; i++) {
+            pool.execute(() -> {
+                coalescer.execute("user", recorder, done -> {
+                    throw new AssertionError("Second run started while the first was in flight");
+                });
+                joined.countDown();
+            });
+        }
+        assertTrue(joined.await(5, TimeUnit.SECONDS));
+        leader.get().onSyncFailed("offline");
+        assertTrue(recorder.done.await(5, TimeUnit.SECONDS));
+        assertEquals(CALLERS, recorder.failures.get());
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static class Recorder implements SyncManager.SyncCallback {
+        final AtomicInteger successes = new AtomicInteger();
+        final AtomicInteger failures = new AtomicInteger();
+        final AtomicInteger lastCount = new AtomicInteger(-1);
+        final CountDownLatch done;
+
+        Recorder(int expected) {
+            done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void onSyncSuccess(int itemCount) {
+            successes.incrementAndGet();
+            lastCount.set(itemCount);
+            done.countDown();
+        }
+
+        @Override
+        public void onSyncFailed(String errorMessage) {
+            failures.incrementAndGet();
+            done.countDown();
+        }
+    }
+}
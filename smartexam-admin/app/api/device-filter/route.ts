@@ -0,0 +1,92 @@
+import { NextResponse } from 'next/server';
+import { db, storage, isConfigured } from '@/lib/firebase-admin';
+import {
+    BloomFilter,
+    DEFAULT_CAPACITY,
+    TARGET_FALSE_POSITIVE_RATE,
+    USED_DEVICE_FILTER_PATH,
+} from '@/lib/used-device-filter';
+
+const PAGE_SIZE = 1000;
+
+// Status of the published used-device filter
+export async function GET() {
+    if (!isConfigured || !storage) {
+        return NextResponse.json({ error: 'Firebase Admin not configured' }, { status: 503 });
+    }
+
+    try {
+        const file = storage.bucket().file(USED_DEVICE_FILTER_PATH);
+        const [exists] = await file.exists();
+        if (!exists) {
+            return NextResponse.json({ published: false });
+        }
+        const [metadata] = await file.getMetadata();
+        return NextResponse.json({
+            published: true,
+            size: Number(metadata.size),
+            ...metadata.metadata,
+        });
+    } catch (error: any) {
+        return NextResponse.json({ error: error.message }, { status: 500 });
+    }
+}
+
+// Rebuilds the filter from every trial's device_hash and publishes it to Storage. The app
+// treats a filter older than a day as unknown, so call this every few hours (e.g. from a cron).
+export async function POST() {
+    if (!isConfigured || !db || !storage) {
+        return NextResponse.json({ error: 'Firebase Admin not configured' }, { status: 503 });
+    }
+
+    try {
+        const generatedAt = Date.now();
+        const deviceHashes = new Set<string>();
+        let last: FirebaseFirestore.QueryDocumentSnapshot | undefined;
+        while (true) {
+            let query = db.collection('trials').select('device_hash').orderBy('__name__').limit(PAGE_SIZE);
+            if (last) {
+                query = query.startAfter(last);
+            }
+            const page = await query.get();
+            page.docs.forEach(doc => {
+                const deviceHash = doc.get('device_hash');
+                if (typeof deviceHash === 'string' && deviceHash.length > 0) {
+                    deviceHashes.add(deviceHash);
+                }
+            });
+            if (page.size < PAGE_SIZE) {
+                break;
+            }
+            last = page.docs[page.docs.length - 1];
+        }
+
+        // Headroom so devices added by clients between rebuilds keep the rate near target
+        const capacity = Math.max(DEFAULT_CAPACITY, Math.ceil(deviceHashes.size * 1.5));
+        const filter = BloomFilter.create(capacity, TARGET_FALSE_POSITIVE_RATE);
+        deviceHashes.forEach(deviceHash => filter.put(deviceHash));
+
+        const buffer = filter.toBuffer(generatedAt);
+        await storage.bucket().file(USED_DEVICE_FILTER_PATH).save(buffer, {
+            contentType: 'application/octet-stream',
+            metadata: {
+                cacheControl: 'no-cache',
+                metadata: {
+                    generatedAt: String(generatedAt),
+                    devices: String(deviceHashes.size),
+                    capacity: String(capacity),
+                },
+            },
+        });
+
+        return NextResponse.json({
+            success: true,
+            generatedAt,
+            devices: deviceHashes.size,
+            capacity,
+            size: buffer.length,
+        });
+    } catch (error: any) {
+        return NextResponse.json({ error: error.message }, { status: 500 });
+    }
+}
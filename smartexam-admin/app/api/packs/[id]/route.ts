@@ -1,5 +1,6 @@
 import { NextResponse } from 'next/server';
 import { db, isConfigured } from '@/lib/firebase-admin';
+import { publishPackBundle } from '@/lib/pack-bundle';
 
 export async function DELETE(
     req: Request,
@@ -29,11 +30,26 @@ export async function PATCH(
     try {
         const { id } = params;
         const updates = await req.json();
+        // The app's delta sync only re-reads packs whose updatedAt moved
+        updates.updatedAt = Date.now();
 
         // Prevent updating immutable fields if necessary, for now allow all
         await db.collection('question_packs').doc(id).update(updates);
 
-        return NextResponse.json({ success: true, id, ...updates });
+        // Published packs are downloaded as one bundle; rebuild it so it matches this edit. On
+        // failure the bundle is unlisted and clients fall back to per-question reads.
+        let bundle: { sizeBytes: number; md5: string } | { error: string } | undefined;
+        const saved = await db.collection('question_packs').doc(id).get();
+        if (saved.get('isPublished') === true) {
+            try {
+                bundle = await publishPackBundle(id);
+            } catch (error: any) {
+                console.error(`Bundle publish failed for pack ${id}:`, error);
+                bundle = { error: error.message };
+            }
+        }
+
+        return NextResponse.json({ success: true, id, ...updates, bundle });
     } catch (error: any) {
         return NextResponse.json({ error: error.message }, { status: 500 });
     }
@@ -53,6 +53,7 @@ export async function POST(req: Request) {
         }
 
         pack.createdAt = Date.now();
+        pack.updatedAt = pack.createdAt;
         pack.version = 1;
         pack.isPublished = false;
 
@@ -49,6 +49,7 @@ export async function POST(req: Request) {
         // Production check: Versioning
         question.version = (question.version || 0) + 1;
         question.createdAt = Date.now();
+        question.updatedAt = question.createdAt;
 
         const docRef = await db.collection('questions').add(question);
 
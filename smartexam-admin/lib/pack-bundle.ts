@@ -0,0 +1,125 @@
+import { createHash } from 'crypto';
+import { gzipSync } from 'zlib';
+import * as admin from 'firebase-admin';
+import { db, storage } from '@/lib/firebase-admin';
+
+// Single-file download format for a question pack. Mirrors
+// com.smartexam.marketplace.data.PackBundle in the Android app; change both together.
+//
+//   gzip( magic "SEPB", int version, record*, end record )
+//   record = byte type, int length, length bytes of UTF-8 JSON
+//
+// The pack record comes first, then one record per question, then the asset manifest.
+export const PACK_BUNDLE_VERSION = 1;
+const MAGIC = 0x53455042; // "SEPB"
+const TYPE_END = 0;
+const TYPE_PACK = 1;
+const TYPE_QUESTION = 2;
+const TYPE_ASSET = 3;
+const MAX_RECORD_BYTES = 1024 * 1024;
+const GET_ALL_CHUNK = 100;
+
+export interface BundleAsset {
+    remotePath: string;
+    sizeBytes: number;
+    md5: string | null; // hex
+}
+
+export function packBundlePath(packId: string): string {
+    return `bundles/${packId}.bin.gz`;
+}
+
+function record(type: number, value: object): Buffer {
+    const json = Buffer.from(JSON.stringify(value), 'utf8');
+    if (json.length > MAX_RECORD_BYTES) {
+        throw new Error(`Record too large: ${json.length} bytes`);
+    }
+    const header = Buffer.alloc(5);
+    header.writeUInt8(type, 0);
+    header.writeInt32BE(json.length, 1);
+    return Buffer.concat([header, json]);
+}
+
+export function encodePackBundle(pack: object, questions: object[], assets: BundleAsset[]): Buffer {
+    const header = Buffer.alloc(8);
+    header.writeInt32BE(MAGIC, 0);
+    header.writeInt32BE(PACK_BUNDLE_VERSION, 4);
+    const parts = [header, record(TYPE_PACK, pack)];
+    questions.forEach(question => parts.push(record(TYPE_QUESTION, question)));
+    assets.forEach(asset => parts.push(record(TYPE_ASSET, asset)));
+    const end = Buffer.alloc(5);
+    end.writeUInt8(TYPE_END, 0);
+    parts.push(end);
+    return gzipSync(Buffer.concat(parts));
+}
+
+// Builds the pack's bundle from its document, its listed questions and their images, uploads
+// it, then lists its size and MD5 on the pack document so clients download and verify it.
+// Questions missing from the collection are left out; images missing from Storage are left out
+// of the manifest, and the app fetches those on demand. If publishing fails, the listing is
+// removed so no client installs a bundle older than the pack.
+export async function publishPackBundle(packId: string): Promise<{ sizeBytes: number; md5: string }> {
+    if (!db || !storage) {
+        throw new Error('Firebase Admin not configured');
+    }
+    const packRef = db.collection('question_packs').doc(packId);
+    try {
+        return await buildAndUpload(packId, packRef);
+    } catch (error) {
+        await packRef.update({
+            bundleSizeBytes: admin.firestore.FieldValue.delete(),
+            bundleMd5: admin.firestore.FieldValue.delete(),
+        }).catch(() => undefined);
+        throw error;
+    }
+}
+
+async function buildAndUpload(
+    packId: string,
+    packRef: FirebaseFirestore.DocumentReference,
+): Promise<{ sizeBytes: number; md5: string }> {
+    if (!db || !storage) {
+        throw new Error('Firebase Admin not configured');
+    }
+    const packDoc = await packRef.get();
+    if (!packDoc.exists) {
+        throw new Error(`Pack ${packId} not found`);
+    }
+    const { bundleSizeBytes, bundleMd5, ...pack } = { id: packDoc.id, ...packDoc.data() } as any;
+
+    const questionIds: string[] = pack.questionIds || [];
+    const questions: any[] = [];
+    for (let start = 0; start < questionIds.length; start += GET_ALL_CHUNK) {
+        const refs = questionIds.slice(start, start + GET_ALL_CHUNK).map(id => db!.collection('questions').doc(id));
+        const docs = await db.getAll(...refs);
+        docs.filter(doc => doc.exists).forEach(doc => questions.push({ id: doc.id, ...doc.data() }));
+    }
+
+    const bucket = storage.bucket();
+    const assets: BundleAsset[] = [];
+    const imagePaths = new Set<string>(questions.map(q => q.imagePath).filter((p: any) => typeof p === 'string' && p));
+    for (const remotePath of imagePaths) {
+        const file = bucket.file(remotePath);
+        const [exists] = await file.exists();
+        if (!exists) {
+            console.warn(`Bundle for ${packId}: image ${remotePath} not in Storage`);
+            continue;
+        }
+        const [metadata] = await file.getMetadata();
+        assets.push({
+            remotePath,
+            sizeBytes: Number(metadata.size),
+            md5: metadata.md5Hash ? Buffer.from(metadata.md5Hash, 'base64').toString('hex') : null,
+        });
+    }
+
+    const buffer = encodePackBundle(pack, questions, assets);
+    const md5 = createHash('md5').update(buffer).digest('hex');
+    // Stored as-is: no contentEncoding, so Storage never transcodes and the size and MD5 hold
+    await bucket.file(packBundlePath(packId)).save(buffer, {
+        contentType: 'application/octet-stream',
+        resumable: false,
+    });
+    await packRef.update({ bundleSizeBytes: buffer.length, bundleMd5: md5 });
+    return { sizeBytes: buffer.length, md5 };
+}
@@ -0,0 +1,122 @@
+/**
+ * Server-side builder for the used-device Bloom filter that the Android app downloads from
+ * Storage (UsedDeviceFilter.java). A port of app/src/main/java/com/smartexam/subscription/BloomFilter.java:
+ * the hashing and the big-endian layout written by toBuffer must stay in step with it.
+ */
+
+export const USED_DEVICE_FILTER_PATH = 'device_filter/used_devices.bloom';
+export const DEFAULT_CAPACITY = 100_000;
+export const TARGET_FALSE_POSITIVE_RATE = 0.01;
+
+const MAGIC = 0x55444246; // "UDBF"
+const VERSION = 2;
+const MASK_64 = (BigInt(1) << BigInt(64)) - BigInt(1);
+const HEX_16 = /^[0-9a-fA-F]{16}$/;
+
+export class BloomFilter {
+    readonly capacity: number;
+    readonly numBits: number;
+    readonly numHashes: number;
+    readonly words: BigUint64Array;
+    count = 0;
+
+    private constructor(capacity: number, numBits: number, numHashes: number) {
+        this.capacity = capacity;
+        this.numBits = numBits;
+        this.numHashes = numHashes;
+        this.words = new BigUint64Array(numBits / 64);
+    }
+
+    /**
+     * Same sizing as BloomFilter.create: m = -n ln p / (ln 2)^2 bits, k = (m / n) ln 2 probes.
+     */
+    static create(capacity: number, falsePositiveRate: number): BloomFilter {
+        const ln2 = Math.log(2);
+        let numBits = Math.ceil(-capacity * Math.log(falsePositiveRate) / (ln2 * ln2));
+        numBits = Math.max(64, Math.ceil(numBits / 64) * 64);
+        const numHashes = Math.max(1, Math.round(numBits / capacity * ln2));
+        return new BloomFilter(capacity, numBits, numHashes);
+    }
+
+    /**
+     * Returns true if any bit changed, i.e. the value was definitely not present before.
+     */
+    put(value: string): boolean {
+        const h1 = hash1(value);
+        const h2 = hash2(value, h1);
+        let changed = false;
+        for (let i = 0; i < this.numHashes; i++) {
+            const bit = Number(((h1 + BigInt(i) * h2) & MASK_64) % BigInt(this.numBits));
+            const word = bit >>> 6;
+            const mask = BigInt(1) << BigInt(bit & 63);
+            if ((this.words[word] & mask) === BigInt(0)) {
+                this.words[word] |= mask;
+                changed = true;
+            }
+        }
+        if (changed) {
+            this.count++;
+        }
+        return changed;
+    }
+
+    /**
+     * The published blob: magic, version, generatedAt, then the fields of BloomFilter.write.
+     */
+    toBuffer(generatedAt: number): Buffer {
+        const buffer = Buffer.alloc(4 + 1 + 8 + 16 + this.words.length * 8);
+        let offset = buffer.writeInt32BE(MAGIC, 0);
+        offset = buffer.writeInt8(VERSION, offset);
+        offset = buffer.writeBigInt64BE(BigInt(generatedAt), offset);
+        offset = buffer.writeInt32BE(this.capacity, offset);
+        offset = buffer.writeInt32BE(this.numBits, offset);
+        offset = buffer.writeInt32BE(this.numHashes, offset);
+        offset = buffer.writeInt32BE(this.count, offset);
+        for (const word of this.words) {
+            offset = buffer.writeBigUInt64BE(word, offset);
+        }
+        return buffer;
+    }
+}
+
+/**
+ * Device hashes are SHA-256 hex, so their leading bits are already uniform; anything else falls
+ * back to a mixed Java String.hashCode, as on the client.
+ */
+function hash1(value: string): bigint {
+    if (value.length >= 32) {
+        const head = value.substring(0, 16);
+        if (HEX_16.test(head)) {
+            return BigInt('0x' + head);
+        }
+    }
+    return mix(BigInt.asUintN(64, BigInt(javaHashCode(value))));
+}
+
+function hash2(value: string, h1: bigint): bigint {
+    let h2: bigint;
+    const next = value.length >= 32 ? value.substring(16, 32) : '';
+    if (HEX_16.test(next)) {
+        h2 = BigInt('0x' + next);
+    } else {
+        h2 = mix(h1 ^ BigInt(value.length));
+    }
+    return h2 | BigInt(1);
+}
+
+/**
+ * The SplitMix64 finalizer over an unsigned 64-bit value.
+ */
+function mix(z: bigint): bigint {
+    z = ((z ^ (z >> BigInt(30))) * BigInt('0xbf58476d1ce4e5b9')) & MASK_64;
+    z = ((z ^ (z >> BigInt(27))) * BigInt('0x94d049bb133111eb')) & MASK_64;
+    return z ^ (z >> BigInt(31));
+}
+
+function javaHashCode(value: string): number {
+    let hash = 0;
+    for (let i = 0; i < value.length; i++) {
+        hash = (Math.imul(31, hash) + value.charCodeAt(i)) | 0;
+    }
+    return hash;
+}
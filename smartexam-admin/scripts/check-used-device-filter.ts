@@ -0,0 +1,45 @@
+import { createHash } from 'crypto';
+import { readFileSync, writeFileSync } from 'fs';
+import { join } from 'path';
+import { BloomFilter } from '../lib/used-device-filter';
+
+// Checks lib/used-device-filter.ts against the golden blob that the app's BloomFilterTest also
+// checks BloomFilter.java against, so the two ports cannot drift apart unnoticed. The inputs
+// below must match BloomFilterTest.goldenFilter(). Pass --write to regenerate the file after a
+// deliberate format change, then bump VERSION on both sides.
+//
+//   npx tsx scripts/check-used-device-filter.ts [--write]
+
+const GOLDEN = join(__dirname, '../../app/src/test/resources/com/smartexam/subscription/used_devices_golden.bloom');
+const GENERATED_AT = 1_700_000_000_000;
+
+function goldenFilter(): BloomFilter {
+    const filter = BloomFilter.create(200, 0.01);
+    for (let i = 0; i < 60; i++) {
+        filter.put(createHash('sha256').update(`device-${i}`, 'utf8').digest('hex'));
+    }
+    // Not hex, so these take the String.hashCode path
+    for (let i = 0; i < 20; i++) {
+        filter.put(`legacy-${i}`);
+    }
+    return filter;
+}
+
+const actual = goldenFilter().toBuffer(GENERATED_AT);
+if (process.argv.includes('--write')) {
+    writeFileSync(GOLDEN, actual);
+    console.log(`Wrote ${actual.length} bytes to ${GOLDEN}`);
+} else {
+    const expected = readFileSync(GOLDEN);
+    if (!actual.equals(expected)) {
+        const length = Math.min(actual.length, expected.length);
+        let offset = 0;
+        while (offset < length && actual[offset] === expected[offset]) {
+            offset++;
+        }
+        console.error(`Used device filter differs from ${GOLDEN} at byte ${offset} `
+            + `(${actual.length} bytes built, ${expected.length} expected)`);
+        process.exit(1);
+    }
+    console.log(`Used device filter matches ${GOLDEN}`);
+}
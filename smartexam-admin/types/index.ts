@@ -25,6 +25,7 @@ export interface Question {
     tags?: string[];
     version: number;
     createdAt: number;
+    updatedAt?: number; // Stamped on every write; the app's delta sync reads only what moved past it
 }
 
 export interface QuestionPack {
@@ -42,4 +43,5 @@ export interface QuestionPack {
     isPublished: boolean;
     version: number;
     createdAt: number;
+    updatedAt?: number;
 }